@@ -0,0 +1,200 @@
+package com.datastax.cache;
+
+import java.nio.ByteBuffer;
+import java.nio.file.Path;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Cache of decompressed blocks of on-disk tables, keyed by table file and
+ * block offset, shared by all iterators over the same files (see
+ * {@link com.datastax.iterator.BlockTableIterator}).
+ *
+ * The cache is bounded by the total size of its blocks. It is split into
+ * segments by key hash, each holding an equal share of the capacity and
+ * evicting its least recently used blocks, so concurrent readers only
+ * contend when they hit the same segment. A block larger than a segment's
+ * share is not cached.
+ *
+ * Cached blocks are never modified: readers get a duplicate of the cached
+ * buffer and must only read from it.
+ */
+public class BlockCache {
+    public static final long DEFAULT_CAPACITY = 64 * 1024 * 1024;
+
+    private static final int SEGMENTS = 16;
+    private static final BlockCache SHARED = new BlockCache(DEFAULT_CAPACITY);
+
+    private final long capacity;
+    private final Segment[] segments;
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+
+    public BlockCache(long capacity) {
+        this(capacity, SEGMENTS);
+    }
+
+    BlockCache(long capacity, int segments) {
+        if (capacity <= 0)
+            throw new IllegalArgumentException("Cache capacity must be positive, got " + capacity);
+
+        this.capacity = capacity;
+        this.segments = new Segment[segments];
+        for (int i = 0; i < segments; i++)
+            this.segments[i] = new Segment(capacity / segments);
+    }
+
+    /**
+     * Cache shared by the iterators that are not given one.
+     */
+    public static BlockCache shared() {
+        return SHARED;
+    }
+
+    /**
+     * Block of the given table file at the given offset, or null if it is
+     * not cached.
+     */
+    public ByteBuffer get(Path file, long offset) {
+        Key key = new Key(file, offset);
+        ByteBuffer block = segment(key).get(key);
+        if (block == null) {
+            misses.increment();
+            return null;
+        }
+
+        hits.increment();
+        return block.duplicate();
+    }
+
+    /**
+     * Caches a block; the buffer must not be modified afterwards.
+     */
+    public void put(Path file, long offset, ByteBuffer block) {
+        Key key = new Key(file, offset);
+        segment(key).put(key, block);
+    }
+
+    /**
+     * Drops all blocks of the given table file, e.g. once it was deleted or
+     * is written again. {@link com.datastax.iterator.BlockTableIterator}s
+     * key blocks by the absolute and normalized path of their file.
+     */
+    public void invalidate(Path file) {
+        for (Segment segment : segments)
+            segment.invalidate(file);
+    }
+
+    public long capacity() {
+        return capacity;
+    }
+
+    /**
+     * Total size of the cached blocks, in bytes.
+     */
+    public long size() {
+        long size = 0;
+        for (Segment segment : segments)
+            size += segment.size();
+        return size;
+    }
+
+    public long hits() {
+        return hits.sum();
+    }
+
+    public long misses() {
+        return misses.sum();
+    }
+
+    public long evictions() {
+        return evictions.sum();
+    }
+
+    public double hitRate() {
+        long hits = hits();
+        long requests = hits + misses();
+        return requests == 0 ? 0 : (double) hits / requests;
+    }
+
+    private Segment segment(Key key) {
+        // spread the hash, offsets of a file's blocks mostly differ in their low bits
+        int h = key.hashCode();
+        h ^= h >>> 16;
+        return segments[(h & Integer.MAX_VALUE) % segments.length];
+    }
+
+    private final class Segment {
+        private final long capacity;
+        // access ordered, eldest is the least recently used
+        private final LinkedHashMap<Key, ByteBuffer> blocks = new LinkedHashMap<>(16, 0.75f, true);
+        private long size;
+
+        Segment(long capacity) {
+            this.capacity = capacity;
+        }
+
+        synchronized ByteBuffer get(Key key) {
+            return blocks.get(key);
+        }
+
+        synchronized void put(Key key, ByteBuffer block) {
+            if (block.capacity() > capacity)
+                return;
+
+            ByteBuffer previous = blocks.put(key, block);
+            if (previous != null)
+                size -= previous.capacity();
+            size += block.capacity();
+
+            Iterator<ByteBuffer> eldest = blocks.values().iterator();
+            while (size > capacity) {
+                size -= eldest.next().capacity();
+                eldest.remove();
+                evictions.increment();
+            }
+        }
+
+        synchronized void invalidate(Path file) {
+            Iterator<Map.Entry<Key, ByteBuffer>> entries = blocks.entrySet().iterator();
+            while (entries.hasNext()) {
+                Map.Entry<Key, ByteBuffer> entry = entries.next();
+                if (entry.getKey().file.equals(file)) {
+                    size -= entry.getValue().capacity();
+                    entries.remove();
+                }
+            }
+        }
+
+        synchronized long size() {
+            return size;
+        }
+    }
+
+    private static final class Key {
+        final Path file;
+        final long offset;
+
+        Key(Path file, long offset) {
+            this.file = file;
+            this.offset = offset;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (o == null || getClass() != o.getClass()) return false;
+            Key key = (Key) o;
+            return offset == key.offset && file.equals(key.file);
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * file.hashCode() + Long.hashCode(offset);
+        }
+    }
+}
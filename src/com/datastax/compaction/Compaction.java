@@ -0,0 +1,590 @@
+package com.datastax.compaction;
+
+import com.datastax.index.BloomFilter;
+import com.datastax.index.SparseIndex;
+import com.datastax.iterator.BatchingAsyncIterator;
+import com.datastax.iterator.BlockTableIterator;
+import com.datastax.iterator.MergeIterator;
+import com.datastax.iterator.Sliceable;
+import com.datastax.iterator.TableIterator;
+import com.datastax.metadata.Schema;
+import com.datastax.metadata.TableFooter;
+import com.datastax.metadata.TableHeader;
+import com.datastax.rows.Row;
+import com.datastax.rows.Slice;
+import com.datastax.serde.MarshalException;
+import com.datastax.util.ByteBufferUtil;
+import com.datastax.writer.TableWriter;
+
+import java.io.*;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Consumer;
+
+/**
+ * Compaction of on-disk tables: merges the rows of all input tables with
+ * {@link MergeIterator} and {@link Row#merge(Row, Row)} and writes them to a
+ * single new table with {@link TableWriter}.
+ *
+ * The work is spread over a pipeline of threads: every input is read ahead
+ * by its own {@link BatchingAsyncIterator}, the merge runs on another one,
+ * and the calling thread serializes and writes the merged rows. Every stage
+ * buffers at most {@code readAhead} rows. What else is kept in memory grows
+ * with the output: its sparse index, one key every {@code indexInterval}
+ * rows, and its Bloom filter, which is sized up front for the number of rows
+ * recorded in the inputs' {@link TableFooter}s. If an input has no footer,
+ * the filter keeps 16 bytes for every output row until it is written.
+ *
+ * With a {@code parallelism} above one, the key space is split into that
+ * many disjoint ranges at keys of the inputs' sparse indexes, and every
+ * range is merged from inputs sliced to it (see {@link Sliceable#merge})
+ * and written to its own output by its own thread, see
+ * {@link Builder#splitOutputs(boolean)}. A range that fails stops the
+ * others. Inputs without index can't be split and are merged as a single
+ * range.
+ *
+ * Inputs may be plain tables or tables written by
+ * {@link com.datastax.writer.BlockTableWriter}; the output is a plain table.
+ * Block tables have no sparse index and don't take part in the split.
+ *
+ * Progress is reported to an optional listener every {@code progressInterval}
+ * written rows; the expected number of rows is taken from the inputs'
+ * {@link TableFooter}s when they have one. A failed compaction deletes its
+ * partial outputs.
+ */
+public class Compaction {
+    public static final int DEFAULT_READ_AHEAD = 1024;
+    public static final int DEFAULT_PROGRESS_INTERVAL = 64 * 1024;
+
+    private final List<Path> inputs;
+    private final Path output;
+    private final Schema schema;
+    private final int indexInterval;
+    private final double falsePositiveRate;
+    private final int readAhead;
+    private final int parallelism;
+    private final int progressInterval;
+    private final Consumer<Progress> listener;
+
+    private Compaction(Builder builder) {
+        this.inputs = Collections.unmodifiableList(new ArrayList<>(builder.inputs));
+        this.output = builder.output;
+        this.schema = builder.schema;
+        this.indexInterval = builder.indexInterval;
+        this.falsePositiveRate = builder.falsePositiveRate;
+        this.readAhead = builder.readAhead;
+        this.parallelism = builder.parallelism;
+        this.progressInterval = builder.progressInterval;
+        this.listener = builder.listener;
+    }
+
+    public List<Path> inputs() {
+        return inputs;
+    }
+
+    public Path output() {
+        return output;
+    }
+
+    /**
+     * Path of the output of the given key range when outputs are split:
+     * the output's name followed by {@code -range}.
+     */
+    public Path output(int range) {
+        return output.resolveSibling(output.getFileName() + "-" + range);
+    }
+
+    /**
+     * Runs the compaction. The calling thread writes the output unless the
+     * outputs are split, in which case it waits for the range threads.
+     */
+    public Result run() throws IOException {
+        Schema schema = this.schema != null ? this.schema : schemaOf(inputs.get(0));
+
+        long totalRows = 0;
+        long bytesRead = 0;
+        // loaded once for all ranges
+        List<SparseIndex> indexes = new ArrayList<>();
+        for (Path input : inputs) {
+            TableFooter footer = TableFooter.load(input);
+            totalRows = totalRows < 0 || footer == null ? -1 : totalRows + footer.rowCount;
+            bytesRead += Files.size(input);
+            indexes.add(SparseIndex.load(input));
+        }
+
+        List<Slice> ranges = parallelism > 1 ? splitRanges(indexes) : Collections.singletonList(Slice.ALL);
+        List<Path> outputs = new ArrayList<>();
+        if (ranges.size() > 1) {
+            for (int i = 0; i < ranges.size(); i++)
+                outputs.add(output(i));
+        } else {
+            outputs.add(output);
+        }
+
+        Stats stats = new Stats(totalRows);
+        List<Closeable> resources = Collections.synchronizedList(new ArrayList<>());
+        boolean success = false;
+        try {
+            if (ranges.size() == 1) {
+                write(schema, output, pipeline(schema, indexes, resources, stats), totalRows, stats);
+            } else {
+                writeInParallel(schema, indexes, ranges, outputs, resources, stats);
+            }
+
+            long bytesWritten = 0;
+            for (Path path : outputs)
+                bytesWritten += Files.size(path);
+            Result result = new Result(outputs, stats.rowsRead.get(), stats.rowsWritten.get(), bytesRead, bytesWritten, System.nanoTime() - stats.start);
+            if (listener != null)
+                listener.accept(stats.progress());
+            success = true;
+            return result;
+        }
+        finally {
+            // outermost stages were opened last: closing them first leaves
+            // no thread reading a closed input
+            List<Closeable> toClose = new ArrayList<>(resources);
+            Collections.reverse(toClose);
+            IOException failure = null;
+            for (Closeable resource : toClose) {
+                try {
+                    resource.close();
+                }
+                catch (IOException e) {
+                    if (failure == null)
+                        failure = e;
+                }
+            }
+
+            if (!success) {
+                for (Path path : outputs)
+                    Files.deleteIfExists(path);
+            }
+            else if (failure != null) {
+                throw failure;
+            }
+        }
+    }
+
+    /**
+     * Single range: every input and the merge are read ahead on their own threads.
+     */
+    private Iterator<Row> pipeline(Schema schema, List<SparseIndex> indexes, List<Closeable> resources, Stats stats) throws IOException {
+        @SuppressWarnings("unchecked")
+        Iterator<Row>[] sources = new Iterator[inputs.size()];
+        for (int i = 0; i < sources.length; i++)
+            sources[i] = readAhead(new CountingIterator(open(schema, inputs.get(i), indexes.get(i), resources), stats.rowsRead), resources);
+
+        return readAhead(MergeIterator.create(Row::merge, sources), resources);
+    }
+
+    /**
+     * Merge of a single key range, to be run on one thread.
+     */
+    private Iterator<Row> merge(Schema schema, List<SparseIndex> indexes, Slice range, List<Closeable> resources, Stats stats) throws IOException {
+        @SuppressWarnings("unchecked")
+        Iterator<Row>[] sources = new Iterator[inputs.size()];
+        for (int i = 0; i < sources.length; i++)
+            sources[i] = new CountingIterator(open(schema, inputs.get(i), indexes.get(i), resources), stats.rowsRead);
+
+        return Sliceable.merge(Row::merge, range, sources);
+    }
+
+    private void writeInParallel(Schema schema, List<SparseIndex> indexes, List<Slice> ranges, List<Path> outputs, List<Closeable> resources, Stats stats) throws IOException {
+        // ranges hold about the same number of rows
+        long expectedRows = stats.totalRows < 0 ? -1 : (stats.totalRows + ranges.size() - 1) / ranges.size();
+        ExecutorService executor = Executors.newFixedThreadPool(ranges.size(), r -> {
+            Thread t = new Thread(r, "compaction-range");
+            t.setDaemon(true);
+            return t;
+        });
+
+        try {
+            List<Future<?>> writes = new ArrayList<>();
+            for (int i = 0; i < ranges.size(); i++) {
+                Slice range = ranges.get(i);
+                Path path = outputs.get(i);
+                writes.add(executor.submit(() -> {
+                    try {
+                        write(schema, path, merge(schema, indexes, range, resources, stats), expectedRows, stats);
+                    }
+                    catch (Throwable t) {
+                        // the other ranges stop at their next row
+                        stats.failure.compareAndSet(null, t);
+                        throw t;
+                    }
+                    return null;
+                }));
+            }
+
+            // every range has to finish before its inputs can be closed
+            for (Future<?> write : writes) {
+                try {
+                    write.get();
+                }
+                catch (ExecutionException e) {
+                    // reported through stats.failure
+                }
+                catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    stats.failure.compareAndSet(null, new InterruptedIOException("Interrupted while waiting for the compaction of a range"));
+                }
+            }
+
+            Throwable failure = stats.failure.get();
+
+            if (failure instanceof IOException)
+                throw (IOException) failure;
+            if (failure instanceof RuntimeException)
+                throw (RuntimeException) failure;
+            if (failure instanceof Error)
+                throw (Error) failure;
+        }
+        finally {
+            executor.shutdown();
+        }
+    }
+
+    /**
+     * @param expectedRows rows the filter is sized for, or -1 if unknown
+     */
+    private void write(Schema schema, Path path, Iterator<Row> rows, long expectedRows, Stats stats) throws IOException {
+        try (TableWriter.OnDiskWriter writer = new TableWriter.OnDiskWriter(schema,
+                                                                           new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(path))),
+                                                                           indexInterval > 0 ? SparseIndex.Builder.everyRows(indexInterval) : null,
+                                                                           falsePositiveRate > 0 ? new BloomFilter.Builder(falsePositiveRate, expectedRows) : null)) {
+            writer.write(new ProgressIterator(rows, stats));
+        }
+    }
+
+    /**
+     * Iterator over an input table, in either format. Blocks of block tables
+     * are read once and so don't go through the block cache.
+     */
+    private static Iterator<Row> open(Schema schema, Path input, SparseIndex index, List<Closeable> resources) throws IOException {
+        TableHeader header = TableHeader.load(input);
+        if (header != null && header.isBlockFormat()) {
+            BlockTableIterator table = BlockTableIterator.open(schema, input.toString(), false, BlockTableIterator.Verification.SYNC, null);
+            resources.add(table);
+            return table;
+        }
+
+        TableIterator.MappedOnDiskIterator table = TableIterator.mappedIterator(schema, input.toString(), false, index);
+        resources.add(table);
+        return table;
+    }
+
+    private BatchingAsyncIterator<Row> readAhead(Iterator<Row> rows, List<Closeable> resources) {
+        BatchingAsyncIterator<Row> iterator = new BatchingAsyncIterator<>(rows, readAhead, Math.min(readAhead, BatchingAsyncIterator.DEFAULT_BATCH_SIZE));
+        resources.add(iterator);
+        return iterator;
+    }
+
+    /**
+     * Splits the key space into at most {@code parallelism} ranges holding
+     * about the same number of index entries of all inputs.
+     */
+    private List<Slice> splitRanges(List<SparseIndex> indexes) {
+        List<byte[]> keys = new ArrayList<>();
+        for (SparseIndex index : indexes) {
+            for (int i = 0; i < index.size(); i++)
+                keys.add(index.key(i));
+        }
+        if (keys.isEmpty())
+            return Collections.singletonList(Slice.ALL);
+        keys.sort(ByteBufferUtil::compareUnsigned);
+
+        List<Slice> ranges = new ArrayList<>();
+        byte[] previous = null;
+        for (int i = 1; i < parallelism; i++) {
+            byte[] split = keys.get((int) ((long) keys.size() * i / parallelism));
+            // duplicates and the smallest key would make empty ranges
+            if (ByteBufferUtil.compareUnsigned(split, keys.get(0)) <= 0 || (previous != null && ByteBufferUtil.compareUnsigned(split, previous) <= 0))
+                continue;
+
+            ranges.add(previous == null ? Slice.to(split, false) : Slice.between(previous, true, split, false));
+            previous = split;
+        }
+        ranges.add(previous == null ? Slice.ALL : Slice.from(previous, true));
+        return ranges;
+    }
+
+    private static Schema schemaOf(Path table) throws IOException {
+        TableHeader header = TableHeader.load(table);
+        if (header == null)
+            throw new MarshalException("Table " + table + " has no header, the compaction's schema has to be given");
+        return header.schema;
+    }
+
+    /**
+     * Counters shared by all threads of a compaction.
+     */
+    private final class Stats {
+        final long start = System.nanoTime();
+        final long totalRows;
+        final AtomicLong rowsRead = new AtomicLong();
+        final AtomicLong rowsWritten = new AtomicLong();
+        // first failure of a range, which cancels the others
+        final AtomicReference<Throwable> failure = new AtomicReference<>();
+
+        Stats(long totalRows) {
+            this.totalRows = totalRows;
+        }
+
+        Progress progress() {
+            return new Progress(rowsRead.get(), totalRows, rowsWritten.get(), System.nanoTime() - start);
+        }
+    }
+
+    /**
+     * Counts the rows read from an input; a sliced input only returns the
+     * rows within its slice. Inputs are read on different threads, hence
+     * the shared atomic counter.
+     */
+    private static final class CountingIterator implements Iterator<Row>, Sliceable {
+        private final Iterator<Row> rows;
+        private final AtomicLong count;
+
+        CountingIterator(Iterator<Row> rows, AtomicLong count) {
+            this.rows = rows;
+            this.count = count;
+        }
+
+        @Override
+        public void slice(Slice slice) {
+            if (rows instanceof Sliceable)
+                ((Sliceable) rows).slice(slice);
+        }
+
+        @Override
+        public boolean hasNext() {
+            return rows.hasNext();
+        }
+
+        @Override
+        public Row next() {
+            Row row = rows.next();
+            count.incrementAndGet();
+            return row;
+        }
+    }
+
+    /**
+     * Counts the rows handed to a writer and reports progress. Stops the
+     * writer once a range of a parallel compaction failed.
+     */
+    private final class ProgressIterator implements Iterator<Row> {
+        private final Iterator<Row> rows;
+        private final Stats stats;
+
+        ProgressIterator(Iterator<Row> rows, Stats stats) {
+            this.rows = rows;
+            this.stats = stats;
+        }
+
+        @Override
+        public boolean hasNext() {
+            if (stats.failure.get() != null)
+                throw new CancellationException("Compaction of another key range failed");
+            return rows.hasNext();
+        }
+
+        @Override
+        public Row next() {
+            Row row = rows.next();
+            if (stats.rowsWritten.incrementAndGet() % progressInterval == 0 && listener != null)
+                listener.accept(stats.progress());
+            return row;
+        }
+    }
+
+    /**
+     * Snapshot of a running compaction.
+     */
+    public static class Progress {
+        public final long rowsRead;
+        // -1 if an input has no footer
+        public final long totalRows;
+        public final long rowsWritten;
+        public final long nanos;
+
+        Progress(long rowsRead, long totalRows, long rowsWritten, long nanos) {
+            this.rowsRead = rowsRead;
+            this.totalRows = totalRows;
+            this.rowsWritten = rowsWritten;
+            this.nanos = nanos;
+        }
+
+        /**
+         * Fraction of the input rows read so far, or -1 if unknown.
+         */
+        public double fraction() {
+            return totalRows < 0 ? -1 : totalRows == 0 ? 1 : (double) rowsRead / totalRows;
+        }
+
+        public double rowsPerSecond() {
+            return nanos == 0 ? 0 : rowsRead * 1e9 / nanos;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%d/%d rows read, %d written, %.0f rows/s", rowsRead, totalRows, rowsWritten, rowsPerSecond());
+        }
+    }
+
+    /**
+     * Outcome of a finished compaction.
+     */
+    public static class Result {
+        public final List<Path> outputs;
+        public final long rowsRead;
+        public final long rowsWritten;
+        public final long bytesRead;
+        public final long bytesWritten;
+        public final long nanos;
+
+        Result(List<Path> outputs, long rowsRead, long rowsWritten, long bytesRead, long bytesWritten, long nanos) {
+            this.outputs = Collections.unmodifiableList(outputs);
+            this.rowsRead = rowsRead;
+            this.rowsWritten = rowsWritten;
+            this.bytesRead = bytesRead;
+            this.bytesWritten = bytesWritten;
+            this.nanos = nanos;
+        }
+
+        /**
+         * Input bytes processed per second.
+         */
+        public double bytesPerSecond() {
+            return nanos == 0 ? 0 : bytesRead * 1e9 / nanos;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%d rows (%d bytes) compacted to %d rows (%d bytes) in %d ms, %.1f MB/s",
+                                 rowsRead, bytesRead, rowsWritten, bytesWritten, nanos / 1000000, bytesPerSecond() / (1024 * 1024));
+        }
+    }
+
+    public static class Builder {
+        private final Path output;
+        private final List<Path> inputs = new ArrayList<>();
+        private Schema schema;
+        private int indexInterval = 128;
+        private double falsePositiveRate = BloomFilter.DEFAULT_FALSE_POSITIVE_RATE;
+        private int readAhead = DEFAULT_READ_AHEAD;
+        private int parallelism = 1;
+        private boolean splitOutputs;
+        private int progressInterval = DEFAULT_PROGRESS_INTERVAL;
+        private Consumer<Progress> listener;
+
+        public Builder(Path output) {
+            this.output = output;
+        }
+
+        public Builder addInput(Path input) {
+            inputs.add(input);
+            return this;
+        }
+
+        public Builder addInputs(Iterable<Path> inputs) {
+            for (Path input : inputs)
+                addInput(input);
+            return this;
+        }
+
+        /**
+         * Schema of the inputs; taken from the first input's header if not set.
+         */
+        public Builder schema(Schema schema) {
+            this.schema = schema;
+            return this;
+        }
+
+        /**
+         * Rows between sparse index entries of the output, 0 for no index.
+         */
+        public Builder indexInterval(int rows) {
+            if (rows < 0)
+                throw new IllegalArgumentException("Index interval can't be negative, got " + rows);
+            this.indexInterval = rows;
+            return this;
+        }
+
+        /**
+         * False positive rate of the output's Bloom filter, 0 for no filter.
+         */
+        public Builder falsePositiveRate(double falsePositiveRate) {
+            if (!(falsePositiveRate >= 0 && falsePositiveRate < 1))
+                throw new IllegalArgumentException("False positive rate must be in [0, 1), got " + falsePositiveRate);
+            this.falsePositiveRate = falsePositiveRate;
+            return this;
+        }
+
+        /**
+         * Rows buffered by every stage of the pipeline.
+         */
+        public Builder readAhead(int rows) {
+            if (rows <= 0)
+                throw new IllegalArgumentException("Read-ahead must be positive, got " + rows);
+            this.readAhead = rows;
+            return this;
+        }
+
+        /**
+         * Number of key ranges merged in parallel; above one, the outputs
+         * have to be {@link #splitOutputs(boolean) split}.
+         */
+        public Builder parallelism(int ranges) {
+            if (ranges <= 0)
+                throw new IllegalArgumentException("Parallelism must be positive, got " + ranges);
+            this.parallelism = ranges;
+            return this;
+        }
+
+        /**
+         * Whether every key range is written to its own output, see
+         * {@link Compaction#output(int)}. Required by a parallel compaction:
+         * concatenating the ranges into a single output would have the
+         * ranges after the first wait for it, merging one at a time.
+         */
+        public Builder splitOutputs(boolean splitOutputs) {
+            this.splitOutputs = splitOutputs;
+            return this;
+        }
+
+        /**
+         * Listener called every {@code interval} written rows and once the
+         * compaction is done. With split outputs, it is called from the
+         * threads writing the ranges.
+         */
+        public Builder progressListener(Consumer<Progress> listener, int interval) {
+            if (interval <= 0)
+                throw new IllegalArgumentException("Progress interval must be positive, got " + interval);
+            this.listener = listener;
+            this.progressInterval = interval;
+            return this;
+        }
+
+        public Compaction build() {
+            if (inputs.isEmpty())
+                throw new IllegalStateException("Compaction needs at least one input");
+            if (inputs.contains(output))
+                throw new IllegalStateException("Compaction can't write over its input " + output);
+            if (parallelism > 1 && !splitOutputs)
+                throw new IllegalStateException("Compaction of " + parallelism + " ranges in parallel needs split outputs");
+            return new Compaction(this);
+        }
+    }
+}
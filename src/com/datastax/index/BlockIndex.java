@@ -0,0 +1,210 @@
+package com.datastax.index;
+
+import com.datastax.metadata.Compression;
+import com.datastax.metadata.Constants;
+import com.datastax.metadata.TableFooter;
+import com.datastax.serde.MarshalException;
+import com.datastax.util.ByteBufferUtil;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+
+/**
+ * Block offset table of a block table (see {@link com.datastax.writer.BlockTableWriter}):
+ * the compression of its blocks and, for every block, its offset, its
+ * stored and uncompressed length, the {@link com.datastax.util.Crc32c} of
+ * its stored bytes and the byte-comparable key of its first row.
+ *
+ * The table is written after the last block, as the
+ * {@link TableFooter.Section#BLOCK_INDEX} section of the table file.
+ */
+public class BlockIndex {
+    private final Compression compression;
+    private final long[] offsets;
+    private final int[] storedLengths;
+    private final int[] lengths;
+    private final int[] checksums;
+    private final byte[][] firstKeys;
+
+    private BlockIndex(Compression compression, long[] offsets, int[] storedLengths, int[] lengths, int[] checksums, byte[][] firstKeys) {
+        this.compression = compression;
+        this.offsets = offsets;
+        this.storedLengths = storedLengths;
+        this.lengths = lengths;
+        this.checksums = checksums;
+        this.firstKeys = firstKeys;
+    }
+
+    public Compression compression() {
+        return compression;
+    }
+
+    public int size() {
+        return offsets.length;
+    }
+
+    public long offset(int block) {
+        return offsets[block];
+    }
+
+    /**
+     * Number of bytes the block takes in the file.
+     */
+    public int storedLength(int block) {
+        return storedLengths[block];
+    }
+
+    /**
+     * Number of bytes of the block's rows once decompressed.
+     */
+    public int length(int block) {
+        return lengths[block];
+    }
+
+    /**
+     * CRC32C of the block's stored bytes.
+     */
+    public int checksum(int block) {
+        return checksums[block];
+    }
+
+    public byte[] firstKey(int block) {
+        return firstKeys[block];
+    }
+
+    /**
+     * Total number of bytes of all blocks in the file.
+     */
+    public long storedSize() {
+        long size = 0;
+        for (int length : storedLengths)
+            size += length;
+        return size;
+    }
+
+    /**
+     * Block that holds the first row whose key is greater than or equal to
+     * the given one, if there is such a row: the last block whose first key
+     * is not greater than it, or the first block.
+     */
+    public int blockFor(byte[] key) {
+        int lo = 0;
+        int hi = firstKeys.length - 1;
+        while (lo <= hi) {
+            int mid = (lo + hi) >>> 1;
+            int cmp = ByteBufferUtil.compareUnsigned(firstKeys[mid], key);
+            if (cmp < 0)
+                lo = mid + 1;
+            else if (cmp > 0)
+                hi = mid - 1;
+            else
+                return mid;
+        }
+        return Math.max(hi, 0);
+    }
+
+    public void serialize(DataOutput out) throws IOException {
+        out.writeInt(Constants.BLOCK_INDEX_MAGIC);
+        out.writeByte(compression.id);
+        out.writeInt(offsets.length);
+        for (int i = 0; i < offsets.length; i++) {
+            out.writeLong(offsets[i]);
+            out.writeInt(storedLengths[i]);
+            out.writeInt(lengths[i]);
+            out.writeInt(checksums[i]);
+            out.writeInt(firstKeys[i].length);
+            out.write(firstKeys[i]);
+        }
+    }
+
+    public static BlockIndex deserialize(DataInput in) throws IOException {
+        int magic = in.readInt();
+        if (magic != Constants.BLOCK_INDEX_MAGIC)
+            throw new MarshalException("Corrupted block index: magic " + magic + " != " + Constants.BLOCK_INDEX_MAGIC);
+
+        Compression compression = Compression.fromId(in.readByte());
+        int size = in.readInt();
+        long[] offsets = new long[size];
+        int[] storedLengths = new int[size];
+        int[] lengths = new int[size];
+        int[] checksums = new int[size];
+        byte[][] firstKeys = new byte[size][];
+        for (int i = 0; i < size; i++) {
+            offsets[i] = in.readLong();
+            storedLengths[i] = in.readInt();
+            lengths[i] = in.readInt();
+            checksums[i] = in.readInt();
+            firstKeys[i] = new byte[in.readInt()];
+            in.readFully(firstKeys[i]);
+        }
+        return new BlockIndex(compression, offsets, storedLengths, lengths, checksums, firstKeys);
+    }
+
+    /**
+     * Reads the block index of the table file open in the given channel.
+     */
+    public static BlockIndex load(FileChannel channel) throws IOException {
+        TableFooter footer = TableFooter.load(channel);
+        if (footer == null || !footer.hasSection(TableFooter.Section.BLOCK_INDEX))
+            throw new MarshalException("Not a block table: no block index in footer");
+
+        return deserialize(TableFooter.section(channel, footer.sectionOffset(TableFooter.Section.BLOCK_INDEX)));
+    }
+
+    /**
+     * Fills the buffer from the channel, starting at the given file position.
+     */
+    public static void readFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            int n = channel.read(buffer, position);
+            if (n < 0)
+                throw new EOFException("Can't read " + buffer.remaining() + " bytes at " + position);
+            position += n;
+        }
+    }
+
+    /**
+     * Collects the blocks of a table while it is written.
+     */
+    public static class Builder {
+        private final Compression compression;
+
+        private long[] offsets = new long[16];
+        private int[] storedLengths = new int[16];
+        private int[] lengths = new int[16];
+        private int[] checksums = new int[16];
+        private byte[][] firstKeys = new byte[16][];
+        private int size;
+
+        public Builder(Compression compression) {
+            this.compression = compression;
+        }
+
+        public void add(long offset, int storedLength, int length, int checksum, byte[] firstKey) {
+            if (size == offsets.length) {
+                offsets = Arrays.copyOf(offsets, size * 2);
+                storedLengths = Arrays.copyOf(storedLengths, size * 2);
+                lengths = Arrays.copyOf(lengths, size * 2);
+                checksums = Arrays.copyOf(checksums, size * 2);
+                firstKeys = Arrays.copyOf(firstKeys, size * 2);
+            }
+            offsets[size] = offset;
+            storedLengths[size] = storedLength;
+            lengths[size] = length;
+            checksums[size] = checksum;
+            firstKeys[size] = firstKey;
+            size++;
+        }
+
+        public BlockIndex build() {
+            return new BlockIndex(compression,
+                                  Arrays.copyOf(offsets, size),
+                                  Arrays.copyOf(storedLengths, size),
+                                  Arrays.copyOf(lengths, size),
+                                  Arrays.copyOf(checksums, size),
+                                  Arrays.copyOf(firstKeys, size));
+        }
+    }
+}
@@ -0,0 +1,196 @@
+package com.datastax.index;
+
+import com.datastax.metadata.Constants;
+import com.datastax.metadata.TableFooter;
+import com.datastax.serde.MarshalException;
+import com.datastax.util.MurmurHash;
+
+import java.io.*;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+/**
+ * Bloom filter over the byte-comparable clustering keys of a table (see
+ * {@link com.datastax.rows.Row#comparableKey()}): tells that a key is
+ * certainly not in the table, or that it might be.
+ *
+ * Every key sets {@code hashCount} bits, derived from the two halves of its
+ * 128 bit {@link MurmurHash} with double hashing. The number of bits and
+ * hashes is chosen for the requested false positive rate once the number of
+ * keys is known, see {@link Builder}.
+ *
+ * The filter is stored in the {@link TableFooter.Section#FILTER} section
+ * of the table file, see {@link com.datastax.writer.TableWriter}.
+ */
+public class BloomFilter {
+    public static final double DEFAULT_FALSE_POSITIVE_RATE = 0.01;
+
+    // largest array of hashes kept by a builder of unknown size, an even length
+    private static final int MAX_HASHES = Integer.MAX_VALUE - 9;
+
+    private final long[] bits;
+    private final long bitCount;
+    private final int hashCount;
+
+    private BloomFilter(long[] bits, int hashCount) {
+        this.bits = bits;
+        this.bitCount = (long) bits.length * Long.SIZE;
+        this.hashCount = hashCount;
+    }
+
+    public boolean mightContain(byte[] key) {
+        long[] hash = new long[2];
+        MurmurHash.hash3_x64_128(key, 0, key.length, 0, hash);
+        long h1 = hash[0];
+        long h2 = hash[1];
+        for (int i = 0; i < hashCount; i++) {
+            long bit = ((h1 + i * h2) & Long.MAX_VALUE) % bitCount;
+            if ((bits[(int) (bit >>> 6)] & (1L << bit)) == 0)
+                return false;
+        }
+        return true;
+    }
+
+    public int hashCount() {
+        return hashCount;
+    }
+
+    public long bitCount() {
+        return bitCount;
+    }
+
+    /**
+     * Heap used by the filter's bits, in bytes.
+     */
+    public long memoryUsage() {
+        return (long) bits.length * Long.BYTES;
+    }
+
+    public void serialize(DataOutput out) throws IOException {
+        out.writeInt(Constants.FILTER_MAGIC);
+        out.writeInt(hashCount);
+        out.writeInt(bits.length);
+        for (long word : bits)
+            out.writeLong(word);
+    }
+
+    public static BloomFilter deserialize(DataInput in) throws IOException {
+        int magic = in.readInt();
+        if (magic != Constants.FILTER_MAGIC)
+            throw new MarshalException("Corrupted filter: magic " + magic + " != " + Constants.FILTER_MAGIC);
+
+        int hashCount = in.readInt();
+        long[] bits = new long[in.readInt()];
+        for (int i = 0; i < bits.length; i++)
+            bits[i] = in.readLong();
+        return new BloomFilter(bits, hashCount);
+    }
+
+    /**
+     * Loads the filter of the given table file.
+     *
+     * @return the filter, or null if the table was written without one
+     */
+    public static BloomFilter load(Path table) throws IOException {
+        try (FileChannel channel = FileChannel.open(table, StandardOpenOption.READ)) {
+            TableFooter footer = TableFooter.load(channel);
+            if (footer == null || !footer.hasSection(TableFooter.Section.FILTER))
+                return null;
+
+            return deserialize(TableFooter.section(channel, footer.sectionOffset(TableFooter.Section.FILTER)));
+        }
+    }
+
+    /**
+     * Builds the filter of a table while it is written. The filter has
+     * {@code -n ln p / ln^2 2} bits and {@code (bits / n) ln 2} hashes for n
+     * keys and false positive rate p.
+     *
+     * When the number of keys is given up front, the bits are allocated
+     * right away and every key is hashed into them as it is added; more keys
+     * than expected raise the false positive rate. Otherwise the hashes of
+     * all keys are kept, 16 bytes per key, until the filter is built.
+     */
+    public static class Builder {
+        private final double falsePositiveRate;
+
+        // both hash halves of every key, if the number of keys is not known
+        private long[] hashes;
+        private int size;
+        private final long[] hash = new long[2];
+
+        private long[] bits;
+        private long bitCount;
+        private int hashCount;
+
+        public Builder() {
+            this(DEFAULT_FALSE_POSITIVE_RATE);
+        }
+
+        public Builder(double falsePositiveRate) {
+            this(falsePositiveRate, -1);
+        }
+
+        /**
+         * @param expectedKeys number of keys of the table, or -1 if unknown
+         */
+        public Builder(double falsePositiveRate, long expectedKeys) {
+            if (!(falsePositiveRate > 0 && falsePositiveRate < 1))
+                throw new IllegalArgumentException("False positive rate must be in (0, 1), got " + falsePositiveRate);
+
+            this.falsePositiveRate = falsePositiveRate;
+            if (expectedKeys < 0)
+                hashes = new long[32];
+            else
+                allocate(expectedKeys);
+        }
+
+        public void add(byte[] key) {
+            MurmurHash.hash3_x64_128(key, 0, key.length, 0, hash);
+            if (bits != null) {
+                set(hash[0], hash[1]);
+                return;
+            }
+
+            if (size + 2 > hashes.length) {
+                if (hashes.length == MAX_HASHES)
+                    throw new IllegalStateException("Too many keys for a filter of unknown size, " + size / 2 + " were added");
+                hashes = Arrays.copyOf(hashes, (int) Math.min(MAX_HASHES, hashes.length * 2L));
+            }
+            hashes[size++] = hash[0];
+            hashes[size++] = hash[1];
+        }
+
+        public BloomFilter build() {
+            if (bits == null) {
+                allocate(size / 2);
+                for (int k = 0; k < size; k += 2)
+                    set(hashes[k], hashes[k + 1]);
+                hashes = null;
+            }
+            return new BloomFilter(bits, hashCount);
+        }
+
+        private void allocate(long keys) {
+            keys = Math.max(1, keys);
+            double ln2 = Math.log(2);
+            long count = Math.max(Long.SIZE, (long) Math.ceil(-keys * Math.log(falsePositiveRate) / (ln2 * ln2)));
+            long words = (count + Long.SIZE - 1) / Long.SIZE;
+            if (words > Integer.MAX_VALUE)
+                throw new IllegalStateException("Filter for " + keys + " keys is too large");
+
+            bits = new long[(int) words];
+            bitCount = words * Long.SIZE;
+            hashCount = Math.max(1, (int) Math.round((double) bitCount / keys * ln2));
+        }
+
+        private void set(long h1, long h2) {
+            for (int i = 0; i < hashCount; i++) {
+                long bit = ((h1 + i * h2) & Long.MAX_VALUE) % bitCount;
+                bits[(int) (bit >>> 6)] |= 1L << bit;
+            }
+        }
+    }
+}
@@ -0,0 +1,174 @@
+package com.datastax.index;
+
+import com.datastax.metadata.Constants;
+import com.datastax.metadata.TableFooter;
+import com.datastax.serde.MarshalException;
+import com.datastax.util.Crc32c;
+
+import java.io.*;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+/**
+ * Checksums of the rows of a plain table (see {@link com.datastax.writer.TableWriter}):
+ * the bytes from the end of the header to the end of {@link Constants#FILE_END}
+ * are cut into chunks of {@code chunkSize} bytes, the last one possibly
+ * shorter, and the {@link Crc32c} of every chunk is recorded.
+ *
+ * Chunks ignore row boundaries, so a reader verifies every chunk that
+ * overlaps the bytes it reads.
+ *
+ * The checksums are stored in the {@link TableFooter.Section#CHECKSUMS}
+ * section of the table file.
+ */
+public class ChunkChecksums {
+    public static final int DEFAULT_CHUNK_SIZE = 64 * 1024;
+
+    private final int chunkSize;
+    private final long start;
+    private final long end;
+    private final int[] checksums;
+
+    private ChunkChecksums(int chunkSize, long start, long end, int[] checksums) {
+        this.chunkSize = chunkSize;
+        this.start = start;
+        this.end = end;
+        this.checksums = checksums;
+    }
+
+    public int size() {
+        return checksums.length;
+    }
+
+    /**
+     * Chunk holding the byte at the given file offset, or -1 if it is
+     * not covered.
+     */
+    public int chunkAt(long offset) {
+        return offset < start || offset >= end ? -1 : (int) ((offset - start) / chunkSize);
+    }
+
+    public long offset(int chunk) {
+        return start + (long) chunk * chunkSize;
+    }
+
+    public int length(int chunk) {
+        return (int) Math.min(chunkSize, end - offset(chunk));
+    }
+
+    /**
+     * CRC32C of the chunk's bytes.
+     */
+    public int checksum(int chunk) {
+        return checksums[chunk];
+    }
+
+    /**
+     * Checks the bytes of the given chunk against its checksum.
+     *
+     * @throws MarshalException if they don't match
+     */
+    public void verify(int chunk, byte[] bytes, int off) {
+        int checksum = Crc32c.compute(bytes, off, length(chunk));
+        if (checksum != checksums[chunk])
+            throw new MarshalException("Corrupted chunk " + chunk + " at " + offset(chunk) + ": checksum " + checksum + " != " + checksums[chunk]);
+    }
+
+    public void serialize(DataOutput out) throws IOException {
+        out.writeInt(Constants.CHECKSUMS_MAGIC);
+        out.writeInt(chunkSize);
+        out.writeLong(start);
+        out.writeLong(end);
+        out.writeInt(checksums.length);
+        for (int checksum : checksums)
+            out.writeInt(checksum);
+    }
+
+    public static ChunkChecksums deserialize(DataInput in) throws IOException {
+        int magic = in.readInt();
+        if (magic != Constants.CHECKSUMS_MAGIC)
+            throw new MarshalException("Corrupted checksums: magic " + magic + " != " + Constants.CHECKSUMS_MAGIC);
+
+        int chunkSize = in.readInt();
+        long start = in.readLong();
+        long end = in.readLong();
+        int[] checksums = new int[in.readInt()];
+        for (int i = 0; i < checksums.length; i++)
+            checksums[i] = in.readInt();
+        if (chunkSize <= 0 || end < start || (end - start + chunkSize - 1) / chunkSize != checksums.length)
+            throw new MarshalException("Corrupted checksums: " + checksums.length + " chunks of " + chunkSize + " bytes from " + start + " to " + end);
+        return new ChunkChecksums(chunkSize, start, end, checksums);
+    }
+
+    /**
+     * Loads the checksums of the given table file.
+     *
+     * @return the checksums, or null if the table was written without them
+     */
+    public static ChunkChecksums load(Path table) throws IOException {
+        try (FileChannel channel = FileChannel.open(table, StandardOpenOption.READ)) {
+            TableFooter footer = TableFooter.load(channel);
+            if (footer == null || !footer.hasSection(TableFooter.Section.CHECKSUMS))
+                return null;
+
+            return deserialize(TableFooter.section(channel, footer.sectionOffset(TableFooter.Section.CHECKSUMS)));
+        }
+    }
+
+    /**
+     * Checksums the bytes of a table while it is written.
+     */
+    public static class Builder {
+        private final int chunkSize;
+        private final long start;
+        private final Crc32c crc = new Crc32c();
+
+        private int[] checksums = new int[16];
+        private int size;
+        // bytes of the current chunk added so far
+        private int chunkLength;
+
+        /**
+         * @param start file offset of the first byte to be added
+         */
+        public Builder(int chunkSize, long start) {
+            if (chunkSize <= 0)
+                throw new IllegalArgumentException("Chunk size must be positive, got " + chunkSize);
+
+            this.chunkSize = chunkSize;
+            this.start = start;
+        }
+
+        /**
+         * Called with the bytes of the table in order.
+         */
+        public void add(byte[] b, int off, int len) {
+            while (len > 0) {
+                int n = Math.min(len, chunkSize - chunkLength);
+                crc.update(b, off, n);
+                chunkLength += n;
+                off += n;
+                len -= n;
+                if (chunkLength == chunkSize)
+                    finishChunk();
+            }
+        }
+
+        private void finishChunk() {
+            if (size == checksums.length)
+                checksums = Arrays.copyOf(checksums, size * 2);
+            checksums[size++] = (int) crc.getValue();
+            crc.reset();
+            chunkLength = 0;
+        }
+
+        public ChunkChecksums build() {
+            long end = start + (long) size * chunkSize + chunkLength;
+            if (chunkLength > 0)
+                finishChunk();
+            return new ChunkChecksums(chunkSize, start, end, Arrays.copyOf(checksums, size));
+        }
+    }
+}
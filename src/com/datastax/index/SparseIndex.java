@@ -0,0 +1,174 @@
+package com.datastax.index;
+
+import com.datastax.metadata.Constants;
+import com.datastax.metadata.TableFooter;
+import com.datastax.serde.MarshalException;
+import com.datastax.util.ByteBufferUtil;
+
+import java.io.*;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+/**
+ * Sparse index over a table file: the byte-comparable clustering key (see
+ * {@link com.datastax.rows.Row#comparableKey()}) and file offset of every
+ * N-th row. Offsets point at the start of a row's frame, where a
+ * {@link com.datastax.iterator.TableIterator} can start reading.
+ *
+ * Entries are sorted by key, so a key is located with a binary search
+ * followed by a scan of at most one interval of rows.
+ *
+ * The index is stored in the {@link TableFooter.Section#INDEX} section of
+ * the table file, see {@link com.datastax.writer.TableWriter}.
+ */
+public class SparseIndex {
+    private static final SparseIndex EMPTY = new SparseIndex(new byte[0][], new long[0]);
+
+    private final byte[][] keys;
+    private final long[] offsets;
+
+    private SparseIndex(byte[][] keys, long[] offsets) {
+        this.keys = keys;
+        this.offsets = offsets;
+    }
+
+    public int size() {
+        return keys.length;
+    }
+
+    public byte[] key(int i) {
+        return keys[i];
+    }
+
+    public long offset(int i) {
+        return offsets[i];
+    }
+
+    /**
+     * Offset of the row frame to start scanning from to find the first row
+     * whose key is greater than or equal to the given one: the last indexed
+     * row with a key not greater than it, or -1 if there is none and the
+     * scan has to start at the first row.
+     */
+    public long seekOffset(byte[] key) {
+        int lo = 0;
+        int hi = keys.length - 1;
+        while (lo <= hi) {
+            int mid = (lo + hi) >>> 1;
+            int cmp = ByteBufferUtil.compareUnsigned(keys[mid], key);
+            if (cmp < 0)
+                lo = mid + 1;
+            else if (cmp > 0)
+                hi = mid - 1;
+            else
+                return offsets[mid];
+        }
+
+        // hi is the last entry with a smaller key
+        return hi < 0 ? -1 : offsets[hi];
+    }
+
+    public void serialize(DataOutput out) throws IOException {
+        out.writeInt(Constants.INDEX_MAGIC);
+        out.writeInt(keys.length);
+        for (int i = 0; i < keys.length; i++) {
+            out.writeLong(offsets[i]);
+            out.writeInt(keys[i].length);
+            out.write(keys[i]);
+        }
+    }
+
+    public static SparseIndex deserialize(DataInput in) throws IOException {
+        int magic = in.readInt();
+        if (magic != Constants.INDEX_MAGIC)
+            throw new MarshalException("Corrupted index: magic " + magic + " != " + Constants.INDEX_MAGIC);
+
+        int size = in.readInt();
+        byte[][] keys = new byte[size][];
+        long[] offsets = new long[size];
+        for (int i = 0; i < size; i++) {
+            offsets[i] = in.readLong();
+            keys[i] = new byte[in.readInt()];
+            in.readFully(keys[i]);
+        }
+        return new SparseIndex(keys, offsets);
+    }
+
+    /**
+     * Loads the index of the given table file.
+     *
+     * @return the index, or an empty index if the table was written without one
+     */
+    public static SparseIndex load(Path table) throws IOException {
+        try (FileChannel channel = FileChannel.open(table, StandardOpenOption.READ)) {
+            TableFooter footer = TableFooter.load(channel);
+            if (footer == null || !footer.hasSection(TableFooter.Section.INDEX))
+                return EMPTY;
+
+            return deserialize(TableFooter.section(channel, footer.sectionOffset(TableFooter.Section.INDEX)));
+        }
+    }
+
+    /**
+     * Collects index entries while a table is written. A row is indexed if it
+     * is the first one, or if at least {@code rowInterval} rows or
+     * {@code byteInterval} bytes were written since the last indexed row; an
+     * interval of zero disables that criterion.
+     */
+    public static class Builder {
+        private final int rowInterval;
+        private final int byteInterval;
+
+        private byte[][] keys = new byte[16][];
+        private long[] offsets = new long[16];
+        private int size;
+
+        private int rowsSinceLast;
+        private long lastOffset;
+
+        public Builder(int rowInterval, int byteInterval) {
+            if (rowInterval < 0 || byteInterval < 0 || (rowInterval == 0 && byteInterval == 0))
+                throw new IllegalArgumentException("Index needs a positive row or byte interval, got " + rowInterval + " rows, " + byteInterval + " bytes");
+
+            this.rowInterval = rowInterval;
+            this.byteInterval = byteInterval;
+        }
+
+        public static Builder everyRows(int rowInterval) {
+            return new Builder(rowInterval, 0);
+        }
+
+        public static Builder everyBytes(int byteInterval) {
+            return new Builder(0, byteInterval);
+        }
+
+        /**
+         * Called for every row in order, with the offset of its frame.
+         */
+        public void add(byte[] key, long offset) {
+            boolean due = size == 0 ||
+                          (rowInterval > 0 && rowsSinceLast >= rowInterval) ||
+                          (byteInterval > 0 && offset - lastOffset >= byteInterval);
+            rowsSinceLast++;
+            if (!due)
+                return;
+
+            if (size == keys.length) {
+                keys = Arrays.copyOf(keys, size * 2);
+                offsets = Arrays.copyOf(offsets, size * 2);
+            }
+            keys[size] = key;
+            offsets[size] = offset;
+            size++;
+
+            rowsSinceLast = 1;
+            lastOffset = offset;
+        }
+
+        public SparseIndex build() {
+            return new SparseIndex(Arrays.copyOf(keys, size), Arrays.copyOf(offsets, size));
+        }
+    }
+}
@@ -1,35 +1,83 @@
 package com.datastax.iterator;
 
+import com.datastax.metrics.Metrics;
+
 import java.util.*;
 
+/**
+ * Iterator consuming the items of another one produced ahead of time on a
+ * separate thread, through a queue of at most {@value #MAX_QUEUE_SIZE} items.
+ * Failures of the wrapped iterator are rethrown to the consumer once all items
+ * produced before the failure have been consumed.
+ *
+ * While {@link Metrics} are enabled, the queue depth is sampled every time
+ * an item is queued, and the time the producer waits on a full queue and
+ * the consumer on an empty one is recorded.
+ */
 public class AsyncIterator<T> implements Iterator<T> {
     private static final int MAX_QUEUE_SIZE = 100;
 
     private final Queue<T> queue = new LinkedList<>();
     private final Iterator<T> itr;
+    // set by the producer once the last item is queued or it failed, guarded by queue
+    private boolean done;
+    private Throwable failure;
 
     public AsyncIterator(Iterator<T> iterator) {
         itr = iterator;
 
         new Thread(() -> {
-            while (true) {
-                synchronized (queue) {
-                    if (itr.hasNext()) {
-                        T next = itr.next();
+            try {
+                while (true) {
+                    synchronized (queue) {
+                        if (itr.hasNext()) {
+                            T next = itr.next();
 
-                        produce(next);
-                    } else {
-                        break;
+                            produce(next);
+                        } else {
+                            break;
+                        }
                     }
                 }
             }
+            catch (Throwable t) {
+                synchronized (queue) {
+                    failure = t;
+                }
+            }
+            finally {
+                synchronized (queue) {
+                    done = true;
+                    queue.notify();
+                }
+            }
         }).start();
     }
 
     @Override
     public boolean hasNext() {
+        // the wrapped iterator can't tell: the producer may be waiting to
+        // queue the last item it took from it
         synchronized (queue) {
-            return !queue.isEmpty() || itr.hasNext();
+            boolean timed = queue.isEmpty() && !done && Metrics.enabled();
+            long start = timed ? System.nanoTime() : 0;
+            while (queue.isEmpty() && !done) {
+                try {
+                    queue.wait();
+                }
+                catch (InterruptedException ex) {
+                    System.out.println(ex.getMessage());
+                }
+            }
+            if (timed)
+                Metrics.CONSUMER_STALL_NANOS.update(System.nanoTime() - start);
+
+            if (queue.isEmpty() && failure != null) {
+                if (failure instanceof Error)
+                    throw (Error) failure;
+                throw failure instanceof RuntimeException ? (RuntimeException) failure : new RuntimeException(failure);
+            }
+            return !queue.isEmpty();
         }
     }
 
@@ -44,6 +92,9 @@ public class AsyncIterator<T> implements Iterator<T> {
 
     private void produce(T item) {
         synchronized (queue) {
+            boolean metrics = Metrics.enabled();
+            boolean timed = metrics && queue.size() == MAX_QUEUE_SIZE;
+            long start = timed ? System.nanoTime() : 0;
             while (queue.size() == MAX_QUEUE_SIZE) {
                 try {
                     queue.wait();
@@ -52,8 +103,12 @@ public class AsyncIterator<T> implements Iterator<T> {
                     System.out.println(ex.getMessage());
                 }
             }
+            if (timed)
+                Metrics.PRODUCER_STALL_NANOS.update(System.nanoTime() - start);
 
             queue.add(item);
+            if (metrics)
+                Metrics.ASYNC_QUEUE_DEPTH.update(queue.size());
             queue.notify();
         }
     }
@@ -0,0 +1,273 @@
+package com.datastax.iterator;
+
+import com.datastax.metadata.Constants;
+import com.datastax.metadata.Schema;
+import com.datastax.metadata.TableHeader;
+import com.datastax.metrics.Metrics;
+import com.datastax.rows.Row;
+import com.datastax.serde.MarshalException;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.concurrent.*;
+
+/**
+ * Asynchronous variant of {@link TableIterator} that decouples reading from
+ * deserialization.
+ *
+ * A dedicated I/O thread slices every row's raw bytes off the input using the
+ * {@code serializedSize} prefix written by the table writer and submits each
+ * frame to a pool of workers running {@link Row#deserialize(Schema, ByteBuffer, int)}.
+ * Results are handed back in their original order, so a single scan can use
+ * several cores while the caller still sees a sorted sequence.
+ *
+ * Memory is bounded by {@code maxInFlightBytes}: the I/O thread has to acquire
+ * a frame's size before reading it and the consumer releases it once the row
+ * has been returned. A single frame larger than the bound is still read, but
+ * only once nothing else is in flight.
+ *
+ * As with {@link TableIterator}, the table's header is read when the
+ * iterator is created and the schema may be taken from it, and rows, row
+ * bytes and deserialization times are added to the process wide
+ * {@link Metrics} while those are enabled.
+ */
+public class AsyncTableIterator implements Iterator<Row>, Closeable {
+    public static final int DEFAULT_MAX_IN_FLIGHT_BYTES = 4 * 1024 * 1024;
+
+    private static final ExecutorService DESERIALIZERS =
+            Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors(), r -> {
+                Thread t = new Thread(r, "row-deserializer");
+                t.setDaemon(true);
+                return t;
+            });
+
+    // marks the end of the table in the result queue
+    private static final Frame END = new Frame(null, 0);
+
+    private final Schema schema;
+    private final DataInput in;
+    // whether rows are preceded by ROW_MAGIC
+    private final boolean framed;
+    // first int of a table without header, read while looking for one
+    private int pushedBack;
+    private boolean hasPushedBack;
+    // set for tables found empty by their start marker
+    private boolean empty;
+    private final ExecutorService workers;
+    private final int maxInFlightBytes;
+    private final Semaphore inFlightBytes;
+    private final BlockingQueue<Frame> frames = new LinkedBlockingQueue<>();
+    private final Thread reader;
+
+    private Frame next;
+    private volatile boolean closed;
+
+    public AsyncTableIterator(Schema schema, DataInput input) {
+        this(schema, input, DESERIALIZERS, DEFAULT_MAX_IN_FLIGHT_BYTES);
+    }
+
+    public AsyncTableIterator(Schema schema, DataInput input, ExecutorService workers, int maxInFlightBytes) {
+        if (maxInFlightBytes <= 0)
+            throw new IllegalArgumentException("In-flight bytes bound must be positive, got " + maxInFlightBytes);
+
+        this.in = input;
+        try {
+            int first = input.readInt();
+            if (first == Constants.TABLE_MAGIC) {
+                TableHeader header = TableHeader.deserializeAfterMagic(input).checkPlainFormat();
+                this.schema = header.checkSchema(schema);
+                this.framed = header.hasRowMagic();
+                if (header.hasStartMarker()) {
+                    int marker = input.readInt();
+                    if (marker == Constants.FILE_END)
+                        empty = true;
+                    else
+                        assert marker == Constants.ROW_END : "Corrupted file: start marker " + marker + " != " + Constants.ROW_END;
+                }
+            } else {
+                if (schema == null)
+                    throw new MarshalException("Table has no header, its schema has to be given");
+
+                this.schema = schema;
+                this.framed = Constants.DEBUG;
+                this.pushedBack = first;
+                this.hasPushedBack = true;
+            }
+        }
+        catch (IOException e) {
+            throw new MarshalException("Can't read table header", e);
+        }
+        this.workers = workers;
+        this.maxInFlightBytes = maxInFlightBytes;
+        this.inFlightBytes = new Semaphore(maxInFlightBytes);
+
+        this.reader = new Thread(this::read, "table-reader");
+        this.reader.setDaemon(true);
+        this.reader.start();
+    }
+
+    /**
+     * Iterator over the given table with the schema recorded in its header.
+     */
+    public static AsyncTableIterator onDiskIterator(String pathname) throws IOException {
+        return onDiskIterator(null, pathname);
+    }
+
+    public static AsyncTableIterator onDiskIterator(Schema schema, String pathname) throws IOException {
+        File file = new File(pathname);
+        DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file.toPath())));
+        try {
+            return new AsyncTableIterator(schema, in);
+        }
+        catch (RuntimeException e) {
+            in.close();
+            throw e;
+        }
+    }
+
+    public Schema schema() {
+        return schema;
+    }
+
+    @Override
+    public boolean hasNext() {
+        if (closed)
+            return false;
+
+        if (next == null) {
+            try {
+                next = frames.take();
+            }
+            catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new MarshalException("Interrupted while waiting for a row", e);
+            }
+        }
+
+        return next != END;
+    }
+
+    @Override
+    public Row next() {
+        if (!hasNext()) {
+            throw new NoSuchElementException();
+        }
+
+        Frame frame = next;
+        next = null;
+
+        try {
+            return frame.row.get();
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new MarshalException("Interrupted while waiting for a row", e);
+        }
+        catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException)
+                throw (RuntimeException) cause;
+            if (cause instanceof Error)
+                throw (Error) cause;
+            throw new MarshalException("Can't deserialize partition", cause);
+        }
+        finally {
+            inFlightBytes.release(frame.permits);
+        }
+    }
+
+    /**
+     * Stops the I/O thread and closes the input if it is {@link Closeable}.
+     * Workers are shared and are left running. The iterator has no more rows
+     * once closed, also for a consumer waiting in {@link #hasNext()}.
+     */
+    @Override
+    public void close() throws IOException {
+        closed = true;
+        reader.interrupt();
+
+        try {
+            reader.join();
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        // the I/O thread may have stopped without reaching the end
+        frames.add(END);
+
+        if (in instanceof Closeable)
+            ((Closeable) in).close();
+    }
+
+    private void read() {
+        try {
+            while (!closed && !empty) {
+                int serializedSize = hasPushedBack ? pushedBack : in.readInt();
+                hasPushedBack = false;
+                if (framed) {
+                    if (serializedSize == Constants.FILE_END)
+                        break;
+                    assert serializedSize == Constants.ROW_MAGIC : "Can't deserialize row, ROW_MAGIC does not match " + serializedSize + " != " + Constants.ROW_MAGIC;
+                    serializedSize = in.readInt();
+                }
+
+                int permits = Math.min(serializedSize, maxInFlightBytes);
+                inFlightBytes.acquire(permits);
+
+                byte[] bytes = new byte[serializedSize];
+                in.readFully(bytes);
+                frames.add(new Frame(workers.submit(() -> deserialize(bytes)), permits));
+
+                int separator = in.readInt();
+                if (separator == Constants.FILE_END)
+                    break;
+
+                assert separator == Constants.ROW_END: "Corrupted file: separator " + separator + " != " + Constants.ROW_END;
+            }
+
+            frames.add(END);
+        }
+        catch (InterruptedException e) {
+            // closed by the consumer
+        }
+        catch (Throwable t) {
+            // reads interrupted by close() are not failures
+            if (closed)
+                return;
+
+            CompletableFuture<Row> failed = new CompletableFuture<>();
+            failed.completeExceptionally(t instanceof IOException ? new MarshalException("Can't deserialize partition", t) : t);
+            frames.add(new Frame(failed, 0));
+            frames.add(END);
+        }
+    }
+
+    private Row deserialize(byte[] bytes) {
+        if (!Metrics.enabled())
+            return Row.deserialize(schema, ByteBuffer.wrap(bytes), 0);
+
+        long start = System.nanoTime();
+        Row row = Row.deserialize(schema, ByteBuffer.wrap(bytes), 0);
+        Metrics.DESERIALIZATION_NANOS.update(System.nanoTime() - start);
+        Metrics.ROWS_READ.increment();
+        // size, separator and magic, if any
+        Metrics.BYTES_READ.add((framed ? 3 : 2) * Integer.BYTES + bytes.length);
+        return row;
+    }
+
+    /**
+     * Pending row together with the in-flight bytes it holds.
+     */
+    private static final class Frame {
+        final Future<Row> row;
+        final int permits;
+
+        Frame(Future<Row> row, int permits) {
+            this.row = row;
+            this.permits = permits;
+        }
+    }
+}
@@ -0,0 +1,233 @@
+package com.datastax.iterator;
+
+import com.datastax.metrics.Metrics;
+import com.datastax.util.SpscRingBuffer;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Asynchronous producer / consumer stage: a background thread drains the
+ * wrapped iterator while the caller consumes already produced items.
+ *
+ * Unlike {@link AsyncIterator}, the producer never holds a lock while it calls
+ * the wrapped iterator, so producing and consuming really overlap. Items are
+ * handed over through a bounded {@link SpscRingBuffer} in batches of up to
+ * {@code batchSize}, which bounds memory to {@code capacity} buffered items
+ * plus one batch on each side. Both sides spin briefly and only park when the
+ * buffer stays full (producer) or empty (consumer).
+ *
+ * Failures of the wrapped iterator are rethrown to the consumer once all items
+ * produced before the failure have been consumed.
+ *
+ * While {@link Metrics} are enabled, the buffer's depth is sampled after
+ * every batch the producer publishes, and the time the producer waits on a
+ * full buffer and the consumer on an empty one, spinning or parked, is
+ * recorded.
+ */
+public class BatchingAsyncIterator<T> implements Iterator<T>, Closeable {
+    public static final int DEFAULT_CAPACITY = 1024;
+    public static final int DEFAULT_BATCH_SIZE = 64;
+
+    private static final int SPIN_TRIES = 64;
+
+    private final Iterator<T> itr;
+    private final SpscRingBuffer<T> buffer;
+    private final Thread producer;
+
+    // consumer-side batch
+    private final T[] batch;
+    private int batchIdx;
+    private int batchCount;
+
+    private volatile boolean done;
+    private volatile boolean closed;
+    private volatile Throwable failure;
+
+    private volatile Thread waitingConsumer;
+    private volatile Thread waitingProducer;
+
+    public BatchingAsyncIterator(Iterator<T> iterator) {
+        this(iterator, DEFAULT_CAPACITY, DEFAULT_BATCH_SIZE);
+    }
+
+    @SuppressWarnings("unchecked")
+    public BatchingAsyncIterator(Iterator<T> iterator, int capacity, int batchSize) {
+        if (batchSize <= 0 || batchSize > capacity)
+            throw new IllegalArgumentException("Batch size must be in (0, " + capacity + "], got " + batchSize);
+
+        this.itr = iterator;
+        this.buffer = new SpscRingBuffer<>(capacity);
+        this.batch = (T[]) new Object[batchSize];
+
+        this.producer = new Thread(this::produce, "async-iterator-producer");
+        this.producer.setDaemon(true);
+        this.producer.start();
+    }
+
+    @Override
+    public boolean hasNext() {
+        if (batchIdx < batchCount)
+            return true;
+
+        return refill();
+    }
+
+    @Override
+    public T next() {
+        if (!hasNext()) {
+            throw new NoSuchElementException();
+        }
+
+        T item = batch[batchIdx];
+        batch[batchIdx++] = null;
+        return item;
+    }
+
+    /**
+     * Stops the producer and closes the wrapped iterator if it is {@link Closeable}.
+     * Items that were not consumed yet are dropped.
+     */
+    @Override
+    public void close() throws IOException {
+        closed = true;
+        LockSupport.unpark(producer);
+
+        try {
+            producer.join();
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+
+        if (itr instanceof Closeable)
+            ((Closeable) itr).close();
+    }
+
+    private boolean refill() {
+        int spins = 0;
+        // whether the wait on an empty buffer is timed, since stallStart
+        boolean stalled = false;
+        long stallStart = 0;
+        while (true) {
+            // done has to be read before polling: items published before the
+            // producer finished are then guaranteed to be visible to the poll
+            boolean finished = done;
+
+            batchIdx = 0;
+            batchCount = buffer.poll(batch);
+
+            if (batchCount > 0 || finished) {
+                if (stalled)
+                    Metrics.CONSUMER_STALL_NANOS.update(System.nanoTime() - stallStart);
+            } else if (!stalled && Metrics.enabled()) {
+                stalled = true;
+                stallStart = System.nanoTime();
+            }
+
+            if (batchCount > 0) {
+                if (waitingProducer != null)
+                    LockSupport.unpark(waitingProducer);
+                return true;
+            }
+
+            if (finished) {
+                Throwable t = failure;
+                if (t instanceof Error)
+                    throw (Error) t;
+                if (t != null)
+                    throw t instanceof RuntimeException ? (RuntimeException) t : new RuntimeException(t);
+                return false;
+            }
+
+            if (spins++ < SPIN_TRIES) {
+                Thread.yield();
+                continue;
+            }
+
+            waitingConsumer = Thread.currentThread();
+            if (buffer.isEmpty() && !done)
+                LockSupport.park(this);
+            waitingConsumer = null;
+        }
+    }
+
+    private void produce() {
+        @SuppressWarnings("unchecked")
+        T[] pending = (T[]) new Object[batch.length];
+
+        int count = 0;
+        try {
+            while (!closed && itr.hasNext()) {
+                while (count < pending.length && itr.hasNext()) {
+                    T item = itr.next();
+                    pending[count++] = item;
+                }
+
+                publish(pending, count);
+                count = 0;
+            }
+        }
+        catch (Throwable t) {
+            // hand over whatever was produced before the failure
+            publish(pending, count);
+            failure = t;
+        }
+        finally {
+            done = true;
+            Thread consumer = waitingConsumer;
+            if (consumer != null)
+                LockSupport.unpark(consumer);
+        }
+    }
+
+    private void publish(T[] pending, int count) {
+        int published = 0;
+        int spins = 0;
+        boolean metrics = Metrics.enabled();
+        // whether the wait on a full buffer is timed, since stallStart
+        boolean stalled = false;
+        long stallStart = 0;
+
+        while (published < count && !closed) {
+            int n = buffer.offer(pending, published, count - published);
+            published += n;
+
+            if (n > 0) {
+                if (metrics) {
+                    Metrics.ASYNC_QUEUE_DEPTH.update(buffer.size());
+                    if (stalled) {
+                        Metrics.PRODUCER_STALL_NANOS.update(System.nanoTime() - stallStart);
+                        stalled = false;
+                    }
+                }
+                spins = 0;
+                Thread consumer = waitingConsumer;
+                if (consumer != null)
+                    LockSupport.unpark(consumer);
+                continue;
+            }
+
+            if (metrics && !stalled) {
+                stalled = true;
+                stallStart = System.nanoTime();
+            }
+
+            if (spins++ < SPIN_TRIES) {
+                Thread.yield();
+                continue;
+            }
+
+            waitingProducer = Thread.currentThread();
+            if (buffer.size() == buffer.capacity() && !closed)
+                LockSupport.park(this);
+            waitingProducer = null;
+        }
+
+        for (int i = 0; i < count; i++)
+            pending[i] = null;
+    }
+}
@@ -0,0 +1,483 @@
+package com.datastax.iterator;
+
+import com.datastax.cache.BlockCache;
+import com.datastax.index.BlockIndex;
+import com.datastax.metadata.Compression;
+import com.datastax.metadata.Constants;
+import com.datastax.metadata.Schema;
+import com.datastax.metadata.TableFooter;
+import com.datastax.metadata.TableHeader;
+import com.datastax.metrics.Metrics;
+import com.datastax.rows.Row;
+import com.datastax.rows.Slice;
+import com.datastax.rows.TextDictionary;
+import com.datastax.serde.MarshalException;
+import com.datastax.util.ByteBufferUtil;
+import com.datastax.util.Crc32c;
+import com.datastax.util.VInt;
+
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+/**
+ * Iterator over a table written by {@link com.datastax.writer.BlockTableWriter}.
+ *
+ * Blocks are read and decompressed one at a time into buffers that are
+ * reused from block to block, so the iterator only allocates the rows it
+ * returns. Lazy rows keep referencing their block, which then can't be
+ * reused: in lazy mode every block gets a fresh buffer.
+ *
+ * A {@link Slice} starting at some key makes the iterator start at the
+ * block that may hold that key, see {@link BlockIndex#blockFor(byte[])}.
+ *
+ * The CRC32C of every block's stored bytes is checked against the block
+ * index before the block is used ({@link Verification#SYNC}), or on a
+ * separate thread while the block's rows are decoded ({@link Verification#ASYNC}).
+ * Asynchronous verification takes the checksum off the reading thread, but
+ * rows of a corrupted block may be returned before the corruption is
+ * reported: the failure is thrown when the next block is read or when the
+ * end of the table is reached.
+ *
+ * Iterators opened from a path share decompressed blocks through a
+ * {@link BlockCache}, {@link BlockCache#shared()} unless another one is
+ * given. Blocks only enter the cache once verified, and cached blocks are
+ * never reused as buffers: with a cache, every block read from the file
+ * gets a fresh buffer, as in lazy mode.
+ *
+ * Blocks written with a {@link TextDictionary} have it decoded every time
+ * they are read, cached or not. Equal values of successive blocks' dictionaries
+ * are decoded to the same {@link String} instance, as long as the iterator
+ * has not seen more than {@link TextDictionary#MAX_SIZE} distinct values.
+ *
+ * In tables with prefix compressed keys, every key is rebuilt from the key
+ * of the row before it. A slice starting at some key then also skips the
+ * rows of its first block that precede the last restart point at or before
+ * that key, found by binary search over the block's restart points.
+ *
+ * Rows, the stored bytes of blocks read from the file and the time spent
+ * decoding every row are added to the process wide {@link Metrics} while
+ * those are enabled.
+ */
+public class BlockTableIterator implements Iterator<Row>, Sliceable, Closeable {
+
+    public enum Verification {
+        NONE,
+        SYNC,
+        ASYNC
+    }
+
+    private static final byte[] NO_KEY = new byte[0];
+
+    private static final ExecutorService VERIFIERS =
+            Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors(), r -> {
+                Thread t = new Thread(r, "block-verifier");
+                t.setDaemon(true);
+                return t;
+            });
+
+    private final Schema schema;
+    private final FileChannel channel;
+    private final BlockIndex index;
+    private final boolean lazy;
+    private final Verification verification;
+    private final Inflater inflater;
+    // null if blocks are not cached
+    private final BlockCache cache;
+    private final Path path;
+    // null if blocks have no dictionary
+    private final Map<String, String> canonical;
+    private final boolean compact;
+    private final boolean prefixKeys;
+
+    private byte[] compressed = new byte[0];
+    private ByteBuffer block = ByteBuffer.allocate(0);
+    private int blockLength;
+    private int position;
+    private int nextBlock;
+    private TextDictionary dictionary;
+    private long baseWriteTime;
+    // end of the rows of the current block, and key of the last row read
+    private int rowsEnd;
+    private byte[] previousKey;
+    // key the first block read is to be searched for, if any
+    private byte[] seekKey;
+    // asynchronous verification of the current block, if any
+    private Future<?> verifying;
+    // current block, to be cached once its verification succeeds
+    private ByteBuffer verifyingBlock;
+    private long verifyingOffset;
+
+    private Slice slice = Slice.ALL;
+    // row read ahead by hasNext
+    private Row next;
+    private boolean reachedEnd;
+
+    public BlockTableIterator(Schema schema, FileChannel channel, boolean lazy) throws IOException {
+        this(schema, channel, lazy, Verification.SYNC);
+    }
+
+    /**
+     * @param schema schema the table is expected to have been written with,
+     *               or null to use the one recorded in the table's header
+     */
+    public BlockTableIterator(Schema schema, FileChannel channel, boolean lazy, Verification verification) throws IOException {
+        this(schema, channel, lazy, verification, null, null);
+    }
+
+    /**
+     * @param path  table file open in the channel, identifies its blocks in the cache
+     * @param cache cache of decompressed blocks, or null
+     */
+    public BlockTableIterator(Schema schema, FileChannel channel, boolean lazy, Verification verification, Path path, BlockCache cache) throws IOException {
+        TableHeader header = readHeader(channel);
+        this.schema = header.checkSchema(schema);
+        this.canonical = header.hasDictionary() ? new HashMap<>() : null;
+        this.compact = header.isCompact();
+        this.prefixKeys = header.hasPrefixKeys();
+        this.channel = channel;
+        this.index = BlockIndex.load(channel);
+        this.lazy = lazy;
+        this.verification = verification;
+        this.inflater = index.compression() == Compression.NONE ? null : new Inflater();
+        this.cache = path == null ? null : cache;
+        this.path = path == null ? null : path.toAbsolutePath().normalize();
+    }
+
+    private static TableHeader readHeader(FileChannel channel) throws IOException {
+        DataInputStream in = TableFooter.section(channel, 0);
+        int magic = channel.size() < Integer.BYTES ? 0 : in.readInt();
+        if (magic != Constants.TABLE_MAGIC)
+            throw new MarshalException("Not a table: magic " + magic + " != " + Constants.TABLE_MAGIC);
+
+        TableHeader header = TableHeader.deserializeAfterMagic(in);
+        if (!header.isBlockFormat())
+            throw new MarshalException("Not a block table");
+        return header;
+    }
+
+    /**
+     * Iterator over the given table with the schema recorded in its header.
+     */
+    public static BlockTableIterator open(String pathname) throws IOException {
+        return open(null, pathname);
+    }
+
+    public static BlockTableIterator open(Schema schema, String pathname) throws IOException {
+        return open(schema, pathname, false);
+    }
+
+    public static BlockTableIterator open(Schema schema, String pathname, boolean lazy) throws IOException {
+        return open(schema, pathname, lazy, Verification.SYNC);
+    }
+
+    public static BlockTableIterator open(Schema schema, String pathname, boolean lazy, Verification verification) throws IOException {
+        return open(schema, pathname, lazy, verification, BlockCache.shared());
+    }
+
+    /**
+     * @param cache cache of decompressed blocks, or null to read every block from the file
+     */
+    public static BlockTableIterator open(Schema schema, String pathname, boolean lazy, Verification verification, BlockCache cache) throws IOException {
+        Path path = new File(pathname).toPath();
+        FileChannel channel = FileChannel.open(path, StandardOpenOption.READ);
+        try {
+            return new BlockTableIterator(schema, channel, lazy, verification, path, cache);
+        }
+        catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    public Schema schema() {
+        return schema;
+    }
+
+    public BlockIndex index() {
+        return index;
+    }
+
+    @Override
+    public void slice(Slice slice) {
+        assert next == null && nextBlock == 0 : "Can't slice an iterator that was already started";
+        this.slice = slice;
+        if (slice.start() != null && index.size() > 0) {
+            nextBlock = index.blockFor(slice.start());
+            if (prefixKeys)
+                seekKey = slice.start();
+        }
+    }
+
+    @Override
+    public boolean hasNext() {
+        try {
+            while (next == null) {
+                if (reachedEnd)
+                    return false;
+
+                if (position == rowsEnd) {
+                    if (nextBlock == index.size()) {
+                        awaitVerification();
+                        reachedEnd = true;
+                        return false;
+                    }
+                    readBlock(nextBlock++);
+                }
+
+                Row row;
+                try {
+                    if (Metrics.enabled()) {
+                        long start = System.nanoTime();
+                        row = compact ? readCompactRow() : readRow();
+                        Metrics.DESERIALIZATION_NANOS.update(System.nanoTime() - start);
+                        Metrics.ROWS_READ.increment();
+                    } else {
+                        row = compact ? readCompactRow() : readRow();
+                    }
+                }
+                catch (RuntimeException e) {
+                    // a pending verification explains garbage better than the decoder
+                    awaitVerification();
+                    throw e;
+                }
+
+                if (slice.isAfterEnd(row)) {
+                    awaitVerification();
+                    reachedEnd = true;
+                    return false;
+                }
+
+                if (!slice.isBeforeStart(row))
+                    next = row;
+            }
+
+            return true;
+        }
+        catch (IOException e) {
+            throw new MarshalException("Can't deserialize partition", e);
+        }
+    }
+
+    private Row readRow() {
+        int serializedSize = block.getInt(position);
+        position += Integer.BYTES;
+        Row row = lazy
+                  ? Row.deserializeLazy(schema, block, position, serializedSize, dictionary, previousKey)
+                  : Row.deserialize(schema, block, position, dictionary, previousKey);
+        position += serializedSize;
+        if (prefixKeys)
+            previousKey = row.comparableKey();
+        return row;
+    }
+
+    private Row readCompactRow() {
+        int serializedSize = VInt.readInt(block, position);
+        position += VInt.sizeOf(serializedSize);
+        Row row = lazy
+                  ? Row.deserializeCompactLazy(schema, block, position, serializedSize, baseWriteTime, dictionary, previousKey)
+                  : Row.deserializeCompact(schema, block, position, baseWriteTime, dictionary, previousKey);
+        position += serializedSize;
+        if (prefixKeys)
+            previousKey = row.comparableKey();
+        return row;
+    }
+
+    @Override
+    public Row next() {
+        if (!hasNext()) {
+            throw new NoSuchElementException();
+        }
+
+        Row row = next;
+        next = null;
+        return row;
+    }
+
+    private void readBlock(int i) throws IOException {
+        // the previous block's buffers are about to be reused
+        awaitVerification();
+
+        int storedLength = index.storedLength(i);
+        int length = index.length(i);
+
+        if (cache != null) {
+            ByteBuffer cached = cache.get(path, index.offset(i));
+            if (cached != null) {
+                block = cached;
+                blockLength = length;
+                position = 0;
+                readBlockHeader();
+                return;
+            }
+        }
+
+        // cached blocks must not be overwritten, and are sized exactly
+        boolean fresh = lazy || cache != null;
+        if (fresh || block.capacity() < length)
+            block = ByteBuffer.allocate(fresh ? length : Math.max(length, block.capacity() * 2));
+
+        byte[] stored;
+        if (inflater == null) {
+            stored = block.array();
+        } else {
+            if (compressed.length < storedLength)
+                compressed = new byte[Math.max(storedLength, compressed.length * 2)];
+            stored = compressed;
+        }
+        BlockIndex.readFully(channel, ByteBuffer.wrap(stored, 0, storedLength), index.offset(i));
+        if (Metrics.enabled())
+            Metrics.BYTES_READ.add(storedLength);
+
+        if (verification == Verification.SYNC)
+            verify(i, stored, storedLength);
+        else if (verification == Verification.ASYNC)
+            verifying = VERIFIERS.submit(() -> verify(i, stored, storedLength));
+
+        if (inflater != null)
+            inflate(storedLength, length);
+
+        if (cache != null) {
+            if (verifying == null) {
+                cache.put(path, index.offset(i), block);
+            } else {
+                verifyingBlock = block;
+                verifyingOffset = index.offset(i);
+            }
+        }
+
+        blockLength = length;
+        position = 0;
+        readBlockHeader();
+    }
+
+    /**
+     * Reads what precedes the rows of the current block: its dictionary
+     * and base write time, if the table has them; and its restart points.
+     */
+    private void readBlockHeader() {
+        try {
+            rowsEnd = blockLength;
+            if (canonical != null) {
+                if (canonical.size() > TextDictionary.MAX_SIZE)
+                    canonical.clear();
+                dictionary = TextDictionary.deserialize(block, 0, canonical);
+                position = dictionary.serializedSize();
+            }
+            if (compact) {
+                baseWriteTime = block.getLong(position);
+                position += Long.BYTES;
+            }
+            if (prefixKeys) {
+                int restarts = block.getInt(blockLength - Integer.BYTES);
+                rowsEnd = blockLength - (restarts + 1) * Integer.BYTES;
+                if (restarts < 1 || rowsEnd < position)
+                    throw new MarshalException("Corrupted block: " + restarts + " restart points in " + blockLength + " bytes");
+                previousKey = NO_KEY;
+                if (seekKey != null) {
+                    seek(seekKey, restarts);
+                    seekKey = null;
+                }
+            }
+        }
+        catch (RuntimeException e) {
+            awaitVerification();
+            throw e;
+        }
+    }
+
+    /**
+     * Moves to the last restart point of the current block whose key is not
+     * after the given key, if it is after the first row.
+     */
+    private void seek(byte[] key, int restarts) {
+        int low = 0;
+        int high = restarts - 1;
+        while (low < high) {
+            int mid = (low + high + 1) >>> 1;
+            if (ByteBufferUtil.compareUnsigned(restartKey(mid), key) <= 0)
+                low = mid;
+            else
+                high = mid - 1;
+        }
+        position = block.getInt(rowsEnd + low * Integer.BYTES);
+    }
+
+    private byte[] restartKey(int restart) {
+        int offset = block.getInt(rowsEnd + restart * Integer.BYTES);
+        if (compact) {
+            int serializedSize = VInt.readInt(block, offset);
+            offset += VInt.sizeOf(serializedSize);
+            return Row.deserializeCompactLazy(schema, block, offset, serializedSize, baseWriteTime, null, NO_KEY).comparableKey();
+        }
+        return Row.deserializeLazy(schema, block, offset + Integer.BYTES, block.getInt(offset), null, NO_KEY).comparableKey();
+    }
+
+    private void verify(int i, byte[] stored, int storedLength) {
+        int checksum = Crc32c.compute(stored, 0, storedLength);
+        if (checksum != index.checksum(i))
+            throw new MarshalException("Corrupted block " + i + " at " + index.offset(i) + ": checksum " + checksum + " != " + index.checksum(i));
+    }
+
+    private void awaitVerification() {
+        if (verifying == null)
+            return;
+
+        Future<?> pending = verifying;
+        ByteBuffer verified = verifyingBlock;
+        verifying = null;
+        verifyingBlock = null;
+        try {
+            pending.get();
+            if (verified != null)
+                cache.put(path, verifyingOffset, verified);
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new MarshalException("Interrupted while verifying a block", e);
+        }
+        catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException)
+                throw (RuntimeException) cause;
+            if (cause instanceof Error)
+                throw (Error) cause;
+            throw new MarshalException("Can't verify block", cause);
+        }
+    }
+
+    private void inflate(int storedLength, int length) {
+        inflater.reset();
+        inflater.setInput(compressed, 0, storedLength);
+        try {
+            int inflated = inflater.inflate(block.array(), 0, length);
+            if (inflated != length || !inflater.finished())
+                throw new MarshalException("Corrupted block: inflated " + inflated + " bytes, expected " + length);
+        }
+        catch (DataFormatException e) {
+            throw new MarshalException("Corrupted block", e);
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (inflater != null)
+            inflater.end();
+        channel.close();
+    }
+}
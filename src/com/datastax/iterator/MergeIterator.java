@@ -1,120 +1,238 @@
 package com.datastax.iterator;
 
+import com.datastax.metrics.Metrics;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.util.*;
 import java.util.function.BiFunction;
+import java.util.function.Predicate;
 
 /**
  * Merge iterator: takes multiple _sorted_ row iterators and yields
  * items _preserving original order_.
+ *
+ * Heads of the sources are kept in a tournament (loser) tree: every internal
+ * node remembers the source that lost the match played at that node, and the
+ * overall winner is kept at the root. Advancing a source only replays the
+ * matches on the path from its leaf to the root, so producing an item costs
+ * O(log k) comparisons for k sources and does not allocate.
+ *
+ * Items with equal keys coming from different sources are reduced with the
+ * supplied merge function, in the order the sources were passed in.
+ *
+ * A merge can be restricted to bounds: items of the sources before the start
+ * are skipped, and every source is retired (and closed, if it is
+ * {@link Closeable}) as soon as it passes the end. Merges of rows within a
+ * {@link com.datastax.rows.Slice} are created with {@link Sliceable#merge}.
+ *
+ * Comparisons and merges are counted in plain fields and added to the
+ * process wide {@link Metrics} every {@value #METRICS_INTERVAL} items and
+ * once the merge is exhausted, while those are enabled.
  */
 public class MergeIterator<T extends Comparable<T>> implements Iterator<T> {
+    private static final int METRICS_INTERVAL = 1024;
+
     private final BiFunction<T, T, T> _merge;
-    private final List<PeekingIterator> _iterators = new ArrayList<>();
+    private final Iterator<T>[] _iterators;
+
+    // current head of every source, null once the source is exhausted
+    private final T[] _heads;
+
+    // _tree[0] is the index of the winning source, _tree[1.._iterators.length - 1]
+    // are the losers of the matches played at the internal nodes
+    private final int[] _tree;
+
+    // bounds of the merge, either of them null if the merge is unbounded on that side
+    private final Predicate<? super T> _beforeStart;
+    private final Predicate<? super T> _afterEnd;
 
+    // not yet added to Metrics
+    private long _comparisons;
+    private long _merges;
+    private int _items;
+
+    // the sources are only read from, and copied before they are kept
     @SafeVarargs
+    @SuppressWarnings("varargs")
     public static <T extends Comparable<T>> Iterator<T> create(BiFunction<T, T, T> merge, Iterator<T>... iterators) {
-        return new MergeIterator<>(merge, iterators);
+        return new MergeIterator<>(merge, null, null, iterators);
     }
 
+    /**
+     * Merges the items of the given sources that are within the bounds.
+     *
+     * @param beforeStart whether an item is before the start, or null if there is no start bound
+     * @param afterEnd    whether an item is after the end, or null if there is no end bound
+     */
     @SafeVarargs
-    private MergeIterator(BiFunction<T, T, T> merge, Iterator<T>... iterators) {
+    @SuppressWarnings("varargs")
+    public static <T extends Comparable<T>> Iterator<T> create(BiFunction<T, T, T> merge, Predicate<? super T> beforeStart, Predicate<? super T> afterEnd, Iterator<T>... iterators) {
+        return new MergeIterator<>(merge, beforeStart, afterEnd, iterators);
+    }
+
+    @SuppressWarnings("unchecked")
+    private MergeIterator(BiFunction<T, T, T> merge, Predicate<? super T> beforeStart, Predicate<? super T> afterEnd, Iterator<T>[] iterators) {
         _merge = merge;
+        _beforeStart = beforeStart;
+        _afterEnd = afterEnd;
+        _iterators = iterators.clone();
+        _heads = (T[]) new Comparable[iterators.length];
+        _tree = new int[Math.max(1, iterators.length)];
+
+        for (int i = 0; i < _iterators.length; i++) {
+            _heads[i] = pull(i);
+        }
 
-        for (Iterator<T> itr : iterators) {
-            _iterators.add(new PeekingIterator(itr));
+        if (_iterators.length > 0) {
+            build();
         }
     }
 
     @Override
     public boolean hasNext() {
-        for (PeekingIterator peekingIterator : _iterators) {
-            if (peekingIterator.hasNext()) {
-                return true;
-            }
-        }
-
-        return false;
+        return _iterators.length > 0 && _heads[_tree[0]] != null;
     }
 
     @Override
     public T next() {
-        List<T> nextItems = new ArrayList<>(_iterators.size());
-        Map<T, PeekingIterator> mapNextItems = new HashMap<>(_iterators.size());
-
-        for (PeekingIterator peekingIterator : _iterators) {
-            if (peekingIterator.hasNext()) {
-                nextItems.add(peekingIterator.peek());
-                mapNextItems.put(peekingIterator.peek(), peekingIterator);
-            }
-        }
-
-        if (nextItems.size() == 0) {
+        if (!hasNext()) {
             throw new NoSuchElementException();
         }
 
-        Collections.sort(nextItems);
-
-        T sameNextItem = null;
+        int winner = _tree[0];
+        T result = _heads[winner];
+        advance(winner);
 
-        for (T nextItem : nextItems) {
-            if (sameNextItem != null) {
-                if (nextItem.compareTo(sameNextItem) == 0) {
-                    PeekingIterator peekingIterator = mapNextItems.get(nextItem);
+        // Equal items are adjacent in the tournament order, so they surface at
+        // the root one after another.
+        while (true) {
+            winner = _tree[0];
+            T head = _heads[winner];
 
-                    peekingIterator.next();
+            if (head == null) {
+                break;
+            }
 
-                    sameNextItem = _merge.apply(sameNextItem, nextItem);
-                }
-            } else {
-                sameNextItem = nextItem;
+            _comparisons++;
+            if (head.compareTo(result) != 0) {
+                break;
+            }
 
-                PeekingIterator peekingIterator = mapNextItems.get(nextItem);
+            _merges++;
+            result = _merge.apply(result, head);
+            advance(winner);
+        }
 
-                peekingIterator.next();
-            }
+        if (++_items == METRICS_INTERVAL || _heads[_tree[0]] == null) {
+            publishMetrics();
         }
 
-        return sameNextItem;
+        return result;
     }
 
-    private class PeekingIterator implements Iterator<T> {
-        private final Iterator<T> _itr;
-        private T _next;
-
-        public PeekingIterator(Iterator<T> iterator) {
-            _itr = iterator;
-
-            moveIterator();
+    private void publishMetrics() {
+        if (Metrics.enabled()) {
+            Metrics.MERGE_COMPARISONS.add(_comparisons);
+            Metrics.MERGES.add(_merges);
         }
+        _comparisons = 0;
+        _merges = 0;
+        _items = 0;
+    }
 
-        public T peek() {
-            return _next;
+    /**
+     * Plays the initial tournament. Leaves (sources) are virtually placed at
+     * positions k..2k-1 of a complete binary tree; each internal node keeps
+     * the loser and passes the winner up.
+     */
+    private void build() {
+        int k = _iterators.length;
+        int[] winners = new int[2 * k];
+
+        for (int i = 0; i < k; i++) {
+            winners[k + i] = i;
         }
 
-        @Override
-        public T next() {
-            if (!hasNext()) {
-                throw new NoSuchElementException();
-            }
+        for (int node = k - 1; node >= 1; node--) {
+            int left = winners[2 * node];
+            int right = winners[2 * node + 1];
 
-            T result = _next;
+            if (beats(left, right)) {
+                winners[node] = left;
+                _tree[node] = right;
+            } else {
+                winners[node] = right;
+                _tree[node] = left;
+            }
+        }
 
-            moveIterator();
+        _tree[0] = k == 1 ? 0 : winners[1];
+    }
 
-            return result;
+    /**
+     * Moves the given source to its next item and replays its path to the root.
+     */
+    private void advance(int source) {
+        _heads[source] = pull(source);
+
+        int winner = source;
+        for (int node = (source + _iterators.length) >> 1; node >= 1; node >>= 1) {
+            if (beats(_tree[node], winner)) {
+                int loser = winner;
+                winner = _tree[node];
+                _tree[node] = loser;
+            }
         }
 
-        @Override
-        public boolean hasNext() {
-            return _next != null;
+        _tree[0] = winner;
+    }
+
+    /**
+     * Next item of the given source within the bounds, or null once the
+     * source is exhausted or has passed the end bound.
+     */
+    private T pull(int source) {
+        Iterator<T> itr = _iterators[source];
+        if (_beforeStart == null && _afterEnd == null)
+            return itr.hasNext() ? itr.next() : null;
+
+        while (itr.hasNext()) {
+            T item = itr.next();
+            if (_afterEnd != null && _afterEnd.test(item))
+                break;
+            if (_beforeStart == null || !_beforeStart.test(item))
+                return item;
         }
 
-        public void moveIterator() {
-            if (_itr.hasNext()) {
-                _next = _itr.next();
-            } else {
-                _next = null;
+        // nothing more will be read from this source
+        if (itr instanceof Closeable) {
+            try {
+                ((Closeable) itr).close();
+            }
+            catch (IOException e) {
+                throw new UncheckedIOException(e);
             }
         }
+        return null;
+    }
+
+    /**
+     * Whether source {@code l} wins the match against source {@code r}:
+     * exhausted sources always lose and ties go to the source passed in first.
+     */
+    private boolean beats(int l, int r) {
+        T lHead = _heads[l];
+        T rHead = _heads[r];
+
+        if (lHead == null)
+            return false;
+        if (rHead == null)
+            return true;
+
+        _comparisons++;
+        int res = lHead.compareTo(rHead);
+        return res < 0 || (res == 0 && l < r);
     }
 }
@@ -0,0 +1,35 @@
+package com.datastax.iterator;
+
+import com.datastax.rows.Row;
+import com.datastax.rows.Slice;
+
+import java.util.Iterator;
+import java.util.function.BiFunction;
+
+/**
+ * Row iterator that can restrict itself to a {@link Slice} of keys, e.g. by
+ * seeking to the start key instead of reading every row before it.
+ */
+public interface Sliceable {
+    /**
+     * Restricts the iterator to rows within the slice. Has to be called
+     * before the iteration starts.
+     */
+    void slice(Slice slice);
+
+    /**
+     * Merges the rows of the given sources that are within the slice, see
+     * {@link MergeIterator}. The slice is pushed down to every sliceable
+     * source; rows of the other sources outside of it are skipped.
+     */
+    @SafeVarargs
+    @SuppressWarnings("varargs")
+    static Iterator<Row> merge(BiFunction<Row, Row, Row> merge, Slice slice, Iterator<Row>... iterators) {
+        for (Iterator<Row> iterator : iterators) {
+            if (iterator instanceof Sliceable)
+                ((Sliceable) iterator).slice(slice);
+        }
+
+        return MergeIterator.create(merge, (Row row) -> slice.isBeforeStart(row), (Row row) -> slice.isAfterEnd(row), iterators);
+    }
+}
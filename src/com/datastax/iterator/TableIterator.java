@@ -1,38 +1,167 @@
 package com.datastax.iterator;
 
+import com.datastax.index.ChunkChecksums;
+import com.datastax.index.SparseIndex;
 import com.datastax.metadata.Constants;
 import com.datastax.metadata.Schema;
+import com.datastax.metadata.TableHeader;
+import com.datastax.metrics.Metrics;
 import com.datastax.rows.Row;
+import com.datastax.rows.Slice;
 import com.datastax.serde.MarshalException;
+import com.datastax.util.ByteBufferUtil;
+import com.datastax.util.MappedFileInput;
 
 import java.io.*;
+import java.nio.ByteBuffer;
 import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.BitSet;
+import java.util.Collection;
 import java.util.Iterator;
+import java.util.NoSuchElementException;
 
 /**
  * Synchronous variant of table / row iterator
+ *
+ * Rows are read one ahead in {@link #hasNext()}, which also applies the
+ * iterator's {@link Slice}, if any.
+ *
+ * The table's {@link TableHeader} is read when the iterator is created: it
+ * provides the schema if none is given, and tells how rows are framed.
+ * Tables written before headers existed are read with the given schema and
+ * framed according to {@link Constants#DEBUG}.
+ *
+ * An iterator {@link #project(Collection) projected} on some columns returns
+ * rows holding only those columns; the values of the others are skipped
+ * without being decoded.
+ *
+ * Every iterator counts the rows and row bytes it read; they are also added
+ * to the process wide {@link Metrics}, along with the time spent reading
+ * and deserializing every row, while those are enabled.
  */
-public class TableIterator implements Iterator<Row> {
+public class TableIterator implements Iterator<Row>, Sliceable {
 
-    private final Schema schema;
+    protected final Schema schema;
+    protected final boolean lazy;
+    // null for tables written without a header
+    protected final TableHeader header;
+    // whether rows are preceded by ROW_MAGIC
+    protected final boolean framed;
     private final DataInput in;
-    private boolean reachedEnd = false;
+    // first int of a table without header, read while looking for one
+    private int pushedBack;
+    private boolean hasPushedBack;
+    protected boolean reachedEnd = false;
+    private Slice slice = Slice.ALL;
+    // row columns to decode, see Schema#rowColumnMask
+    protected int projection = -1;
+    // row read ahead by hasNext
+    private Row next;
+
+    // raw bytes of the current row, reused between rows
+    private ByteBuffer buffer = ByteBuffer.allocate(4096);
+
+    private long rowsRead;
+    private long bytesRead;
 
     public TableIterator(Schema schema, DataInput input) {
-        this.schema = schema;
+        this(schema, input, false);
+    }
+
+    /**
+     * @param schema schema the table is expected to have been written with,
+     *               or null to use the one recorded in the table's header
+     * @param lazy whether to return rows that decode their columns on demand,
+     *             see {@link Row#deserializeLazy(Schema, ByteBuffer, int, int)}
+     */
+    public TableIterator(Schema schema, DataInput input, boolean lazy) {
         this.in = input;
+        this.lazy = lazy;
+
+        try {
+            int first = input.readInt();
+            if (first == Constants.TABLE_MAGIC) {
+                this.header = TableHeader.deserializeAfterMagic(input).checkPlainFormat();
+                this.schema = header.checkSchema(schema);
+                this.framed = header.hasRowMagic();
+                if (header.hasStartMarker()) {
+                    int marker = input.readInt();
+                    if (marker == Constants.FILE_END)
+                        reachedEnd = true;
+                    else
+                        assert marker == Constants.ROW_END : "Corrupted file: start marker " + marker + " != " + Constants.ROW_END;
+                }
+            } else {
+                if (schema == null)
+                    throw new MarshalException("Table has no header, its schema has to be given");
+
+                this.header = null;
+                this.schema = schema;
+                this.framed = Constants.DEBUG;
+                this.pushedBack = first;
+                this.hasPushedBack = true;
+            }
+        }
+        catch (IOException e) {
+            throw new MarshalException("Can't read table header", e);
+        }
+    }
+
+    public Schema schema() {
+        return schema;
+    }
+
+    /**
+     * Number of rows read so far, including rows skipped by the slice.
+     */
+    public long rowsRead() {
+        return rowsRead;
+    }
+
+    /**
+     * Number of bytes of row frames read so far, including rows skipped by the slice.
+     */
+    public long bytesRead() {
+        return bytesRead;
+    }
+
+    /**
+     * Restricts the iteration to the given slice: rows before its start are
+     * skipped and the iteration ends at the first row after its end, without
+     * reading the rest of the input.
+     */
+    @Override
+    public void slice(Slice slice) {
+        assert next == null : "Can't slice an iterator that was already started";
+        this.slice = slice;
+    }
+
+    /**
+     * Restricts the returned rows to the given columns. Clustering key
+     * columns are always returned.
+     *
+     * @throws IllegalArgumentException if a column is not one of the table's schema
+     */
+    public void project(Collection<? extends Schema.Column<?>> columns) {
+        assert next == null && rowsRead == 0 : "Can't project an iterator that was already started";
+        this.projection = schema.rowColumnMask(columns);
     }
 
     public boolean hasNext() {
         try {
-            if (reachedEnd)
-                return false;
+            while (next == null) {
+                if (reachedEnd)
+                    return false;
 
-            if (Constants.DEBUG) {
-                int magic = in.readInt();
-                if (magic == Constants.FILE_END)
+                Row row = readNext();
+                if (row == null || slice.isAfterEnd(row)) {
+                    reachedEnd = true;
                     return false;
-                assert magic == Constants.ROW_MAGIC : "Can't deserialize row, ROW_MAGIC does not match " + magic + " != " + Constants.ROW_MAGIC;
+                }
+
+                if (!slice.isBeforeStart(row))
+                    next = row;
             }
 
             return true;
@@ -43,30 +172,204 @@ public class TableIterator implements Iterator<Row> {
     }
 
     public Row next() {
-        try {
-            // Might be useful for decoupling deserialization
-            int serializedSize = in.readInt();
+        if (!hasNext()) {
+            throw new NoSuchElementException();
+        }
 
-            Row row = Row.deserialize(schema, in);
-            int separator = in.readInt();
+        Row row = next;
+        next = null;
+        return row;
+    }
 
-            if (separator == Constants.FILE_END) {
-                reachedEnd = true;
-                return row;
-            }
+    /**
+     * Reads the next row frame.
+     *
+     * @return the row, or null if the end of the table was reached
+     */
+    private Row readNext() throws IOException {
+        int serializedSize = hasPushedBack ? pushedBack : in.readInt();
+        hasPushedBack = false;
+        if (framed) {
+            if (serializedSize == Constants.FILE_END)
+                return null;
+            assert serializedSize == Constants.ROW_MAGIC : "Can't deserialize row, ROW_MAGIC does not match " + serializedSize + " != " + Constants.ROW_MAGIC;
+            serializedSize = in.readInt();
+        }
 
-            assert separator == Constants.ROW_END: "Corrupted file: separator " + separator + " != " + Constants.ROW_END;
-            return row;
+        boolean metrics = Metrics.enabled();
+        Row row;
+        if (metrics) {
+            long start = System.nanoTime();
+            row = readRow(serializedSize);
+            Metrics.DESERIALIZATION_NANOS.update(System.nanoTime() - start);
+        } else {
+            row = readRow(serializedSize);
         }
-        catch (IOException e) {
-            throw new MarshalException("Can't deserialize partition", e);
+
+        int separator = in.readInt();
+
+        // size, separator and magic, if any
+        int frameSize = (framed ? 3 : 2) * Integer.BYTES + serializedSize;
+        rowsRead++;
+        bytesRead += frameSize;
+        if (metrics) {
+            Metrics.ROWS_READ.increment();
+            Metrics.BYTES_READ.add(frameSize);
+        }
+        if (separator == Constants.FILE_END)
+            reachedEnd = true;
+        else
+            assert separator == Constants.ROW_END: "Corrupted file: separator " + separator + " != " + Constants.ROW_END;
+
+        return row;
+    }
+
+    /**
+     * Forgets the int read ahead from a table without header, for inputs
+     * that were repositioned since.
+     */
+    protected void discardPushedBack() {
+        hasPushedBack = false;
+    }
+
+    /**
+     * Forgets the row read ahead by {@link #hasNext()}, for inputs that are
+     * repositioned.
+     */
+    protected void discardNext() {
+        next = null;
+    }
+
+    /**
+     * Reads the next {@code serializedSize} bytes of the input as a row.
+     */
+    protected Row readRow(int serializedSize) throws IOException {
+        if (lazy) {
+            // lazy rows keep referencing their bytes, they can't share a buffer
+            byte[] bytes = new byte[serializedSize];
+            in.readFully(bytes);
+            return Row.deserializeLazy(schema, ByteBuffer.wrap(bytes), 0, serializedSize, projection);
         }
+
+        if (buffer.capacity() < serializedSize)
+            buffer = ByteBuffer.allocate(Math.max(serializedSize, buffer.capacity() * 2));
+
+        in.readFully(buffer.array(), 0, serializedSize);
+        return Row.deserialize(schema, buffer, 0, projection);
+    }
+
+    /**
+     * Iterator over the given table with the schema recorded in its header.
+     */
+    public static OnDiskIterator onDiskIterator(String pathname) throws IOException {
+        return onDiskIterator(null, pathname);
     }
 
     public static OnDiskIterator onDiskIterator(Schema schema, String pathname) throws IOException {
+        return onDiskIterator(schema, pathname, false);
+    }
+
+    public static OnDiskIterator onDiskIterator(Schema schema, String pathname, boolean lazy) throws IOException {
         File file = new File(pathname);
         DataInputStream in = new DataInputStream(Files.newInputStream(file.toPath()));
-        return new OnDiskIterator(schema, in);
+        try {
+            return new OnDiskIterator(schema, in, lazy);
+        }
+        catch (RuntimeException e) {
+            in.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Iterator over the given table returning only the given columns, see
+     * {@link #project(Collection)}.
+     */
+    public static OnDiskIterator onDiskIterator(Schema schema, String pathname, boolean lazy, Collection<? extends Schema.Column<?>> columns) throws IOException {
+        OnDiskIterator iter = onDiskIterator(schema, pathname, lazy);
+        try {
+            iter.project(columns);
+        }
+        catch (RuntimeException e) {
+            iter.close();
+            throw e;
+        }
+        return iter;
+    }
+
+    /**
+     * Mapped iterator over the given table with the schema recorded in its header.
+     */
+    public static MappedOnDiskIterator mappedIterator(String pathname) throws IOException {
+        return mappedIterator(null, pathname);
+    }
+
+    public static MappedOnDiskIterator mappedIterator(Schema schema, String pathname) throws IOException {
+        return mappedIterator(schema, pathname, false);
+    }
+
+    public static MappedOnDiskIterator mappedIterator(Schema schema, String pathname, boolean lazy) throws IOException {
+        return mappedIterator(schema, pathname, lazy, SparseIndex.load(new File(pathname).toPath()));
+    }
+
+    /**
+     * Mapped iterator over the given table, seeking with the given already
+     * loaded index of the table when it is sliced, to avoid reading the
+     * index for every iterator.
+     */
+    public static MappedOnDiskIterator mappedIterator(Schema schema, String pathname, boolean lazy, SparseIndex index) throws IOException {
+        Path path = new File(pathname).toPath();
+        ChunkChecksums checksums = ChunkChecksums.load(path);
+        MappedFileInput input = new MappedFileInput(path);
+        try {
+            return new MappedOnDiskIterator(schema, input, lazy, index, checksums);
+        }
+        catch (RuntimeException e) {
+            input.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Mapped iterator over the given table returning only the given
+     * columns, see {@link #project(Collection)}.
+     */
+    public static MappedOnDiskIterator mappedIterator(Schema schema, String pathname, boolean lazy, Collection<? extends Schema.Column<?>> columns) throws IOException {
+        MappedOnDiskIterator iter = mappedIterator(schema, pathname, lazy);
+        try {
+            iter.project(columns);
+        }
+        catch (RuntimeException e) {
+            iter.close();
+            throw e;
+        }
+        return iter;
+    }
+
+    /**
+     * Mapped iterator starting at the first row whose clustering key is
+     * greater than or equal to the given byte-comparable key (see
+     * {@link Row#comparableKey(Schema, Object...)}), using the table's
+     * sparse index if it was written with one.
+     */
+    public static MappedOnDiskIterator mappedIterator(Schema schema, String pathname, byte[] fromKey) throws IOException {
+        return mappedIterator(schema, pathname, SparseIndex.load(new File(pathname).toPath()), fromKey, false);
+    }
+
+    /**
+     * Variant of {@link #mappedIterator(Schema, String, byte[])} with an
+     * already loaded index, to avoid reading it for every lookup.
+     */
+    public static MappedOnDiskIterator mappedIterator(Schema schema, String pathname, SparseIndex index, byte[] fromKey, boolean lazy) throws IOException {
+        MappedOnDiskIterator iter = mappedIterator(schema, pathname, lazy, index);
+        try {
+            iter.skipTo(index.seekOffset(fromKey), fromKey);
+        }
+        catch (IOException | RuntimeException e) {
+            iter.close();
+            throw e;
+        }
+        return iter;
     }
 
     public static class OnDiskIterator extends TableIterator implements Closeable {
@@ -74,7 +377,11 @@ public class TableIterator implements Iterator<Row> {
         private final DataInputStream stream;
 
         public OnDiskIterator(Schema schema, DataInputStream input) {
-            super(schema, input);
+            this(schema, input, false);
+        }
+
+        public OnDiskIterator(Schema schema, DataInputStream input, boolean lazy) {
+            super(schema, input, lazy);
 
             this.stream = input;
         }
@@ -84,4 +391,187 @@ public class TableIterator implements Iterator<Row> {
             stream.close();
         }
     }
+
+    /**
+     * On-disk iterator reading rows directly from mapped memory, see {@link MappedFileInput}.
+     *
+     * Given the table's {@link ChunkChecksums}, every chunk is verified the
+     * first time a row overlapping it is read or skipped, before the row is
+     * used. Iterators reading from a stream don't verify the checksums.
+     */
+    public static class MappedOnDiskIterator extends TableIterator implements Closeable {
+
+        private final MappedFileInput input;
+        // index of the table, to seek to the start of a slice; null if unknown
+        private final SparseIndex index;
+        // offset of the first row
+        private final long dataStart;
+        // whether the start marker showed that the table has no rows
+        private final boolean empty;
+        // null if the table has no checksums
+        private final ChunkChecksums checksums;
+        private final BitSet verified = new BitSet();
+        // bytes of the chunk being verified, reused between chunks
+        private byte[] chunk = new byte[0];
+
+        public MappedOnDiskIterator(Schema schema, MappedFileInput input) {
+            this(schema, input, false);
+        }
+
+        public MappedOnDiskIterator(Schema schema, MappedFileInput input, boolean lazy) {
+            this(schema, input, lazy, null);
+        }
+
+        public MappedOnDiskIterator(Schema schema, MappedFileInput input, boolean lazy, SparseIndex index) {
+            this(schema, input, lazy, index, null);
+        }
+
+        /**
+         * @param checksums checksums of the table to verify its rows with, or null
+         */
+        public MappedOnDiskIterator(Schema schema, MappedFileInput input, boolean lazy, SparseIndex index, ChunkChecksums checksums) {
+            super(schema, input, lazy);
+
+            this.input = input;
+            this.index = index;
+            this.dataStart = header == null ? 0 : input.position();
+            this.empty = reachedEnd;
+            this.checksums = checksums;
+        }
+
+        /**
+         * Repositions the iterator at the first row whose key is not smaller
+         * than the given byte-comparable key, using the table's sparse index
+         * if it has one, whatever was read before. Lets a single iterator
+         * serve a sequence of lookups.
+         */
+        public void seek(byte[] key) throws IOException {
+            discardNext();
+            reachedEnd = empty;
+            skipTo(index == null ? -1 : index.seekOffset(key), key);
+        }
+
+        /**
+         * Seeks to the start of the slice using the table's sparse index, so
+         * rows before it are neither read nor decoded.
+         */
+        @Override
+        public void slice(Slice slice) {
+            super.slice(slice);
+            if (slice.start() == null)
+                return;
+
+            try {
+                long offset = index == null ? -1 : index.seekOffset(slice.start());
+                skipTo(offset, slice.start());
+            }
+            catch (IOException e) {
+                throw new MarshalException("Can't seek to " + slice, e);
+            }
+        }
+
+        /**
+         * Positions the iterator at the first row at or after the row frame
+         * starting at {@code offset} whose key is not smaller than {@code key}.
+         * Skipped rows are not decoded, only their keys are compared.
+         */
+        public void skipTo(long offset, byte[] key) throws IOException {
+            if (reachedEnd)
+                return;
+
+            // a negative offset stands for the first row, see SparseIndex#seekOffset
+            input.seek(Math.max(offset, dataStart));
+            discardPushedBack();
+            while (true) {
+                long frame = input.position();
+                if (framed) {
+                    int magic = input.readInt();
+                    if (magic == Constants.FILE_END) {
+                        input.seek(frame);
+                        return;
+                    }
+                    assert magic == Constants.ROW_MAGIC : "Can't deserialize row, ROW_MAGIC does not match " + magic + " != " + Constants.ROW_MAGIC;
+                }
+
+                int serializedSize = input.readInt();
+                long rowStart = input.position();
+                verify(frame, rowStart + serializedSize + Integer.BYTES);
+
+                // clustering key follows the write time
+                input.skipBytes(Long.BYTES);
+                byte[] rowKey = new byte[input.readInt()];
+                input.readFully(rowKey);
+                if (ByteBufferUtil.compareUnsigned(rowKey, key) >= 0) {
+                    input.seek(frame);
+                    return;
+                }
+
+                input.seek(rowStart + serializedSize);
+                int separator = input.readInt();
+                if (separator == Constants.FILE_END) {
+                    reachedEnd = true;
+                    return;
+                }
+                assert separator == Constants.ROW_END: "Corrupted file: separator " + separator + " != " + Constants.ROW_END;
+            }
+        }
+
+        /**
+         * Decodes the row in place from the mapped segment, without copying its bytes.
+         */
+        @Override
+        protected Row readRow(int serializedSize) throws IOException {
+            long rowStart = input.position();
+            // from the row's size, or its magic, to its separator
+            verify(rowStart - (framed ? 2 : 1) * Integer.BYTES, rowStart + serializedSize + Integer.BYTES);
+
+            ByteBuffer segment = input.window(serializedSize);
+            if (segment == null)
+                return super.readRow(serializedSize);
+
+            // the mapping stays valid for as long as a lazy row references it
+            Row row = lazy
+                      ? Row.deserializeLazy(schema, segment, segment.position(), serializedSize, projection)
+                      : Row.deserialize(schema, segment, segment.position(), projection);
+            input.skipBytes(serializedSize);
+            return row;
+        }
+
+        /**
+         * Verifies the chunks overlapping the bytes from {@code from} to
+         * {@code to} that were not verified yet, starting with the one
+         * holding {@code from}. The input's position is left untouched.
+         */
+        private void verify(long from, long to) throws IOException {
+            if (checksums == null)
+                return;
+            int first = checksums.chunkAt(from);
+            if (first < 0)
+                return;
+            // sizes read from a corrupted chunk may point anywhere
+            int last = checksums.chunkAt(Math.max(from, to - 1));
+            if (last < 0)
+                last = checksums.size() - 1;
+
+            long position = input.position();
+            for (int i = first; i <= last; i++) {
+                if (verified.get(i))
+                    continue;
+
+                int length = checksums.length(i);
+                if (chunk.length < length)
+                    chunk = new byte[length];
+                input.seek(checksums.offset(i));
+                input.readFully(chunk, 0, length);
+                checksums.verify(i, chunk, 0);
+                verified.set(i);
+            }
+            input.seek(position);
+        }
+
+        @Override
+        public void close() throws IOException {
+            input.close();
+        }
+    }
 }
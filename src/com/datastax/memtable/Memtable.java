@@ -0,0 +1,199 @@
+package com.datastax.memtable;
+
+import com.datastax.index.BloomFilter;
+import com.datastax.index.SparseIndex;
+import com.datastax.iterator.Sliceable;
+import com.datastax.metadata.Schema;
+import com.datastax.rows.Row;
+import com.datastax.rows.Slice;
+import com.datastax.util.ByteBufferUtil;
+import com.datastax.writer.TableWriter;
+
+import java.io.*;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.NavigableMap;
+import java.util.NoSuchElementException;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * In-memory table that accepts rows in any order from many threads and
+ * keeps them sorted by their byte-comparable key (see {@link Row#comparableKey()}),
+ * the order of {@link Row#compareTo(Row)}.
+ *
+ * Rows are kept in a {@link ConcurrentSkipListMap}, so writers don't
+ * serialize on a lock; a row whose key is already present is reduced with
+ * {@link Row#merge(Row, Row)}. The memtable tracks the serialized size of
+ * the rows written to it, which tells when it should be flushed to a table
+ * file, see {@link MemtableFlusher}.
+ *
+ * A memtable is sealed before it is flushed: writes that did not start yet
+ * are refused, and the flush waits for the ones in progress, so the flushed
+ * table holds every accepted row.
+ */
+public class Memtable {
+    private final Schema schema;
+    private final ConcurrentSkipListMap<byte[], Row> rows = new ConcurrentSkipListMap<>(ByteBufferUtil::compareUnsigned);
+
+    // serialized size of all rows written, including the ones merged away
+    private final LongAdder liveBytes = new LongAdder();
+    private final AtomicInteger writers = new AtomicInteger();
+    private volatile boolean sealed;
+
+    public Memtable(Schema schema) {
+        this.schema = schema;
+    }
+
+    public Schema schema() {
+        return schema;
+    }
+
+    /**
+     * Adds the row, merging it with the row of the same key, if any.
+     *
+     * @return false if the memtable is sealed and the row was not added
+     */
+    public boolean put(Row row) {
+        writers.incrementAndGet();
+        try {
+            // checked after registering as a writer, see seal()
+            if (sealed)
+                return false;
+
+            rows.merge(row.comparableKey(), row, Row::merge);
+            liveBytes.add(row.serializedSize());
+            return true;
+        }
+        finally {
+            if (writers.decrementAndGet() == 0 && sealed) {
+                synchronized (writers) {
+                    writers.notifyAll();
+                }
+            }
+        }
+    }
+
+    /**
+     * Row with the given byte-comparable key, or null.
+     */
+    public Row get(byte[] key) {
+        return rows.get(key);
+    }
+
+    /**
+     * Number of distinct keys.
+     */
+    public int size() {
+        return rows.size();
+    }
+
+    public boolean isEmpty() {
+        return rows.isEmpty();
+    }
+
+    /**
+     * Serialized size of all rows written so far.
+     */
+    public long liveBytes() {
+        return liveBytes.sum();
+    }
+
+    /**
+     * Refuses further writes and waits for the ones in progress.
+     */
+    public void seal() {
+        sealed = true;
+        boolean interrupted = false;
+        synchronized (writers) {
+            // the last writer to leave a sealed memtable notifies
+            while (writers.get() != 0) {
+                try {
+                    writers.wait();
+                }
+                catch (InterruptedException e) {
+                    interrupted = true;
+                }
+            }
+        }
+        if (interrupted)
+            Thread.currentThread().interrupt();
+    }
+
+    public boolean isSealed() {
+        return sealed;
+    }
+
+    /**
+     * Iterator over the rows in key order. It is weakly consistent: it
+     * reflects some of the writes made while it is used, and never fails
+     * because of them. It can be sliced before it is started, which makes
+     * it usable as a source of a {@link com.datastax.iterator.MergeIterator}
+     * next to on-disk tables.
+     */
+    public MemtableIterator iterator() {
+        return new MemtableIterator();
+    }
+
+    /**
+     * Writes the rows to a new table file, with a sparse index and a Bloom
+     * filter. The memtable should be sealed first.
+     *
+     * @throws java.nio.file.FileAlreadyExistsException if the file exists
+     */
+    public void flush(Path path, int indexInterval) throws IOException {
+        try (TableWriter.OnDiskWriter writer = new TableWriter.OnDiskWriter(schema,
+                                                                           new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(path, StandardOpenOption.CREATE_NEW))),
+                                                                           SparseIndex.Builder.everyRows(indexInterval),
+                                                                           new BloomFilter.Builder())) {
+            writer.write(rows.values().iterator());
+        }
+    }
+
+    public class MemtableIterator implements Iterator<Row>, Sliceable {
+        private Iterator<Row> iterator;
+
+        @Override
+        public void slice(Slice slice) {
+            assert iterator == null : "Can't slice an iterator that was already started";
+
+            byte[] start = slice.start();
+            byte[] end = slice.end();
+            NavigableMap<byte[], Row> view;
+            if (start != null && end != null) {
+                int cmp = ByteBufferUtil.compareUnsigned(start, end);
+                if (cmp > 0 || (cmp == 0 && !(slice.startInclusive() && slice.endInclusive()))) {
+                    iterator = Collections.emptyIterator();
+                    return;
+                }
+                view = rows.subMap(start, slice.startInclusive(), end, slice.endInclusive());
+            } else if (start != null) {
+                view = rows.tailMap(start, slice.startInclusive());
+            } else if (end != null) {
+                view = rows.headMap(end, slice.endInclusive());
+            } else {
+                view = rows;
+            }
+            iterator = view.values().iterator();
+        }
+
+        @Override
+        public boolean hasNext() {
+            if (iterator == null)
+                iterator = rows.values().iterator();
+            return iterator.hasNext();
+        }
+
+        @Override
+        public Row next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            return iterator.next();
+        }
+    }
+}
@@ -0,0 +1,238 @@
+package com.datastax.memtable;
+
+import com.datastax.iterator.Sliceable;
+import com.datastax.iterator.TableIterator;
+import com.datastax.metadata.Schema;
+import com.datastax.rows.Row;
+import com.datastax.rows.Slice;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Iterator;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Write path of a table: rows are written to the current {@link Memtable},
+ * which is replaced by an empty one and flushed to a new table file in the
+ * background once it holds {@code flushThreshold} bytes.
+ *
+ * Flushed tables are named {@code <prefix>-<generation>} in the given
+ * directory, generations increasing with every flush from the highest one
+ * already in the directory, so earlier tables are never overwritten. A memtable stays
+ * readable until its table is written, so reads (see {@link #iterator(Slice)})
+ * always see every accepted row.
+ *
+ * {@link #close()} flushes the current memtable and refuses further writes
+ * with an {@link IllegalStateException}.
+ */
+public class MemtableFlusher implements Closeable {
+    public static final long DEFAULT_FLUSH_THRESHOLD = 64 * 1024 * 1024;
+    public static final int DEFAULT_INDEX_INTERVAL = 128;
+
+    private final Schema schema;
+    private final Path directory;
+    private final String prefix;
+    private final long flushThreshold;
+
+    private final AtomicReference<Memtable> current;
+    // sealed memtables whose tables are being written, oldest first
+    private final List<Memtable> flushing = new CopyOnWriteArrayList<>();
+    private final List<Path> tables = new CopyOnWriteArrayList<>();
+    private final ExecutorService executor;
+    // only used by the flush thread
+    private int generation;
+    private volatile boolean closed;
+    private volatile IOException failure;
+
+    public MemtableFlusher(Schema schema, Path directory, String prefix, long flushThreshold) throws IOException {
+        if (flushThreshold <= 0)
+            throw new IllegalArgumentException("Flush threshold must be positive, got " + flushThreshold);
+
+        this.schema = schema;
+        this.directory = directory;
+        this.prefix = prefix;
+        this.flushThreshold = flushThreshold;
+        this.generation = lastGeneration(directory, prefix) + 1;
+        this.current = new AtomicReference<>(new Memtable(schema));
+        this.executor = Executors.newSingleThreadExecutor(r -> {
+            Thread t = new Thread(r, "memtable-flusher");
+            t.setDaemon(true);
+            return t;
+        });
+    }
+
+    /**
+     * Highest generation of the tables named after the prefix in the
+     * directory, or -1 if it has none.
+     */
+    private static int lastGeneration(Path directory, String prefix) throws IOException {
+        int last = -1;
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory)) {
+            for (Path file : files) {
+                String name = file.getFileName().toString();
+                if (!name.startsWith(prefix + "-"))
+                    continue;
+
+                try {
+                    last = Math.max(last, Integer.parseInt(name.substring(prefix.length() + 1)));
+                }
+                catch (NumberFormatException e) {
+                    // not a table of this flusher
+                }
+            }
+        }
+        return last;
+    }
+
+    /**
+     * Writes the row to the current memtable, and schedules a flush if that
+     * made it reach the threshold.
+     *
+     * @throws UncheckedIOException if a previous flush failed
+     * @throws IllegalStateException if the flusher is closed
+     */
+    public void put(Row row) {
+        IOException failed = failure;
+        if (failed != null)
+            throw new UncheckedIOException("A previous flush failed", failed);
+
+        while (true) {
+            if (closed)
+                throw new IllegalStateException("Can't write to a closed memtable flusher");
+
+            Memtable memtable = current.get();
+            if (!memtable.put(row))
+                continue; // sealed by a concurrent flush or by close(), retry with the new one
+
+            if (memtable.liveBytes() >= flushThreshold)
+                switchMemtable(memtable, new Memtable(schema));
+            return;
+        }
+    }
+
+    /**
+     * Flushes the current memtable, if it has rows.
+     *
+     * @return a future completed once the table is written
+     */
+    public Future<?> flush() {
+        Memtable memtable = current.get();
+        if (memtable.isEmpty())
+            return CompletableFuture.completedFuture(null);
+        return switchMemtable(memtable, new Memtable(schema));
+    }
+
+    /**
+     * Replaces the memtable with the next one and schedules its flush.
+     * Switches are serialized with close(), so none is submitted once the
+     * executor is shut down.
+     */
+    private synchronized Future<?> switchMemtable(Memtable memtable, Memtable next) {
+        // registered before the switch, so readers find the memtable either
+        // as the current one or among the flushing ones
+        flushing.add(memtable);
+
+        // only one thread wins the switch; the others keep writing to the new memtable
+        if (!current.compareAndSet(memtable, next)) {
+            flushing.remove(memtable);
+            return CompletableFuture.completedFuture(null);
+        }
+        return executor.submit(() -> {
+            memtable.seal();
+            // writes in progress when close() switched an empty memtable may have added nothing
+            if (memtable.isEmpty()) {
+                flushing.remove(memtable);
+                return null;
+            }
+            Path path = directory.resolve(prefix + "-" + generation++);
+            try {
+                memtable.flush(path, DEFAULT_INDEX_INTERVAL);
+                tables.add(path);
+                flushing.remove(memtable);
+            }
+            catch (IOException e) {
+                failure = e;
+            }
+            return null;
+        });
+    }
+
+    /**
+     * Tables flushed so far, oldest first.
+     */
+    public List<Path> tables() {
+        return Collections.unmodifiableList(tables);
+    }
+
+    public Memtable current() {
+        return current.get();
+    }
+
+    /**
+     * Merged rows within the slice of all flushed tables and memtables.
+     * On-disk tables are opened by the call and closed once the iteration
+     * passes their last row within the slice.
+     */
+    public Iterator<Row> iterator(Slice slice) throws IOException {
+        List<Iterator<Row>> sources = new ArrayList<>();
+        // snapshot in the opposite order of a memtable's way from current to
+        // flushing to flushed: a memtable moving on in between is then read
+        // twice rather than missed
+        Memtable memtable = current.get();
+        List<Memtable> memtables = new ArrayList<>(flushing);
+        memtables.add(memtable);
+
+        try {
+            for (Path table : tables)
+                sources.add(TableIterator.mappedIterator(schema, table.toString()));
+        }
+        catch (IOException | RuntimeException e) {
+            for (Iterator<Row> source : sources)
+                ((Closeable) source).close();
+            throw e;
+        }
+        for (Memtable m : memtables)
+            sources.add(m.iterator());
+
+        @SuppressWarnings("unchecked")
+        Iterator<Row>[] array = sources.toArray(new Iterator[0]);
+        return Sliceable.merge(Row::merge, slice, array);
+    }
+
+    /**
+     * Flushes the current memtable and waits for all flushes to finish.
+     * Writes in progress either make it into the flushed table or fail.
+     */
+    @Override
+    public void close() throws IOException {
+        synchronized (this) {
+            if (!closed) {
+                closed = true;
+                // writes that passed the closed check find a sealed memtable and fail
+                Memtable sealed = new Memtable(schema);
+                sealed.seal();
+                switchMemtable(current.get(), sealed);
+                executor.shutdown();
+            }
+        }
+
+        try {
+            executor.awaitTermination(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while waiting for flushes", e);
+        }
+
+        if (failure != null)
+            throw failure;
+    }
+}
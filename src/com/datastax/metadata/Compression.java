@@ -0,0 +1,38 @@
+package com.datastax.metadata;
+
+import java.util.zip.Deflater;
+
+/**
+ * Compression applied to the blocks of a block table, see
+ * {@link com.datastax.writer.BlockTableWriter}. Blocks are compressed with
+ * the JDK's {@link Deflater}, at a faster or a denser level.
+ */
+public enum Compression {
+    NONE(0, 0),
+    DEFLATE_FAST(1, Deflater.BEST_SPEED),
+    DEFLATE(2, Deflater.DEFAULT_COMPRESSION);
+
+    // stored in the table file
+    public final int id;
+    private final int level;
+
+    Compression(int id, int level) {
+        this.id = id;
+        this.level = level;
+    }
+
+    /**
+     * Deflater for this compression, or null if blocks are stored as they are.
+     */
+    public Deflater newDeflater() {
+        return this == NONE ? null : new Deflater(level);
+    }
+
+    public static Compression fromId(int id) {
+        for (Compression compression : values()) {
+            if (compression.id == id)
+                return compression;
+        }
+        throw new IllegalArgumentException("Unknown compression " + id);
+    }
+}
@@ -12,4 +12,13 @@ public class Constants {
 
     public static int FILE_END = 0x454e44;         // END
 
+    public static int INDEX_MAGIC = 0x494458;      // IDX
+    public static int FILTER_MAGIC = 0x424c4d;     // BLM
+
+    public static int BLOCK_INDEX_MAGIC = 0x424c4b49;  // BLKI
+    public static int CHECKSUMS_MAGIC = 0x43524353;    // CRCS
+
+    public static int TABLE_MAGIC = 0x41504c4f;    // APLO
+    public static int FOOTER_MAGIC = 0x46545221;   // FTR!
+
 }
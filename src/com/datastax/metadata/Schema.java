@@ -1,7 +1,12 @@
 package com.datastax.metadata;
 
 import com.datastax.serde.AbstractType;
+import com.datastax.serde.PrimitiveType;
+import com.datastax.serde.Types;
 
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
 import java.util.*;
 import java.util.function.Consumer;
 
@@ -15,18 +20,31 @@ import java.util.function.Consumer;
  * {@link AbstractType}).
  *
  * Use {@link Schema.Builder} to create instances of Schema.
+ *
+ * Schemas are compared by their columns, so a schema read back from a table
+ * file (see {@link #deserialize(DataInput)}) equals the one it was written
+ * with.
  */
 public class Schema {
+    // presence of row columns is serialized as an int bitmap
+    public static final int MAX_ROW_COLUMNS = Integer.SIZE;
+
     private final List<Column<?>> keyColumns;
     private final List<Column<?>> rowColumns;
     private final Map<String, Column<?>> columnMap;
+    private final int primitiveSlots;
+    private final int objectSlots;
 
     private Schema(List<Column<?>> keyColumns,
                    List<Column<?>> rowColumns,
-                   Map<String, Column<?>> columnMap) {
+                   Map<String, Column<?>> columnMap,
+                   int primitiveSlots,
+                   int objectSlots) {
         this.keyColumns = keyColumns;
         this.rowColumns = rowColumns;
         this.columnMap = columnMap;
+        this.primitiveSlots = primitiveSlots;
+        this.objectSlots = objectSlots;
     }
 
     public Collection<Column<?>> clusteringKeyColumns() {
@@ -41,6 +59,46 @@ public class Schema {
         return rowColumns;
     }
 
+    public int rowColumnCount() {
+        return rowColumns.size();
+    }
+
+    public Column<?> getRowColumn(int ordinal) {
+        return rowColumns.get(ordinal);
+    }
+
+    /**
+     * Number of row columns of a {@link PrimitiveType}, see {@link Column#slot}.
+     */
+    public int primitiveSlots() {
+        return primitiveSlots;
+    }
+
+    /**
+     * Number of row columns of any other type, see {@link Column#slot}.
+     */
+    public int objectSlots() {
+        return objectSlots;
+    }
+
+    /**
+     * Presence bitmap of the given columns, as rows use it, e.g. to project
+     * rows on them. Clustering key columns are part of every row and are
+     * ignored.
+     *
+     * @throws IllegalArgumentException if a column is not one of this schema
+     */
+    public int rowColumnMask(Collection<? extends Column<?>> columns) {
+        int mask = 0;
+        for (Column<?> c : columns) {
+            if (!c.equals(columnMap.get(c.name)))
+                throw new IllegalArgumentException("Column " + c + " is not a column of " + this);
+            if (c.columnType == ColumnType.ROW_COLUMN)
+                mask |= 1 << c.ordinal;
+        }
+        return mask;
+    }
+
     public void withRowColumns(Consumer<Column<?>> consumer) {
         rowColumns.forEach(consumer);
     }
@@ -49,10 +107,72 @@ public class Schema {
         return columnMap.get(columnName);
     }
 
+    public void serialize(DataOutput out) throws IOException {
+        out.writeShort(keyColumns.size());
+        for (Column<?> c : keyColumns) {
+            out.writeUTF(c.name);
+            out.writeUTF(Types.nameOf(c.type));
+        }
+        out.writeShort(rowColumns.size());
+        for (Column<?> c : rowColumns) {
+            out.writeUTF(c.name);
+            out.writeUTF(Types.nameOf(c.type));
+        }
+    }
+
+    public static Schema deserialize(DataInput in) throws IOException {
+        Builder builder = new Builder();
+        int keys = in.readShort();
+        for (int i = 0; i < keys; i++)
+            builder.addKey(in.readUTF(), Types.byName(in.readUTF()));
+        int columns = in.readShort();
+        for (int i = 0; i < columns; i++)
+            builder.addColumn(in.readUTF(), Types.byName(in.readUTF()));
+        return builder.build();
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+        Schema schema = (Schema) o;
+        return sameColumns(keyColumns, schema.keyColumns) && sameColumns(rowColumns, schema.rowColumns);
+    }
+
+    private static boolean sameColumns(List<Column<?>> l, List<Column<?>> r) {
+        if (l.size() != r.size())
+            return false;
+        for (int i = 0; i < l.size(); i++) {
+            if (!l.get(i).name.equals(r.get(i).name) || l.get(i).type != r.get(i).type)
+                return false;
+        }
+        return true;
+    }
+
+    @Override
+    public int hashCode() {
+        int result = 1;
+        for (Column<?> c : keyColumns)
+            result = 31 * result + c.name.hashCode();
+        for (Column<?> c : rowColumns)
+            result = 31 * result + c.name.hashCode();
+        return result;
+    }
+
+    @Override
+    public String toString() {
+        return "Schema(" +
+                "keys=" + keyColumns +
+                ", columns=" + rowColumns +
+                ')';
+    }
+
     public static class Builder {
         private final Map<String, Column<?>> columnMap;
         private final List<Column<?>> clusteringKeyColumns;
         private final List<Column<?>> rowColumns;
+        private int primitiveSlots;
+        private int objectSlots;
 
         public Builder() {
             this.columnMap = new HashMap<>();
@@ -64,7 +184,7 @@ public class Schema {
             if (this.columnMap.containsKey(name))
                 throw new AlreadyExistsException("Column " + name + " is already present in schema");
 
-            Column<?> column = new Column<>(name, ColumnType.CLUSTERING_KEY, type);
+            Column<?> column = new Column<>(name, ColumnType.CLUSTERING_KEY, type, clusteringKeyColumns.size());
             this.columnMap.put(name, column);
             this.clusteringKeyColumns.add(column);
             return this;
@@ -73,8 +193,11 @@ public class Schema {
         public Builder addColumn(String name, AbstractType type) {
             if (this.columnMap.containsKey(name))
                 throw new AlreadyExistsException("Column " + name + " is already present in schema");
+            if (this.rowColumns.size() == MAX_ROW_COLUMNS)
+                throw new IllegalArgumentException("Schema can't have more than " + MAX_ROW_COLUMNS + " row columns");
 
-            Column<?> column = new Column<>(name, ColumnType.ROW_COLUMN, type);
+            int slot = type instanceof PrimitiveType ? primitiveSlots++ : objectSlots++;
+            Column<?> column = new Column<>(name, ColumnType.ROW_COLUMN, type, rowColumns.size(), slot);
             this.columnMap.put(name, column);
             this.rowColumns.add(column);
             return this;
@@ -83,7 +206,9 @@ public class Schema {
         public Schema build() {
             return new Schema(clusteringKeyColumns,
                               rowColumns,
-                              columnMap);
+                              columnMap,
+                              primitiveSlots,
+                              objectSlots);
         }
     }
 
@@ -96,11 +221,26 @@ public class Schema {
         public final String name;
         public final AbstractType type;
         public final ColumnType columnType;
+        // position among the clustering key or among the row columns
+        public final int ordinal;
+        // row columns only: index into the row's primitive slots if the type
+        // is a PrimitiveType, into its object slots otherwise
+        public final int slot;
 
-        public Column(String name, ColumnType columnType, AbstractType type) {
+        public Column(String name, ColumnType columnType, AbstractType type, int ordinal) {
+            this(name, columnType, type, ordinal, ordinal);
+        }
+
+        public Column(String name, ColumnType columnType, AbstractType type, int ordinal, int slot) {
             this.name = name;
             this.type = type;
             this.columnType = columnType;
+            this.ordinal = ordinal;
+            this.slot = slot;
+        }
+
+        public boolean isPrimitive() {
+            return type instanceof PrimitiveType;
         }
 
         @Override
@@ -114,6 +254,7 @@ public class Schema {
                     "name='" + name + '\'' +
                     ", type=" + type +
                     ", columnType=" + columnType +
+                    ", ordinal=" + ordinal +
                     ')';
         }
     }
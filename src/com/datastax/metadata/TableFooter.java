@@ -0,0 +1,213 @@
+package com.datastax.metadata;
+
+import com.datastax.rows.Row;
+import com.datastax.rows.Slice;
+import com.datastax.util.ByteBufferUtil;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+/**
+ * Footer at the end of every table file: statistics of the rows (count,
+ * smallest and largest byte-comparable key, smallest and largest write
+ * time) and the offsets of the table's {@link Section}s, which are stored
+ * between the rows and the footer.
+ *
+ * The footer is located through a fixed size trailer at the very end of
+ * the file: the footer's offset followed by {@link Constants#FOOTER_MAGIC}.
+ * Reading it only takes two small reads at the end of the file, so planners
+ * can skip tables (see {@link #mayIntersect(Slice)}) without touching their
+ * rows.
+ */
+public class TableFooter {
+    public static final int TRAILER_SIZE = Long.BYTES + Integer.BYTES;
+
+    public enum Section {
+        INDEX,
+        FILTER,
+        BLOCK_INDEX,
+        CHECKSUMS
+    }
+
+    public final long rowCount;
+    // null if the table has no rows
+    public final byte[] minKey;
+    public final byte[] maxKey;
+    public final long minWriteTime;
+    public final long maxWriteTime;
+
+    // by Section ordinal, -1 if absent
+    private final long[] sections;
+
+    private TableFooter(long rowCount, byte[] minKey, byte[] maxKey, long minWriteTime, long maxWriteTime, long[] sections) {
+        this.rowCount = rowCount;
+        this.minKey = minKey;
+        this.maxKey = maxKey;
+        this.minWriteTime = minWriteTime;
+        this.maxWriteTime = maxWriteTime;
+        this.sections = sections;
+    }
+
+    public boolean hasSection(Section section) {
+        return sections[section.ordinal()] >= 0;
+    }
+
+    public long sectionOffset(Section section) {
+        return sections[section.ordinal()];
+    }
+
+    /**
+     * Whether the table might have rows within the slice.
+     */
+    public boolean mayIntersect(Slice slice) {
+        return rowCount > 0 && !slice.isAfterEnd(minKey) && !slice.isBeforeStart(maxKey);
+    }
+
+    /**
+     * Whether the given byte-comparable key is within the table's key range.
+     */
+    public boolean mayContain(byte[] key) {
+        return rowCount > 0 && ByteBufferUtil.compareUnsigned(key, minKey) >= 0 && ByteBufferUtil.compareUnsigned(key, maxKey) <= 0;
+    }
+
+    public void serialize(DataOutput out) throws IOException {
+        out.writeLong(rowCount);
+        if (rowCount > 0) {
+            out.writeInt(minKey.length);
+            out.write(minKey);
+            out.writeInt(maxKey.length);
+            out.write(maxKey);
+            out.writeLong(minWriteTime);
+            out.writeLong(maxWriteTime);
+        }
+        out.writeByte(sections.length);
+        for (long offset : sections)
+            out.writeLong(offset);
+    }
+
+    public static TableFooter deserialize(DataInput in) throws IOException {
+        long rowCount = in.readLong();
+        byte[] minKey = null;
+        byte[] maxKey = null;
+        long minWriteTime = 0;
+        long maxWriteTime = 0;
+        if (rowCount > 0) {
+            minKey = new byte[in.readInt()];
+            in.readFully(minKey);
+            maxKey = new byte[in.readInt()];
+            in.readFully(maxKey);
+            minWriteTime = in.readLong();
+            maxWriteTime = in.readLong();
+        }
+
+        // sections added by later versions are ignored
+        long[] sections = new long[Section.values().length];
+        Arrays.fill(sections, -1);
+        int count = in.readByte();
+        for (int i = 0; i < count; i++) {
+            long offset = in.readLong();
+            if (i < sections.length)
+                sections[i] = offset;
+        }
+        return new TableFooter(rowCount, minKey, maxKey, minWriteTime, maxWriteTime, sections);
+    }
+
+    /**
+     * Writes the trailer pointing at a footer written at {@code footerOffset}.
+     */
+    public static void writeTrailer(DataOutput out, long footerOffset) throws IOException {
+        out.writeLong(footerOffset);
+        out.writeInt(Constants.FOOTER_MAGIC);
+    }
+
+    /**
+     * Reads the footer of the table file open in the given channel.
+     *
+     * @return the footer, or null if the file is a legacy file without one
+     */
+    public static TableFooter load(FileChannel channel) throws IOException {
+        long size = channel.size();
+        if (size < TRAILER_SIZE)
+            return null;
+
+        DataInputStream trailer = section(channel, size - TRAILER_SIZE);
+        long footerOffset = trailer.readLong();
+        if (trailer.readInt() != Constants.FOOTER_MAGIC)
+            return null;
+
+        return deserialize(section(channel, footerOffset));
+    }
+
+    public static TableFooter load(Path table) throws IOException {
+        try (FileChannel channel = FileChannel.open(table, StandardOpenOption.READ)) {
+            return load(channel);
+        }
+    }
+
+    /**
+     * Input reading the file from the given offset, e.g. to read a section.
+     * The channel's position is left untouched.
+     */
+    public static DataInputStream section(FileChannel channel, long offset) {
+        return new DataInputStream(new BufferedInputStream(new InputStream() {
+            private long position = offset;
+
+            @Override
+            public int read() throws IOException {
+                byte[] b = new byte[1];
+                return read(b, 0, 1) < 0 ? -1 : b[0] & 0xff;
+            }
+
+            @Override
+            public int read(byte[] b, int off, int len) throws IOException {
+                int n = channel.read(ByteBuffer.wrap(b, off, len), position);
+                if (n > 0)
+                    position += n;
+                return n;
+            }
+        }));
+    }
+
+    /**
+     * Collects the statistics of a table while it is written.
+     */
+    public static class Builder {
+        private long rowCount;
+        private byte[] minKey;
+        private byte[] maxKey;
+        private long minWriteTime = Long.MAX_VALUE;
+        private long maxWriteTime = Long.MIN_VALUE;
+        private final long[] sections = new long[Section.values().length];
+
+        public Builder() {
+            Arrays.fill(sections, -1);
+        }
+
+        /**
+         * Called for every row of the table.
+         */
+        public void add(Row row) {
+            byte[] key = row.comparableKey();
+            if (minKey == null || ByteBufferUtil.compareUnsigned(key, minKey) < 0)
+                minKey = key;
+            if (maxKey == null || ByteBufferUtil.compareUnsigned(key, maxKey) > 0)
+                maxKey = key;
+
+            minWriteTime = Math.min(minWriteTime, row.writeTime());
+            maxWriteTime = Math.max(maxWriteTime, row.writeTime());
+            rowCount++;
+        }
+
+        public void section(Section section, long offset) {
+            sections[section.ordinal()] = offset;
+        }
+
+        public TableFooter build() {
+            return new TableFooter(rowCount, minKey, maxKey, minWriteTime, maxWriteTime, sections.clone());
+        }
+    }
+}
@@ -0,0 +1,150 @@
+package com.datastax.metadata;
+
+import com.datastax.serde.MarshalException;
+
+import java.io.*;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * Header at the start of every table file: {@link Constants#TABLE_MAGIC},
+ * the format version, the format flags and the table's {@link Schema}.
+ *
+ * Readers decide how rows are framed from the flags once, when they open
+ * a table, instead of consulting {@link Constants#DEBUG} for every row.
+ * Tables with flags a reader doesn't know are rejected, and so are block
+ * tables opened as plain ones.
+ * Files written before the header existed start with a row (or
+ * {@link Constants#FILE_END}) instead; readers treat them as legacy files
+ * framed according to {@link Constants#DEBUG}.
+ */
+public class TableHeader {
+    // version 2 marks the start of the rows of tables without ROW_MAGIC
+    public static final int VERSION = 2;
+
+    // every row is preceded by ROW_MAGIC
+    public static final int FLAG_ROW_MAGIC = 1;
+    // rows are stored in blocks, see BlockTableWriter
+    public static final int FLAG_BLOCKS = 1 << 1;
+    // every block starts with a TextDictionary its rows are serialized against
+    public static final int FLAG_DICTIONARY = 1 << 2;
+    // rows of blocks are in the compact layout, see Row#serializeCompact
+    public static final int FLAG_COMPACT = 1 << 3;
+    // keys of rows in blocks are prefix compressed, with restart points
+    public static final int FLAG_PREFIX_KEYS = 1 << 4;
+
+    // flags of the block format, which plain table readers can't read
+    private static final int BLOCK_FLAGS = FLAG_BLOCKS | FLAG_DICTIONARY | FLAG_COMPACT | FLAG_PREFIX_KEYS;
+    private static final int KNOWN_FLAGS = FLAG_ROW_MAGIC | BLOCK_FLAGS;
+
+    public final int version;
+    public final int flags;
+    public final Schema schema;
+
+    public TableHeader(int flags, Schema schema) {
+        this(VERSION, flags, schema);
+    }
+
+    private TableHeader(int version, int flags, Schema schema) {
+        this.version = version;
+        this.flags = flags;
+        this.schema = schema;
+    }
+
+    public boolean hasRowMagic() {
+        return (flags & FLAG_ROW_MAGIC) != 0;
+    }
+
+    /**
+     * Whether the rows of the table are preceded by {@link Constants#ROW_END},
+     * or directly by {@link Constants#FILE_END} if it has none. Tables without
+     * {@link Constants#ROW_MAGIC} have that marker since version 2, as their
+     * readers couldn't tell {@link Constants#FILE_END} from the size of a row
+     * otherwise.
+     */
+    public boolean hasStartMarker() {
+        return !hasRowMagic() && !isBlockFormat() && version >= 2;
+    }
+
+    public boolean isBlockFormat() {
+        return (flags & FLAG_BLOCKS) != 0;
+    }
+
+    public boolean hasDictionary() {
+        return (flags & FLAG_DICTIONARY) != 0;
+    }
+
+    public boolean isCompact() {
+        return (flags & FLAG_COMPACT) != 0;
+    }
+
+    public boolean hasPrefixKeys() {
+        return (flags & FLAG_PREFIX_KEYS) != 0;
+    }
+
+    /**
+     * Checks that the table is in the plain format, as written by
+     * {@code TableWriter}, and not in the block format.
+     */
+    public TableHeader checkPlainFormat() {
+        if ((flags & BLOCK_FLAGS) != 0)
+            throw new MarshalException("Table is in the block format, it has to be read with BlockTableIterator");
+        return this;
+    }
+
+    /**
+     * Checks that a schema supplied by the caller is the one the table was
+     * written with.
+     */
+    public Schema checkSchema(Schema expected) {
+        if (expected != null && !expected.equals(schema))
+            throw new MarshalException("Table was written with " + schema + ", not " + expected);
+        return expected == null ? schema : expected;
+    }
+
+    /**
+     * Writes the header.
+     *
+     * @return number of bytes written
+     */
+    public int serialize(DataOutput out) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream header = new DataOutputStream(bytes);
+        header.writeInt(Constants.TABLE_MAGIC);
+        header.writeShort(version);
+        header.writeInt(flags);
+        schema.serialize(header);
+        header.close();
+
+        out.write(bytes.toByteArray());
+        return bytes.size();
+    }
+
+    /**
+     * Reads the header of a table whose first int, {@link Constants#TABLE_MAGIC},
+     * has already been read.
+     */
+    public static TableHeader deserializeAfterMagic(DataInput in) throws IOException {
+        int version = in.readShort();
+        if (version > VERSION)
+            throw new MarshalException("Unsupported table version " + version + ", newest supported is " + VERSION);
+
+        int flags = in.readInt();
+        if ((flags & ~KNOWN_FLAGS) != 0)
+            throw new MarshalException("Unsupported table flags " + Integer.toHexString(flags & ~KNOWN_FLAGS));
+        return new TableHeader(version, flags, Schema.deserialize(in));
+    }
+
+    /**
+     * Reads the header of the given table file.
+     *
+     * @return the header, or null if the file is a legacy file without one
+     */
+    public static TableHeader load(Path table) throws IOException {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(table)))) {
+            if (Files.size(table) < Integer.BYTES || in.readInt() != Constants.TABLE_MAGIC)
+                return null;
+            return deserializeAfterMagic(in);
+        }
+    }
+}
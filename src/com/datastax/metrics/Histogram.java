@@ -0,0 +1,96 @@
+package com.datastax.metrics;
+
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Concurrent histogram of non-negative longs with power of two buckets:
+ * bucket {@code i} counts the values in {@code [2^(i-1), 2^i)}, bucket 0
+ * the zeros. Every bucket is a {@link LongAdder}, so updates neither
+ * allocate nor contend, at the price of percentiles that are only exact
+ * to a factor of two.
+ *
+ * Reads are not atomic with respect to concurrent updates: a percentile
+ * may be computed from buckets that saw slightly different sets of values.
+ */
+public class Histogram {
+    private static final int BUCKETS = Long.SIZE;
+
+    private final LongAdder[] buckets = new LongAdder[BUCKETS];
+    private final LongAdder count = new LongAdder();
+    private final LongAdder sum = new LongAdder();
+    private final LongAccumulator max = new LongAccumulator(Math::max, 0);
+
+    public Histogram() {
+        for (int i = 0; i < BUCKETS; i++)
+            buckets[i] = new LongAdder();
+    }
+
+    public void update(long value) {
+        if (value < 0)
+            value = 0;
+        buckets[Long.SIZE - Long.numberOfLeadingZeros(value)].increment();
+        count.increment();
+        sum.add(value);
+        max.accumulate(value);
+    }
+
+    public long count() {
+        return count.sum();
+    }
+
+    public long sum() {
+        return sum.sum();
+    }
+
+    public long max() {
+        return max.get();
+    }
+
+    public double mean() {
+        long n = count();
+        return n == 0 ? 0 : (double) sum() / n;
+    }
+
+    /**
+     * Upper bound of the bucket holding the given quantile, capped by the
+     * largest value seen; 0 if the histogram is empty.
+     *
+     * @param quantile in [0, 1]
+     */
+    public long percentile(double quantile) {
+        if (quantile < 0 || quantile > 1)
+            throw new IllegalArgumentException("Quantile must be in [0, 1], got " + quantile);
+
+        long[] counts = new long[BUCKETS];
+        long total = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            counts[i] = buckets[i].sum();
+            total += counts[i];
+        }
+        if (total == 0)
+            return 0;
+
+        long rank = Math.max(1, (long) Math.ceil(quantile * total));
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += counts[i];
+            if (seen >= rank)
+                return Math.min(upperBound(i), max());
+        }
+        return max();
+    }
+
+    private static long upperBound(int bucket) {
+        // (1 << 63) - 1 wraps around to Long.MAX_VALUE
+        return bucket == 0 ? 0 : (1L << bucket) - 1;
+    }
+
+    public void reset() {
+        for (LongAdder bucket : buckets)
+            bucket.reset();
+        count.reset();
+        sum.reset();
+        max.reset();
+    }
+}
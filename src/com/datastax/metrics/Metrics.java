@@ -0,0 +1,159 @@
+package com.datastax.metrics;
+
+import javax.management.InstanceAlreadyExistsException;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Process wide metrics of the read path:
+ * <ul>
+ *   <li>rows and bytes read by {@link com.datastax.iterator.TableIterator}s,
+ *       {@link com.datastax.iterator.AsyncTableIterator}s and
+ *       {@link com.datastax.iterator.BlockTableIterator}s, and the time spent
+ *       deserializing every row; the bytes of block tables are those of the
+ *       blocks read from the file, cached blocks are not counted;</li>
+ *   <li>comparisons and merges of equal items done by
+ *       {@link com.datastax.iterator.MergeIterator}s;</li>
+ *   <li>queue depth of {@link com.datastax.iterator.AsyncIterator}s and
+ *       {@link com.datastax.iterator.BatchingAsyncIterator}s, sampled every
+ *       time their producer queues items, and the time their producer waits
+ *       on a full queue and their consumer on an empty one.</li>
+ * </ul>
+ *
+ * Collection is off unless the {@code apollo.metrics} system property is
+ * set to true or it is switched on with {@link #setEnabled(boolean)}, which
+ * can be done at any time, also over JMX once {@link #register()} was
+ * called. When off, instrumented code pays a volatile read per row or per
+ * wait and nothing else. Metrics are {@link LongAdder}s and
+ * {@link Histogram}s, so recording them does not allocate.
+ */
+public final class Metrics {
+    public static final String OBJECT_NAME = "com.datastax:type=Metrics";
+
+    private static volatile boolean enabled = Boolean.getBoolean("apollo.metrics");
+
+    public static final LongAdder ROWS_READ = new LongAdder();
+    public static final LongAdder BYTES_READ = new LongAdder();
+    public static final Histogram DESERIALIZATION_NANOS = new Histogram();
+
+    public static final LongAdder MERGE_COMPARISONS = new LongAdder();
+    public static final LongAdder MERGES = new LongAdder();
+
+    public static final Histogram ASYNC_QUEUE_DEPTH = new Histogram();
+    public static final Histogram PRODUCER_STALL_NANOS = new Histogram();
+    public static final Histogram CONSUMER_STALL_NANOS = new Histogram();
+
+    private Metrics() { }
+
+    public static boolean enabled() {
+        return enabled;
+    }
+
+    public static void setEnabled(boolean enabled) {
+        Metrics.enabled = enabled;
+    }
+
+    public static void reset() {
+        ROWS_READ.reset();
+        BYTES_READ.reset();
+        DESERIALIZATION_NANOS.reset();
+        MERGE_COMPARISONS.reset();
+        MERGES.reset();
+        ASYNC_QUEUE_DEPTH.reset();
+        PRODUCER_STALL_NANOS.reset();
+        CONSUMER_STALL_NANOS.reset();
+    }
+
+    /**
+     * Registers the {@link MetricsMXBean} with the platform MBean server,
+     * unless it already is.
+     *
+     * @return name the bean is registered under
+     */
+    public static synchronized ObjectName register() {
+        try {
+            ObjectName name = new ObjectName(OBJECT_NAME);
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            try {
+                if (!server.isRegistered(name))
+                    server.registerMBean(new MXBean(), name);
+            }
+            catch (InstanceAlreadyExistsException e) {
+                // registered concurrently by another class loader
+            }
+            return name;
+        }
+        catch (JMException e) {
+            throw new IllegalStateException("Can't register " + OBJECT_NAME, e);
+        }
+    }
+
+    private static class MXBean implements MetricsMXBean {
+        public boolean isEnabled() {
+            return Metrics.enabled();
+        }
+
+        public void setEnabled(boolean enabled) {
+            Metrics.setEnabled(enabled);
+        }
+
+        public void reset() {
+            Metrics.reset();
+        }
+
+        public long getRowsRead() {
+            return ROWS_READ.sum();
+        }
+
+        public long getBytesRead() {
+            return BYTES_READ.sum();
+        }
+
+        public long getDeserializationNanos() {
+            return DESERIALIZATION_NANOS.sum();
+        }
+
+        public double getDeserializationMeanNanos() {
+            return DESERIALIZATION_NANOS.mean();
+        }
+
+        public long getDeserializationP99Nanos() {
+            return DESERIALIZATION_NANOS.percentile(0.99);
+        }
+
+        public long getMergeComparisons() {
+            return MERGE_COMPARISONS.sum();
+        }
+
+        public long getMerges() {
+            return MERGES.sum();
+        }
+
+        public double getAsyncQueueDepthMean() {
+            return ASYNC_QUEUE_DEPTH.mean();
+        }
+
+        public long getAsyncQueueDepthMax() {
+            return ASYNC_QUEUE_DEPTH.max();
+        }
+
+        public long getProducerStalls() {
+            return PRODUCER_STALL_NANOS.count();
+        }
+
+        public long getProducerStallNanos() {
+            return PRODUCER_STALL_NANOS.sum();
+        }
+
+        public long getConsumerStalls() {
+            return CONSUMER_STALL_NANOS.count();
+        }
+
+        public long getConsumerStallNanos() {
+            return CONSUMER_STALL_NANOS.sum();
+        }
+    }
+}
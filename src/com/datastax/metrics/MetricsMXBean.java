@@ -0,0 +1,40 @@
+package com.datastax.metrics;
+
+/**
+ * JMX view of {@link Metrics}, registered as {@value Metrics#OBJECT_NAME}.
+ * Counters are totals since the last {@link #reset()}; times are in
+ * nanoseconds and percentiles are bucket upper bounds, see {@link Histogram}.
+ */
+public interface MetricsMXBean {
+    boolean isEnabled();
+
+    void setEnabled(boolean enabled);
+
+    void reset();
+
+    long getRowsRead();
+
+    long getBytesRead();
+
+    long getDeserializationNanos();
+
+    double getDeserializationMeanNanos();
+
+    long getDeserializationP99Nanos();
+
+    long getMergeComparisons();
+
+    long getMerges();
+
+    double getAsyncQueueDepthMean();
+
+    long getAsyncQueueDepthMax();
+
+    long getProducerStalls();
+
+    long getProducerStallNanos();
+
+    long getConsumerStalls();
+
+    long getConsumerStallNanos();
+}
@@ -0,0 +1,143 @@
+package com.datastax.reader;
+
+import com.datastax.index.BloomFilter;
+import com.datastax.index.SparseIndex;
+import com.datastax.iterator.TableIterator;
+import com.datastax.metadata.Schema;
+import com.datastax.metadata.TableFooter;
+import com.datastax.metadata.TableHeader;
+import com.datastax.rows.Row;
+import com.datastax.serde.MarshalException;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.function.BiFunction;
+
+/**
+ * Point reads from an on-disk table, using the components written into it
+ * by {@link com.datastax.writer.TableWriter}: the key range recorded in the
+ * {@link TableFooter} and the Bloom filter rule out tables that certainly
+ * do not contain a key without touching their data, and the sparse index
+ * lets a lookup seek close to the key.
+ *
+ * Components are loaded once when the reader is opened. Tables written
+ * without a filter are always read, tables without an index are scanned
+ * from their start.
+ *
+ * The table stays mapped until the reader is closed: every lookup seeks the
+ * same {@link TableIterator.MappedOnDiskIterator}, so lookups of a reader
+ * are serialized.
+ */
+public class TableReader implements Closeable {
+    private final Schema schema;
+    private final Path path;
+    private final BloomFilter filter;
+    // null for tables written without a footer
+    private final TableFooter footer;
+    private final TableIterator.MappedOnDiskIterator rows;
+
+    private TableReader(Schema schema, Path path, BloomFilter filter, TableFooter footer, TableIterator.MappedOnDiskIterator rows) {
+        this.schema = schema;
+        this.path = path;
+        this.filter = filter;
+        this.footer = footer;
+        this.rows = rows;
+    }
+
+    /**
+     * Reader of the given table with the schema recorded in its header.
+     */
+    public static TableReader open(Path path) throws IOException {
+        TableHeader header = TableHeader.load(path);
+        if (header == null)
+            throw new MarshalException("Table " + path + " has no header, its schema has to be given");
+        return open(header.schema, path);
+    }
+
+    public static TableReader open(Schema schema, Path path) throws IOException {
+        BloomFilter filter = BloomFilter.load(path);
+        TableFooter footer = TableFooter.load(path);
+        return new TableReader(schema, path, filter, footer, TableIterator.mappedIterator(schema, path.toString(), false, SparseIndex.load(path)));
+    }
+
+    public Schema schema() {
+        return schema;
+    }
+
+    /**
+     * Statistics of the table, or null if it was written without them.
+     */
+    public TableFooter footer() {
+        return footer;
+    }
+
+    public Path path() {
+        return path;
+    }
+
+    /**
+     * Whether the table might contain the given byte-comparable key, see
+     * {@link Row#comparableKey(Schema, Object...)}.
+     */
+    public boolean mightContain(byte[] key) {
+        if (footer != null && !footer.mayContain(key))
+            return false;
+        return filter == null || filter.mightContain(key);
+    }
+
+    /**
+     * Heap used by the table's Bloom filter, in bytes.
+     */
+    public long filterMemoryUsage() {
+        return filter == null ? 0 : filter.memoryUsage();
+    }
+
+    /**
+     * Row with the given byte-comparable key, or null if the table has none.
+     */
+    public synchronized Row get(byte[] key) throws IOException {
+        if (!mightContain(key))
+            return null;
+
+        rows.seek(key);
+        if (!rows.hasNext())
+            return null;
+
+        Row row = rows.next();
+        return Arrays.equals(row.comparableKey(), key) ? row : null;
+    }
+
+    @Override
+    public void close() throws IOException {
+        rows.close();
+    }
+
+    /**
+     * Looks the key up in all given tables and reduces the rows found with
+     * the merge function; only tables whose filter might contain the key
+     * are read.
+     *
+     * @return merged row, or null if no table contains the key
+     */
+    public static Row get(BiFunction<Row, Row, Row> merge, byte[] key, Iterable<TableReader> tables) throws IOException {
+        Row result = null;
+        for (TableReader table : tables) {
+            Row row = table.get(key);
+            if (row != null)
+                result = result == null ? row : merge.apply(result, row);
+        }
+        return result;
+    }
+
+    /**
+     * Total heap used by the Bloom filters of the given tables, in bytes.
+     */
+    public static long filterMemoryUsage(Iterable<TableReader> tables) {
+        long total = 0;
+        for (TableReader table : tables)
+            total += table.filterMemoryUsage();
+        return total;
+    }
+}
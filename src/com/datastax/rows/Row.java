@@ -1,72 +1,324 @@
 package com.datastax.rows;
 
 import com.datastax.metadata.Schema;
-import com.datastax.serde.AbstractType;
+import com.datastax.serde.MarshalException;
+import com.datastax.serde.PrimitiveType;
+import com.datastax.serde.TextType;
+import com.datastax.util.ByteBufferUtil;
+import com.datastax.util.Utf8;
+import com.datastax.util.VInt;
 
 import java.io.DataInput;
 import java.io.DataOutput;
 import java.io.IOException;
+import java.nio.ByteBuffer;
 import java.util.*;
 
 /**
  * Row is a single instance of data within table. Row consists of
- * {@link Row#key}, {@link Row#writeTime} and {@link Row#rowColumns},
- * values mapped to the supplied key.
+ * {@link Row#key}, {@link Row#writeTime} and row column values mapped to
+ * the supplied key.
  *
  * In order to construct a row, {@link Schema} has to be supplied
  * and {@link Row.RowBuilder} has to be used.
  *
- * Row can be serialized (with {@link Row#serialize(DataOutput)})
- * and deserialized (with {@link Row#deserialize(Schema, DataInput)}).
+ * Row can be serialized (with {@link Row#serialize(DataOutput)} or
+ * {@link Row#serialize(ByteBuffer, int)}) and deserialized (with
+ * {@link Row#deserialize(Schema, DataInput)} or
+ * {@link Row#deserialize(Schema, ByteBuffer, int)}).
  */
 public final class Row implements Comparable<Row> {
 
-    private final Object[] key;
+    // decoded key values and their byte-comparable encoding; each of them
+    // is derived from the other on first use
+    private Object[] key;
+    private byte[] comparableKey;
     private final long writeTime;
     private final Schema schema;
-    private final Map<Schema.Column, Object> rowColumns;
+
+    // column values by slot, and presence of columns by ordinal
+    private final long[] primitives;
+    private final Object[] values;
+    private final int present;
+    // columns whose value is in its slot; lags behind present for lazy rows
+    private int decoded;
+
+    // lazy rows only: serialized bitmap and values, see deserializeLazy
+    private final ByteBuffer payload;
+    private final int payloadOffset;
+    private final int payloadLength;
+    private int[] valueOffsets;
+    // dictionary the payload's references point into, if any
+    private final TextDictionary dictionary;
+    // whether the payload is in the compact layout
+    private final boolean compact;
+
+    private Row(Schema schema,
+                long writeTime,
+                Object[] key,
+                byte[] comparableKey,
+                long[] primitives,
+                Object[] values,
+                int present) {
+        this(schema, writeTime, key, comparableKey, primitives, values, present, null, 0, 0, null, false);
+    }
 
     private Row(Schema schema,
                 long writeTime,
                 Object[] key,
-                Map<Schema.Column, Object> rowColumns) {
+                byte[] comparableKey,
+                long[] primitives,
+                Object[] values,
+                int present,
+                ByteBuffer payload,
+                int payloadOffset,
+                int payloadLength,
+                TextDictionary dictionary,
+                boolean compact) {
         this.schema = schema;
         this.writeTime = writeTime;
         this.key = key;
-        this.rowColumns = rowColumns;
+        this.comparableKey = comparableKey;
+        this.primitives = primitives;
+        this.values = values;
+        this.present = present;
+        this.decoded = payload == null ? present : 0;
+        this.payload = payload;
+        this.payloadOffset = payloadOffset;
+        this.payloadLength = payloadLength;
+        this.dictionary = dictionary;
+        this.compact = compact;
     }
 
     public long writeTime() {
         return writeTime;
     }
 
+    /**
+     * Byte-comparable encoding of the clustering key. The returned array must
+     * not be modified.
+     */
+    public byte[] comparableKey() {
+        if (comparableKey == null)
+            comparableKey = comparableKey(schema, key);
+        return comparableKey;
+    }
+
+    /**
+     * Encodes the given clustering key values (in schema order) with their
+     * byte-comparable encoding, e.g. to look up or bound rows by key.
+     */
+    public static byte[] comparableKey(Schema schema, Object... values) {
+        assert values.length == schema.clusteringKeyColumns().size() : "Can't encode a partial clustering";
+
+        int size = 0;
+        int i = 0;
+        for (Schema.Column<?> c : schema.clusteringKeyColumns())
+            size += c.type.comparableSize(values[i++]);
+
+        byte[] bytes = new byte[size];
+        ByteBuffer buffer = ByteBuffer.wrap(bytes);
+        int position = 0;
+        i = 0;
+        for (Schema.Column<?> c : schema.clusteringKeyColumns())
+            position += c.type.serializeComparable(values[i++], buffer, position);
+
+        return bytes;
+    }
+
+    private Object[] keyValues() {
+        if (key == null) {
+            Object[] values = new Object[schema.clusteringKeyColumns().size()];
+            ByteBuffer buffer = ByteBuffer.wrap(comparableKey);
+            int position = 0;
+            int i = 0;
+            for (Schema.Column<?> c : schema.clusteringKeyColumns()) {
+                values[i++] = c.type.deserializeComparable(buffer, position);
+                position = c.type.skipComparable(buffer, position);
+            }
+            key = values;
+        }
+        return key;
+    }
+
     public boolean hasColumn(Schema.Column column) {
-        return rowColumns.containsKey(column);
+        return column.columnType == Schema.ColumnType.ROW_COLUMN && (present & (1 << column.ordinal)) != 0;
     }
 
+    /**
+     * Value of the given column, boxed if the column has a primitive type,
+     * or null if the row has no value for it.
+     */
     public Object getColumn(Schema.Column column) {
-        return rowColumns.get(column);
+        if (!hasColumn(column))
+            return null;
+
+        decode(column);
+        if (column.isPrimitive())
+            return ((PrimitiveType<?>) column.type).box(primitives[column.slot]);
+        return values[column.slot];
+    }
+
+    /**
+     * Unboxed value of a column of a {@link PrimitiveType}.
+     *
+     * @throws NoSuchElementException if the row has no value for the column
+     */
+    public long getLong(Schema.Column column) {
+        assert column.isPrimitive() : "Column " + column.name + " is not of a primitive type";
+        if (!hasColumn(column))
+            throw new NoSuchElementException("Row has no value for column " + column.name);
+
+        decode(column);
+        return primitives[column.slot];
+    }
+
+    /**
+     * Unboxed value of a column of {@link com.datastax.serde.IntType}.
+     *
+     * @throws NoSuchElementException if the row has no value for the column
+     */
+    public int getInt(Schema.Column column) {
+        return (int) getLong(column);
+    }
+
+    /**
+     * Whether this row was read lazily and decodes its columns on demand.
+     */
+    public boolean isLazy() {
+        return payload != null;
+    }
+
+    /**
+     * Makes sure the value of a present column is in its slot.
+     */
+    private void decode(Schema.Column<?> column) {
+        int bit = 1 << column.ordinal;
+        if ((decoded & bit) != 0)
+            return;
+
+        if (valueOffsets == null) {
+            // one pass over the values, skipping them without decoding
+            int[] offsets = new int[schema.rowColumnCount()];
+            int stored = storedColumns();
+            int position = compact
+                           ? VInt.skip(payload, payloadOffset)
+                           : payloadOffset + Integer.BYTES;
+            for (Schema.Column<?> c : schema.rowColumns()) {
+                if ((stored & (1 << c.ordinal)) != 0) {
+                    offsets[c.ordinal] = position;
+                    position = compact
+                               ? skipCompact(c, payload, position)
+                               : skip(c, payload, position, dictionary);
+                }
+            }
+            valueOffsets = offsets;
+        }
+
+        int offset = valueOffsets[column.ordinal];
+        if (compact) {
+            if (column.isPrimitive())
+                primitives[column.slot] = VInt.unZigZag(VInt.read(payload, offset));
+            else
+                values[column.slot] = deserializeCompactValue(column, payload, offset, dictionary);
+        } else {
+            if (column.isPrimitive())
+                primitives[column.slot] = ((PrimitiveType<?>) column.type).deserializeLong(payload, offset);
+            else
+                values[column.slot] = deserializeValue(column, payload, offset, dictionary);
+        }
+        decoded |= bit;
+    }
+
+    /**
+     * Presence bitmap of the payload, which has more columns than the row
+     * if the row is projected.
+     */
+    private int storedColumns() {
+        return compact ? (int) VInt.read(payload, payloadOffset) : payload.getInt(payloadOffset);
+    }
+
+    /**
+     * Whether the row's serialized columns can be written as they are.
+     */
+    private boolean copiesPayload() {
+        return payload != null && dictionary == null && !compact && storedColumns() == present;
+    }
+
+    private void decodeAll() {
+        for (Schema.Column<?> c : schema.rowColumns()) {
+            if (hasColumn(c))
+                decode(c);
+        }
+    }
+
+    private static Object deserializeValue(Schema.Column<?> column, ByteBuffer buffer, int offset, TextDictionary dictionary) {
+        if (dictionary != null && TextDictionary.isReference(buffer, offset))
+            return dictionary.get(TextDictionary.readReference(buffer, offset));
+        return column.type.deserialize(buffer, offset);
+    }
+
+    /**
+     * Absolute offset of the first byte after the value of the column
+     * starting at the given offset.
+     */
+    private static int skip(Schema.Column<?> column, ByteBuffer buffer, int offset, TextDictionary dictionary) {
+        if (column.isPrimitive())
+            return offset + ((PrimitiveType<?>) column.type).fixedSize();
+        if (dictionary != null && TextDictionary.isReference(buffer, offset))
+            return offset + TextDictionary.REFERENCE_SIZE;
+        return column.type.skip(buffer, offset);
+    }
+
+    private static Object deserializeCompactValue(Schema.Column<?> column, ByteBuffer buffer, int offset, TextDictionary dictionary) {
+        if (column.type != TextType.instance)
+            return column.type.deserialize(buffer, offset);
+
+        long tag = VInt.read(buffer, offset);
+        if ((tag & 1) != 0) {
+            if (dictionary == null)
+                throw new MarshalException("Corrupted row: dictionary reference without a dictionary");
+            return dictionary.get((int) (tag >>> 1));
+        }
+
+        int length = (int) (tag >>> 1);
+        int start = offset + VInt.sizeOf(tag);
+        if (buffer.hasArray())
+            return Utf8.decode(buffer.array(), buffer.arrayOffset() + start, length);
+
+        byte[] bytes = Utf8.scratch(length);
+        ByteBuffer src = buffer.duplicate();
+        src.position(start);
+        src.get(bytes, 0, length);
+        return Utf8.decode(bytes, 0, length);
+    }
+
+    /**
+     * Same as {@link #skip} for a value in the compact layout.
+     */
+    private static int skipCompact(Schema.Column<?> column, ByteBuffer buffer, int offset) {
+        if (column.isPrimitive())
+            return VInt.skip(buffer, offset);
+        if (column.type != TextType.instance)
+            return column.type.skip(buffer, offset);
+
+        long tag = VInt.read(buffer, offset);
+        int end = offset + VInt.sizeOf(tag);
+        return (tag & 1) != 0 ? end : end + (int) (tag >>> 1);
     }
 
     public static Row merge(Row l, Row r) {
         assert l.schema.equals(r.schema) : "Can't merge rows of different schema.";
-        assert Arrays.equals(l.key, r.key) : "Can't merge rows of different clusterings";
+        assert Arrays.equals(l.comparableKey(), r.comparableKey()) : "Can't merge rows of different clusterings";
 
         return l.writeTime() >= r.writeTime() ? l : r;
     }
 
     @Override
     public int compareTo(Row o) {
-        assert this.key.length == o.key.length : "Can't compare different clusterings";
-        assert this.schema == o.schema;
+        assert this.schema == o.schema || this.schema.equals(o.schema);
 
-        for (int i = 0; i < key.length; i++) {
-            AbstractType type = schema.getClusteringKey(i).type;
-            int res = type.compare(key[i], o.key[i]);
-            if (res != 0)
-                return res;
-        }
-        return 0;
+        return ByteBufferUtil.compareUnsigned(comparableKey(), o.comparableKey());
     }
 
     @Override
@@ -74,83 +326,551 @@ public final class Row implements Comparable<Row> {
         if (this == o) return true;
         if (o == null || getClass() != o.getClass()) return false;
         Row row = (Row) o;
-        return writeTime == row.writeTime &&
-                Arrays.equals(key, row.key) &&
-                Objects.equals(schema, row.schema) &&
-                Objects.equals(rowColumns, row.rowColumns);
+        if (writeTime != row.writeTime ||
+                present != row.present ||
+                !Objects.equals(schema, row.schema) ||
+                !Arrays.equals(comparableKey(), row.comparableKey()))
+            return false;
+
+        for (Schema.Column<?> c : schema.rowColumns()) {
+            if (!hasColumn(c))
+                continue;
+
+            decode(c);
+            row.decode(c);
+            if (c.isPrimitive() ? primitives[c.slot] != row.primitives[c.slot]
+                                : !Objects.equals(values[c.slot], row.values[c.slot]))
+                return false;
+        }
+        return true;
     }
 
     @Override
     public int hashCode() {
-        return Objects.hash(key, writeTime, schema, rowColumns);
+        int result = Objects.hash(Arrays.hashCode(comparableKey()), writeTime, schema, present);
+        for (Schema.Column<?> c : schema.rowColumns()) {
+            if (!hasColumn(c))
+                continue;
+
+            decode(c);
+            result = 31 * result + (c.isPrimitive() ? Long.hashCode(primitives[c.slot])
+                                                    : Objects.hashCode(values[c.slot]));
+        }
+        return result;
     }
 
+    /**
+     * Writes the write time, the clustering key in its byte-comparable
+     * encoding (see {@link com.datastax.serde.AbstractType#serializeComparable})
+     * prefixed with its length, the presence bitmap and the values of the
+     * present columns. Rows are ordered by comparing key bytes as unsigned,
+     * so rows read back are compared without decoding their keys.
+     */
     public void serialize(DataOutput out) throws IOException {
         out.writeLong(writeTime);
 
-        int i = 0;
-        for (Schema.Column<?> c : schema.clusteringKeyColumns()) {
-            c.type.serialize(key[i], out);
-            i++;
+        byte[] keyBytes = comparableKey();
+        out.writeInt(keyBytes.length);
+        out.write(keyBytes);
+
+        if (copiesPayload()) {
+            // columns were never decoded, copy them as they are
+            if (payload.hasArray()) {
+                out.write(payload.array(), payload.arrayOffset() + payloadOffset, payloadLength);
+            } else {
+                byte[] bytes = new byte[payloadLength];
+                ByteBuffer src = payload.duplicate();
+                src.position(payloadOffset);
+                src.get(bytes);
+                out.write(bytes);
+            }
+            return;
         }
 
-        int rowsBitmap = 0x0;
-        i = 0;
-        for (Schema.Column<?> column : schema.rowColumns()) {
-            if (hasColumn(column)) {
-                rowsBitmap |= (1 << i);
-            }
-            i++;
+        if (payload != null)
+            decodeAll();
+
+        out.writeInt(present);
+
+        for (Schema.Column<?> c : schema.rowColumns()) {
+            if (!hasColumn(c))
+                continue;
+
+            if (c.isPrimitive())
+                ((PrimitiveType<?>) c.type).serializeLong(primitives[c.slot], out);
+            else
+                c.type.serialize(values[c.slot], out);
         }
-        out.writeInt(rowsBitmap);
+    }
+
+    /**
+     * Writes the row starting at the given absolute offset of the buffer,
+     * which has to have at least {@link #serializedSize()} bytes available,
+     * in the same layout as {@link #serialize(DataOutput)}.
+     *
+     * @return number of bytes written
+     */
+    public int serialize(ByteBuffer buffer, int offset) {
+        return serialize(buffer, offset, null, null);
+    }
+
+    /**
+     * Writes the row like {@link #serialize(ByteBuffer, int)}, with the
+     * values of the columns the dictionary encodes written as references.
+     * The buffer has to have at least {@link #serializedSize(TextDictionary.Builder, byte[])}
+     * bytes available.
+     *
+     * Given a previous key, the key is written relative to it: as the
+     * {@link VInt} length of the prefix the two keys share, followed by the
+     * vint length of the rest of the key and its bytes. An empty previous
+     * key makes the row a restart point, which can be read on its own.
+     *
+     * @param dictionary  dictionary of the row's block, or null
+     * @param previousKey key of the row before it, or null
+     * @return number of bytes written
+     */
+    public int serialize(ByteBuffer buffer, int offset, TextDictionary.Builder dictionary, byte[] previousKey) {
+        int position = offset;
+
+        buffer.putLong(position, writeTime);
+        position += Long.BYTES;
+
+        position += writeKey(buffer, position, previousKey, false);
+
+        if (copiesPayload() && dictionary == null) {
+            // columns were never decoded, copy them as they are
+            ByteBuffer dst = buffer.duplicate();
+            dst.position(position);
+            ByteBuffer src = payload.duplicate();
+            src.limit(payloadOffset + payloadLength).position(payloadOffset);
+            dst.put(src);
+            return position + payloadLength - offset;
+        }
+
+        if (payload != null)
+            decodeAll();
+
+        buffer.putInt(position, present);
+        position += Integer.BYTES;
 
         for (Schema.Column<?> c : schema.rowColumns()) {
-            c.type.serialize(getColumn(c), out);
+            if (!hasColumn(c))
+                continue;
+
+            if (c.isPrimitive())
+                position += ((PrimitiveType<?>) c.type).serializeLong(primitives[c.slot], buffer, position);
+            else if (dictionary != null && dictionary.encodes(c))
+                position += TextDictionary.writeReference(buffer, position, dictionary.code((String) values[c.slot]));
+            else
+                position += c.type.serialize(values[c.slot], buffer, position);
         }
+
+        return position - offset;
     }
 
     public int serializedSize() {
+        return serializedSize(null, null);
+    }
+
+    /**
+     * Size of the row serialized against the given dictionary and previous
+     * key, either of which may be null.
+     */
+    public int serializedSize(TextDictionary.Builder dictionary, byte[] previousKey) {
         int size = 0;
 
         // writetime
         size += Long.BYTES;
 
-        int i = 0;
-        // columns
-        for (Schema.Column<?> c : schema.clusteringKeyColumns())
-            size += c.type.sizeof(key[i++]);
+        // clustering key
+        size += keySize(previousKey, false);
+
+        if (copiesPayload() && dictionary == null)
+            return size + payloadLength;
+
+        if (payload != null)
+            decodeAll();
 
         // rows bitmap
         size += Integer.BYTES;
 
         // values
-        for (Schema.Column<?> c : schema.rowColumns())
-            size += c.type.sizeof(getColumn(c));
+        for (Schema.Column<?> c : schema.rowColumns()) {
+            if (!hasColumn(c))
+                continue;
+
+            if (c.isPrimitive())
+                size += ((PrimitiveType<?>) c.type).fixedSize();
+            else if (dictionary != null && dictionary.encodes(c))
+                size += TextDictionary.REFERENCE_SIZE;
+            else
+                size += c.type.sizeof(values[c.slot]);
+        }
 
         return size;
     }
 
+    /**
+     * Writes the row in the compact layout starting at the given absolute
+     * offset of the buffer, which has to have at least
+     * {@link #compactSerializedSize(long, TextDictionary.Builder, byte[])}
+     * bytes available.
+     *
+     * The compact layout trades decoding work for space: the write time is
+     * a zig-zag {@link VInt} delta from the base, key length and presence
+     * bitmap are unsigned vints, primitive values are zig-zag vints and text
+     * values are a vint tag followed by their UTF-8 bytes. The tag is the
+     * length shifted left by one, or the dictionary code shifted left by one
+     * with the low bit set for references. Other types keep their regular
+     * encoding.
+     *
+     * @param baseWriteTime write time the row's write time is stored relative to
+     * @param dictionary    dictionary of the row's block, or null
+     * @param previousKey   key of the row before it, or null
+     * @return number of bytes written
+     */
+    public int serializeCompact(ByteBuffer buffer, int offset, long baseWriteTime, TextDictionary.Builder dictionary, byte[] previousKey) {
+        if (payload != null)
+            decodeAll();
+
+        int position = offset;
+        position += VInt.write(VInt.zigZag(writeTime - baseWriteTime), buffer, position);
+        position += writeKey(buffer, position, previousKey, true);
+        ByteBuffer dst = buffer.duplicate();
+
+        position += VInt.write(Integer.toUnsignedLong(present), buffer, position);
+
+        for (Schema.Column<?> c : schema.rowColumns()) {
+            if (!hasColumn(c))
+                continue;
+
+            if (c.isPrimitive()) {
+                position += VInt.write(VInt.zigZag(primitives[c.slot]), buffer, position);
+            } else if (c.type != TextType.instance) {
+                position += c.type.serialize(values[c.slot], buffer, position);
+            } else if (dictionary != null && dictionary.encodes(c)) {
+                position += VInt.write((long) dictionary.code((String) values[c.slot]) << 1 | 1, buffer, position);
+            } else {
+                byte[] bytes = Utf8.encode((String) values[c.slot]);
+                position += VInt.write((long) bytes.length << 1, buffer, position);
+                dst.position(position);
+                dst.put(bytes);
+                position += bytes.length;
+            }
+        }
+
+        return position - offset;
+    }
+
+    /**
+     * Size of the row in the compact layout, see
+     * {@link #serializeCompact(ByteBuffer, int, long, TextDictionary.Builder, byte[])}.
+     */
+    public int compactSerializedSize(long baseWriteTime, TextDictionary.Builder dictionary, byte[] previousKey) {
+        if (payload != null)
+            decodeAll();
+
+        int size = VInt.sizeOf(VInt.zigZag(writeTime - baseWriteTime))
+                   + keySize(previousKey, true)
+                   + VInt.sizeOf(Integer.toUnsignedLong(present));
+
+        for (Schema.Column<?> c : schema.rowColumns()) {
+            if (!hasColumn(c))
+                continue;
+
+            if (c.isPrimitive()) {
+                size += VInt.sizeOf(VInt.zigZag(primitives[c.slot]));
+            } else if (c.type != TextType.instance) {
+                size += c.type.sizeof(values[c.slot]);
+            } else if (dictionary != null && dictionary.encodes(c)) {
+                size += VInt.sizeOf((long) dictionary.code((String) values[c.slot]) << 1 | 1);
+            } else {
+                int length = Utf8.encodedLength((String) values[c.slot]);
+                size += VInt.sizeOf((long) length << 1) + length;
+            }
+        }
+
+        return size;
+    }
+
+    private int keySize(byte[] previousKey, boolean compact) {
+        byte[] key = comparableKey();
+        if (previousKey != null) {
+            int suffix = key.length - sharedPrefix(previousKey, key);
+            return VInt.sizeOf(key.length - suffix) + VInt.sizeOf(suffix) + suffix;
+        }
+        return (compact ? VInt.sizeOf(key.length) : Integer.BYTES) + key.length;
+    }
+
+    private int writeKey(ByteBuffer buffer, int offset, byte[] previousKey, boolean compact) {
+        byte[] key = comparableKey();
+        int shared = 0;
+        int position = offset;
+        if (previousKey != null) {
+            shared = sharedPrefix(previousKey, key);
+            position += VInt.write(shared, buffer, position);
+            position += VInt.write(key.length - shared, buffer, position);
+        } else if (compact) {
+            position += VInt.write(key.length, buffer, position);
+        } else {
+            buffer.putInt(position, key.length);
+            position += Integer.BYTES;
+        }
+
+        ByteBuffer dst = buffer.duplicate();
+        dst.position(position);
+        dst.put(key, shared, key.length - shared);
+        return position + key.length - shared - offset;
+    }
+
+    private static int sharedPrefix(byte[] l, byte[] r) {
+        int length = Math.min(l.length, r.length);
+        for (int i = 0; i < length; i++) {
+            if (l[i] != r[i])
+                return i;
+        }
+        return length;
+    }
+
+    /**
+     * Reads a key written by {@link #writeKey}.
+     */
+    private static byte[] readKey(ByteBuffer buffer, int offset, byte[] previousKey, boolean compact) {
+        int shared = 0;
+        int length;
+        int position = offset;
+        if (previousKey != null) {
+            shared = VInt.readInt(buffer, position);
+            position += VInt.sizeOf(shared);
+            if (shared > previousKey.length)
+                throw new MarshalException("Corrupted row: key shares " + shared + " bytes with a key of " + previousKey.length);
+            length = VInt.readInt(buffer, position);
+            position += VInt.sizeOf(length);
+        } else if (compact) {
+            length = VInt.readInt(buffer, position);
+            position += VInt.sizeOf(length);
+        } else {
+            length = buffer.getInt(position);
+            position += Integer.BYTES;
+        }
+
+        byte[] bytes = new byte[shared + length];
+        System.arraycopy(previousKey == null ? bytes : previousKey, 0, bytes, 0, shared);
+        ByteBuffer src = buffer.duplicate();
+        src.position(position);
+        src.get(bytes, shared, length);
+        return bytes;
+    }
+
+    /**
+     * Absolute offset of the first byte after the key starting at the given offset.
+     */
+    private static int skipKey(ByteBuffer buffer, int offset, boolean prefixed, boolean compact) {
+        if (prefixed) {
+            int position = VInt.skip(buffer, offset);
+            int length = VInt.readInt(buffer, position);
+            return position + VInt.sizeOf(length) + length;
+        }
+        if (compact) {
+            int length = VInt.readInt(buffer, offset);
+            return offset + VInt.sizeOf(length) + length;
+        }
+        return offset + Integer.BYTES + buffer.getInt(offset);
+    }
+
     public static Row deserialize(Schema schema, DataInput in) throws IOException {
         final long writeTime = in.readLong();
 
-        Object[] clusteringKey = new Object[schema.clusteringKeyColumns().size()];
-        Map<Schema.Column, Object> columns = new HashMap<>();
+        byte[] clusteringKey = new byte[in.readInt()];
+        in.readFully(clusteringKey);
 
-        int i = 0;
-        for (Schema.Column<?> c : schema.clusteringKeyColumns()) {
-            clusteringKey[i++] = c.type.deserialize(in);
-        }
+        long[] primitives = new long[schema.primitiveSlots()];
+        Object[] values = new Object[schema.objectSlots()];
 
         final int rowsBitmap = in.readInt();
-        i = 0;
         for (Schema.Column<?> c : schema.rowColumns()) {
-            if ((rowsBitmap & (1 << i)) != 0){
-                columns.put(c, c.type.deserialize(in));
+            if ((rowsBitmap & (1 << c.ordinal)) == 0)
+                continue;
+
+            if (c.isPrimitive())
+                primitives[c.slot] = ((PrimitiveType<?>) c.type).deserializeLong(in);
+            else
+                values[c.slot] = c.type.deserialize(in);
+        }
+
+        return new Row(schema, writeTime, null, clusteringKey, primitives, values, rowsBitmap);
+    }
+
+    /**
+     * Reads a row starting at the given absolute offset of the buffer. The
+     * buffer's position is left untouched.
+     */
+    public static Row deserialize(Schema schema, ByteBuffer buffer, int offset) {
+        return deserialize(schema, buffer, offset, null, null, -1);
+    }
+
+    /**
+     * Reads a row projected on the given columns, see {@link Schema#rowColumnMask}.
+     * Values of other columns are skipped without being decoded and the row
+     * reads as if they were absent.
+     */
+    public static Row deserialize(Schema schema, ByteBuffer buffer, int offset, int projection) {
+        return deserialize(schema, buffer, offset, null, null, projection);
+    }
+
+    /**
+     * Reads a row serialized against the given dictionary and previous key,
+     * either of which may be null.
+     */
+    public static Row deserialize(Schema schema, ByteBuffer buffer, int offset, TextDictionary dictionary, byte[] previousKey) {
+        return deserialize(schema, buffer, offset, dictionary, previousKey, -1);
+    }
+
+    private static Row deserialize(Schema schema, ByteBuffer buffer, int offset, TextDictionary dictionary, byte[] previousKey, int projection) {
+        int position = offset;
+
+        final long writeTime = buffer.getLong(position);
+        position += Long.BYTES;
+
+        byte[] clusteringKey = readKey(buffer, position, previousKey, false);
+        position = skipKey(buffer, position, previousKey != null, false);
+
+        long[] primitives = new long[schema.primitiveSlots()];
+        Object[] values = new Object[schema.objectSlots()];
+
+        final int rowsBitmap = buffer.getInt(position);
+        position += Integer.BYTES;
+
+        for (Schema.Column<?> c : schema.rowColumns()) {
+            int bit = 1 << c.ordinal;
+            if ((rowsBitmap & bit) == 0)
+                continue;
+
+            if ((projection & bit) == 0) {
+                position = skip(c, buffer, position, dictionary);
+            } else if (c.isPrimitive()) {
+                PrimitiveType<?> type = (PrimitiveType<?>) c.type;
+                primitives[c.slot] = type.deserializeLong(buffer, position);
+                position += type.fixedSize();
+            } else {
+                values[c.slot] = deserializeValue(c, buffer, position, dictionary);
+                position = skip(c, buffer, position, dictionary);
+            }
+        }
+
+        return new Row(schema, writeTime, null, clusteringKey, primitives, values, rowsBitmap & projection);
+    }
+
+    /**
+     * Reads a row of {@code length} bytes starting at the given absolute
+     * offset, decoding only the write time and the presence bitmap. The row
+     * keeps referencing the buffer to decode its columns on demand, so the
+     * buffer's content must not change for as long as the row is used.
+     * Decoded values are cached without synchronization, so the row must not
+     * be shared between threads that read its columns concurrently.
+     */
+    public static Row deserializeLazy(Schema schema, ByteBuffer buffer, int offset, int length) {
+        return deserializeLazy(schema, buffer, offset, length, null, null, -1);
+    }
+
+    /**
+     * Reads a row projected on the given columns lazily, see {@link Schema#rowColumnMask}.
+     * The row is serialized from its decoded values.
+     */
+    public static Row deserializeLazy(Schema schema, ByteBuffer buffer, int offset, int length, int projection) {
+        return deserializeLazy(schema, buffer, offset, length, null, null, projection);
+    }
+
+    /**
+     * Reads a row serialized against the given dictionary and previous key,
+     * either of which may be null, lazily. Columns are decoded with the
+     * dictionary and share its instances; with a dictionary, the row is
+     * serialized from its decoded values.
+     */
+    public static Row deserializeLazy(Schema schema, ByteBuffer buffer, int offset, int length, TextDictionary dictionary, byte[] previousKey) {
+        return deserializeLazy(schema, buffer, offset, length, dictionary, previousKey, -1);
+    }
+
+    private static Row deserializeLazy(Schema schema, ByteBuffer buffer, int offset, int length, TextDictionary dictionary, byte[] previousKey, int projection) {
+        int position = offset;
+
+        final long writeTime = buffer.getLong(position);
+        position += Long.BYTES;
+
+        byte[] clusteringKey = readKey(buffer, position, previousKey, false);
+        position = skipKey(buffer, position, previousKey != null, false);
+
+        return new Row(schema,
+                       writeTime,
+                       null,
+                       clusteringKey,
+                       new long[schema.primitiveSlots()],
+                       new Object[schema.objectSlots()],
+                       buffer.getInt(position) & projection,
+                       buffer,
+                       position,
+                       offset + length - position,
+                       dictionary,
+                       false);
+    }
+
+    /**
+     * Reads a row written by {@link #serializeCompact(ByteBuffer, int, long, TextDictionary.Builder, byte[])}.
+     */
+    public static Row deserializeCompact(Schema schema, ByteBuffer buffer, int offset, long baseWriteTime, TextDictionary dictionary, byte[] previousKey) {
+        long delta = VInt.read(buffer, offset);
+        int position = offset + VInt.sizeOf(delta);
+
+        byte[] clusteringKey = readKey(buffer, position, previousKey, true);
+        position = skipKey(buffer, position, previousKey != null, true);
+
+        long[] primitives = new long[schema.primitiveSlots()];
+        Object[] values = new Object[schema.objectSlots()];
+
+        long bitmap = VInt.read(buffer, position);
+        position += VInt.sizeOf(bitmap);
+        int rowsBitmap = (int) bitmap;
+
+        for (Schema.Column<?> c : schema.rowColumns()) {
+            if ((rowsBitmap & (1 << c.ordinal)) == 0)
+                continue;
+
+            if (c.isPrimitive()) {
+                long value = VInt.read(buffer, position);
+                primitives[c.slot] = VInt.unZigZag(value);
+                position += VInt.sizeOf(value);
+            } else {
+                values[c.slot] = deserializeCompactValue(c, buffer, position, dictionary);
+                position = skipCompact(c, buffer, position);
             }
-            i++;
         }
 
-        return new Row(schema, writeTime, clusteringKey, columns);
+        return new Row(schema, baseWriteTime + VInt.unZigZag(delta), null, clusteringKey, primitives, values, rowsBitmap);
+    }
+
+    /**
+     * Reads a row of {@code length} bytes in the compact layout lazily, see
+     * {@link #deserializeLazy(Schema, ByteBuffer, int, int)}.
+     */
+    public static Row deserializeCompactLazy(Schema schema, ByteBuffer buffer, int offset, int length, long baseWriteTime, TextDictionary dictionary, byte[] previousKey) {
+        long delta = VInt.read(buffer, offset);
+        int position = offset + VInt.sizeOf(delta);
+
+        byte[] clusteringKey = readKey(buffer, position, previousKey, true);
+        position = skipKey(buffer, position, previousKey != null, true);
+
+        return new Row(schema,
+                       baseWriteTime + VInt.unZigZag(delta),
+                       null,
+                       clusteringKey,
+                       new long[schema.primitiveSlots()],
+                       new Object[schema.objectSlots()],
+                       (int) VInt.read(buffer, position),
+                       buffer,
+                       position,
+                       offset + length - position,
+                       dictionary,
+                       true);
     }
 
     @Override
@@ -159,6 +879,7 @@ public final class Row implements Comparable<Row> {
         b.append("Row(").append("ts=").append(writeTime).append(" ");
 
         b.append("[");
+        Object[] key = keyValues();
         int i = 0;
         for (Schema.Column<?> column : schema.clusteringKeyColumns()) {
             b.append(" ")
@@ -192,10 +913,12 @@ public final class Row implements Comparable<Row> {
      */
     public static class RowBuilder {
 
-        final Map<Schema.Column, Object> clusteringKey;
-        final Map<Schema.Column, Object> columns;
+        final Object[] clusteringKey;
+        final long[] primitives;
+        final Object[] values;
         final Schema schema;
         final long writeTime;
+        int present;
 
         private RowBuilder(Schema schema) {
             this(schema, System.currentTimeMillis());
@@ -203,40 +926,60 @@ public final class Row implements Comparable<Row> {
 
         private RowBuilder(Schema schema, long writeTime) {
             this.schema = schema;
-            this.clusteringKey =  new HashMap<>();
-            this.columns = new HashMap<>();
+            this.clusteringKey = new Object[schema.clusteringKeyColumns().size()];
+            this.primitives = new long[schema.primitiveSlots()];
+            this.values = new Object[schema.objectSlots()];
             this.writeTime = writeTime;
         }
 
         public RowBuilder addKey(String columnName, Object value) {
             Schema.Column<?> column = schema.getColumn(columnName);
             assert column.columnType == Schema.ColumnType.CLUSTERING_KEY : "Column " + columnName + " is not a part of clustering key";
-            this.clusteringKey.put(column, value);
+            this.clusteringKey[column.ordinal] = value;
             return this;
         }
 
+        @SuppressWarnings("unchecked")
         public RowBuilder addColumn(String columnName, Object value) {
-            Schema.Column<?> column = schema.getColumn(columnName);
-            assert column.columnType == Schema.ColumnType.ROW_COLUMN : "Column " + columnName + " is not a row column";
-            this.columns.put(column, value);
+            Schema.Column<?> column = rowColumn(columnName);
+            if (value == null) {
+                present &= ~(1 << column.ordinal);
+                return this;
+            }
+
+            if (column.isPrimitive())
+                this.primitives[column.slot] = ((PrimitiveType<Object>) column.type).unbox(value);
+            else
+                this.values[column.slot] = value;
+            present |= 1 << column.ordinal;
+            return this;
+        }
+
+        public RowBuilder addColumn(String columnName, long value) {
+            Schema.Column<?> column = rowColumn(columnName);
+            assert column.isPrimitive() : "Column " + columnName + " is not of a primitive type";
+            this.primitives[column.slot] = value;
+            present |= 1 << column.ordinal;
             return this;
         }
 
+        public RowBuilder addColumn(String columnName, int value) {
+            return addColumn(columnName, (long) value);
+        }
+
         public Row row() {
             for (Schema.Column<?> c : schema.clusteringKeyColumns()) {
-                assert clusteringKey.containsKey(c) : "Can't build a row without Clustering Key " + c.name;
+                assert clusteringKey[c.ordinal] != null : "Can't build a row without Clustering Key " + c.name;
             }
 
-            return new Row(schema, writeTime, makeClustering(), columns);
+            // the builder may be reused, rows it returned must not change
+            return new Row(schema, writeTime, clusteringKey.clone(), null, primitives.clone(), values.clone(), present);
         }
 
-        private Object[] makeClustering() {
-            Object[] arr = new Object[schema.clusteringKeyColumns().size()];
-            int i = 0;
-            for (Schema.Column<?> column : schema.clusteringKeyColumns()) {
-                arr[i++] = clusteringKey.get(column);
-            }
-            return arr;
+        private Schema.Column<?> rowColumn(String columnName) {
+            Schema.Column<?> column = schema.getColumn(columnName);
+            assert column.columnType == Schema.ColumnType.ROW_COLUMN : "Column " + columnName + " is not a row column";
+            return column;
         }
     }
 
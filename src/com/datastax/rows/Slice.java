@@ -0,0 +1,98 @@
+package com.datastax.rows;
+
+import com.datastax.metadata.Schema;
+import com.datastax.util.ByteBufferUtil;
+
+/**
+ * Range of clustering keys, bounded by an optional start and end key. Each
+ * bound can be inclusive or exclusive; a null bound leaves that side open.
+ *
+ * Bounds are byte-comparable keys (see {@link Row#comparableKey(Schema, Object...)}),
+ * so rows are checked against a slice without decoding their keys.
+ */
+public final class Slice {
+    public static final Slice ALL = new Slice(null, true, null, true);
+
+    private final byte[] start;
+    private final boolean startInclusive;
+    private final byte[] end;
+    private final boolean endInclusive;
+
+    private Slice(byte[] start, boolean startInclusive, byte[] end, boolean endInclusive) {
+        this.start = start;
+        this.startInclusive = startInclusive;
+        this.end = end;
+        this.endInclusive = endInclusive;
+    }
+
+    public static Slice between(byte[] start, boolean startInclusive, byte[] end, boolean endInclusive) {
+        return new Slice(start, startInclusive, end, endInclusive);
+    }
+
+    public static Slice from(byte[] start, boolean inclusive) {
+        return new Slice(start, inclusive, null, true);
+    }
+
+    public static Slice to(byte[] end, boolean inclusive) {
+        return new Slice(null, true, end, inclusive);
+    }
+
+    /**
+     * Start key, or null if the slice is open at the start.
+     */
+    public byte[] start() {
+        return start;
+    }
+
+    public boolean startInclusive() {
+        return startInclusive;
+    }
+
+    /**
+     * End key, or null if the slice is open at the end.
+     */
+    public byte[] end() {
+        return end;
+    }
+
+    public boolean endInclusive() {
+        return endInclusive;
+    }
+
+    public boolean isBeforeStart(byte[] key) {
+        if (start == null)
+            return false;
+
+        int cmp = ByteBufferUtil.compareUnsigned(key, start);
+        return cmp < 0 || (cmp == 0 && !startInclusive);
+    }
+
+    public boolean isAfterEnd(byte[] key) {
+        if (end == null)
+            return false;
+
+        int cmp = ByteBufferUtil.compareUnsigned(key, end);
+        return cmp > 0 || (cmp == 0 && !endInclusive);
+    }
+
+    public boolean isBeforeStart(Row row) {
+        return isBeforeStart(row.comparableKey());
+    }
+
+    public boolean isAfterEnd(Row row) {
+        return isAfterEnd(row.comparableKey());
+    }
+
+    public boolean contains(Row row) {
+        return !isBeforeStart(row) && !isAfterEnd(row);
+    }
+
+    @Override
+    public String toString() {
+        return (startInclusive ? "[" : "(") +
+               (start == null ? "" : ByteBufferUtil.hexDump(start)) +
+               ", " +
+               (end == null ? "" : ByteBufferUtil.hexDump(end)) +
+               (endInclusive ? "]" : ")");
+    }
+}
@@ -0,0 +1,204 @@
+package com.datastax.rows;
+
+import com.datastax.metadata.Schema;
+import com.datastax.serde.MarshalException;
+import com.datastax.serde.TextType;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Dictionary of the distinct values of low-cardinality text columns within
+ * a block of rows, see {@link com.datastax.writer.BlockTableWriter}.
+ *
+ * A value of a dictionary column is written as a {@value #REFERENCE_SIZE}
+ * byte reference {@code 0x8000 | code} instead of its length and UTF-8
+ * bytes. Text lengths never have their top bit set, so references and
+ * plain values can be told apart by their first byte and can be mixed in a
+ * column; rows in the compact layout tag their text values instead, see
+ * {@link Row#serializeCompact}. Readers decode every entry once per block
+ * and hand out the same {@link String} instance for every reference to it.
+ *
+ * The dictionary is stored at the start of its block, as its number of
+ * entries followed by every entry serialized as {@link TextType} values.
+ */
+public class TextDictionary {
+    public static final int MAX_SIZE = 1 << 15;
+    public static final int REFERENCE_SIZE = Short.BYTES;
+
+    private static final int REFERENCE_FLAG = 0x8000;
+
+    private final String[] values;
+    private final int serializedSize;
+
+    private TextDictionary(String[] values, int serializedSize) {
+        this.values = values;
+        this.serializedSize = serializedSize;
+    }
+
+    public int size() {
+        return values.length;
+    }
+
+    public String get(int code) {
+        if (code >= values.length)
+            throw new MarshalException("Corrupted block: dictionary code " + code + " >= " + values.length);
+        return values[code];
+    }
+
+    public int serializedSize() {
+        return serializedSize;
+    }
+
+    /**
+     * Whether the value at the given absolute offset is a reference.
+     */
+    static boolean isReference(ByteBuffer buffer, int offset) {
+        return (buffer.get(offset) & 0x80) != 0;
+    }
+
+    static int readReference(ByteBuffer buffer, int offset) {
+        return buffer.getShort(offset) & (REFERENCE_FLAG - 1);
+    }
+
+    static int writeReference(ByteBuffer buffer, int offset, int code) {
+        buffer.putShort(offset, (short) (REFERENCE_FLAG | code));
+        return REFERENCE_SIZE;
+    }
+
+    /**
+     * Reads the dictionary starting at the given absolute offset.
+     *
+     * @param canonical instances of values read so far, reused for equal
+     *                  values and extended with new ones; or null
+     */
+    public static TextDictionary deserialize(ByteBuffer buffer, int offset, Map<String, String> canonical) {
+        int size = buffer.getInt(offset);
+        if (size < 0 || size > MAX_SIZE)
+            throw new MarshalException("Corrupted block: dictionary of " + size + " entries");
+
+        String[] values = new String[size];
+        int position = offset + Integer.BYTES;
+        for (int i = 0; i < size; i++) {
+            String value = TextType.instance.deserialize(buffer, position);
+            position = TextType.instance.skip(buffer, position);
+            if (canonical != null) {
+                String existing = canonical.putIfAbsent(value, value);
+                if (existing != null)
+                    value = existing;
+            }
+            values[i] = value;
+        }
+        return new TextDictionary(values, position - offset);
+    }
+
+    /**
+     * Collects the values of a block's rows and picks the text columns worth
+     * encoding: those whose distinct values and references take less space
+     * than their plain values. Every row of the block has to be
+     * {@link #add(Row) added} before the first one is serialized.
+     */
+    public static class Builder {
+        private final List<Schema.Column<?>> textColumns = new ArrayList<>();
+        // per text column: distinct values and bytes of the column's plain values
+        private final List<Map<String, Integer>> distinct = new ArrayList<>();
+        private final long[] plainBytes;
+        private final long[] distinctBytes;
+        private final int[] references;
+
+        private Map<String, Integer> codes;
+        private List<String> entries;
+        // ordinals of the encoded columns
+        private int encoded;
+
+        public Builder(Schema schema) {
+            for (Schema.Column<?> c : schema.rowColumns()) {
+                if (c.type == TextType.instance) {
+                    textColumns.add(c);
+                    distinct.add(new HashMap<>());
+                }
+            }
+            plainBytes = new long[textColumns.size()];
+            distinctBytes = new long[textColumns.size()];
+            references = new int[textColumns.size()];
+        }
+
+        public void add(Row row) {
+            assert codes == null : "Can't add rows to a built dictionary";
+            for (int i = 0; i < textColumns.size(); i++) {
+                Schema.Column<?> c = textColumns.get(i);
+                if (!row.hasColumn(c))
+                    continue;
+
+                String value = (String) row.getColumn(c);
+                int size = TextType.instance.sizeof(value);
+                plainBytes[i] += size;
+                references[i]++;
+                Map<String, Integer> values = distinct.get(i);
+                // too many distinct values to ever encode the column
+                if (values.size() < MAX_SIZE && values.putIfAbsent(value, size) == null)
+                    distinctBytes[i] += size;
+            }
+        }
+
+        /**
+         * Picks the encoded columns and numbers their values; rows can be
+         * serialized against the builder from then on.
+         */
+        public void build() {
+            codes = new HashMap<>();
+            entries = new ArrayList<>();
+            for (int i = 0; i < textColumns.size(); i++) {
+                Map<String, Integer> values = distinct.get(i);
+                if (values.size() >= MAX_SIZE || distinctBytes[i] + (long) references[i] * REFERENCE_SIZE >= plainBytes[i])
+                    continue;
+
+                // the dictionary is shared by the encoded columns
+                int added = 0;
+                for (String value : values.keySet()) {
+                    if (!codes.containsKey(value))
+                        added++;
+                }
+                if (entries.size() + added > MAX_SIZE)
+                    continue;
+
+                for (String value : values.keySet()) {
+                    if (codes.putIfAbsent(value, entries.size()) == null)
+                        entries.add(value);
+                }
+                encoded |= 1 << textColumns.get(i).ordinal;
+            }
+        }
+
+        public boolean encodes(Schema.Column<?> column) {
+            return (encoded & (1 << column.ordinal)) != 0 && column.columnType == Schema.ColumnType.ROW_COLUMN;
+        }
+
+        public int code(String value) {
+            return codes.get(value);
+        }
+
+        public int serializedSize() {
+            int size = Integer.BYTES;
+            for (String entry : entries)
+                size += TextType.instance.sizeof(entry);
+            return size;
+        }
+
+        /**
+         * Writes the dictionary starting at the given absolute offset.
+         *
+         * @return number of bytes written
+         */
+        public int serialize(ByteBuffer buffer, int offset) {
+            buffer.putInt(offset, entries.size());
+            int position = offset + Integer.BYTES;
+            for (String entry : entries)
+                position += TextType.instance.serialize(entry, buffer, position);
+            return position - offset;
+        }
+    }
+}
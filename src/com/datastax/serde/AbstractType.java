@@ -3,9 +3,15 @@ package com.datastax.serde;
 import java.io.DataInput;
 import java.io.DataOutput;
 import java.io.IOException;
+import java.nio.ByteBuffer;
 
 /**
  * A common interface for data types
+ *
+ * Besides the stream based variants, every type can be written to and read
+ * from a {@link ByteBuffer} at an absolute offset. These variants neither
+ * depend on nor modify the buffer's position, so they can be used on shared,
+ * pooled or memory mapped buffers without intermediate copies.
  */
 public interface AbstractType<T> {
     int compare(T l, T r);
@@ -13,4 +19,51 @@ public interface AbstractType<T> {
     int sizeof(T value);
     T deserialize(DataInput in) throws IOException;
     boolean isFixedSize();
+
+    /**
+     * Writes the value starting at the given absolute offset.
+     *
+     * @return number of bytes written, same as {@link #sizeof(Object)}
+     */
+    int serialize(T value, ByteBuffer buffer, int offset);
+
+    /**
+     * Reads the value starting at the given absolute offset.
+     */
+    T deserialize(ByteBuffer buffer, int offset);
+
+    /**
+     * Skips the value starting at the given absolute offset without decoding it.
+     *
+     * @return absolute offset of the first byte after the value
+     */
+    int skip(ByteBuffer buffer, int offset);
+
+    /**
+     * Size of the value in the byte-comparable encoding.
+     */
+    int comparableSize(T value);
+
+    /**
+     * Writes the value in its byte-comparable encoding, starting at the given
+     * absolute offset. Comparing two encodings as unsigned byte sequences gives
+     * the same result as {@link #compare(Object, Object)}, and encodings are
+     * self-delimiting, so the encodings of a multi-part key can be concatenated
+     * and still compare part by part.
+     *
+     * @return number of bytes written, same as {@link #comparableSize(Object)}
+     */
+    int serializeComparable(T value, ByteBuffer buffer, int offset);
+
+    /**
+     * Reads a value written by {@link #serializeComparable(Object, ByteBuffer, int)}.
+     */
+    T deserializeComparable(ByteBuffer buffer, int offset);
+
+    /**
+     * Skips a byte-comparable value without decoding it.
+     *
+     * @return absolute offset of the first byte after the value
+     */
+    int skipComparable(ByteBuffer buffer, int offset);
 }
@@ -3,8 +3,9 @@ package com.datastax.serde;
 import java.io.DataInput;
 import java.io.DataOutput;
 import java.io.IOException;
+import java.nio.ByteBuffer;
 
-public class IntType implements AbstractType<Integer> {
+public class IntType implements PrimitiveType<Integer> {
 
     public static IntType instance = new IntType();
 
@@ -34,4 +35,83 @@ public class IntType implements AbstractType<Integer> {
     public boolean isFixedSize() {
         return true;
     }
+
+    @Override
+    public int serialize(Integer value, ByteBuffer buffer, int offset) {
+        buffer.putInt(offset, value);
+        return Integer.BYTES;
+    }
+
+    @Override
+    public Integer deserialize(ByteBuffer buffer, int offset) {
+        return buffer.getInt(offset);
+    }
+
+    @Override
+    public int skip(ByteBuffer buffer, int offset) {
+        return offset + Integer.BYTES;
+    }
+
+    @Override
+    public int comparableSize(Integer value) {
+        return Integer.BYTES;
+    }
+
+    /**
+     * Big-endian two's complement with the sign bit flipped, so that negative
+     * values sort before positive ones as unsigned bytes.
+     */
+    @Override
+    public int serializeComparable(Integer value, ByteBuffer buffer, int offset) {
+        buffer.putInt(offset, value ^ Integer.MIN_VALUE);
+        return Integer.BYTES;
+    }
+
+    @Override
+    public Integer deserializeComparable(ByteBuffer buffer, int offset) {
+        return buffer.getInt(offset) ^ Integer.MIN_VALUE;
+    }
+
+    @Override
+    public int skipComparable(ByteBuffer buffer, int offset) {
+        return offset + Integer.BYTES;
+    }
+
+    @Override
+    public int fixedSize() {
+        return Integer.BYTES;
+    }
+
+    @Override
+    public long unbox(Integer value) {
+        return value;
+    }
+
+    @Override
+    public Integer box(long value) {
+        return (int) value;
+    }
+
+    @Override
+    public void serializeLong(long value, DataOutput out) throws IOException {
+        assert value >= Integer.MIN_VALUE && value <= Integer.MAX_VALUE : "Value out of int range: " + value;
+        out.writeInt((int) value);
+    }
+
+    @Override
+    public long deserializeLong(DataInput in) throws IOException {
+        return in.readInt();
+    }
+
+    @Override
+    public int serializeLong(long value, ByteBuffer buffer, int offset) {
+        assert value >= Integer.MIN_VALUE && value <= Integer.MAX_VALUE : "Value out of int range: " + value;
+        buffer.putInt(offset, (int) value);
+        return Integer.BYTES;
+    }
+
+    @Override
+    public long deserializeLong(ByteBuffer buffer, int offset) {
+        return buffer.getInt(offset);
+    }
 }
@@ -3,8 +3,9 @@ package com.datastax.serde;
 import java.io.DataInput;
 import java.io.DataOutput;
 import java.io.IOException;
+import java.nio.ByteBuffer;
 
-public class LongType implements AbstractType<Long> {
+public class LongType implements PrimitiveType<Long> {
 
     public static LongType instance = new LongType();
 
@@ -34,4 +35,81 @@ public class LongType implements AbstractType<Long> {
     public boolean isFixedSize() {
         return true;
     }
+
+    @Override
+    public int serialize(Long value, ByteBuffer buffer, int offset) {
+        buffer.putLong(offset, value);
+        return Long.BYTES;
+    }
+
+    @Override
+    public Long deserialize(ByteBuffer buffer, int offset) {
+        return buffer.getLong(offset);
+    }
+
+    @Override
+    public int skip(ByteBuffer buffer, int offset) {
+        return offset + Long.BYTES;
+    }
+
+    @Override
+    public int comparableSize(Long value) {
+        return Long.BYTES;
+    }
+
+    /**
+     * Big-endian two's complement with the sign bit flipped, so that negative
+     * values sort before positive ones as unsigned bytes.
+     */
+    @Override
+    public int serializeComparable(Long value, ByteBuffer buffer, int offset) {
+        buffer.putLong(offset, value ^ Long.MIN_VALUE);
+        return Long.BYTES;
+    }
+
+    @Override
+    public Long deserializeComparable(ByteBuffer buffer, int offset) {
+        return buffer.getLong(offset) ^ Long.MIN_VALUE;
+    }
+
+    @Override
+    public int skipComparable(ByteBuffer buffer, int offset) {
+        return offset + Long.BYTES;
+    }
+
+    @Override
+    public int fixedSize() {
+        return Long.BYTES;
+    }
+
+    @Override
+    public long unbox(Long value) {
+        return value;
+    }
+
+    @Override
+    public Long box(long value) {
+        return value;
+    }
+
+    @Override
+    public void serializeLong(long value, DataOutput out) throws IOException {
+        out.writeLong(value);
+    }
+
+    @Override
+    public long deserializeLong(DataInput in) throws IOException {
+        return in.readLong();
+    }
+
+    @Override
+    public int serializeLong(long value, ByteBuffer buffer, int offset) {
+        buffer.putLong(offset, value);
+        return Long.BYTES;
+    }
+
+    @Override
+    public long deserializeLong(ByteBuffer buffer, int offset) {
+        return buffer.getLong(offset);
+    }
 }
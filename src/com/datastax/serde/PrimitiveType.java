@@ -0,0 +1,27 @@
+package com.datastax.serde;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * Fixed size type whose values fit in a {@code long}. Rows keep values of
+ * such types in primitive slots and use the methods below to read and write
+ * them without boxing.
+ */
+public interface PrimitiveType<T> extends AbstractType<T> {
+    /**
+     * Serialized size of every value of this type.
+     */
+    int fixedSize();
+
+    long unbox(T value);
+    T box(long value);
+
+    void serializeLong(long value, DataOutput out) throws IOException;
+    long deserializeLong(DataInput in) throws IOException;
+
+    int serializeLong(long value, ByteBuffer buffer, int offset);
+    long deserializeLong(ByteBuffer buffer, int offset);
+}
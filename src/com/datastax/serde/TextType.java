@@ -1,12 +1,25 @@
 package com.datastax.serde;
 
+import com.datastax.util.Utf8;
+
 import java.io.DataInput;
 import java.io.DataOutput;
 import java.io.IOException;
-import java.nio.charset.StandardCharsets;
-
+import java.nio.ByteBuffer;
+
+/**
+ * Variable length text, serialized as the length of its UTF-8 encoding
+ * followed by the encoding itself.
+ *
+ * The size of a value is taken with {@link Utf8#encodedLength(String)},
+ * without encoding it, so taking the size of a value and then serializing
+ * it encodes it once. Encodings are written and read in bulk, stream based
+ * deserialization through a per thread scratch buffer.
+ */
 public class TextType implements AbstractType<String> {
-    public static final int MAX_SERIALIZED_STRING_LENGTH = 2^31 + 1;
+    public static final int MAX_SERIALIZED_STRING_LENGTH = Integer.MAX_VALUE;
+
+    private static final int COMPARABLE_TERMINATOR_SIZE = 2;
 
     public static TextType instance = new TextType();
 
@@ -22,20 +35,21 @@ public class TextType implements AbstractType<String> {
         // For the sake of simplicity, I am assuming that neither the variable 'value' nor the variable 'out'
         // has the value null.
 
-        if (sizeof(value) > MAX_SERIALIZED_STRING_LENGTH) {
+        byte[] bytes = Utf8.encode(value);
+        if ((long) Integer.BYTES + bytes.length > MAX_SERIALIZED_STRING_LENGTH) {
             throw new IOException("The serializable size of a string must not exceed " +
                     MAX_SERIALIZED_STRING_LENGTH + " bytes.");
         }
 
-        out.writeInt(value.getBytes().length);
-        out.writeBytes(value);
+        out.writeInt(bytes.length);
+        out.write(bytes);
     }
 
     @Override
     public int sizeof(String value) {
         // For the sake of simplicity, I am assuming the value of the variable 'value' is not null.
 
-        return Integer.BYTES + value.getBytes().length;
+        return Integer.BYTES + Utf8.encodedLength(value);
     }
 
     @Override
@@ -43,19 +57,153 @@ public class TextType implements AbstractType<String> {
         // For the sake of simplicity, I am assuming the value of the variable 'in' is not null.
 
         int length = in.readInt();
-        byte[] bytes = new byte[length];
+        if (length < 0)
+            throw new MarshalException("Corrupted text: negative length " + length);
+
+        byte[] bytes = Utf8.scratch(length);
+        in.readFully(bytes, 0, length);
+        return Utf8.decode(bytes, 0, length);
+    }
 
-        for (int i = 0; i < length; i++) {
-            byte b = in.readByte();
+    @Override
+    public boolean isFixedSize() {
+        return false;
+    }
 
-            bytes[i] = b;
+    @Override
+    public int serialize(String value, ByteBuffer buffer, int offset) {
+        byte[] bytes = Utf8.encode(value);
+
+        if ((long) Integer.BYTES + bytes.length > MAX_SERIALIZED_STRING_LENGTH) {
+            throw new MarshalException("The serializable size of a string must not exceed " +
+                    MAX_SERIALIZED_STRING_LENGTH + " bytes.");
         }
 
-        return new String(bytes, StandardCharsets.UTF_8);
+        // nothing is written unless the whole value fits
+        if (offset < 0 || Integer.BYTES + bytes.length > buffer.limit() - offset)
+            throw new IndexOutOfBoundsException("Can't write " + (Integer.BYTES + bytes.length) + " bytes at " + offset + ", limit is " + buffer.limit());
+
+        buffer.putInt(offset, bytes.length);
+
+        int start = offset + Integer.BYTES;
+        if (buffer.hasArray()) {
+            System.arraycopy(bytes, 0, buffer.array(), buffer.arrayOffset() + start, bytes.length);
+        } else {
+            ByteBuffer dup = buffer.duplicate();
+            dup.position(start);
+            dup.put(bytes);
+        }
+
+        return Integer.BYTES + bytes.length;
     }
 
     @Override
-    public boolean isFixedSize() {
-        return false;
+    public String deserialize(ByteBuffer buffer, int offset) {
+        int length = buffer.getInt(offset);
+        int start = offset + Integer.BYTES;
+
+        if (buffer.hasArray())
+            return Utf8.decode(buffer.array(), buffer.arrayOffset() + start, length);
+
+        byte[] bytes = Utf8.scratch(length);
+        ByteBuffer dup = buffer.duplicate();
+        dup.position(start);
+        dup.get(bytes, 0, length);
+        return Utf8.decode(bytes, 0, length);
+    }
+
+    @Override
+    public int skip(ByteBuffer buffer, int offset) {
+        return offset + Integer.BYTES + buffer.getInt(offset);
+    }
+
+    @Override
+    public int comparableSize(String value) {
+        int size = COMPARABLE_TERMINATOR_SIZE;
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == 0 || (c >= 0x80 && c < 0x800))
+                size += 2;
+            else if (c < 0x80)
+                size += 1;
+            else
+                size += 3;
+        }
+        return size;
+    }
+
+    /**
+     * Every UTF-16 char is written as its own 1 to 3 byte UTF-8 sequence
+     * (surrogates included), which keeps the order of {@link String#compareTo}.
+     * A zero byte is escaped as {@code 00 FF} and the value is terminated by
+     * {@code 00 00}, which sorts before any other continuation.
+     */
+    @Override
+    public int serializeComparable(String value, ByteBuffer buffer, int offset) {
+        int position = offset;
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == 0) {
+                buffer.put(position++, (byte) 0);
+                buffer.put(position++, (byte) 0xFF);
+            } else if (c < 0x80) {
+                buffer.put(position++, (byte) c);
+            } else if (c < 0x800) {
+                buffer.put(position++, (byte) (0xC0 | (c >> 6)));
+                buffer.put(position++, (byte) (0x80 | (c & 0x3F)));
+            } else {
+                buffer.put(position++, (byte) (0xE0 | (c >> 12)));
+                buffer.put(position++, (byte) (0x80 | ((c >> 6) & 0x3F)));
+                buffer.put(position++, (byte) (0x80 | (c & 0x3F)));
+            }
+        }
+        buffer.put(position++, (byte) 0);
+        buffer.put(position++, (byte) 0);
+        return position - offset;
+    }
+
+    @Override
+    public String deserializeComparable(ByteBuffer buffer, int offset) {
+        // never more chars than encoded bytes
+        char[] chars = new char[skipComparable(buffer, offset) - offset - COMPARABLE_TERMINATOR_SIZE];
+        int length = 0;
+        int position = offset;
+
+        while (true) {
+            int b = buffer.get(position) & 0xFF;
+            if (b == 0) {
+                if (buffer.get(position + 1) == 0)
+                    break;
+                chars[length++] = 0;
+                position += 2;
+            } else if (b < 0x80) {
+                chars[length++] = (char) b;
+                position += 1;
+            } else if (b < 0xE0) {
+                chars[length++] = (char) (((b & 0x1F) << 6) | (buffer.get(position + 1) & 0x3F));
+                position += 2;
+            } else {
+                chars[length++] = (char) (((b & 0x0F) << 12) |
+                                          ((buffer.get(position + 1) & 0x3F) << 6) |
+                                          (buffer.get(position + 2) & 0x3F));
+                position += 3;
+            }
+        }
+
+        return new String(chars, 0, length);
+    }
+
+    @Override
+    public int skipComparable(ByteBuffer buffer, int offset) {
+        int position = offset;
+        while (true) {
+            if (buffer.get(position) != 0) {
+                position++;
+            } else if (buffer.get(position + 1) == 0) {
+                return position + COMPARABLE_TERMINATOR_SIZE;
+            } else {
+                position += 2;
+            }
+        }
     }
 }
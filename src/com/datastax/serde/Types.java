@@ -0,0 +1,33 @@
+package com.datastax.serde;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Names under which types are recorded in table files, see
+ * {@link com.datastax.metadata.Schema#serialize(java.io.DataOutput)}.
+ */
+public class Types {
+    private static final Map<String, AbstractType<?>> BY_NAME = new LinkedHashMap<>();
+
+    static {
+        BY_NAME.put("int", IntType.instance);
+        BY_NAME.put("long", LongType.instance);
+        BY_NAME.put("text", TextType.instance);
+    }
+
+    public static String nameOf(AbstractType<?> type) {
+        for (Map.Entry<String, AbstractType<?>> e : BY_NAME.entrySet()) {
+            if (e.getValue() == type)
+                return e.getKey();
+        }
+        throw new IllegalArgumentException("Type " + type + " has no registered name");
+    }
+
+    public static AbstractType<?> byName(String name) {
+        AbstractType<?> type = BY_NAME.get(name);
+        if (type == null)
+            throw new MarshalException("Unknown type " + name);
+        return type;
+    }
+}
@@ -86,6 +86,19 @@ public class ByteBufferUtil {
     }
 
 
+    /**
+     * Compares two byte arrays lexicographically, treating bytes as unsigned.
+     */
+    public static int compareUnsigned(byte[] l, byte[] r) {
+        int length = Math.min(l.length, r.length);
+        for (int i = 0; i < length; i++) {
+            int res = (l[i] & 0xff) - (r[i] & 0xff);
+            if (res != 0)
+                return res;
+        }
+        return l.length - r.length;
+    }
+
     public static boolean isOutOfBounds(int index, int length, int capacity) {
         return (index | length | (index + length) | (capacity - (index + length))) < 0;
     }
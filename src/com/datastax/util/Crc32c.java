@@ -0,0 +1,80 @@
+package com.datastax.util;
+
+import java.util.zip.Checksum;
+
+/**
+ * CRC-32C (Castagnoli) checksum. {@code java.util.zip.CRC32C} is only
+ * available from Java 9, so this is a plain Java port of the slicing-by-8
+ * algorithm: eight lookup tables let the main loop consume 8 bytes per
+ * iteration.
+ */
+public final class Crc32c implements Checksum {
+    // reflected Castagnoli polynomial
+    private static final int POLY = 0x82f63b78;
+
+    private static final int[][] TABLES = new int[8][256];
+
+    static {
+        for (int n = 0; n < 256; n++) {
+            int crc = n;
+            for (int k = 0; k < 8; k++)
+                crc = (crc & 1) != 0 ? (crc >>> 1) ^ POLY : crc >>> 1;
+            TABLES[0][n] = crc;
+        }
+        for (int n = 0; n < 256; n++) {
+            int crc = TABLES[0][n];
+            for (int t = 1; t < 8; t++) {
+                crc = TABLES[0][crc & 0xff] ^ (crc >>> 8);
+                TABLES[t][n] = crc;
+            }
+        }
+    }
+
+    private int crc = 0xffffffff;
+
+    @Override
+    public void update(int b) {
+        crc = TABLES[0][(crc ^ b) & 0xff] ^ (crc >>> 8);
+    }
+
+    @Override
+    public void update(byte[] b, int off, int len) {
+        crc = update(crc, b, off, len);
+    }
+
+    @Override
+    public long getValue() {
+        return ~crc & 0xffffffffL;
+    }
+
+    @Override
+    public void reset() {
+        crc = 0xffffffff;
+    }
+
+    /**
+     * Checksum of {@code len} bytes of the array starting at {@code off}.
+     */
+    public static int compute(byte[] b, int off, int len) {
+        return ~update(0xffffffff, b, off, len);
+    }
+
+    private static int update(int crc, byte[] b, int off, int len) {
+        int[] t0 = TABLES[0], t1 = TABLES[1], t2 = TABLES[2], t3 = TABLES[3];
+        int[] t4 = TABLES[4], t5 = TABLES[5], t6 = TABLES[6], t7 = TABLES[7];
+
+        int end = off + len;
+        while (end - off >= 8) {
+            int lo = crc ^ ((b[off] & 0xff) | (b[off + 1] & 0xff) << 8 | (b[off + 2] & 0xff) << 16 | (b[off + 3] & 0xff) << 24);
+            int hi = (b[off + 4] & 0xff) | (b[off + 5] & 0xff) << 8 | (b[off + 6] & 0xff) << 16 | (b[off + 7] & 0xff) << 24;
+            crc = t7[lo & 0xff] ^ t6[(lo >>> 8) & 0xff] ^ t5[(lo >>> 16) & 0xff] ^ t4[lo >>> 24] ^
+                  t3[hi & 0xff] ^ t2[(hi >>> 8) & 0xff] ^ t1[(hi >>> 16) & 0xff] ^ t0[hi >>> 24];
+            off += 8;
+        }
+
+        while (off < end)
+            crc = t0[(crc ^ b[off++]) & 0xff] ^ (crc >>> 8);
+
+        return crc;
+    }
+}
@@ -0,0 +1,220 @@
+package com.datastax.util;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * {@link DataInput} reading a file through memory mapping.
+ *
+ * A single {@link MappedByteBuffer} can not address more than 2 GB, so the
+ * file is mapped as a window of at most {@code segmentSize} bytes that slides
+ * forward: whenever a read would cross the end of the current window, the
+ * window is re-mapped starting at the current position. Primitive reads are
+ * therefore plain memory loads instead of stream calls.
+ *
+ * Mapped regions are released by the garbage collector once they are no
+ * longer referenced; {@link #close()} only closes the channel.
+ */
+public class MappedFileInput implements DataInput, Closeable {
+    public static final int DEFAULT_SEGMENT_SIZE = 1 << 30;
+
+    private final FileChannel channel;
+    private final long length;
+    private final int segmentSize;
+
+    private MappedByteBuffer segment;
+    private long segmentOffset;
+
+    public MappedFileInput(Path path) throws IOException {
+        this(path, DEFAULT_SEGMENT_SIZE);
+    }
+
+    public MappedFileInput(Path path, int segmentSize) throws IOException {
+        if (segmentSize < Long.BYTES)
+            throw new IllegalArgumentException("Segment size must be at least " + Long.BYTES + " bytes, got " + segmentSize);
+
+        this.channel = FileChannel.open(path, StandardOpenOption.READ);
+        this.length = channel.size();
+        this.segmentSize = segmentSize;
+        map(0);
+    }
+
+    public long length() {
+        return length;
+    }
+
+    public long position() {
+        return segmentOffset + segment.position();
+    }
+
+    public void seek(long position) throws IOException {
+        if (position < 0 || position > length)
+            throw new EOFException("Can't seek to " + position + ", file length is " + length);
+
+        if (position >= segmentOffset && position <= segmentOffset + segment.limit())
+            segment.position((int) (position - segmentOffset));
+        else
+            map(position);
+    }
+
+    /**
+     * Gives direct access to the next {@code length} bytes: they can be read at
+     * absolute offsets of the returned buffer, starting at its position. The
+     * input's position is not advanced.
+     *
+     * @return mapped segment, or null if {@code length} exceeds the segment size
+     */
+    public ByteBuffer window(int length) throws IOException {
+        if (length > segmentSize)
+            return null;
+
+        ensure(length);
+        return segment;
+    }
+
+    @Override
+    public void readFully(byte[] b) throws IOException {
+        readFully(b, 0, b.length);
+    }
+
+    @Override
+    public void readFully(byte[] b, int off, int len) throws IOException {
+        while (len > 0) {
+            if (!segment.hasRemaining())
+                ensure(1);
+
+            int n = Math.min(len, segment.remaining());
+            segment.get(b, off, n);
+            off += n;
+            len -= n;
+        }
+    }
+
+    @Override
+    public int skipBytes(int n) throws IOException {
+        long target = Math.min(length, position() + Math.max(0, n));
+        int skipped = (int) (target - position());
+        seek(target);
+        return skipped;
+    }
+
+    @Override
+    public boolean readBoolean() throws IOException {
+        return readByte() != 0;
+    }
+
+    @Override
+    public byte readByte() throws IOException {
+        ensure(Byte.BYTES);
+        return segment.get();
+    }
+
+    @Override
+    public int readUnsignedByte() throws IOException {
+        return readByte() & 0xff;
+    }
+
+    @Override
+    public short readShort() throws IOException {
+        ensure(Short.BYTES);
+        return segment.getShort();
+    }
+
+    @Override
+    public int readUnsignedShort() throws IOException {
+        return readShort() & 0xffff;
+    }
+
+    @Override
+    public char readChar() throws IOException {
+        ensure(Character.BYTES);
+        return segment.getChar();
+    }
+
+    @Override
+    public int readInt() throws IOException {
+        ensure(Integer.BYTES);
+        return segment.getInt();
+    }
+
+    @Override
+    public long readLong() throws IOException {
+        ensure(Long.BYTES);
+        return segment.getLong();
+    }
+
+    @Override
+    public float readFloat() throws IOException {
+        return Float.intBitsToFloat(readInt());
+    }
+
+    @Override
+    public double readDouble() throws IOException {
+        return Double.longBitsToDouble(readLong());
+    }
+
+    /**
+     * Reads a line the way {@link DataInputStream#readLine()} does: every
+     * byte is a char, and the line ends at {@code \n}, {@code \r},
+     * {@code \r\n} or at the end of the file.
+     *
+     * @return line without its terminator, or null at the end of the file
+     */
+    @Override
+    public String readLine() throws IOException {
+        if (position() >= length)
+            return null;
+
+        StringBuilder line = new StringBuilder();
+        while (position() < length) {
+            int c = readUnsignedByte();
+            if (c == '\n')
+                break;
+            if (c == '\r') {
+                if (position() < length) {
+                    ensure(Byte.BYTES);
+                    if (segment.get(segment.position()) == '\n')
+                        segment.position(segment.position() + 1);
+                }
+                break;
+            }
+            line.append((char) c);
+        }
+        return line.toString();
+    }
+
+    @Override
+    public String readUTF() throws IOException {
+        return DataInputStream.readUTF(this);
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+
+    /**
+     * Makes sure that the next {@code n} bytes can be read from the current
+     * segment, re-mapping the window at the current position if needed.
+     */
+    private void ensure(int n) throws IOException {
+        if (segment.remaining() >= n)
+            return;
+
+        long position = position();
+        if (position + n > length)
+            throw new EOFException("Can't read " + n + " bytes at " + position + ", file length is " + length);
+
+        map(position);
+    }
+
+    private void map(long position) throws IOException {
+        long size = Math.min(segmentSize, length - position);
+        segment = channel.map(FileChannel.MapMode.READ_ONLY, position, size);
+        segmentOffset = position;
+    }
+}
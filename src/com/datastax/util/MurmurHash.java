@@ -0,0 +1,94 @@
+package com.datastax.util;
+
+/**
+ * MurmurHash3 (x64, 128 bit variant) by Austin Appleby, placed in the
+ * public domain. Only the parts needed for hashing byte arrays are ported.
+ */
+public class MurmurHash {
+    private static final long C1 = 0x87c37b91114253d5L;
+    private static final long C2 = 0x4cf5ad432745937fL;
+
+    /**
+     * Hashes {@code length} bytes of the array starting at {@code offset}
+     * and stores the two 64 bit halves of the result in {@code result}.
+     */
+    // the tail bytes are mixed in by falling through from the highest one
+    @SuppressWarnings("fallthrough")
+    public static void hash3_x64_128(byte[] data, int offset, int length, long seed, long[] result) {
+        int blocks = length >> 4;
+
+        long h1 = seed;
+        long h2 = seed;
+
+        for (int i = 0; i < blocks; i++) {
+            long k1 = getLong(data, offset + i * 16);
+            long k2 = getLong(data, offset + i * 16 + 8);
+
+            k1 *= C1; k1 = Long.rotateLeft(k1, 31); k1 *= C2; h1 ^= k1;
+            h1 = Long.rotateLeft(h1, 27); h1 += h2; h1 = h1 * 5 + 0x52dce729;
+
+            k2 *= C2; k2 = Long.rotateLeft(k2, 33); k2 *= C1; h2 ^= k2;
+            h2 = Long.rotateLeft(h2, 31); h2 += h1; h2 = h2 * 5 + 0x38495ab5;
+        }
+
+        int tail = offset + (blocks << 4);
+        long k1 = 0;
+        long k2 = 0;
+
+        switch (length & 15) {
+            case 15: k2 ^= ((long) data[tail + 14] & 0xff) << 48;
+            case 14: k2 ^= ((long) data[tail + 13] & 0xff) << 40;
+            case 13: k2 ^= ((long) data[tail + 12] & 0xff) << 32;
+            case 12: k2 ^= ((long) data[tail + 11] & 0xff) << 24;
+            case 11: k2 ^= ((long) data[tail + 10] & 0xff) << 16;
+            case 10: k2 ^= ((long) data[tail + 9] & 0xff) << 8;
+            case 9:  k2 ^= ((long) data[tail + 8] & 0xff);
+                     k2 *= C2; k2 = Long.rotateLeft(k2, 33); k2 *= C1; h2 ^= k2;
+            case 8:  k1 ^= ((long) data[tail + 7] & 0xff) << 56;
+            case 7:  k1 ^= ((long) data[tail + 6] & 0xff) << 48;
+            case 6:  k1 ^= ((long) data[tail + 5] & 0xff) << 40;
+            case 5:  k1 ^= ((long) data[tail + 4] & 0xff) << 32;
+            case 4:  k1 ^= ((long) data[tail + 3] & 0xff) << 24;
+            case 3:  k1 ^= ((long) data[tail + 2] & 0xff) << 16;
+            case 2:  k1 ^= ((long) data[tail + 1] & 0xff) << 8;
+            case 1:  k1 ^= ((long) data[tail] & 0xff);
+                     k1 *= C1; k1 = Long.rotateLeft(k1, 31); k1 *= C2; h1 ^= k1;
+        }
+
+        h1 ^= length;
+        h2 ^= length;
+
+        h1 += h2;
+        h2 += h1;
+
+        h1 = fmix(h1);
+        h2 = fmix(h2);
+
+        h1 += h2;
+        h2 += h1;
+
+        result[0] = h1;
+        result[1] = h2;
+    }
+
+    // little-endian, as in the reference implementation
+    private static long getLong(byte[] data, int offset) {
+        return ((long) data[offset] & 0xff) |
+               ((long) data[offset + 1] & 0xff) << 8 |
+               ((long) data[offset + 2] & 0xff) << 16 |
+               ((long) data[offset + 3] & 0xff) << 24 |
+               ((long) data[offset + 4] & 0xff) << 32 |
+               ((long) data[offset + 5] & 0xff) << 40 |
+               ((long) data[offset + 6] & 0xff) << 48 |
+               ((long) data[offset + 7] & 0xff) << 56;
+    }
+
+    private static long fmix(long k) {
+        k ^= k >>> 33;
+        k *= 0xff51afd7ed558ccdL;
+        k ^= k >>> 33;
+        k *= 0xc4ceb9fe1a85ec53L;
+        k ^= k >>> 33;
+        return k;
+    }
+}
@@ -0,0 +1,120 @@
+package com.datastax.util;
+
+/**
+ * Bounded, lock-free single-producer / single-consumer ring buffer.
+ *
+ * Elements are exchanged in batches: the producer copies a batch into free
+ * slots and publishes them with a single volatile write of the tail sequence,
+ * the consumer copies a batch out and releases the slots with a single volatile
+ * write of the head sequence. Because those writes are volatile, a side that
+ * publishes and then reads a "waiting" flag of the other side can never miss
+ * a wake-up. Each side caches the other side's sequence and
+ * only re-reads it when the cached value says the buffer is full / empty.
+ *
+ * Exactly one thread may call {@link #offer(Object[], int, int)} and exactly
+ * one (possibly other) thread may call {@link #poll(Object[])}. Neither method
+ * blocks; waiting is up to the caller.
+ */
+public final class SpscRingBuffer<T> extends SpscRingBufferFields {
+
+    private final Object[] slots;
+    private final int mask;
+
+    public SpscRingBuffer(int capacity) {
+        if (capacity <= 0 || Integer.bitCount(capacity) != 1)
+            throw new IllegalArgumentException("Capacity must be a positive power of two, got " + capacity);
+
+        this.slots = new Object[capacity];
+        this.mask = capacity - 1;
+    }
+
+    public int capacity() {
+        return slots.length;
+    }
+
+    /**
+     * Number of elements currently buffered. Exact only when called from the
+     * producer or the consumer while the other side is idle.
+     */
+    public int size() {
+        return (int) (tail - head);
+    }
+
+    public boolean isEmpty() {
+        return tail == head;
+    }
+
+    /**
+     * Producer side: copies up to {@code length} elements of {@code batch}
+     * starting at {@code from} into the buffer.
+     *
+     * @return number of elements actually published, 0 if the buffer is full
+     */
+    public int offer(T[] batch, int from, int length) {
+        long currentTail = tail;
+        long free = slots.length - (currentTail - producerHeadCache);
+
+        if (free < length) {
+            producerHeadCache = head;
+            free = slots.length - (currentTail - producerHeadCache);
+        }
+
+        int n = (int) Math.min(free, length);
+        for (int i = 0; i < n; i++) {
+            slots[(int) (currentTail + i) & mask] = batch[from + i];
+        }
+
+        if (n > 0)
+            tail = currentTail + n;
+
+        return n;
+    }
+
+    /**
+     * Consumer side: moves up to {@code batch.length} elements out of the
+     * buffer into {@code batch}, starting at index 0.
+     *
+     * @return number of elements moved, 0 if the buffer is empty
+     */
+    @SuppressWarnings("unchecked")
+    public int poll(T[] batch) {
+        long currentHead = head;
+        long available = consumerTailCache - currentHead;
+
+        if (available < batch.length) {
+            consumerTailCache = tail;
+            available = consumerTailCache - currentHead;
+        }
+
+        int n = (int) Math.min(available, batch.length);
+        for (int i = 0; i < n; i++) {
+            int slot = (int) (currentHead + i) & mask;
+            batch[i] = (T) slots[slot];
+            slots[slot] = null;
+        }
+
+        if (n > 0)
+            head = currentHead + n;
+
+        return n;
+    }
+}
+
+/**
+ * Sequences of {@link SpscRingBuffer}. The producer-owned and consumer-owned
+ * fields are separated by padding so that the two threads do not keep
+ * invalidating each other's cache line.
+ */
+abstract class SpscRingBufferFields {
+    // consumer-owned
+    volatile long head;
+    long consumerTailCache;
+
+    long p00, p01, p02, p03, p04, p05, p06, p07;
+
+    // producer-owned
+    volatile long tail;
+    long producerHeadCache;
+
+    long p10, p11, p12, p13, p14, p15, p16, p17;
+}
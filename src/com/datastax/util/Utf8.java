@@ -0,0 +1,78 @@
+package com.datastax.util;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * UTF-8 encoding of strings that are sized before they are written, as
+ * row values are: {@link #encodedLength(String)} takes the size of a value
+ * from its chars without encoding it, so a value is only encoded once,
+ * when it is written.
+ *
+ * {@link #scratch(int)} hands out a per thread buffer for values that are
+ * read in bulk before they are decoded.
+ */
+public class Utf8 {
+    // scratch buffers beyond this size are not kept between calls
+    private static final int MAX_SCRATCH_SIZE = 64 * 1024;
+
+    private static final ThreadLocal<byte[]> SCRATCH = ThreadLocal.withInitial(() -> new byte[256]);
+
+    /**
+     * UTF-8 encoding of the given string, as {@link String#getBytes(java.nio.charset.Charset)}
+     * returns it.
+     */
+    public static byte[] encode(String value) {
+        return value.getBytes(StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Length of the UTF-8 encoding of the given string, without encoding it.
+     * Unpaired surrogates count as the single byte {@link #encode(String)}
+     * replaces them with.
+     */
+    public static int encodedLength(String value) {
+        int length = value.length();
+        int i = 0;
+        // ASCII prefix, one byte per char
+        while (i < length && value.charAt(i) < 0x80)
+            i++;
+
+        long size = i;
+        for (; i < length; i++) {
+            int c = value.charAt(i);
+            // 1 byte below 0x80, 2 below 0x800 and 3 above, without branching on mixed text
+            size += 1 + ((0x7F - c) >>> 31) + ((0x7FF - c) >>> 31);
+            if (Character.isSurrogate((char) c)) {
+                if (Character.isHighSurrogate((char) c) && i + 1 < length && Character.isLowSurrogate(value.charAt(i + 1))) {
+                    size += 4 - 3;
+                    i++;
+                } else {
+                    // replaced by '?'
+                    size += 1 - 3;
+                }
+            }
+        }
+        if (size > Integer.MAX_VALUE)
+            throw new IllegalArgumentException("UTF-8 encoding of " + length + " chars is too large");
+        return (int) size;
+    }
+
+    public static String decode(byte[] bytes, int offset, int length) {
+        return new String(bytes, offset, length, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Buffer of at least the given size owned by the calling thread. Its
+     * content is only valid until the thread's next call.
+     */
+    public static byte[] scratch(int size) {
+        byte[] scratch = SCRATCH.get();
+        if (scratch.length >= size)
+            return scratch;
+
+        byte[] bigger = new byte[Math.max(size, scratch.length * 2)];
+        if (bigger.length <= MAX_SCRATCH_SIZE)
+            SCRATCH.set(bigger);
+        return bigger;
+    }
+}
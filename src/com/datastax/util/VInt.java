@@ -0,0 +1,89 @@
+package com.datastax.util;
+
+import com.datastax.serde.MarshalException;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Variable length encoding of integers, 7 bits per byte starting with the
+ * least significant ones; the top bit of every byte but the last is set.
+ * Values below 128 take a single byte and a full {@code long} takes
+ * {@value #MAX_SIZE}. Signed values go through the zig-zag mapping first,
+ * which gives small negative values short encodings too.
+ *
+ * Like the buffer based methods of {@link com.datastax.serde.AbstractType},
+ * these read and write at absolute offsets and leave the buffer's position
+ * untouched. Encodings are canonical, so the size of a value read is
+ * {@link #sizeOf(long)} of that value.
+ */
+public class VInt {
+    public static final int MAX_SIZE = 10;
+
+    public static int sizeOf(long value) {
+        // one byte per started group of 7 bits, zero takes one byte too
+        int bits = Long.SIZE - Long.numberOfLeadingZeros(value | 1);
+        return (bits + 6) / 7;
+    }
+
+    /**
+     * Writes the unsigned value starting at the given absolute offset.
+     *
+     * @return number of bytes written, same as {@link #sizeOf(long)}
+     */
+    public static int write(long value, ByteBuffer buffer, int offset) {
+        int position = offset;
+        while ((value & ~0x7FL) != 0) {
+            buffer.put(position++, (byte) (value | 0x80));
+            value >>>= 7;
+        }
+        buffer.put(position++, (byte) value);
+        return position - offset;
+    }
+
+    /**
+     * Reads the unsigned value starting at the given absolute offset.
+     */
+    public static long read(ByteBuffer buffer, int offset) {
+        long value = 0;
+        for (int shift = 0; shift < Long.SIZE; shift += 7) {
+            byte b = buffer.get(offset++);
+            value |= (long) (b & 0x7F) << shift;
+            if (b >= 0)
+                return value;
+        }
+        throw new MarshalException("Corrupted vint at " + (offset - MAX_SIZE));
+    }
+
+    /**
+     * Reads an unsigned value that has to fit in a non-negative {@code int},
+     * such as a length.
+     */
+    public static int readInt(ByteBuffer buffer, int offset) {
+        long value = read(buffer, offset);
+        if (value > Integer.MAX_VALUE)
+            throw new MarshalException("Corrupted vint at " + offset + ": " + value + " is not an int");
+        return (int) value;
+    }
+
+    /**
+     * Skips the value starting at the given absolute offset without decoding it.
+     *
+     * @return absolute offset of the first byte after the value
+     */
+    public static int skip(ByteBuffer buffer, int offset) {
+        int end = offset + MAX_SIZE;
+        while (offset < end) {
+            if (buffer.get(offset++) >= 0)
+                return offset;
+        }
+        throw new MarshalException("Corrupted vint at " + (end - MAX_SIZE));
+    }
+
+    public static long zigZag(long value) {
+        return (value << 1) ^ (value >> 63);
+    }
+
+    public static long unZigZag(long value) {
+        return (value >>> 1) ^ -(value & 1);
+    }
+}
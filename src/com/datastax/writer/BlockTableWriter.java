@@ -0,0 +1,416 @@
+package com.datastax.writer;
+
+import com.datastax.cache.BlockCache;
+import com.datastax.index.BlockIndex;
+import com.datastax.metadata.Compression;
+import com.datastax.metadata.Schema;
+import com.datastax.metadata.TableFooter;
+import com.datastax.metadata.TableHeader;
+import com.datastax.rows.Row;
+import com.datastax.rows.TextDictionary;
+import com.datastax.util.Crc32c;
+import com.datastax.util.VInt;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.zip.Deflater;
+
+/**
+ * Writes tables in the block format: rows are grouped into blocks of about
+ * {@code blockSize} uncompressed bytes and every block is compressed on its
+ * own, so readers only decompress the blocks they need. The stored bytes of
+ * every block are protected by a CRC32C checksum, which readers verify once
+ * per block instead of checking markers around every row.
+ *
+ * Inside a block, every row is stored as its serialized size followed by
+ * its bytes (see {@link Row#serialize(ByteBuffer, int)}); a block always
+ * holds at least one row, so a row larger than the block size gets a block
+ * of its own. The blocks are preceded by a {@link TableHeader} flagged with
+ * {@link TableHeader#FLAG_BLOCKS} and followed by a {@link BlockIndex},
+ * stored as the {@link TableFooter.Section#BLOCK_INDEX} section of the
+ * table's {@link TableFooter}.
+ *
+ * With dictionaries on, the rows of a block are held back until the block
+ * is complete, and the block starts with a {@link TextDictionary} of the
+ * values of its low-cardinality text columns; rows are serialized against
+ * it and the header is also flagged with {@link TableHeader#FLAG_DICTIONARY}.
+ * Blocks are still cut by the plain size of their rows, so dictionary
+ * blocks may hold fewer bytes than {@code blockSize}.
+ *
+ * Compact tables, flagged with {@link TableHeader#FLAG_COMPACT}, store their
+ * rows in the compact layout of {@link Row#serializeCompact}, each preceded
+ * by its size as a {@link VInt}. Every block starts (after its dictionary,
+ * if any) with the write time of its first row as a long, and the write
+ * times of the block's rows are stored relative to it.
+ *
+ * Tables flagged with {@link TableHeader#FLAG_PREFIX_KEYS} store the key of
+ * every row as the part it does not share with the key of the row before
+ * it (see {@link Row}), except for every {@code restartInterval}-th row of
+ * a block, whose key is stored whole. Such blocks end with the offsets of
+ * their restart points, as ints, followed by their number, which lets
+ * readers binary search a block for a key.
+ *
+ * Writers are configured with a {@link Builder}. Tables in this format are
+ * read with {@link com.datastax.iterator.BlockTableIterator}.
+ */
+public class BlockTableWriter {
+    public static final int DEFAULT_BLOCK_SIZE = 64 * 1024;
+    public static final int DEFAULT_RESTART_INTERVAL = 16;
+
+    private static final byte[] NO_KEY = new byte[0];
+
+    private final Schema schema;
+    private final DataOutput out;
+    private final int blockSize;
+    private final Deflater deflater;
+    private final BlockIndex.Builder index;
+    private final TableFooter.Builder footer;
+    // rows of the current block, if dictionaries are on
+    private final List<Row> pending;
+    private final boolean compact;
+    private final int restartInterval;
+
+    // rows of the current block, and the current block once compressed
+    private ByteBuffer block;
+    private int blockLength;
+    private byte[] firstKey;
+    private long baseWriteTime;
+    // rows of the current block, the last one's key and the block's restart points
+    private int rowsInBlock;
+    private byte[] previousKey;
+    private int[] restarts = new int[16];
+    private int restartCount;
+    private byte[] compressed = new byte[0];
+
+    // number of bytes written so far
+    private long position;
+
+    private BlockTableWriter(Builder builder, DataOutput output) {
+        this.schema = builder.schema;
+        this.out = output;
+        this.blockSize = builder.blockSize;
+        this.deflater = builder.compression.newDeflater();
+        this.index = new BlockIndex.Builder(builder.compression);
+        this.footer = new TableFooter.Builder();
+        this.block = ByteBuffer.allocate(blockSize);
+        this.pending = builder.dictionary ? new ArrayList<>() : null;
+        this.compact = builder.compact;
+        this.restartInterval = builder.restartInterval;
+    }
+
+    public void write(Iterator<Row> iterator) throws IOException {
+        try {
+            int flags = TableHeader.FLAG_BLOCKS
+                        | (pending == null ? 0 : TableHeader.FLAG_DICTIONARY)
+                        | (compact ? TableHeader.FLAG_COMPACT : 0)
+                        | (restartInterval > 0 ? TableHeader.FLAG_PREFIX_KEYS : 0);
+            position += new TableHeader(flags, schema).serialize(out);
+
+            while (iterator.hasNext()) {
+                Row row = iterator.next();
+                footer.add(row);
+                boolean starting = blockLength == 0;
+                int rowSize = rowSize(row, starting);
+                int size = sizePrefix(rowSize) + rowSize;
+
+                if (!starting && blockLength + size + restartsSize(restartCount + 1) > blockSize) {
+                    flushBlock();
+                    starting = true;
+                    rowSize = rowSize(row, true);
+                    size = sizePrefix(rowSize) + rowSize;
+                }
+
+                if (starting) {
+                    firstKey = row.comparableKey();
+                    baseWriteTime = row.writeTime();
+                    // room for the base write time, written with the block
+                    if (compact)
+                        blockLength = Long.BYTES;
+                }
+
+                if (pending != null) {
+                    // serialized once the block's dictionary is known
+                    pending.add(row);
+                    blockLength += size;
+                    restartCount += isRestart(rowsInBlock) ? 1 : 0;
+                    rowsInBlock++;
+                    previousKey = row.comparableKey();
+                    continue;
+                }
+
+                if (block.capacity() < blockLength + size)
+                    block = ByteBuffer.wrap(Arrays.copyOf(block.array(), blockLength + size));
+
+                if (isRestart(rowsInBlock))
+                    addRestart(blockLength);
+                if (compact) {
+                    int prefix = VInt.write(rowSize, block, blockLength);
+                    row.serializeCompact(block, blockLength + prefix, baseWriteTime, null, previousKey(rowsInBlock, previousKey));
+                } else {
+                    block.putInt(blockLength, rowSize);
+                    row.serialize(block, blockLength + Integer.BYTES, null, previousKey(rowsInBlock, previousKey));
+                }
+                blockLength += size;
+                rowsInBlock++;
+                previousKey = row.comparableKey();
+            }
+
+            if (blockLength > 0)
+                flushBlock();
+
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            try (DataOutputStream indexOut = new DataOutputStream(bytes)) {
+                index.build().serialize(indexOut);
+            }
+            footer.section(TableFooter.Section.BLOCK_INDEX, position);
+            out.write(bytes.toByteArray());
+            position += bytes.size();
+
+            footer.build().serialize(out);
+            TableFooter.writeTrailer(out, position);
+        }
+        finally {
+            if (deflater != null)
+                deflater.end();
+        }
+    }
+
+    /**
+     * Size of the row without dictionary, as the next row of the current
+     * block or as the first row of a new one.
+     */
+    private int rowSize(Row row, boolean starting) {
+        int i = starting ? 0 : rowsInBlock;
+        return compact
+               ? row.compactSerializedSize(starting ? row.writeTime() : baseWriteTime, null, previousKey(i, previousKey))
+               : row.serializedSize(null, previousKey(i, previousKey));
+    }
+
+    private int sizePrefix(int rowSize) {
+        return compact ? VInt.sizeOf(rowSize) : Integer.BYTES;
+    }
+
+    private boolean isRestart(int row) {
+        return restartInterval > 0 && row % restartInterval == 0;
+    }
+
+    /**
+     * Key the key of the given row of the block is stored relative to, given
+     * the key of the row before it.
+     */
+    private byte[] previousKey(int row, byte[] previousKey) {
+        if (restartInterval == 0)
+            return null;
+        return row % restartInterval == 0 ? NO_KEY : previousKey;
+    }
+
+    private void addRestart(int offset) {
+        if (restartCount == restarts.length)
+            restarts = Arrays.copyOf(restarts, restarts.length * 2);
+        restarts[restartCount++] = offset;
+    }
+
+    private int restartsSize(int restartCount) {
+        return restartInterval == 0 ? 0 : (restartCount + 1) * Integer.BYTES;
+    }
+
+    private void flushBlock() throws IOException {
+        if (pending != null)
+            encodeBlock();
+        else if (compact)
+            block.putLong(0, baseWriteTime);
+
+        if (restartInterval > 0) {
+            int length = blockLength + restartsSize(restartCount);
+            if (block.capacity() < length)
+                block = ByteBuffer.wrap(Arrays.copyOf(block.array(), length));
+            for (int i = 0; i < restartCount; i++) {
+                block.putInt(blockLength, restarts[i]);
+                blockLength += Integer.BYTES;
+            }
+            block.putInt(blockLength, restartCount);
+            blockLength += Integer.BYTES;
+        }
+
+        byte[] stored;
+        int storedLength;
+        if (deflater == null) {
+            stored = block.array();
+            storedLength = blockLength;
+        } else {
+            storedLength = deflate();
+            stored = compressed;
+        }
+
+        out.write(stored, 0, storedLength);
+        index.add(position, storedLength, blockLength, Crc32c.compute(stored, 0, storedLength), firstKey);
+        position += storedLength;
+        blockLength = 0;
+        rowsInBlock = 0;
+        restartCount = 0;
+    }
+
+    /**
+     * Serializes the pending rows of the block against their dictionary.
+     */
+    private void encodeBlock() {
+        TextDictionary.Builder dictionary = new TextDictionary.Builder(schema);
+        for (Row row : pending)
+            dictionary.add(row);
+        dictionary.build();
+
+        int[] sizes = new int[pending.size()];
+        int length = dictionary.serializedSize() + (compact ? Long.BYTES : 0);
+        for (int i = 0; i < sizes.length; i++) {
+            Row row = pending.get(i);
+            byte[] previous = i == 0 ? null : pending.get(i - 1).comparableKey();
+            sizes[i] = compact
+                       ? row.compactSerializedSize(baseWriteTime, dictionary, previousKey(i, previous))
+                       : row.serializedSize(dictionary, previousKey(i, previous));
+            length += sizePrefix(sizes[i]) + sizes[i];
+        }
+        if (block.capacity() < length)
+            block = ByteBuffer.allocate(length);
+
+        blockLength = dictionary.serialize(block, 0);
+        if (compact) {
+            block.putLong(blockLength, baseWriteTime);
+            blockLength += Long.BYTES;
+        }
+        restartCount = 0;
+        for (int i = 0; i < sizes.length; i++) {
+            Row row = pending.get(i);
+            byte[] previous = i == 0 ? null : pending.get(i - 1).comparableKey();
+            if (isRestart(i))
+                addRestart(blockLength);
+            if (compact) {
+                blockLength += VInt.write(sizes[i], block, blockLength);
+                blockLength += row.serializeCompact(block, blockLength, baseWriteTime, dictionary, previousKey(i, previous));
+            } else {
+                block.putInt(blockLength, sizes[i]);
+                blockLength += Integer.BYTES + row.serialize(block, blockLength + Integer.BYTES, dictionary, previousKey(i, previous));
+            }
+        }
+        pending.clear();
+    }
+
+    private int deflate() {
+        deflater.reset();
+        deflater.setInput(block.array(), 0, blockLength);
+        deflater.finish();
+
+        // incompressible input grows by a few bytes per 16 KB
+        if (compressed.length < blockLength + 64)
+            compressed = new byte[blockLength + blockLength / 64 + 64];
+
+        int length = 0;
+        while (!deflater.finished()) {
+            if (length == compressed.length)
+                compressed = Arrays.copyOf(compressed, compressed.length * 2);
+            length += deflater.deflate(compressed, length, compressed.length - length);
+        }
+        return length;
+    }
+
+    /**
+     * Writer of a new table file with the default settings, see {@link Builder}.
+     */
+    public static OnDiskWriter onDiskWriter(Schema schema, Path pathname) throws IOException {
+        return new Builder(schema).onDiskWriter(pathname);
+    }
+
+    public static class OnDiskWriter extends BlockTableWriter implements Closeable {
+
+        private final DataOutputStream out;
+
+        private OnDiskWriter(Builder builder, DataOutputStream output) {
+            super(builder, output);
+            this.out = output;
+        }
+
+        @Override
+        public void close() throws IOException {
+            out.close();
+        }
+    }
+
+    /**
+     * Settings of a block table writer: {@link Compression#DEFLATE}, blocks
+     * of {@value #DEFAULT_BLOCK_SIZE} bytes, rows in the regular layout,
+     * without dictionaries and with full keys unless set otherwise.
+     */
+    public static class Builder {
+        private final Schema schema;
+        private Compression compression = Compression.DEFLATE;
+        private int blockSize = DEFAULT_BLOCK_SIZE;
+        private boolean dictionary;
+        private boolean compact;
+        private int restartInterval;
+
+        public Builder(Schema schema) {
+            this.schema = schema;
+        }
+
+        public Builder compression(Compression compression) {
+            this.compression = compression;
+            return this;
+        }
+
+        /**
+         * Uncompressed bytes of rows after which a block is cut.
+         */
+        public Builder blockSize(int bytes) {
+            if (bytes <= 0)
+                throw new IllegalArgumentException("Block size must be positive, got " + bytes);
+            this.blockSize = bytes;
+            return this;
+        }
+
+        /**
+         * Whether blocks get a {@link TextDictionary}.
+         */
+        public Builder dictionary(boolean dictionary) {
+            this.dictionary = dictionary;
+            return this;
+        }
+
+        /**
+         * Whether rows are stored in the compact layout.
+         */
+        public Builder compact(boolean compact) {
+            this.compact = compact;
+            return this;
+        }
+
+        /**
+         * Number of rows between restart points of prefix compressed keys,
+         * or 0 to store full keys.
+         */
+        public Builder restartInterval(int rows) {
+            if (rows < 0)
+                throw new IllegalArgumentException("Restart interval can't be negative, got " + rows);
+            this.restartInterval = rows;
+            return this;
+        }
+
+        public BlockTableWriter build(DataOutput output) {
+            return new BlockTableWriter(this, output);
+        }
+
+        /**
+         * Writer of a new table file. Blocks of a table previously written at
+         * the same path are dropped from the {@link BlockCache#shared() shared}
+         * block cache.
+         */
+        public OnDiskWriter onDiskWriter(Path pathname) throws IOException {
+            BlockCache.shared().invalidate(pathname.toAbsolutePath().normalize());
+            return new OnDiskWriter(this, new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(pathname))));
+        }
+    }
+}
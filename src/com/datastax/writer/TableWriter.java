@@ -1,54 +1,183 @@
 package com.datastax.writer;
 
+import com.datastax.index.BloomFilter;
+import com.datastax.index.ChunkChecksums;
+import com.datastax.index.SparseIndex;
 import com.datastax.metadata.Constants;
 import com.datastax.metadata.Schema;
+import com.datastax.metadata.TableFooter;
+import com.datastax.metadata.TableHeader;
 import com.datastax.rows.Row;
 
 import java.io.*;
+import java.nio.ByteBuffer;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.util.Iterator;
 
 /**
  * Helper class to write tables / sequences of rows
+ *
+ * A table starts with a {@link TableHeader}, which records the schema and
+ * whether rows are framed with {@link Constants#ROW_MAGIC}, and ends with a
+ * {@link TableFooter} holding statistics of the rows and the offsets of the
+ * sections written between {@link Constants#FILE_END} and the footer.
+ *
+ * Rows are followed by {@link Constants#ROW_END}, the last one by
+ * {@link Constants#FILE_END}. With {@link Constants#DEBUG}, every row is also
+ * preceded by {@link Constants#ROW_MAGIC}; without, the first row is
+ * preceded by {@link Constants#ROW_END} (see {@link TableHeader#hasStartMarker()}),
+ * so that readers tell an empty table apart.
+ *
+ * The bytes from the end of the header to the end of {@link Constants#FILE_END}
+ * are checksummed in chunks of {@link ChunkChecksums#DEFAULT_CHUNK_SIZE}
+ * bytes, stored as the {@link TableFooter.Section#CHECKSUMS} section.
+ *
+ * If a {@link SparseIndex.Builder} is supplied, the writer reports the key
+ * and offset of every row to it and stores the index as the
+ * {@link TableFooter.Section#INDEX} section. Offsets are relative to the
+ * start of the output, so a table has to be written to an empty output.
+ * Likewise, the key of every row is added to the {@link BloomFilter.Builder},
+ * if any, which is stored as the {@link TableFooter.Section#FILTER} section.
  */
 public class TableWriter {
 
     private final Schema schema;
     private final DataOutput out;
+    // whether rows are preceded by ROW_MAGIC, fixed once the writer is created
+    private final boolean framed;
+    private final SparseIndex.Builder index;
+    private final BloomFilter.Builder filter;
+
+    // rows are serialized here first and written out with a single call
+    private ByteBuffer buffer = ByteBuffer.allocate(4096);
+    private final byte[] intBytes = new byte[Integer.BYTES];
+    // number of bytes written so far
+    private long position;
+    // checksums of the rows being written
+    private ChunkChecksums.Builder checksums;
 
     public TableWriter(Schema schema, DataOutput output) {
+        this(schema, output, null, null);
+    }
+
+    public TableWriter(Schema schema, DataOutput output, SparseIndex.Builder index, BloomFilter.Builder filter) {
         this.schema = schema;
         this.out = output;
+        this.framed = Constants.DEBUG;
+        this.index = index;
+        this.filter = filter;
     }
 
     public void write(Iterator<Row> iterator) throws IOException {
+        position += new TableHeader(framed ? TableHeader.FLAG_ROW_MAGIC : 0, schema).serialize(out);
+        TableFooter.Builder footer = new TableFooter.Builder();
+        checksums = new ChunkChecksums.Builder(ChunkChecksums.DEFAULT_CHUNK_SIZE, position);
+
         boolean isFirst = true;
         while (iterator.hasNext()) {
-            if (isFirst)
-                isFirst = false;
-            else
-                out.writeInt(Constants.ROW_END);
+            // without ROW_MAGIC, the first row is preceded by a start marker
+            if (!isFirst || !framed)
+                writeInt(Constants.ROW_END);
+            isFirst = false;
 
-            if (Constants.DEBUG)
-                out.writeInt(Constants.ROW_MAGIC);
             Row row = iterator.next();
-            out.writeInt(row.serializedSize());
-            row.serialize(out);
+            footer.add(row);
+            if (index != null)
+                index.add(row.comparableKey(), position);
+            if (filter != null)
+                filter.add(row.comparableKey());
+
+            if (framed)
+                writeInt(Constants.ROW_MAGIC);
+            int size = row.serializedSize();
+            if (buffer.capacity() < size)
+                buffer = ByteBuffer.allocate(Math.max(size, buffer.capacity() * 2));
+
+            row.serialize(buffer, 0);
+            writeInt(size);
+            write(buffer.array(), 0, size);
+        }
+
+        writeInt(Constants.FILE_END);
+
+        footer.section(TableFooter.Section.CHECKSUMS, writeSection(checksums.build()::serialize));
+        if (index != null)
+            footer.section(TableFooter.Section.INDEX, writeSection(index.build()::serialize));
+        if (filter != null)
+            footer.section(TableFooter.Section.FILTER, writeSection(filter.build()::serialize));
+
+        long footerOffset = writeSection(footer.build()::serialize);
+        TableFooter.writeTrailer(out, footerOffset);
+    }
+
+    /**
+     * Writes checksummed bytes of the rows.
+     */
+    private void write(byte[] b, int off, int len) throws IOException {
+        out.write(b, off, len);
+        checksums.add(b, off, len);
+        position += len;
+    }
+
+    private void writeInt(int v) throws IOException {
+        intBytes[0] = (byte) (v >>> 24);
+        intBytes[1] = (byte) (v >>> 16);
+        intBytes[2] = (byte) (v >>> 8);
+        intBytes[3] = (byte) v;
+        write(intBytes, 0, Integer.BYTES);
+    }
+
+    /**
+     * Writes a section after the rows.
+     *
+     * @return offset of the section
+     */
+    private long writeSection(SectionWriter writer) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (DataOutputStream sectionOut = new DataOutputStream(bytes)) {
+            writer.write(sectionOut);
         }
 
-        out.writeInt(Constants.FILE_END);
+        long offset = position;
+        out.write(bytes.toByteArray());
+        position += bytes.size();
+        return offset;
+    }
+
+    private interface SectionWriter {
+        void write(DataOutput out) throws IOException;
     }
 
     public static OnDiskWriter onDiskWriter(Schema schema, Path pathname) throws IOException {
         return new OnDiskWriter(schema, new DataOutputStream(Files.newOutputStream(pathname)));
     }
-    
+
+    /**
+     * Writer that also stores a sparse index of the table in the table file.
+     */
+    public static OnDiskWriter onDiskWriter(Schema schema, Path pathname, SparseIndex.Builder index) throws IOException {
+        return onDiskWriter(schema, pathname, index, null);
+    }
+
+    /**
+     * Writer that also stores the components that are not null in the table
+     * file: a sparse index and a Bloom filter.
+     */
+    public static OnDiskWriter onDiskWriter(Schema schema, Path pathname, SparseIndex.Builder index, BloomFilter.Builder filter) throws IOException {
+        return new OnDiskWriter(schema, new DataOutputStream(Files.newOutputStream(pathname)), index, filter);
+    }
+
     public static class OnDiskWriter extends TableWriter implements Closeable {
 
         private final DataOutputStream out;
+
         public OnDiskWriter(Schema schema, DataOutputStream output) {
-            super(schema, output);
+            this(schema, output, null, null);
+        }
+
+        public OnDiskWriter(Schema schema, DataOutputStream output, SparseIndex.Builder index, BloomFilter.Builder filter) {
+            super(schema, output, index, filter);
             this.out = output;
         }
 
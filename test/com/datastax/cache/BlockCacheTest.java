@@ -0,0 +1,139 @@
+package com.datastax.cache;
+
+import com.datastax.iterator.BlockTableIterator;
+import com.datastax.metadata.Schema;
+import com.datastax.rows.Row;
+import com.datastax.serde.IntType;
+import com.datastax.serde.TextType;
+import com.datastax.writer.BlockTableWriter;
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.nio.ByteBuffer;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+
+public class BlockCacheTest {
+    private static final Schema schema = new Schema.Builder()
+            .addKey("key1", TextType.instance)
+            .addKey("key2", IntType.instance)
+            .addColumn("v1", TextType.instance)
+            .build();
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void leastRecentlyUsedBlocksAreEvicted() {
+        BlockCache cache = new BlockCache(3 * 1024, 1);
+        Path a = Paths.get("a");
+        Path b = Paths.get("b");
+
+        cache.put(a, 0, ByteBuffer.allocate(1024));
+        cache.put(a, 1024, ByteBuffer.allocate(1024));
+        cache.put(b, 0, ByteBuffer.allocate(1024));
+        Assert.assertEquals(3 * 1024, cache.size());
+
+        // a:0 becomes the most recently used, a:1024 is evicted next
+        Assert.assertNotNull(cache.get(a, 0));
+        cache.put(b, 1024, ByteBuffer.allocate(1024));
+        Assert.assertNull(cache.get(a, 1024));
+        Assert.assertNotNull(cache.get(a, 0));
+        Assert.assertNotNull(cache.get(b, 0));
+        Assert.assertNotNull(cache.get(b, 1024));
+        Assert.assertEquals(1, cache.evictions());
+        Assert.assertEquals(4, cache.hits());
+        Assert.assertEquals(1, cache.misses());
+        Assert.assertEquals(0.8, cache.hitRate(), 1e-9);
+
+        // blocks larger than the cache are not cached
+        cache.put(a, 4096, ByteBuffer.allocate(4096));
+        Assert.assertNull(cache.get(a, 4096));
+        Assert.assertEquals(3 * 1024, cache.size());
+
+        cache.invalidate(b);
+        Assert.assertNull(cache.get(b, 0));
+        Assert.assertEquals(1024, cache.size());
+    }
+
+    @Test
+    public void sizeIsBoundedAcrossSegments() {
+        BlockCache cache = new BlockCache(16 * 1024);
+        Path file = Paths.get("table");
+        for (long offset = 0; offset < 1000; offset++)
+            cache.put(file, offset * 512, ByteBuffer.allocate(512));
+
+        Assert.assertTrue(cache.size() <= cache.capacity());
+        Assert.assertEquals(1000 - cache.size() / 512, cache.evictions());
+    }
+
+    @Test
+    public void iteratorsShareCachedBlocks() throws Throwable {
+        List<Row> rows = new ArrayList<>();
+        for (int i = 0; i < 5000; i++) {
+            rows.add(Row.builder(schema)
+                        .addKey("key1", String.format("ck%05d", i))
+                        .addKey("key2", i)
+                        .addColumn("v1", "value " + i)
+                        .row());
+        }
+
+        File file = folder.newFile();
+        try (BlockTableWriter.OnDiskWriter writer = new BlockTableWriter.Builder(schema).blockSize(4096).onDiskWriter(file.toPath())) {
+            writer.write(rows.iterator());
+        }
+
+        for (BlockTableIterator.Verification verification : BlockTableIterator.Verification.values()) {
+            BlockCache cache = new BlockCache(64 * 1024 * 1024);
+            int blocks;
+            try (BlockTableIterator iter = BlockTableIterator.open(schema, file.getPath(), false, verification, cache)) {
+                blocks = iter.index().size();
+                Assert.assertEquals(rows, drain(iter));
+            }
+            Assert.assertEquals(0, cache.hits());
+            Assert.assertEquals(blocks, cache.misses());
+
+            // a second iterator, even lazy, reads every block from the cache
+            try (BlockTableIterator iter = BlockTableIterator.open(schema, file.getPath(), true, verification, cache)) {
+                Assert.assertEquals(rows, drain(iter));
+            }
+            Assert.assertEquals(blocks, cache.hits());
+            Assert.assertEquals(blocks, cache.misses());
+            Assert.assertEquals(0, cache.evictions());
+        }
+    }
+
+    @Test
+    public void rewrittenTableIsNotReadFromTheCache() throws Throwable {
+        File file = folder.newFile();
+        for (String value : new String[]{ "first", "second" }) {
+            List<Row> rows = new ArrayList<>();
+            for (int i = 0; i < 1000; i++) {
+                rows.add(Row.builder(schema)
+                            .addKey("key1", String.format("ck%05d", i))
+                            .addKey("key2", i)
+                            .addColumn("v1", value + " " + i)
+                            .row());
+            }
+
+            try (BlockTableWriter.OnDiskWriter writer = new BlockTableWriter.Builder(schema).blockSize(4096).onDiskWriter(file.toPath())) {
+                writer.write(rows.iterator());
+            }
+            // read through the shared cache, which still holds the first table's blocks the second time
+            try (BlockTableIterator iter = BlockTableIterator.open(schema, file.getPath(), false)) {
+                Assert.assertEquals(rows, drain(iter));
+            }
+        }
+    }
+
+    private static List<Row> drain(BlockTableIterator iter) {
+        List<Row> rows = new ArrayList<>();
+        iter.forEachRemaining(rows::add);
+        return rows;
+    }
+}
@@ -0,0 +1,254 @@
+package com.datastax.compaction;
+
+import com.datastax.index.SparseIndex;
+import com.datastax.iterator.TableIterator;
+import com.datastax.metadata.Constants;
+import com.datastax.metadata.Schema;
+import com.datastax.metadata.TableFooter;
+import com.datastax.reader.TableReader;
+import com.datastax.rows.Row;
+import com.datastax.serde.MarshalException;
+import com.datastax.util.TestUtil;
+import com.datastax.writer.BlockTableWriter;
+import com.datastax.writer.TableWriter;
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.TreeMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+public class CompactionTest {
+    private static final int TABLES = 4;
+    private static final int KEYS = 20000;
+
+    private static final Schema schema = TestUtil.SCHEMA;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void compactOverlappingTables() throws Throwable {
+        TreeMap<Integer, Row> expected = new TreeMap<>();
+        List<Path> inputs = overlappingTables(expected);
+
+        Path output = folder.getRoot().toPath().resolve("compacted");
+        List<Compaction.Progress> progress = new ArrayList<>();
+        Compaction.Result result = new Compaction.Builder(output)
+                .addInputs(inputs)
+                .readAhead(256)
+                .progressListener(progress::add, 5000)
+                .build()
+                .run();
+
+        Assert.assertEquals(inputRows(inputs), result.rowsRead);
+        Assert.assertEquals(KEYS, result.rowsWritten);
+        Assert.assertEquals(Files.size(output), result.bytesWritten);
+
+        // every 5000 written rows, plus the final report
+        Assert.assertEquals(KEYS / 5000 + 1, progress.size());
+        Compaction.Progress last = progress.get(progress.size() - 1);
+        Assert.assertEquals(1.0, last.fraction(), 0);
+        Assert.assertEquals(KEYS, last.rowsWritten);
+
+        Assert.assertEquals(new ArrayList<>(expected.values()), read(output));
+
+        try (TableReader reader = TableReader.open(output)) {
+            Assert.assertEquals(expected.get(12), reader.get(TestUtil.key(12)));
+            Assert.assertFalse(reader.mightContain(TestUtil.key(KEYS)));
+        }
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void parallelCompactionNeedsSplitOutputs() throws Throwable {
+        new Compaction.Builder(folder.getRoot().toPath().resolve("compacted"))
+                .addInput(folder.newFile().toPath())
+                .parallelism(4)
+                .build();
+    }
+
+    @Test
+    public void parallelCompactionIntoSplitOutputs() throws Throwable {
+        TreeMap<Integer, Row> expected = new TreeMap<>();
+        List<Path> inputs = overlappingTables(expected);
+
+        Path output = folder.getRoot().toPath().resolve("compacted");
+        Compaction compaction = new Compaction.Builder(output)
+                .addInputs(inputs)
+                .parallelism(4)
+                .splitOutputs(true)
+                .build();
+        Compaction.Result result = compaction.run();
+
+        Assert.assertEquals(4, result.outputs.size());
+        Assert.assertEquals(inputRows(inputs), result.rowsRead);
+        Assert.assertEquals(KEYS, result.rowsWritten);
+
+        // ranges are disjoint and in key order
+        List<Row> compacted = new ArrayList<>();
+        for (int i = 0; i < result.outputs.size(); i++) {
+            Assert.assertEquals(compaction.output(i), result.outputs.get(i));
+            List<Row> range = read(result.outputs.get(i));
+            Assert.assertFalse(range.isEmpty());
+            compacted.addAll(range);
+        }
+        Assert.assertEquals(new ArrayList<>(expected.values()), compacted);
+    }
+
+    @Test
+    public void compactPlainAndBlockTables() throws Throwable {
+        TreeMap<Integer, Row> expected = new TreeMap<>();
+        List<Path> inputs = overlappingTables(expected, true);
+
+        Path output = folder.getRoot().toPath().resolve("compacted");
+        Compaction.Result result = new Compaction.Builder(output)
+                .addInputs(inputs)
+                .build()
+                .run();
+        Assert.assertEquals(inputRows(inputs), result.rowsRead);
+        Assert.assertEquals(new ArrayList<>(expected.values()), read(output));
+
+        // block tables are sliced to the ranges split at the plain tables' keys
+        Path split = folder.getRoot().toPath().resolve("split");
+        Compaction compaction = new Compaction.Builder(split)
+                .addInputs(inputs)
+                .parallelism(4)
+                .splitOutputs(true)
+                .build();
+        result = compaction.run();
+        Assert.assertEquals(4, result.outputs.size());
+        Assert.assertEquals(inputRows(inputs), result.rowsRead);
+
+        List<Row> compacted = new ArrayList<>();
+        for (Path range : result.outputs)
+            compacted.addAll(read(range));
+        Assert.assertEquals(new ArrayList<>(expected.values()), compacted);
+    }
+
+    @Test
+    public void failedCompactionRemovesItsOutput() throws Throwable {
+        Path input = writeTable(new ArrayList<>());
+        // a row frame cut short, as left by a crashed writer
+        Path truncated = folder.newFile().toPath();
+        ByteBuffer frame = ByteBuffer.allocate(16);
+        frame.putInt(Constants.ROW_MAGIC).putInt(100).putLong(0);
+        Files.write(truncated, frame.array());
+
+        Path output = folder.getRoot().toPath().resolve("compacted");
+        try {
+            new Compaction.Builder(output)
+                    .schema(schema)
+                    .addInput(input)
+                    .addInput(truncated)
+                    .build()
+                    .run();
+            Assert.fail("Expected the truncated input to fail the compaction");
+        }
+        catch (MarshalException e) {
+            // expected
+        }
+        Assert.assertFalse(Files.exists(output));
+    }
+
+    @Test
+    public void failedRangeStopsTheOthers() throws Throwable {
+        List<Path> inputs = overlappingTables(new TreeMap<>());
+        AtomicLong rowsWritten = new AtomicLong();
+
+        Path output = folder.getRoot().toPath().resolve("compacted");
+        Compaction compaction = new Compaction.Builder(output)
+                .addInputs(inputs)
+                .parallelism(4)
+                .splitOutputs(true)
+                .progressListener(new Consumer<Compaction.Progress>() {
+                    final AtomicBoolean failed = new AtomicBoolean();
+
+                    public void accept(Compaction.Progress progress) {
+                        rowsWritten.accumulateAndGet(progress.rowsWritten, Math::max);
+                        if (progress.rowsWritten >= 1000 && failed.compareAndSet(false, true))
+                            throw new IllegalStateException("range failure");
+                    }
+                }, 1)
+                .build();
+        try {
+            compaction.run();
+            Assert.fail("Expected the failed range to fail the compaction");
+        }
+        catch (IllegalStateException e) {
+            Assert.assertEquals("range failure", e.getMessage());
+        }
+
+        // the ranges that did not fail would have written three quarters of the keys
+        Assert.assertTrue(rowsWritten.get() < KEYS / 2);
+        for (int i = 0; i < 4; i++)
+            Assert.assertFalse(Files.exists(compaction.output(i)));
+    }
+
+    /**
+     * Table t holds every key k with k % (t + 1) == 0, written at time t, so
+     * the newest version of a key is in the last table that has it.
+     */
+    private List<Path> overlappingTables(TreeMap<Integer, Row> expected) throws IOException {
+        return overlappingTables(expected, false);
+    }
+
+    /**
+     * @param blockTables whether tables with an odd t are written as block tables
+     */
+    private List<Path> overlappingTables(TreeMap<Integer, Row> expected, boolean blockTables) throws IOException {
+        List<Path> inputs = new ArrayList<>();
+        for (int t = 0; t < TABLES; t++) {
+            List<Row> rows = new ArrayList<>();
+            for (int k = 0; k < KEYS; k++) {
+                if (k % (t + 1) == 0) {
+                    Row row = TestUtil.row(k, t);
+                    rows.add(row);
+                    expected.put(k, row);
+                }
+            }
+            inputs.add(blockTables && t % 2 == 1 ? writeBlockTable(rows) : writeTable(rows));
+        }
+        return inputs;
+    }
+
+    private static long inputRows(List<Path> inputs) throws IOException {
+        long rows = 0;
+        for (Path input : inputs)
+            rows += TableFooter.load(input).rowCount;
+        return rows;
+    }
+
+    private static List<Row> read(Path table) throws IOException {
+        List<Row> rows = new ArrayList<>();
+        try (TableIterator.OnDiskIterator iter = TableIterator.onDiskIterator(table.toString())) {
+            iter.forEachRemaining(rows::add);
+        }
+        return rows;
+    }
+
+    private Path writeTable(List<Row> rows) throws IOException {
+        File file = folder.newFile();
+        try (TableWriter.OnDiskWriter writer = TableWriter.onDiskWriter(schema, file.toPath(), SparseIndex.Builder.everyRows(64))) {
+            writer.write(rows.iterator());
+        }
+        return file.toPath();
+    }
+
+    private Path writeBlockTable(List<Row> rows) throws IOException {
+        File file = folder.newFile();
+        try (BlockTableWriter.OnDiskWriter writer = new BlockTableWriter.Builder(schema).blockSize(4096).onDiskWriter(file.toPath())) {
+            writer.write(rows.iterator());
+        }
+        return file.toPath();
+    }
+}
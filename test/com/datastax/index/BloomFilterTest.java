@@ -0,0 +1,71 @@
+package com.datastax.index;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+
+public class BloomFilterTest {
+    private static final int KEYS = 4000;
+
+    @Test
+    public void bloomFilter() {
+        BloomFilter.Builder builder = new BloomFilter.Builder(0.01);
+        for (int i = 0; i < KEYS; i++)
+            builder.add(key(2 * i));
+        BloomFilter filter = builder.build();
+
+        // ~9.6 bits and 7 hashes per key for 1%
+        Assert.assertEquals(7, filter.hashCount());
+        Assert.assertTrue(filter.bitCount() >= 9.5 * KEYS && filter.bitCount() <= 10 * KEYS);
+        Assert.assertEquals(filter.bitCount() / 8, filter.memoryUsage());
+
+        int falsePositives = 0;
+        for (int i = 0; i < KEYS; i++) {
+            Assert.assertTrue(filter.mightContain(key(2 * i)));
+            if (filter.mightContain(key(2 * i + 1)))
+                falsePositives++;
+        }
+        Assert.assertTrue("False positives: " + falsePositives, falsePositives < KEYS * 0.02);
+    }
+
+    @Test
+    public void presizedBloomFilter() {
+        BloomFilter.Builder buffered = new BloomFilter.Builder(0.01);
+        BloomFilter.Builder presized = new BloomFilter.Builder(0.01, KEYS);
+        for (int i = 0; i < KEYS; i++) {
+            buffered.add(key(2 * i));
+            presized.add(key(2 * i));
+        }
+        BloomFilter expected = buffered.build();
+        BloomFilter filter = presized.build();
+
+        // same size, so the same bits are set
+        Assert.assertEquals(expected.hashCount(), filter.hashCount());
+        Assert.assertEquals(expected.bitCount(), filter.bitCount());
+        for (int i = 0; i < 2 * KEYS; i++)
+            Assert.assertEquals(expected.mightContain(key(i)), filter.mightContain(key(i)));
+    }
+
+    @Test
+    public void serializationRoundTrip() throws Throwable {
+        BloomFilter.Builder builder = new BloomFilter.Builder(0.1);
+        for (int i = 0; i < KEYS; i++)
+            builder.add(key(i));
+        BloomFilter filter = builder.build();
+
+        ByteArrayOutputStream os = new ByteArrayOutputStream();
+        filter.serialize(new DataOutputStream(os));
+        BloomFilter deserialized = BloomFilter.deserialize(new DataInputStream(new ByteArrayInputStream(os.toByteArray())));
+
+        Assert.assertEquals(filter.hashCount(), deserialized.hashCount());
+        Assert.assertEquals(filter.bitCount(), deserialized.bitCount());
+        for (int i = 0; i < 2 * KEYS; i++)
+            Assert.assertEquals(filter.mightContain(key(i)), deserialized.mightContain(key(i)));
+    }
+
+    private static byte[] key(int i) {
+        return ByteBuffer.allocate(Integer.BYTES).putInt(0, i).array();
+    }
+}
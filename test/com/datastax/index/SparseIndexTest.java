@@ -0,0 +1,70 @@
+package com.datastax.index;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.*;
+
+public class SparseIndexTest {
+
+    @Test
+    public void rowInterval() {
+        SparseIndex.Builder builder = SparseIndex.Builder.everyRows(3);
+        for (int i = 0; i < 10; i++)
+            builder.add(new byte[]{ (byte) i }, i * 100);
+
+        SparseIndex index = builder.build();
+        Assert.assertEquals(4, index.size());
+        for (int i = 0; i < index.size(); i++) {
+            Assert.assertArrayEquals(new byte[]{ (byte) (i * 3) }, index.key(i));
+            Assert.assertEquals(i * 300, index.offset(i));
+        }
+    }
+
+    @Test
+    public void byteInterval() {
+        SparseIndex.Builder builder = SparseIndex.Builder.everyBytes(250);
+        for (int i = 0; i < 10; i++)
+            builder.add(new byte[]{ (byte) i }, i * 100);
+
+        // rows at 0, 300, 600 and 900
+        SparseIndex index = builder.build();
+        Assert.assertEquals(4, index.size());
+        Assert.assertEquals(900, index.offset(3));
+    }
+
+    @Test
+    public void seekOffset() {
+        SparseIndex.Builder builder = SparseIndex.Builder.everyRows(1);
+        for (int i = 1; i <= 5; i++)
+            builder.add(new byte[]{ (byte) (i * 2) }, i * 10);
+        SparseIndex index = builder.build();
+
+        // before the first entry the scan has to start at the first row
+        Assert.assertEquals(-1, index.seekOffset(new byte[]{ 1 }));
+        Assert.assertEquals(10, index.seekOffset(new byte[]{ 2 }));
+        Assert.assertEquals(10, index.seekOffset(new byte[]{ 3 }));
+        Assert.assertEquals(30, index.seekOffset(new byte[]{ 6 }));
+        Assert.assertEquals(50, index.seekOffset(new byte[]{ 10, 0 }));
+        // keys are compared as unsigned bytes
+        Assert.assertEquals(50, index.seekOffset(new byte[]{ (byte) 0xff }));
+    }
+
+    @Test
+    public void serializationRoundTrip() throws Throwable {
+        SparseIndex.Builder builder = SparseIndex.Builder.everyRows(2);
+        for (int i = 0; i < 100; i++)
+            builder.add(("key" + i).getBytes("UTF-8"), i * 1000L * Integer.MAX_VALUE);
+        SparseIndex index = builder.build();
+
+        ByteArrayOutputStream os = new ByteArrayOutputStream();
+        index.serialize(new DataOutputStream(os));
+        SparseIndex deserialized = SparseIndex.deserialize(new DataInputStream(new ByteArrayInputStream(os.toByteArray())));
+
+        Assert.assertEquals(index.size(), deserialized.size());
+        for (int i = 0; i < index.size(); i++) {
+            Assert.assertArrayEquals(index.key(i), deserialized.key(i));
+            Assert.assertEquals(index.offset(i), deserialized.offset(i));
+        }
+    }
+}
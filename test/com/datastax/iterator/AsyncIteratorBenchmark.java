@@ -0,0 +1,150 @@
+package com.datastax.iterator;
+
+import com.datastax.metadata.Schema;
+import com.datastax.rows.Row;
+import com.datastax.serde.IntType;
+import com.datastax.serde.LongType;
+import com.datastax.serde.TextType;
+import com.datastax.writer.TableWriter;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.Iterator;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Merge of {@code fanIn} tables serialized in memory, consumed synchronously
+ * compared to the asynchronous paths: the whole merge behind an
+ * {@link AsyncIterator} or a {@link BatchingAsyncIterator}, every source
+ * behind its own {@link BatchingAsyncIterator} (as compactions read ahead),
+ * and sources deserialized in parallel by {@link AsyncTableIterator}.
+ * One operation is a full merge; every table has the same keys, so the
+ * merge yields {@code rows} rows.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class AsyncIteratorBenchmark {
+
+    @Param({"100000"})
+    public int rows;
+
+    @Param({"2", "8"})
+    public int fanIn;
+
+    private Schema schema;
+    private byte[] table;
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException {
+        schema = new Schema.Builder()
+                .addKey("key1", TextType.instance)
+                .addKey("key2", IntType.instance)
+                .addColumn("v1", TextType.instance)
+                .addColumn("v2", LongType.instance)
+                .build();
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        new TableWriter(schema, new DataOutputStream(bytes)).write(new Iterator<Row>() {
+            int i = 0;
+
+            public boolean hasNext() {
+                return i < rows;
+            }
+
+            public Row next() {
+                Row row = Row.builder(schema, i)
+                        .addKey("key1", String.format("ck%08d", i))
+                        .addKey("key2", i)
+                        .addColumn("v1", "value" + i)
+                        .addColumn("v2", (long) i)
+                        .row();
+                i++;
+                return row;
+            }
+        });
+        table = bytes.toByteArray();
+    }
+
+    private DataInputStream input() {
+        return new DataInputStream(new ByteArrayInputStream(table));
+    }
+
+    @SuppressWarnings("unchecked")
+    private Iterator<Row>[] tableIterators() {
+        Iterator<Row>[] iterators = new Iterator[fanIn];
+        for (int i = 0; i < fanIn; i++)
+            iterators[i] = new TableIterator(schema, input());
+        return iterators;
+    }
+
+    @Benchmark
+    public void sync(Blackhole bh) {
+        drain(MergeIterator.create(Row::merge, tableIterators()), bh);
+    }
+
+    @Benchmark
+    public void asyncMerge(Blackhole bh) {
+        drain(new AsyncIterator<>(MergeIterator.create(Row::merge, tableIterators())), bh);
+    }
+
+    @Benchmark
+    public void batchingAsyncMerge(Blackhole bh) throws IOException {
+        try (BatchingAsyncIterator<Row> merge = new BatchingAsyncIterator<>(MergeIterator.create(Row::merge, tableIterators()))) {
+            drain(merge, bh);
+        }
+    }
+
+    @Benchmark
+    @SuppressWarnings("unchecked")
+    public void readAheadSources(Blackhole bh) throws IOException {
+        Iterator<Row>[] iterators = tableIterators();
+        BatchingAsyncIterator<Row>[] sources = new BatchingAsyncIterator[fanIn];
+        for (int i = 0; i < fanIn; i++)
+            sources[i] = new BatchingAsyncIterator<>(iterators[i]);
+        try {
+            drain(MergeIterator.create(Row::merge, sources), bh);
+        }
+        finally {
+            for (BatchingAsyncIterator<Row> source : sources)
+                source.close();
+        }
+    }
+
+    @Benchmark
+    @SuppressWarnings("unchecked")
+    public void asyncTableIterators(Blackhole bh) throws IOException {
+        AsyncTableIterator[] sources = new AsyncTableIterator[fanIn];
+        for (int i = 0; i < fanIn; i++)
+            sources[i] = new AsyncTableIterator(schema, input());
+        try {
+            drain(MergeIterator.create(Row::merge, (Iterator<Row>[]) sources), bh);
+        }
+        finally {
+            for (AsyncTableIterator source : sources)
+                source.close();
+        }
+    }
+
+    private static void drain(Iterator<Row> iterator, Blackhole bh) {
+        while (iterator.hasNext())
+            bh.consume(iterator.next());
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder()
+                           .include(AsyncIteratorBenchmark.class.getSimpleName())
+                           .build()).run();
+    }
+}
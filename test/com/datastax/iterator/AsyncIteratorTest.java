@@ -10,9 +10,8 @@ import org.junit.Assert;
 import org.junit.Test;
 
 import java.io.*;
-import java.util.ArrayList;
-import java.util.Iterator;
-import java.util.List;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
 
 public class AsyncIteratorTest {
     private static final int NUMBER_OF_ROWS = 1000;
@@ -73,6 +72,185 @@ public class AsyncIteratorTest {
         Assert.assertEquals(numberOfUniqueRows, NUMBER_OF_ROWS);
     }
 
+    @Test
+    public void batchingAsyncIteratorTest() throws Throwable {
+        Schema schema = new Schema.Builder()
+                .addKey("key1", TextType.instance)
+                .addKey("key2", IntType.instance)
+                .addColumn("v1", TextType.instance)
+                .addColumn("v2", LongType.instance)
+                .build();
+
+        TableIterator tableIterator1 = getTableIterator(schema);
+        TableIterator tableIterator2 = getTableIterator(schema);
+
+        Iterator<Row> mergeIterator = MergeIterator.create(Row::merge, tableIterator1, tableIterator2);
+
+        BatchingAsyncIterator<Row> asyncIterator = new BatchingAsyncIterator<>(mergeIterator);
+
+        int numberOfUniqueRows = 0;
+
+        while (asyncIterator.hasNext()) {
+            asyncIterator.next();
+
+            numberOfUniqueRows++;
+        }
+
+        System.out.println("Number of Unique Rows = " + numberOfUniqueRows);
+
+        Assert.assertEquals(numberOfUniqueRows, NUMBER_OF_ROWS);
+    }
+
+    @Test
+    public void batchingAsyncIteratorPreservesOrder() throws Throwable {
+        int count = 100000;
+        List<Integer> items = new ArrayList<>(count);
+        for (int i = 0; i < count; i++)
+            items.add(i);
+
+        // tiny buffer and batches force both sides to wait on each other
+        BatchingAsyncIterator<Integer> asyncIterator = new BatchingAsyncIterator<>(items.iterator(), 4, 3);
+
+        int expected = 0;
+        while (asyncIterator.hasNext()) {
+            Assert.assertEquals(expected++, (int) asyncIterator.next());
+        }
+        Assert.assertEquals(count, expected);
+        asyncIterator.close();
+    }
+
+    @Test
+    public void batchingAsyncIteratorPropagatesFailure() throws Throwable {
+        Iterator<Integer> failing = new Iterator<Integer>() {
+            int i = 0;
+
+            public boolean hasNext() {
+                return true;
+            }
+
+            public Integer next() {
+                if (i == 10)
+                    throw new IllegalStateException("source failed");
+                return i++;
+            }
+        };
+
+        BatchingAsyncIterator<Integer> asyncIterator = new BatchingAsyncIterator<>(failing, 16, 4);
+        for (int i = 0; i < 10; i++)
+            Assert.assertEquals(i, (int) asyncIterator.next());
+
+        try {
+            asyncIterator.hasNext();
+            Assert.fail("Expected failure of the source to be rethrown");
+        }
+        catch (IllegalStateException e) {
+            Assert.assertEquals("source failed", e.getMessage());
+        }
+    }
+
+    @Test(timeout = 10000)
+    public void asyncIteratorLeavesSourceToProducer() throws Throwable {
+        // a slow source, so the consumer often finds the queue empty
+        Set<Thread> callers = Collections.newSetFromMap(new ConcurrentHashMap<>());
+        Iterator<Integer> slow = new Iterator<Integer>() {
+            int i = 0;
+
+            public boolean hasNext() {
+                callers.add(Thread.currentThread());
+                return i < 20;
+            }
+
+            public Integer next() {
+                callers.add(Thread.currentThread());
+                try {
+                    Thread.sleep(1);
+                }
+                catch (InterruptedException e) {
+                    throw new RuntimeException(e);
+                }
+                return i++;
+            }
+        };
+
+        AsyncIterator<Integer> asyncIterator = new AsyncIterator<>(slow);
+        for (int i = 0; i < 20; i++) {
+            Assert.assertTrue(asyncIterator.hasNext());
+            Assert.assertEquals(i, (int) asyncIterator.next());
+        }
+        Assert.assertFalse(asyncIterator.hasNext());
+        Assert.assertEquals(1, callers.size());
+        Assert.assertFalse(callers.contains(Thread.currentThread()));
+    }
+
+    @Test(timeout = 10000)
+    public void asyncIteratorPropagatesFailure() throws Throwable {
+        Iterator<Integer> failing = new Iterator<Integer>() {
+            int i = 0;
+
+            public boolean hasNext() {
+                if (i == 10)
+                    throw new IllegalStateException("source failed");
+                return true;
+            }
+
+            public Integer next() {
+                return i++;
+            }
+        };
+
+        AsyncIterator<Integer> asyncIterator = new AsyncIterator<>(failing);
+        for (int i = 0; i < 10; i++)
+            Assert.assertEquals(i, (int) asyncIterator.next());
+
+        try {
+            asyncIterator.hasNext();
+            Assert.fail("Expected failure of the source to be rethrown");
+        }
+        catch (IllegalStateException e) {
+            Assert.assertEquals("source failed", e.getMessage());
+        }
+    }
+
+    @Test
+    public void asyncIteratorsComparison() throws Throwable {
+        Schema schema = new Schema.Builder()
+                .addKey("key1", TextType.instance)
+                .addKey("key2", IntType.instance)
+                .addColumn("v1", TextType.instance)
+                .addColumn("v2", LongType.instance)
+                .build();
+
+        List<Row> rows = new ArrayList<>(NUMBER_OF_ROWS);
+        for (int i = 0; i < NUMBER_OF_ROWS; i++)
+            rows.add(createRowForTableIterator(schema, i));
+
+        ByteArrayOutputStream os = new ByteArrayOutputStream(4096);
+        new TableWriter(schema, new DataOutputStream(os)).write(rows.iterator());
+        byte[] table = os.toByteArray();
+
+        // timings of these paths are measured by AsyncIteratorBenchmark
+        for (int round = 0; round < 5; round++) {
+            Iterator<Row> merge = MergeIterator.create(Row::merge, tableIterator(schema, table), tableIterator(schema, table));
+            Assert.assertEquals(NUMBER_OF_ROWS, drain(new AsyncIterator<>(merge)));
+
+            merge = MergeIterator.create(Row::merge, tableIterator(schema, table), tableIterator(schema, table));
+            Assert.assertEquals(NUMBER_OF_ROWS, drain(new BatchingAsyncIterator<>(merge)));
+        }
+    }
+
+    private static int drain(Iterator<Row> iterator) {
+        int count = 0;
+        while (iterator.hasNext()) {
+            iterator.next();
+            count++;
+        }
+        return count;
+    }
+
+    private static TableIterator tableIterator(Schema schema, byte[] table) {
+        return new TableIterator(schema, new DataInputStream(new ByteArrayInputStream(table)));
+    }
+
     private TableIterator getTableIterator(Schema schema) throws IOException {
         List<Row> rows = new ArrayList<>(NUMBER_OF_ROWS);
 
@@ -97,7 +275,7 @@ public class AsyncIteratorTest {
 
     private Row createRowForTableIterator(Schema schema, int i1) {
         return Row.builder(schema)
-                .addKey("key1", "ck" + i1)
+                .addKey("key1", String.format("ck%05d", i1))
                 .addKey("key2", 1)
                 .addColumn("v1", "v" + i1)
                 .addColumn("v2", 1L)
@@ -0,0 +1,147 @@
+package com.datastax.iterator;
+
+import com.datastax.metadata.Constants;
+import com.datastax.metadata.Schema;
+import com.datastax.rows.Row;
+import com.datastax.serde.IntType;
+import com.datastax.serde.LongType;
+import com.datastax.serde.TextType;
+import com.datastax.writer.TableWriter;
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.*;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+public class AsyncTableIteratorTest {
+    private static final int NUMBER_OF_ROWS = 10000;
+
+    private static final Schema schema = new Schema.Builder()
+            .addKey("key1", TextType.instance)
+            .addKey("key2", IntType.instance)
+            .addColumn("v1", TextType.instance)
+            .addColumn("v2", LongType.instance)
+            .addColumn("v3", TextType.instance)
+            .addColumn("v4", TextType.instance)
+            .build();
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void asyncTableIteratorPreservesOrder() throws Throwable {
+        List<Row> rows = rows(0, 1);
+        byte[] table = write(rows);
+
+        ExecutorService workers = Executors.newFixedThreadPool(4);
+        try {
+            // bound smaller than a single row: frames are handed over one by one
+            AsyncTableIterator iter = new AsyncTableIterator(schema,
+                                                             new DataInputStream(new ByteArrayInputStream(table)),
+                                                             workers,
+                                                             16);
+            for (Row row : rows) {
+                Assert.assertTrue(iter.hasNext());
+                Assert.assertEquals(row, iter.next());
+            }
+            Assert.assertFalse(iter.hasNext());
+        }
+        finally {
+            workers.shutdown();
+        }
+    }
+
+    @Test
+    public void asyncTableIteratorMerge() throws Throwable {
+        File file1 = folder.newFile();
+        File file2 = folder.newFile();
+        List<Row> rows1 = rows(0, 2);
+        List<Row> rows2 = rows(1, 2);
+
+        try (TableWriter.OnDiskWriter writer = TableWriter.onDiskWriter(schema, file1.toPath())) {
+            writer.write(rows1.iterator());
+        }
+        try (TableWriter.OnDiskWriter writer = TableWriter.onDiskWriter(schema, file2.toPath())) {
+            writer.write(rows2.iterator());
+        }
+
+        try (AsyncTableIterator iter1 = AsyncTableIterator.onDiskIterator(schema, file1.getPath());
+             AsyncTableIterator iter2 = AsyncTableIterator.onDiskIterator(schema, file2.getPath())) {
+            Iterator<Row> merged = SortedInvariantCheckIterator.wrap(MergeIterator.create(Row::merge, iter1, iter2));
+
+            int count = 0;
+            while (merged.hasNext()) {
+                Assert.assertEquals(row(count), merged.next());
+                count++;
+            }
+            Assert.assertEquals(rows1.size() + rows2.size(), count);
+        }
+    }
+
+    @Test(timeout = 10000)
+    public void closeStopsReading() throws Throwable {
+        byte[] table = write(rows(0, 1));
+
+        AsyncTableIterator iter = new AsyncTableIterator(schema, new DataInputStream(new ByteArrayInputStream(table)));
+        Assert.assertEquals(row(0), iter.next());
+        iter.close();
+        Assert.assertFalse(iter.hasNext());
+    }
+
+    @Test(timeout = 10000)
+    public void closeWakesUpWaitingConsumer() throws Throwable {
+        // a table without header whose first row never arrives
+        PipedOutputStream out = new PipedOutputStream();
+        PipedInputStream in = new PipedInputStream(out);
+        DataOutputStream output = new DataOutputStream(out);
+        if (Constants.DEBUG)
+            output.writeInt(Constants.ROW_MAGIC);
+        output.writeInt(100);
+
+        AsyncTableIterator iter = new AsyncTableIterator(schema, new DataInputStream(in));
+        ExecutorService consumer = Executors.newSingleThreadExecutor();
+        try {
+            Future<Boolean> hasNext = consumer.submit(iter::hasNext);
+            Thread.sleep(100);
+            Assert.assertFalse(hasNext.isDone());
+
+            iter.close();
+            Assert.assertFalse(hasNext.get());
+            Assert.assertFalse(iter.hasNext());
+        }
+        finally {
+            consumer.shutdownNow();
+        }
+    }
+
+    private static byte[] write(List<Row> rows) throws IOException {
+        ByteArrayOutputStream os = new ByteArrayOutputStream(4096);
+        new TableWriter(schema, new DataOutputStream(os)).write(rows.iterator());
+        return os.toByteArray();
+    }
+
+    private static List<Row> rows(int from, int step) {
+        List<Row> rows = new ArrayList<>();
+        for (int i = from; i < NUMBER_OF_ROWS; i += step)
+            rows.add(row(i));
+        return rows;
+    }
+
+    private static Row row(int i) {
+        return Row.builder(schema, i)
+                .addKey("key1", String.format("ck%05d", i))
+                .addKey("key2", i % 7)
+                .addColumn("v1", "value-one-" + i)
+                .addColumn("v2", (long) i)
+                .addColumn("v3", "value-three-" + i)
+                .addColumn("v4", "value-four-" + i)
+                .row();
+    }
+}
@@ -0,0 +1,167 @@
+package com.datastax.iterator;
+
+import com.datastax.cache.BlockCache;
+import com.datastax.metadata.Compression;
+import com.datastax.metadata.Schema;
+import com.datastax.rows.Row;
+import com.datastax.serde.IntType;
+import com.datastax.serde.TextType;
+import com.datastax.writer.BlockTableWriter;
+import com.datastax.writer.TableWriter;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Iterator;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Full scan of a text-heavy table: the plain format read through memory
+ * mapping compared to the block format with and without compression.
+ * One operation is a scan of the whole file; the {@code bytesRead} counter
+ * reports the rate at which file bytes are read, so bytes per scan is its
+ * score divided by the scan rate. Together they show what compression saves
+ * in I/O and costs in CPU. With {@code cached}, the block scan reads its
+ * blocks from a {@link BlockCache} large enough for the whole table. With
+ * {@code dictionary}, blocks encode the low-cardinality {@code region}
+ * column, see {@link com.datastax.rows.TextDictionary}; with {@code compact},
+ * rows are stored in the compact layout, see {@link Row#serializeCompact}.
+ * A non-zero {@code restartInterval} prefix compresses the keys of blocks.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class BlockTableBenchmark {
+    private static final String[] WORDS = { "lorem", "ipsum", "dolor", "sit", "amet", "consectetur",
+                                            "adipiscing", "elit", "sed", "do", "eiusmod", "tempor" };
+
+    @Param({"100000"})
+    public int rows;
+
+    @Param({"NONE", "DEFLATE_FAST", "DEFLATE"})
+    public Compression compression;
+
+    @Param({"16384", "65536"})
+    public int blockSize;
+
+    @Param({"false", "true"})
+    public boolean cached;
+
+    @Param({"false", "true"})
+    public boolean dictionary;
+
+    @Param({"false", "true"})
+    public boolean compact;
+
+    @Param({"0", "16"})
+    public int restartInterval;
+
+    private Schema schema;
+    private Path plain;
+    private Path blocks;
+    private BlockCache cache;
+
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.OPERATIONS)
+    public static class Counters {
+        public long bytesRead;
+    }
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException {
+        schema = new Schema.Builder()
+                .addKey("key1", TextType.instance)
+                .addKey("key2", IntType.instance)
+                .addColumn("region", TextType.instance)
+                .addColumn("title", TextType.instance)
+                .addColumn("body", TextType.instance)
+                .build();
+
+        plain = Files.createTempFile("block-table-benchmark", ".db");
+        try (TableWriter.OnDiskWriter writer = TableWriter.onDiskWriter(schema, plain)) {
+            writer.write(rows(schema, rows));
+        }
+
+        blocks = Files.createTempFile("block-table-benchmark", ".blocks");
+        try (BlockTableWriter.OnDiskWriter writer = new BlockTableWriter.Builder(schema)
+                .compression(compression)
+                .blockSize(blockSize)
+                .dictionary(dictionary)
+                .compact(compact)
+                .restartInterval(restartInterval)
+                .onDiskWriter(blocks)) {
+            writer.write(rows(schema, rows));
+        }
+
+        cache = cached ? new BlockCache(256 * 1024 * 1024) : null;
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        Files.deleteIfExists(plain);
+        Files.deleteIfExists(blocks);
+    }
+
+    @Benchmark
+    public void plainScan(Blackhole bh, Counters counters) throws IOException {
+        try (TableIterator.MappedOnDiskIterator iter = TableIterator.mappedIterator(schema, plain.toString())) {
+            while (iter.hasNext())
+                bh.consume(iter.next());
+        }
+        counters.bytesRead += Files.size(plain);
+    }
+
+    @Benchmark
+    public void blockScan(Blackhole bh, Counters counters) throws IOException {
+        try (BlockTableIterator iter = BlockTableIterator.open(schema, blocks.toString(), false, BlockTableIterator.Verification.SYNC, cache)) {
+            while (iter.hasNext())
+                bh.consume(iter.next());
+            counters.bytesRead += iter.index().storedSize();
+        }
+    }
+
+    private static Iterator<Row> rows(Schema schema, int rows) {
+        Random random = new Random(42);
+        return new Iterator<Row>() {
+            int i = 0;
+
+            public boolean hasNext() {
+                return i < rows;
+            }
+
+            public Row next() {
+                Row row = Row.builder(schema, i)
+                        .addKey("key1", String.format("ck%08d", i))
+                        .addKey("key2", i)
+                        .addColumn("region", "region-" + random.nextInt(32))
+                        .addColumn("title", text(random, 5))
+                        .addColumn("body", text(random, 40))
+                        .row();
+                i++;
+                return row;
+            }
+        };
+    }
+
+    private static String text(Random random, int words) {
+        StringBuilder b = new StringBuilder();
+        for (int i = 0; i < words; i++)
+            b.append(WORDS[random.nextInt(WORDS.length)]).append(' ');
+        return b.toString();
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder()
+                           .include(BlockTableBenchmark.class.getSimpleName())
+                           .build()).run();
+    }
+}
@@ -0,0 +1,382 @@
+package com.datastax.iterator;
+
+import com.datastax.metadata.Compression;
+import com.datastax.metadata.Schema;
+import com.datastax.rows.Row;
+import com.datastax.rows.Slice;
+import com.datastax.serde.IntType;
+import com.datastax.serde.LongType;
+import com.datastax.serde.MarshalException;
+import com.datastax.serde.TextType;
+import com.datastax.writer.BlockTableWriter;
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+public class BlockTableIteratorTest {
+    private static final int NUMBER_OF_ROWS = 2000;
+
+    private static final Schema schema = new Schema.Builder()
+            .addKey("key1", TextType.instance)
+            .addKey("key2", IntType.instance)
+            .addColumn("v1", TextType.instance)
+            .addColumn("v2", LongType.instance)
+            .build();
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void blockTableRoundTrip() throws Throwable {
+        List<Row> rows = rows();
+
+        for (Compression compression : Compression.values()) {
+            File file = write(rows, writer(compression, 1024));
+
+            for (boolean lazy : new boolean[]{ false, true }) {
+                try (BlockTableIterator iter = BlockTableIterator.open(schema, file.getPath(), lazy)) {
+                    Assert.assertTrue(iter.index().size() > 1);
+                    for (Row row : rows) {
+                        Assert.assertTrue(iter.hasNext());
+                        Row next = iter.next();
+                        Assert.assertEquals(lazy, next.isLazy());
+                        Assert.assertEquals(row, next);
+                    }
+                    Assert.assertFalse(iter.hasNext());
+                }
+            }
+        }
+    }
+
+    @Test
+    public void compressionShrinksBlocks() throws Throwable {
+        List<Row> rows = rows();
+        long[] sizes = new long[Compression.values().length];
+        for (Compression compression : Compression.values()) {
+            try (BlockTableIterator iter = BlockTableIterator.open(schema, write(rows, writer(compression, 16 * 1024)).getPath())) {
+                sizes[compression.ordinal()] = iter.index().storedSize();
+            }
+        }
+
+        Assert.assertTrue(sizes[Compression.DEFLATE_FAST.ordinal()] < sizes[Compression.NONE.ordinal()] / 2);
+        Assert.assertTrue(sizes[Compression.DEFLATE.ordinal()] <= sizes[Compression.DEFLATE_FAST.ordinal()]);
+    }
+
+    @Test
+    public void rowsLargerThanBlocks() throws Throwable {
+        List<Row> rows = rows();
+        File file = write(rows, writer(Compression.DEFLATE, 16));
+
+        try (BlockTableIterator iter = BlockTableIterator.open(schema, file.getPath())) {
+            // one row per block
+            Assert.assertEquals(rows.size(), iter.index().size());
+            for (Row row : rows)
+                Assert.assertEquals(row, iter.next());
+            Assert.assertFalse(iter.hasNext());
+        }
+    }
+
+    @Test
+    public void emptyTable() throws Throwable {
+        File file = write(new ArrayList<>(), writer(Compression.DEFLATE, 1024));
+        try (BlockTableIterator iter = BlockTableIterator.open(schema, file.getPath())) {
+            iter.slice(Slice.from(key(10), true));
+            Assert.assertFalse(iter.hasNext());
+        }
+    }
+
+    @Test
+    public void slicedBlockTable() throws Throwable {
+        List<Row> rows = rows();
+        File file = write(rows, writer(Compression.DEFLATE_FAST, 512));
+
+        Slice[] slices = {
+                Slice.between(key(100), true, key(200), false),
+                Slice.between(key(100), false, key(200), true),
+                Slice.from(key(NUMBER_OF_ROWS - 3), true),
+                Slice.to(key(3), true),
+                Slice.from(key(NUMBER_OF_ROWS), true),
+        };
+
+        for (Slice slice : slices) {
+            List<Row> expected = new ArrayList<>();
+            for (Row row : rows) {
+                if (slice.contains(row))
+                    expected.add(row);
+            }
+
+            try (BlockTableIterator iter = BlockTableIterator.open(schema, file.getPath())) {
+                iter.slice(slice);
+                for (Row row : expected)
+                    Assert.assertEquals(row, iter.next());
+                Assert.assertFalse(iter.hasNext());
+            }
+        }
+    }
+
+    @Test
+    public void corruptedBlocksAreDetected() throws Throwable {
+        List<Row> rows = rows();
+
+        for (Compression compression : Compression.values()) {
+            File file = write(rows, writer(compression, 1024));
+
+            // flip a byte in the middle of the third block
+            long offset;
+            try (BlockTableIterator iter = BlockTableIterator.open(schema, file.getPath())) {
+                offset = iter.index().offset(2) + iter.index().storedLength(2) / 2;
+            }
+            try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+                raf.seek(offset);
+                int b = raf.read();
+                raf.seek(offset);
+                raf.write(b ^ 0x10);
+            }
+
+            for (BlockTableIterator.Verification verification : new BlockTableIterator.Verification[]{ BlockTableIterator.Verification.SYNC,
+                                                                                                      BlockTableIterator.Verification.ASYNC }) {
+                try (BlockTableIterator iter = BlockTableIterator.open(schema, file.getPath(), false, verification)) {
+                    int read = 0;
+                    try {
+                        while (iter.hasNext()) {
+                            iter.next();
+                            read++;
+                        }
+                        Assert.fail("Corruption of " + compression + " table was not detected with " + verification + " verification");
+                    }
+                    catch (MarshalException e) {
+                        // rows of the first two blocks are intact
+                        Assert.assertTrue(read >= 2);
+                        if (compression == Compression.NONE)
+                            Assert.assertTrue(e.getMessage(), e.getMessage().startsWith("Corrupted block 2"));
+                    }
+                }
+            }
+        }
+    }
+
+    @Test
+    public void dictionaryBlockTableRoundTrip() throws Throwable {
+        List<Row> rows = rows();
+
+        for (Compression compression : Compression.values()) {
+            File file = write(rows, writer(compression, 1024).dictionary(true));
+
+            for (boolean lazy : new boolean[]{ false, true }) {
+                try (BlockTableIterator iter = BlockTableIterator.open(schema, file.getPath(), lazy)) {
+                    Assert.assertTrue(iter.index().size() > 1);
+                    for (Row row : rows) {
+                        Assert.assertTrue(iter.hasNext());
+                        Row next = iter.next();
+                        Assert.assertEquals(row, next);
+                        // references are resolved when the row is written again
+                        Assert.assertEquals(row.serializedSize(), next.serializedSize());
+                        ByteBuffer buffer = ByteBuffer.allocate(next.serializedSize());
+                        next.serialize(buffer, 0);
+                        Assert.assertEquals(row, Row.deserialize(schema, buffer, 0));
+                    }
+                    Assert.assertFalse(iter.hasNext());
+                }
+            }
+        }
+    }
+
+    @Test
+    public void dictionaryShrinksBlocks() throws Throwable {
+        List<Row> rows = rows();
+        try (BlockTableIterator plain = BlockTableIterator.open(schema, write(rows, writer(Compression.NONE, 16 * 1024)).getPath());
+             BlockTableIterator encoded = BlockTableIterator.open(schema, write(rows, writer(Compression.NONE, 16 * 1024).dictionary(true)).getPath())) {
+            Assert.assertTrue(encoded.index().storedSize() < plain.index().storedSize() * 3 / 4);
+        }
+    }
+
+    @Test
+    public void dictionaryValuesAreShared() throws Throwable {
+        List<Row> rows = rows();
+        File file = write(rows, writer(Compression.DEFLATE, 16 * 1024).dictionary(true));
+
+        for (boolean lazy : new boolean[]{ false, true }) {
+            Map<String, String> seen = new HashMap<>();
+            try (BlockTableIterator iter = BlockTableIterator.open(schema, file.getPath(), lazy)) {
+                Assert.assertTrue(iter.index().size() > 1);
+                while (iter.hasNext()) {
+                    String value = (String) iter.next().getColumn(schema.getRowColumn(0));
+                    String previous = seen.putIfAbsent(value, value);
+                    if (previous != null)
+                        Assert.assertSame(previous, value);
+                }
+            }
+            Assert.assertEquals(10, seen.size());
+        }
+    }
+
+    @Test
+    public void distinctValuesAreNotEncoded() throws Throwable {
+        List<Row> rows = new ArrayList<>();
+        for (int i = 0; i < NUMBER_OF_ROWS; i++) {
+            rows.add(Row.builder(schema, i)
+                             .addKey("key1", String.format("ck%05d", i))
+                             .addKey("key2", i)
+                             .addColumn("v1", "unique value " + i)
+                             .addColumn("v2", (long) i)
+                             .row());
+        }
+
+        try (BlockTableIterator plain = BlockTableIterator.open(schema, write(rows, writer(Compression.NONE, 1024)).getPath());
+             BlockTableIterator encoded = BlockTableIterator.open(schema, write(rows, writer(Compression.NONE, 1024).dictionary(true)).getPath())) {
+            // every block only gets an empty dictionary
+            Assert.assertEquals(plain.index().size(), encoded.index().size());
+            Assert.assertEquals(plain.index().storedSize() + encoded.index().size() * Integer.BYTES, encoded.index().storedSize());
+            for (Row row : rows)
+                Assert.assertEquals(row, encoded.next());
+        }
+    }
+
+    @Test
+    public void compactBlockTableRoundTrip() throws Throwable {
+        List<Row> rows = rows();
+
+        for (boolean dictionary : new boolean[]{ false, true }) {
+            for (int blockSize : new int[]{ 4, 1024 }) {
+                File file = write(rows, writer(Compression.NONE, blockSize).dictionary(dictionary).compact(true));
+
+                for (boolean lazy : new boolean[]{ false, true }) {
+                    try (BlockTableIterator iter = BlockTableIterator.open(schema, file.getPath(), lazy)) {
+                        Assert.assertTrue(iter.index().size() > 1);
+                        for (Row row : rows) {
+                            Assert.assertTrue(iter.hasNext());
+                            Row next = iter.next();
+                            Assert.assertEquals(row, next);
+                            Assert.assertEquals(row.writeTime(), next.writeTime());
+                        }
+                        Assert.assertFalse(iter.hasNext());
+                    }
+                }
+            }
+        }
+
+        // slices start in the middle of compact blocks
+        try (BlockTableIterator iter = BlockTableIterator.open(schema, write(rows, writer(Compression.DEFLATE, 1024).compact(true)).getPath())) {
+            iter.slice(Slice.between(key(1000), true, key(1010), false));
+            for (int i = 1000; i < 1010; i++)
+                Assert.assertEquals(rows.get(i), iter.next());
+            Assert.assertFalse(iter.hasNext());
+        }
+    }
+
+    @Test
+    public void compactRowsShrinkBlocks() throws Throwable {
+        List<Row> rows = rows();
+        try (BlockTableIterator plain = BlockTableIterator.open(schema, write(rows, writer(Compression.NONE, 16 * 1024)).getPath());
+             BlockTableIterator compact = BlockTableIterator.open(schema, write(rows, writer(Compression.NONE, 16 * 1024).compact(true)).getPath())) {
+            // size, write time, key length, bitmap, text length and long take
+            // 32 bytes, and 8 at most as vints of small values
+            Assert.assertTrue(compact.index().storedSize() <= plain.index().storedSize() - (long) rows.size() * (32 - 8));
+        }
+    }
+
+    @Test
+    public void prefixKeysRoundTrip() throws Throwable {
+        List<Row> rows = rows();
+
+        for (boolean compact : new boolean[]{ false, true }) {
+            for (boolean dictionary : new boolean[]{ false, true }) {
+                for (int restartInterval : new int[]{ 1, 5, BlockTableWriter.DEFAULT_RESTART_INTERVAL }) {
+                    File file = write(rows, writer(Compression.NONE, 1024).dictionary(dictionary).compact(compact).restartInterval(restartInterval));
+
+                    for (boolean lazy : new boolean[]{ false, true }) {
+                        try (BlockTableIterator iter = BlockTableIterator.open(schema, file.getPath(), lazy)) {
+                            Assert.assertTrue(iter.index().size() > 1);
+                            for (Row row : rows)
+                                Assert.assertEquals(row, iter.next());
+                            Assert.assertFalse(iter.hasNext());
+                        }
+                    }
+                }
+            }
+        }
+    }
+
+    @Test
+    public void prefixKeysShrinkBlocks() throws Throwable {
+        List<Row> rows = rows();
+        try (BlockTableIterator plain = BlockTableIterator.open(schema, write(rows, writer(Compression.NONE, 16 * 1024).compact(true)).getPath());
+             BlockTableIterator prefixed = BlockTableIterator.open(schema, write(rows, writer(Compression.NONE, 16 * 1024).compact(true).restartInterval(16)).getPath())) {
+            // keys of 13 bytes mostly share their first 6 with the key before
+            Assert.assertTrue(prefixed.index().storedSize() <= plain.index().storedSize() - (long) rows.size() * 4);
+        }
+    }
+
+    @Test
+    public void slicedPrefixKeysBlockTable() throws Throwable {
+        List<Row> rows = rows();
+
+        for (boolean compact : new boolean[]{ false, true }) {
+            File file = write(rows, writer(Compression.DEFLATE_FAST, 4096).dictionary(true).compact(compact).restartInterval(4));
+
+            Slice[] slices = {
+                    Slice.between(key(100), true, key(200), false),
+                    Slice.between(key(101), false, key(203), true),
+                    Slice.from(key(NUMBER_OF_ROWS - 3), true),
+                    Slice.from(key(0), true),
+                    Slice.to(key(3), true),
+                    Slice.from(key(NUMBER_OF_ROWS), true),
+            };
+
+            for (Slice slice : slices) {
+                List<Row> expected = new ArrayList<>();
+                for (Row row : rows) {
+                    if (slice.contains(row))
+                        expected.add(row);
+                }
+
+                for (boolean lazy : new boolean[]{ false, true }) {
+                    try (BlockTableIterator iter = BlockTableIterator.open(schema, file.getPath(), lazy)) {
+                        iter.slice(slice);
+                        for (Row row : expected)
+                            Assert.assertEquals(row, iter.next());
+                        Assert.assertFalse(iter.hasNext());
+                    }
+                }
+            }
+        }
+    }
+
+    private File write(List<Row> rows, BlockTableWriter.Builder writer) throws Throwable {
+        File file = folder.newFile();
+        try (BlockTableWriter.OnDiskWriter onDisk = writer.onDiskWriter(file.toPath())) {
+            onDisk.write(rows.iterator());
+        }
+        return file;
+    }
+
+    private static BlockTableWriter.Builder writer(Compression compression, int blockSize) {
+        return new BlockTableWriter.Builder(schema).compression(compression).blockSize(blockSize);
+    }
+
+    private static List<Row> rows() {
+        List<Row> rows = new ArrayList<>();
+        for (int i = 0; i < NUMBER_OF_ROWS; i++) {
+            rows.add(Row.builder(schema, i)
+                             .addKey("key1", String.format("ck%05d", i))
+                             .addKey("key2", i)
+                             .addColumn("v1", "some rather repetitive text value " + i % 10)
+                             .addColumn("v2", (long) i)
+                             .row());
+        }
+        return rows;
+    }
+
+    private static byte[] key(int i) {
+        return Row.comparableKey(schema, String.format("ck%05d", i), i);
+    }
+}
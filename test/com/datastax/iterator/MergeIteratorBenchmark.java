@@ -0,0 +1,97 @@
+package com.datastax.iterator;
+
+import com.datastax.metadata.Schema;
+import com.datastax.rows.Row;
+import com.datastax.serde.IntType;
+import com.datastax.serde.LongType;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of {@link MergeIterator} by fan-in, over sources held in memory so
+ * that only the merge itself is measured. Every source has
+ * {@code rows / fanIn} rows, and {@code overlap} percent of them have a key
+ * that every other source has too and that is merged with {@link Row#merge};
+ * the other keys are unique and interleaved with the keys of the other
+ * sources. One operation is a merge of all sources; the {@code mergedRows}
+ * counter reports the rate at which merged rows are produced.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class MergeIteratorBenchmark {
+
+    @Param({"262144"})
+    public int rows;
+
+    @Param({"2", "16", "256"})
+    public int fanIn;
+
+    @Param({"0", "10", "100"})
+    public int overlap;
+
+    private List<List<Row>> sources;
+
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.OPERATIONS)
+    public static class Counters {
+        public long mergedRows;
+    }
+
+    @Setup(Level.Trial)
+    public void setup() {
+        Schema schema = new Schema.Builder()
+                .addKey("key", IntType.instance)
+                .addColumn("v", LongType.instance)
+                .build();
+
+        int perSource = rows / fanIn;
+        sources = new ArrayList<>(fanIn);
+        for (int s = 0; s < fanIn; s++) {
+            List<Row> source = new ArrayList<>(perSource);
+            for (int i = 0; i < perSource; i++) {
+                // shared keys use slot 0 of every stride of fanIn keys
+                boolean shared = i % 100 < overlap;
+                source.add(Row.builder(schema, s)
+                                   .addKey("key", i * fanIn + (shared ? 0 : s))
+                                   .addColumn("v", (long) i)
+                                   .row());
+            }
+            sources.add(source);
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private Iterator<Row> merge() {
+        Iterator<Row>[] iterators = new Iterator[fanIn];
+        for (int s = 0; s < fanIn; s++)
+            iterators[s] = sources.get(s).iterator();
+        return MergeIterator.create(Row::merge, iterators);
+    }
+
+    @Benchmark
+    public void merge(Blackhole bh, Counters counters) {
+        Iterator<Row> merge = merge();
+        while (merge.hasNext()) {
+            bh.consume(merge.next());
+            counters.mergedRows++;
+        }
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder()
+                           .include(MergeIteratorBenchmark.class.getSimpleName())
+                           .build()).run();
+    }
+}
@@ -2,10 +2,12 @@ package com.datastax.iterator;
 
 import com.datastax.metadata.Schema;
 import com.datastax.rows.Row;
+import com.datastax.rows.Slice;
 import com.datastax.serde.TextType;
 import org.junit.Assert;
 import org.junit.Test;
 
+import java.io.Closeable;
 import java.util.*;
 import java.util.function.BiFunction;
 
@@ -83,4 +85,149 @@ public class MergeIteratorTest {
         Assert.assertFalse(mergeIterator.hasNext());
         Assert.assertEquals(iterations, i);
     }
+
+    @Test
+    public void testMergeIteratorOverlappingSources() throws Schema.AlreadyExistsException
+    {
+        int iteratorCount = 37;
+        int keys = 1000;
+        List<Row>[] rowIteratorLists = new List[iteratorCount];
+        long[] maxWriteTime = new long[keys];
+        Random rnd = new Random();
+        for (int i = 0; i < iteratorCount; i++) {
+            rowIteratorLists[i] = new ArrayList<>();
+            for (int k = 0; k < keys; k++) {
+                if (rnd.nextInt(4) != 0)
+                    continue;
+
+                long ts = rnd.nextInt(100000);
+                rowIteratorLists[i].add(row(ts, String.format("key%5d", k), String.format("v%5d", ts)));
+                maxWriteTime[k] = Math.max(maxWriteTime[k], ts);
+            }
+        }
+
+        Iterator<Row>[] iterators = new Iterator[iteratorCount + 2];
+        for (int i = 0; i < iteratorCount; i++) {
+            iterators[i] = rowIteratorLists[i].iterator();
+        }
+        iterators[iteratorCount] = Collections.emptyIterator();
+        iterators[iteratorCount + 1] = Collections.emptyIterator();
+
+        Iterator<Row> mergeIterator = SortedInvariantCheckIterator.wrap(MergeIterator.create(ROW_MERGER,
+                                                                                             iterators));
+
+        for (int k = 0; k < keys; k++) {
+            if (maxWriteTime[k] == 0)
+                continue;
+
+            Row next = mergeIterator.next();
+            Assert.assertEquals(maxWriteTime[k], next.writeTime());
+            Assert.assertEquals(row(maxWriteTime[k], String.format("key%5d", k), String.format("v%5d", maxWriteTime[k])),
+                                next);
+        }
+        Assert.assertFalse(mergeIterator.hasNext());
+    }
+
+    @Test
+    public void testMergeIteratorNoSources() {
+        Assert.assertFalse(MergeIterator.create(ROW_MERGER).hasNext());
+        Assert.assertFalse(MergeIterator.create(ROW_MERGER, Collections.<Row>emptyIterator()).hasNext());
+    }
+
+    @Test
+    public void testSlicedMergeIterator() throws Throwable {
+        int keys = 100;
+        List<Row> rows1 = new ArrayList<>();
+        List<Row> rows2 = new ArrayList<>();
+        for (int k = 0; k < keys; k++) {
+            if (k % 2 == 0)
+                rows1.add(row(1, String.format("key%03d", k), "v1"));
+            if (k % 3 == 0)
+                rows2.add(row(2, String.format("key%03d", k), "v2"));
+        }
+
+        for (boolean startInclusive : new boolean[]{ true, false }) {
+            for (boolean endInclusive : new boolean[]{ true, false }) {
+                Slice slice = Slice.between(key("key012"), startInclusive, key("key060"), endInclusive);
+
+                ClosingIterator source1 = new ClosingIterator(rows1.iterator());
+                ClosingIterator source2 = new ClosingIterator(rows2.iterator());
+                Iterator<Row> merged = SortedInvariantCheckIterator.wrap(Sliceable.merge(ROW_MERGER, slice, source1, source2));
+
+                int from = startInclusive ? 12 : 13;
+                int to = endInclusive ? 60 : 59;
+                for (int k = from; k <= to; k++) {
+                    if (k % 2 != 0 && k % 3 != 0)
+                        continue;
+
+                    Assert.assertEquals(k % 3 == 0 ? row(2, String.format("key%03d", k), "v2")
+                                                   : row(1, String.format("key%03d", k), "v1"),
+                                        merged.next());
+                }
+                Assert.assertFalse(merged.hasNext());
+
+                // both sources stopped right after the end bound and were closed
+                Assert.assertTrue(source1.closed);
+                Assert.assertTrue(source2.closed);
+                Assert.assertEquals(endInclusive ? 32 : 31, source1.read);
+                Assert.assertEquals(endInclusive ? 22 : 21, source2.read);
+            }
+        }
+
+        Assert.assertFalse(Sliceable.merge(ROW_MERGER, Slice.from(key("key100"), true), rows1.iterator(), rows2.iterator()).hasNext());
+
+        int count = 0;
+        Iterator<Row> merged = Sliceable.merge(ROW_MERGER, Slice.ALL, rows1.iterator(), rows2.iterator());
+        while (merged.hasNext()) {
+            merged.next();
+            count++;
+        }
+        Assert.assertEquals(67, count);
+    }
+
+    @Test
+    public void testMergeIteratorWithStartBoundOnly() {
+        Iterator<Integer> merged = MergeIterator.create((l, r) -> l, x -> x < 3, null, Arrays.asList(1, 3).iterator(), Arrays.asList(2, 4).iterator());
+        Assert.assertEquals(Arrays.asList(3, 4), drain(merged));
+    }
+
+    @Test
+    public void testMergeIteratorWithEndBoundOnly() {
+        Iterator<Integer> merged = MergeIterator.create((l, r) -> l, null, x -> x > 2, Arrays.asList(1, 3).iterator(), Arrays.asList(2, 4).iterator());
+        Assert.assertEquals(Arrays.asList(1, 2), drain(merged));
+    }
+
+    private static <T> List<T> drain(Iterator<T> iterator) {
+        List<T> items = new ArrayList<>();
+        iterator.forEachRemaining(items::add);
+        return items;
+    }
+
+    private static byte[] key(String key) {
+        return Row.comparableKey(schema, key);
+    }
+
+    private static class ClosingIterator implements Iterator<Row>, Closeable {
+        private final Iterator<Row> wrapped;
+        int read;
+        boolean closed;
+
+        ClosingIterator(Iterator<Row> wrapped) {
+            this.wrapped = wrapped;
+        }
+
+        public boolean hasNext() {
+            return wrapped.hasNext();
+        }
+
+        public Row next() {
+            assert !closed;
+            read++;
+            return wrapped.next();
+        }
+
+        public void close() {
+            closed = true;
+        }
+    }
 }
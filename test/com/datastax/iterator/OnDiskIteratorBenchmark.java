@@ -0,0 +1,116 @@
+package com.datastax.iterator;
+
+import com.datastax.metadata.Schema;
+import com.datastax.metrics.Metrics;
+import com.datastax.rows.Row;
+import com.datastax.serde.IntType;
+import com.datastax.serde.LongType;
+import com.datastax.serde.TextType;
+import com.datastax.writer.TableWriter;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Full scan throughput of the stream based {@link TableIterator#onDiskIterator}
+ * compared to the memory mapped {@link TableIterator#mappedIterator}.
+ * One operation is a scan of the whole file. With {@code metrics}, the
+ * scans run with {@link Metrics} enabled, which shows their overhead.
+ * With {@code projected}, they only read column {@code v2}, see
+ * {@link TableIterator#project}.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class OnDiskIteratorBenchmark {
+
+    @Param({"100000"})
+    public int rows;
+
+    @Param({"false", "true"})
+    public boolean metrics;
+
+    @Param({"false", "true"})
+    public boolean projected;
+
+    private Schema schema;
+    private Path path;
+    private List<Schema.Column<?>> columns;
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException {
+        schema = new Schema.Builder()
+                .addKey("key1", TextType.instance)
+                .addKey("key2", IntType.instance)
+                .addColumn("v1", TextType.instance)
+                .addColumn("v2", LongType.instance)
+                .build();
+        Metrics.setEnabled(metrics);
+        columns = projected ? Collections.singletonList(schema.getColumn("v2")) : null;
+
+        path = Files.createTempFile("on-disk-iterator-benchmark", ".db");
+        try (TableWriter.OnDiskWriter writer = TableWriter.onDiskWriter(schema, path)) {
+            writer.write(new Iterator<Row>() {
+                int i = 0;
+
+                public boolean hasNext() {
+                    return i < rows;
+                }
+
+                public Row next() {
+                    Row row = Row.builder(schema, i)
+                            .addKey("key1", String.format("ck%08d", i))
+                            .addKey("key2", i)
+                            .addColumn("v1", "value" + i)
+                            .addColumn("v2", (long) i)
+                            .row();
+                    i++;
+                    return row;
+                }
+            });
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        Metrics.setEnabled(false);
+        Files.deleteIfExists(path);
+    }
+
+    @Benchmark
+    public void streamScan(Blackhole bh) throws IOException {
+        try (TableIterator.OnDiskIterator iter = projected ? TableIterator.onDiskIterator(schema, path.toString(), false, columns)
+                                                               : TableIterator.onDiskIterator(schema, path.toString())) {
+            while (iter.hasNext())
+                bh.consume(iter.next());
+        }
+    }
+
+    @Benchmark
+    public void mappedScan(Blackhole bh) throws IOException {
+        try (TableIterator.MappedOnDiskIterator iter = projected ? TableIterator.mappedIterator(schema, path.toString(), false, columns)
+                                                                     : TableIterator.mappedIterator(schema, path.toString())) {
+            while (iter.hasNext())
+                bh.consume(iter.next());
+        }
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder()
+                           .include(OnDiskIteratorBenchmark.class.getSimpleName())
+                           .build()).run();
+    }
+}
@@ -1,19 +1,35 @@
 package com.datastax.iterator;
 
+import com.datastax.index.ChunkChecksums;
+import com.datastax.index.SparseIndex;
 import com.datastax.metadata.Schema;
 import com.datastax.rows.Row;
+import com.datastax.rows.Slice;
 import com.datastax.serde.IntType;
 import com.datastax.serde.LongType;
+import com.datastax.serde.MarshalException;
 import com.datastax.serde.TextType;
 import com.datastax.writer.TableWriter;
+import com.datastax.util.MappedFileInput;
 import org.junit.Assert;
+import org.junit.Rule;
 import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
 
 import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
 
 public class TableIteratorTest {
 
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
     @Test
     public void tableIteratorTest() throws Throwable {
         Schema schema = new Schema.Builder()
@@ -72,4 +88,319 @@ public class TableIteratorTest {
         Assert.assertEquals(row3, deserialized);
         Assert.assertFalse(iter.hasNext());
     }
+
+    @Test
+    public void mappedIteratorTest() throws Throwable {
+        Schema schema = new Schema.Builder()
+                .addKey("key1", TextType.instance)
+                .addKey("key2", IntType.instance)
+                .addColumn("v1", TextType.instance)
+                .addColumn("v2", LongType.instance)
+                .build();
+
+        List<Row> rows = new ArrayList<>();
+        for (int i = 0; i < 1000; i++) {
+            rows.add(Row.builder(schema)
+                             .addKey("key1", String.format("ck%04d", i))
+                             .addKey("key2", i)
+                             .addColumn("v1", "v" + i)
+                             .addColumn("v2", (long) i)
+                             .row());
+        }
+
+        File file = folder.newFile();
+        try (TableWriter.OnDiskWriter writer = TableWriter.onDiskWriter(schema, file.toPath())) {
+            writer.write(rows.iterator());
+        }
+
+        // default segment covers the whole file
+        try (TableIterator.MappedOnDiskIterator iter = TableIterator.mappedIterator(schema, file.getPath())) {
+            for (Row row : rows) {
+                Assert.assertTrue(iter.hasNext());
+                Assert.assertEquals(row, iter.next());
+            }
+            Assert.assertFalse(iter.hasNext());
+        }
+
+        // segments much smaller than the file force re-mapping inside rows and values
+        try (TableIterator.MappedOnDiskIterator iter =
+                     new TableIterator.MappedOnDiskIterator(schema, new MappedFileInput(file.toPath(), 13))) {
+            for (Row row : rows) {
+                Assert.assertTrue(iter.hasNext());
+                Assert.assertEquals(row, iter.next());
+            }
+            Assert.assertFalse(iter.hasNext());
+        }
+    }
+
+    @Test
+    public void lazyIteratorTest() throws Throwable {
+        Schema schema = new Schema.Builder()
+                .addKey("key1", TextType.instance)
+                .addColumn("v1", TextType.instance)
+                .addColumn("v2", LongType.instance)
+                .build();
+
+        List<Row> rows1 = new ArrayList<>();
+        List<Row> rows2 = new ArrayList<>();
+        for (int i = 0; i < 1000; i++) {
+            Row row = Row.builder(schema, i)
+                    .addKey("key1", String.format("ck%04d", i / 2))
+                    .addColumn("v1", "v" + i)
+                    .addColumn("v2", (long) i)
+                    .row();
+            (i % 2 == 0 ? rows1 : rows2).add(row);
+        }
+
+        File file1 = folder.newFile();
+        File file2 = folder.newFile();
+        try (TableWriter.OnDiskWriter writer = TableWriter.onDiskWriter(schema, file1.toPath())) {
+            writer.write(rows1.iterator());
+        }
+        try (TableWriter.OnDiskWriter writer = TableWriter.onDiskWriter(schema, file2.toPath())) {
+            writer.write(rows2.iterator());
+        }
+
+        try (TableIterator.MappedOnDiskIterator iter1 = TableIterator.mappedIterator(schema, file1.getPath(), true);
+             TableIterator.OnDiskIterator iter2 = TableIterator.onDiskIterator(schema, file2.getPath(), true)) {
+            Iterator<Row> merged = MergeIterator.create(Row::merge, iter1, iter2);
+
+            // the newer row always comes from the second file
+            for (Row expected : rows2) {
+                Row row = merged.next();
+                Assert.assertTrue(row.isLazy());
+                Assert.assertEquals(expected, row);
+            }
+            Assert.assertFalse(merged.hasNext());
+        }
+    }
+
+    @Test
+    public void seekingIteratorTest() throws Throwable {
+        Schema schema = new Schema.Builder()
+                .addKey("key1", TextType.instance)
+                .addKey("key2", IntType.instance)
+                .addColumn("v1", TextType.instance)
+                .build();
+
+        // even keys only, so odd keys fall between rows
+        List<Row> rows = new ArrayList<>();
+        for (int i = 0; i < 1000; i += 2) {
+            rows.add(Row.builder(schema)
+                             .addKey("key1", String.format("ck%04d", i))
+                             .addKey("key2", i)
+                             .addColumn("v1", "v" + i)
+                             .row());
+        }
+
+        File indexed = folder.newFile();
+        try (TableWriter.OnDiskWriter writer = TableWriter.onDiskWriter(schema, indexed.toPath(), SparseIndex.Builder.everyRows(16))) {
+            writer.write(rows.iterator());
+        }
+        File unindexed = folder.newFile();
+        try (TableWriter.OnDiskWriter writer = TableWriter.onDiskWriter(schema, unindexed.toPath())) {
+            writer.write(rows.iterator());
+        }
+
+        SparseIndex index = SparseIndex.load(indexed.toPath());
+        Assert.assertEquals(32, index.size());
+
+        for (int i : new int[]{ -1, 0, 1, 31, 32, 33, 500, 998, 999 }) {
+            byte[] key = Row.comparableKey(schema, String.format("ck%04d", Math.max(i, 0)), i);
+            int first = (i + 1) / 2;
+
+            for (File file : Arrays.asList(indexed, unindexed)) {
+                try (TableIterator.MappedOnDiskIterator iter = TableIterator.mappedIterator(schema, file.getPath(), key)) {
+                    for (Row row : rows.subList(first, rows.size())) {
+                        Assert.assertTrue(iter.hasNext());
+                        Assert.assertEquals(row, iter.next());
+                    }
+                    Assert.assertFalse(iter.hasNext());
+                }
+            }
+        }
+    }
+
+    @Test
+    public void slicedIteratorTest() throws Throwable {
+        Schema schema = new Schema.Builder()
+                .addKey("key1", TextType.instance)
+                .addColumn("v1", LongType.instance)
+                .build();
+
+        List<Row> rows = new ArrayList<>();
+        for (int i = 0; i < 1000; i++) {
+            rows.add(Row.builder(schema)
+                             .addKey("key1", String.format("ck%04d", i))
+                             .addColumn("v1", i)
+                             .row());
+        }
+
+        File file = folder.newFile();
+        try (TableWriter.OnDiskWriter writer = TableWriter.onDiskWriter(schema, file.toPath(), SparseIndex.Builder.everyRows(10))) {
+            writer.write(rows.iterator());
+        }
+
+        Slice[] slices = {
+                Slice.between(Row.comparableKey(schema, "ck0100"), true, Row.comparableKey(schema, "ck0200"), false),
+                Slice.between(Row.comparableKey(schema, "ck0100"), false, Row.comparableKey(schema, "ck0200"), true),
+                Slice.from(Row.comparableKey(schema, "ck0995"), true),
+                Slice.to(Row.comparableKey(schema, "ck0003"), false),
+                Slice.from(Row.comparableKey(schema, "ck1000"), true),
+        };
+
+        for (Slice slice : slices) {
+            List<Row> expected = new ArrayList<>();
+            for (Row row : rows) {
+                if (slice.contains(row))
+                    expected.add(row);
+            }
+
+            try (TableIterator.MappedOnDiskIterator mapped = TableIterator.mappedIterator(schema, file.getPath());
+                 TableIterator.OnDiskIterator stream = TableIterator.onDiskIterator(schema, file.getPath())) {
+                for (TableIterator iter : Arrays.asList(mapped, stream)) {
+                    iter.slice(slice);
+                    for (Row row : expected)
+                        Assert.assertEquals(row, iter.next());
+                    Assert.assertFalse(iter.hasNext());
+                }
+            }
+        }
+    }
+
+    @Test
+    public void projectedIteratorTest() throws Throwable {
+        Schema schema = new Schema.Builder()
+                .addKey("key1", TextType.instance)
+                .addColumn("v1", TextType.instance)
+                .addColumn("v2", LongType.instance)
+                .addColumn("v3", TextType.instance)
+                .addColumn("v4", IntType.instance)
+                .build();
+        Schema.Column<?> v2 = schema.getColumn("v2");
+        Schema.Column<?> v3 = schema.getColumn("v3");
+
+        List<Row> rows = new ArrayList<>();
+        for (int i = 0; i < 1000; i++) {
+            Row.RowBuilder row = Row.builder(schema, i)
+                    .addKey("key1", String.format("ck%04d", i))
+                    .addColumn("v1", "v" + i)
+                    .addColumn("v2", (long) i)
+                    .addColumn("v4", i);
+            // v3 is missing from every other row
+            if (i % 2 == 0)
+                row.addColumn("v3", "w" + i);
+            rows.add(row.row());
+        }
+
+        File file = folder.newFile();
+        try (TableWriter.OnDiskWriter writer = TableWriter.onDiskWriter(schema, file.toPath())) {
+            writer.write(rows.iterator());
+        }
+
+        List<Schema.Column<?>> columns = Arrays.asList(schema.getColumn("key1"), v2, v3);
+        for (boolean lazy : new boolean[]{ false, true }) {
+            try (TableIterator.MappedOnDiskIterator mapped = TableIterator.mappedIterator(schema, file.getPath(), lazy, columns);
+                 TableIterator.OnDiskIterator stream = TableIterator.onDiskIterator(schema, file.getPath(), lazy, columns)) {
+                for (TableIterator iter : Arrays.asList(mapped, stream)) {
+                    for (Row expected : rows) {
+                        Row row = iter.next();
+                        Assert.assertEquals(0, expected.compareTo(row));
+                        Assert.assertEquals(expected.writeTime(), row.writeTime());
+                        Assert.assertFalse(row.hasColumn(schema.getColumn("v1")));
+                        Assert.assertFalse(row.hasColumn(schema.getColumn("v4")));
+                        Assert.assertEquals(expected.getColumn(v2), row.getColumn(v2));
+                        Assert.assertEquals(expected.getColumn(v3), row.getColumn(v3));
+
+                        // projected rows are written with their columns only
+                        ByteBuffer buffer = ByteBuffer.allocate(row.serializedSize());
+                        row.serialize(buffer, 0);
+                        Assert.assertEquals(row, Row.deserialize(schema, buffer, 0));
+                    }
+                    Assert.assertFalse(iter.hasNext());
+                }
+            }
+        }
+
+        Schema other = new Schema.Builder()
+                .addKey("key1", TextType.instance)
+                .addColumn("v5", LongType.instance)
+                .build();
+        try (TableIterator.OnDiskIterator iter = TableIterator.onDiskIterator(schema, file.getPath())) {
+            iter.project(Arrays.asList(other.getColumn("v5")));
+            Assert.fail("Projected on a column of another schema");
+        }
+        catch (IllegalArgumentException e) {
+            // expected
+        }
+    }
+
+    @Test
+    public void corruptedChunksAreDetected() throws Throwable {
+        Schema schema = new Schema.Builder()
+                .addKey("key1", TextType.instance)
+                .addColumn("v1", TextType.instance)
+                .build();
+
+        List<Row> rows = new ArrayList<>();
+        for (int i = 0; i < 10000; i++) {
+            rows.add(Row.builder(schema)
+                             .addKey("key1", String.format("ck%05d", i))
+                             .addColumn("v1", String.format("value%05d", i))
+                             .row());
+        }
+
+        File file = folder.newFile();
+        try (TableWriter.OnDiskWriter writer = TableWriter.onDiskWriter(schema, file.toPath(), SparseIndex.Builder.everyRows(16))) {
+            writer.write(rows.iterator());
+        }
+        ChunkChecksums checksums = ChunkChecksums.load(file.toPath());
+        Assert.assertTrue(checksums.size() > 2);
+
+        // a value that still decodes, only the checksum tells
+        byte[] bytes = Files.readAllBytes(file.toPath());
+        int offset = indexOf(bytes, "value05000".getBytes(StandardCharsets.UTF_8));
+        int chunk = checksums.chunkAt(offset);
+        Assert.assertTrue(chunk > 0);
+        bytes[offset] = 'w';
+        Files.write(file.toPath(), bytes);
+
+        try (TableIterator.MappedOnDiskIterator iter = TableIterator.mappedIterator(schema, file.getPath())) {
+            int read = 0;
+            try {
+                while (iter.hasNext()) {
+                    Assert.assertEquals(rows.get(read), iter.next());
+                    read++;
+                }
+                Assert.fail("Corrupted chunk was not detected");
+            }
+            catch (MarshalException e) {
+                Assert.assertTrue(e.getMessage(), e.getMessage().startsWith("Corrupted chunk " + chunk));
+                Assert.assertTrue(read > 0 && read <= 5000);
+            }
+        }
+
+        // seeking verifies the chunk of the offset it starts from
+        byte[] corrupted = Row.comparableKey(schema, "ck05000");
+        try (TableIterator.MappedOnDiskIterator iter = TableIterator.mappedIterator(schema, file.getPath(), corrupted)) {
+            iter.next();
+            Assert.fail("Corrupted chunk was not detected");
+        }
+        catch (MarshalException e) {
+            Assert.assertTrue(e.getMessage(), e.getMessage().startsWith("Corrupted chunk " + chunk));
+        }
+
+        byte[] intact = Row.comparableKey(schema, "ck00100");
+        try (TableIterator.MappedOnDiskIterator iter = TableIterator.mappedIterator(schema, file.getPath(), intact)) {
+            Assert.assertEquals(rows.get(100), iter.next());
+        }
+    }
+
+    private static int indexOf(byte[] bytes, byte[] value) {
+        for (int i = 0; i + value.length <= bytes.length; i++) {
+            if (Arrays.equals(Arrays.copyOfRange(bytes, i, i + value.length), value))
+                return i;
+        }
+        throw new AssertionError("Value not found");
+    }
 }
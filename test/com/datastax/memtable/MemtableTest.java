@@ -0,0 +1,184 @@
+package com.datastax.memtable;
+
+import com.datastax.iterator.TableIterator;
+import com.datastax.metadata.Schema;
+import com.datastax.rows.Row;
+import com.datastax.rows.Slice;
+import com.datastax.util.TestUtil;
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicReference;
+
+public class MemtableTest {
+    private static final int THREADS = 8;
+    private static final int KEYS = 20000;
+
+    private static final Schema schema = TestUtil.SCHEMA;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void rowsAreSortedAndMerged() throws Throwable {
+        Memtable memtable = new Memtable(schema);
+        List<Integer> keys = new ArrayList<>();
+        for (int k = 0; k < 1000; k++)
+            keys.add(k);
+        Collections.shuffle(keys, new Random(42));
+
+        for (int k : keys)
+            Assert.assertTrue(memtable.put(TestUtil.row(k, 1)));
+        // newer versions win, older ones are merged away
+        for (int k = 0; k < 1000; k += 2)
+            memtable.put(TestUtil.row(k, 2));
+        for (int k = 0; k < 1000; k += 4)
+            memtable.put(TestUtil.row(k, 0));
+
+        Assert.assertEquals(1000, memtable.size());
+        List<Row> rows = new ArrayList<>();
+        memtable.iterator().forEachRemaining(rows::add);
+        for (int k = 0; k < 1000; k++)
+            Assert.assertEquals(TestUtil.row(k, k % 2 == 0 ? 2 : 1), rows.get(k));
+        Assert.assertEquals(TestUtil.row(10, 2), memtable.get(TestUtil.key(10)));
+
+        Memtable.MemtableIterator sliced = memtable.iterator();
+        sliced.slice(Slice.between(TestUtil.key(100), false, TestUtil.key(200), true));
+        Assert.assertEquals(TestUtil.row(101, 1), sliced.next());
+        int count = 1;
+        while (sliced.hasNext()) {
+            sliced.next();
+            count++;
+        }
+        Assert.assertEquals(100, count);
+
+        memtable.seal();
+        Assert.assertFalse(memtable.put(TestUtil.row(5000, 1)));
+        Assert.assertNull(memtable.get(TestUtil.key(5000)));
+    }
+
+    @Test
+    public void closedFlusherRefusesWrites() throws Throwable {
+        MemtableFlusher flusher = new MemtableFlusher(schema, folder.getRoot().toPath(), "table", 1024);
+        for (int k = 0; k < 100; k++)
+            flusher.put(TestUtil.row(k, 1));
+        flusher.close();
+        flusher.close();
+
+        try {
+            flusher.put(TestUtil.row(100, 1));
+            Assert.fail("Expected a closed flusher to refuse writes");
+        }
+        catch (IllegalStateException e) {
+            // expected
+        }
+        Assert.assertTrue(flusher.current().isSealed());
+        Assert.assertFalse(flusher.tables().isEmpty());
+    }
+
+    @Test
+    public void flusherKeepsExistingTables() throws Throwable {
+        Path directory = folder.getRoot().toPath();
+        byte[] existing = "not to be overwritten".getBytes(StandardCharsets.UTF_8);
+        Files.write(directory.resolve("table-0"), existing);
+        Files.write(directory.resolve("table-3"), existing);
+        Files.write(directory.resolve("other-7"), existing);
+
+        try (MemtableFlusher flusher = new MemtableFlusher(schema, directory, "table", 1024 * 1024)) {
+            flusher.put(TestUtil.row(0, 1));
+            flusher.flush().get();
+            Assert.assertEquals(Collections.singletonList(directory.resolve("table-4")), flusher.tables());
+        }
+        Assert.assertArrayEquals(existing, Files.readAllBytes(directory.resolve("table-0")));
+        Assert.assertArrayEquals(existing, Files.readAllBytes(directory.resolve("table-3")));
+
+        Memtable memtable = new Memtable(schema);
+        memtable.put(TestUtil.row(0, 1));
+        memtable.seal();
+        try {
+            memtable.flush(directory.resolve("table-0"), 128);
+            Assert.fail("Expected an existing table to be kept");
+        }
+        catch (FileAlreadyExistsException e) {
+            // expected
+        }
+        Assert.assertArrayEquals(existing, Files.readAllBytes(directory.resolve("table-0")));
+    }
+
+    @Test
+    public void concurrentWritesAreFlushed() throws Throwable {
+        Path directory = folder.getRoot().toPath();
+        Map<Integer, Row> expected = new ConcurrentHashMap<>();
+        AtomicReference<Throwable> failure = new AtomicReference<>();
+        CountDownLatch start = new CountDownLatch(1);
+
+        List<Path> tables;
+        try (MemtableFlusher flusher = new MemtableFlusher(schema, directory, "table", 256 * 1024)) {
+            List<Thread> writers = new ArrayList<>();
+            for (int t = 0; t < THREADS; t++) {
+                final int thread = t;
+                Thread writer = new Thread(() -> {
+                    try {
+                        start.await();
+                        // every thread writes every key, the last thread's version wins
+                        for (int k = thread; k < KEYS + thread; k++) {
+                            int key = k % KEYS;
+                            Row row = TestUtil.row(key, thread);
+                            flusher.put(row);
+                            if (thread == THREADS - 1)
+                                expected.put(key, row);
+                        }
+                    }
+                    catch (Throwable e) {
+                        failure.compareAndSet(null, e);
+                    }
+                });
+                writer.start();
+                writers.add(writer);
+            }
+
+            start.countDown();
+            for (Thread writer : writers)
+                writer.join();
+            Assert.assertNull(failure.get());
+
+            // reads see flushed tables and memtables alike
+            Iterator<Row> merged = flusher.iterator(Slice.ALL);
+            for (int k = 0; k < KEYS; k++)
+                Assert.assertEquals(expected.get(k), merged.next());
+            Assert.assertFalse(merged.hasNext());
+
+            Iterator<Row> sliced = flusher.iterator(Slice.from(TestUtil.key(KEYS - 10), true));
+            for (int k = KEYS - 10; k < KEYS; k++)
+                Assert.assertEquals(expected.get(k), sliced.next());
+            Assert.assertFalse(sliced.hasNext());
+
+            // a view, complete once close() waited for the last flush
+            tables = flusher.tables();
+        }
+
+        Assert.assertTrue(tables.size() > 1);
+        long rows = 0;
+        for (Path table : tables) {
+            try (TableIterator.OnDiskIterator iter = TableIterator.onDiskIterator(table.toString())) {
+                Row previous = null;
+                while (iter.hasNext()) {
+                    Row row = iter.next();
+                    Assert.assertTrue(previous == null || previous.compareTo(row) < 0);
+                    previous = row;
+                    rows++;
+                }
+            }
+        }
+        Assert.assertTrue(rows >= KEYS);
+    }
+}
@@ -0,0 +1,338 @@
+package com.datastax.metadata;
+
+import com.datastax.index.BloomFilter;
+import com.datastax.index.SparseIndex;
+import com.datastax.iterator.AsyncTableIterator;
+import com.datastax.iterator.BlockTableIterator;
+import com.datastax.iterator.TableIterator;
+import com.datastax.reader.TableReader;
+import com.datastax.rows.Row;
+import com.datastax.rows.Slice;
+import com.datastax.serde.MarshalException;
+import com.datastax.serde.TextType;
+import com.datastax.util.TestUtil;
+import com.datastax.writer.BlockTableWriter;
+import com.datastax.writer.TableWriter;
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+
+public class TableHeaderTest {
+    private static final int NUMBER_OF_ROWS = 500;
+
+    private static final Schema schema = TestUtil.SCHEMA;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void schemaRoundTrip() throws IOException {
+        ByteArrayOutputStream os = new ByteArrayOutputStream();
+        schema.serialize(new DataOutputStream(os));
+        Schema read = Schema.deserialize(new DataInputStream(new ByteArrayInputStream(os.toByteArray())));
+
+        Assert.assertEquals(schema, read);
+        Assert.assertEquals(schema.hashCode(), read.hashCode());
+        Assert.assertEquals(schema.getColumn("v2").slot, read.getColumn("v2").slot);
+    }
+
+    @Test
+    public void tablesAreReadWithTheirRecordedSchema() throws IOException {
+        File file = writeTable(rows());
+
+        TableHeader header = TableHeader.load(file.toPath());
+        Assert.assertNotNull(header);
+        Assert.assertEquals(TableHeader.VERSION, header.version);
+        Assert.assertEquals(Constants.DEBUG, header.hasRowMagic());
+        Assert.assertEquals(schema, header.schema);
+
+        try (TableIterator.OnDiskIterator iter = TableIterator.onDiskIterator(file.getPath())) {
+            Assert.assertEquals(schema, iter.schema());
+            List<Row> read = new ArrayList<>();
+            iter.forEachRemaining(read::add);
+            Assert.assertEquals(rows(), read);
+        }
+
+        try (TableIterator.MappedOnDiskIterator iter = TableIterator.mappedIterator(file.getPath())) {
+            Assert.assertEquals(rows().get(0), iter.next());
+        }
+
+        try (TableReader reader = TableReader.open(file.toPath())) {
+            Assert.assertEquals(rows().get(42), reader.get(TestUtil.key(42)));
+        }
+
+        Schema other = new Schema.Builder()
+                .addKey("key1", TextType.instance)
+                .addColumn("v1", TextType.instance)
+                .build();
+        try {
+            TableIterator.onDiskIterator(other, file.getPath());
+            Assert.fail("Expected the schema mismatch to be detected");
+        }
+        catch (MarshalException e) {
+            // expected
+        }
+    }
+
+    @Test
+    public void blockTablesRecordTheirSchema() throws IOException {
+        File file = folder.newFile();
+        try (BlockTableWriter.OnDiskWriter writer = new BlockTableWriter.Builder(schema).blockSize(1024).onDiskWriter(file.toPath())) {
+            writer.write(rows().iterator());
+        }
+
+        Assert.assertTrue(TableHeader.load(file.toPath()).isBlockFormat());
+        Assert.assertEquals(NUMBER_OF_ROWS, TableFooter.load(file.toPath()).rowCount);
+        try (BlockTableIterator iter = BlockTableIterator.open(file.getPath())) {
+            Assert.assertEquals(schema, iter.schema());
+            List<Row> read = new ArrayList<>();
+            iter.forEachRemaining(read::add);
+            Assert.assertEquals(rows(), read);
+        }
+    }
+
+    @Test
+    public void blockTablesAreNotReadAsPlainTables() throws IOException {
+        File file = folder.newFile();
+        try (BlockTableWriter.OnDiskWriter writer = new BlockTableWriter.Builder(schema).blockSize(1024).onDiskWriter(file.toPath())) {
+            writer.write(rows().iterator());
+        }
+
+        try {
+            TableIterator.onDiskIterator(file.getPath());
+            Assert.fail("Expected a block table to be rejected");
+        }
+        catch (MarshalException e) {
+            // expected
+        }
+
+        try {
+            TableIterator.mappedIterator(schema, file.getPath());
+            Assert.fail("Expected a block table to be rejected");
+        }
+        catch (MarshalException e) {
+            // expected
+        }
+
+        try (DataInputStream in = new DataInputStream(new FileInputStream(file))) {
+            new AsyncTableIterator(schema, in);
+            Assert.fail("Expected a block table to be rejected");
+        }
+        catch (MarshalException e) {
+            // expected
+        }
+
+        try {
+            TableReader.open(file.toPath()).close();
+            Assert.fail("Expected a block table to be rejected");
+        }
+        catch (MarshalException e) {
+            // expected
+        }
+    }
+
+    @Test
+    public void unknownFlagsAreRejected() throws IOException {
+        ByteArrayOutputStream os = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(os);
+        new TableHeader(1 << 10, schema).serialize(out);
+        out.writeInt(Constants.FILE_END);
+
+        File file = folder.newFile();
+        Files.write(file.toPath(), os.toByteArray());
+
+        try {
+            TableHeader.load(file.toPath());
+            Assert.fail("Expected an unknown flag to be rejected");
+        }
+        catch (MarshalException e) {
+            // expected
+        }
+
+        try {
+            TableIterator.onDiskIterator(file.getPath());
+            Assert.fail("Expected an unknown flag to be rejected");
+        }
+        catch (MarshalException e) {
+            // expected
+        }
+    }
+
+    @Test
+    public void footerStatistics() throws IOException {
+        List<Row> rows = new ArrayList<>();
+        for (int i = 100; i < 200; i++)
+            rows.add(TestUtil.row(i, 1000 + (i * 37) % 100));
+
+        File file = folder.newFile();
+        try (TableWriter.OnDiskWriter writer = TableWriter.onDiskWriter(schema,
+                                                                         file.toPath(),
+                                                                         SparseIndex.Builder.everyRows(8),
+                                                                         new BloomFilter.Builder())) {
+            writer.write(rows.iterator());
+        }
+
+        TableFooter footer = TableFooter.load(file.toPath());
+        Assert.assertEquals(100, footer.rowCount);
+        Assert.assertArrayEquals(TestUtil.key(100), footer.minKey);
+        Assert.assertArrayEquals(TestUtil.key(199), footer.maxKey);
+        Assert.assertEquals(1000, footer.minWriteTime);
+        Assert.assertEquals(1099, footer.maxWriteTime);
+        Assert.assertTrue(footer.hasSection(TableFooter.Section.INDEX));
+        Assert.assertTrue(footer.hasSection(TableFooter.Section.FILTER));
+        Assert.assertFalse(footer.hasSection(TableFooter.Section.BLOCK_INDEX));
+
+        Assert.assertTrue(footer.mayIntersect(Slice.ALL));
+        Assert.assertTrue(footer.mayIntersect(Slice.between(TestUtil.key(50), true, TestUtil.key(100), true)));
+        Assert.assertFalse(footer.mayIntersect(Slice.between(TestUtil.key(50), true, TestUtil.key(100), false)));
+        Assert.assertTrue(footer.mayIntersect(Slice.from(TestUtil.key(199), true)));
+        Assert.assertFalse(footer.mayIntersect(Slice.from(TestUtil.key(199), false)));
+        Assert.assertFalse(footer.mayIntersect(Slice.to(TestUtil.key(99), true)));
+
+        try (TableReader reader = TableReader.open(schema, file.toPath())) {
+            Assert.assertFalse(reader.mightContain(TestUtil.key(99)));
+            Assert.assertFalse(reader.mightContain(TestUtil.key(200)));
+            Assert.assertEquals(rows.get(50), reader.get(TestUtil.key(150)));
+        }
+    }
+
+    @Test
+    public void unframedTablesRoundTrip() throws IOException {
+        File empty;
+        File full;
+        boolean debug = Constants.DEBUG;
+        Constants.DEBUG = false;
+        try {
+            empty = writeTable(new ArrayList<>());
+            full = folder.newFile();
+            try (TableWriter.OnDiskWriter writer = TableWriter.onDiskWriter(schema, full.toPath(), SparseIndex.Builder.everyRows(16), null)) {
+                writer.write(rows().iterator());
+            }
+        }
+        finally {
+            Constants.DEBUG = debug;
+        }
+
+        // readers follow the header, whatever DEBUG says now
+        for (boolean readDebug : new boolean[]{ false, true }) {
+            Constants.DEBUG = readDebug;
+            try {
+                Assert.assertFalse(TableHeader.load(empty.toPath()).hasRowMagic());
+                Assert.assertEquals(new ArrayList<>(), readAll(empty));
+                Assert.assertEquals(rows(), readAll(full));
+
+                try (TableIterator.MappedOnDiskIterator iter = TableIterator.mappedIterator(schema, empty.getPath())) {
+                    iter.slice(Slice.from(TestUtil.key(250), true));
+                    Assert.assertFalse(iter.hasNext());
+                }
+                try (TableIterator.MappedOnDiskIterator iter = TableIterator.mappedIterator(schema, full.getPath())) {
+                    iter.slice(Slice.from(TestUtil.key(250), true));
+                    Assert.assertEquals(rows().get(250), iter.next());
+                }
+                try (TableReader emptyReader = TableReader.open(empty.toPath());
+                     TableReader fullReader = TableReader.open(full.toPath())) {
+                    Assert.assertNull(emptyReader.get(TestUtil.key(7)));
+                    Assert.assertEquals(rows().get(7), fullReader.get(TestUtil.key(7)));
+                }
+            }
+            finally {
+                Constants.DEBUG = debug;
+            }
+        }
+    }
+
+    @Test
+    public void tablesWithoutHeaderAreStillRead() throws IOException {
+        // layout written before tables had a header and a footer
+        ByteArrayOutputStream os = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(os);
+        List<Row> rows = rows();
+        for (int i = 0; i < rows.size(); i++) {
+            if (i > 0)
+                out.writeInt(Constants.ROW_END);
+            if (Constants.DEBUG)
+                out.writeInt(Constants.ROW_MAGIC);
+
+            Row row = rows.get(i);
+            ByteBuffer bytes = ByteBuffer.allocate(row.serializedSize());
+            row.serialize(bytes, 0);
+            out.writeInt(bytes.capacity());
+            out.write(bytes.array());
+        }
+        out.writeInt(Constants.FILE_END);
+
+        File file = folder.newFile();
+        Files.write(file.toPath(), os.toByteArray());
+
+        Assert.assertNull(TableHeader.load(file.toPath()));
+        Assert.assertNull(TableFooter.load(file.toPath()));
+
+        try (TableIterator.OnDiskIterator iter = TableIterator.onDiskIterator(schema, file.getPath())) {
+            List<Row> read = new ArrayList<>();
+            iter.forEachRemaining(read::add);
+            Assert.assertEquals(rows, read);
+        }
+
+        try (TableIterator.MappedOnDiskIterator iter = TableIterator.mappedIterator(schema, file.getPath())) {
+            iter.slice(Slice.from(TestUtil.key(250), true));
+            Assert.assertEquals(rows.get(250), iter.next());
+        }
+
+        try (TableReader reader = TableReader.open(schema, file.toPath())) {
+            Assert.assertEquals(rows.get(7), reader.get(TestUtil.key(7)));
+        }
+
+        try {
+            TableIterator.onDiskIterator(file.getPath());
+            Assert.fail("Expected a table without header to require a schema");
+        }
+        catch (MarshalException e) {
+            // expected
+        }
+    }
+
+    /**
+     * Rows of the table read with every plain table iterator, which have to agree.
+     */
+    private static List<Row> readAll(File file) throws IOException {
+        List<Row> read = new ArrayList<>();
+        try (TableIterator.OnDiskIterator iter = TableIterator.onDiskIterator(file.getPath())) {
+            iter.forEachRemaining(read::add);
+        }
+
+        List<Row> mapped = new ArrayList<>();
+        try (TableIterator.MappedOnDiskIterator iter = TableIterator.mappedIterator(file.getPath())) {
+            iter.forEachRemaining(mapped::add);
+        }
+        Assert.assertEquals(read, mapped);
+
+        List<Row> async = new ArrayList<>();
+        try (AsyncTableIterator iter = new AsyncTableIterator(null, new DataInputStream(new FileInputStream(file)))) {
+            iter.forEachRemaining(async::add);
+        }
+        Assert.assertEquals(read, async);
+        return read;
+    }
+
+    private File writeTable(List<Row> rows) throws IOException {
+        File file = folder.newFile();
+        try (TableWriter.OnDiskWriter writer = TableWriter.onDiskWriter(schema, file.toPath())) {
+            writer.write(rows.iterator());
+        }
+        return file;
+    }
+
+    private static List<Row> rows() {
+        List<Row> rows = new ArrayList<>(NUMBER_OF_ROWS);
+        for (int i = 0; i < NUMBER_OF_ROWS; i++)
+            rows.add(TestUtil.row(i, 1));
+        return rows;
+    }
+}
@@ -0,0 +1,176 @@
+package com.datastax.metrics;
+
+import com.datastax.iterator.AsyncTableIterator;
+import com.datastax.iterator.BatchingAsyncIterator;
+import com.datastax.iterator.BlockTableIterator;
+import com.datastax.iterator.MergeIterator;
+import com.datastax.iterator.TableIterator;
+import com.datastax.metadata.Schema;
+import com.datastax.rows.Row;
+import com.datastax.serde.IntType;
+import com.datastax.serde.LongType;
+import com.datastax.writer.BlockTableWriter;
+import com.datastax.writer.TableWriter;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import javax.management.Attribute;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.io.*;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+public class MetricsTest {
+    private static final Schema SCHEMA = new Schema.Builder()
+            .addKey("key", IntType.instance)
+            .addColumn("v", LongType.instance)
+            .build();
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @After
+    public void disable() {
+        Metrics.setEnabled(false);
+        Metrics.reset();
+    }
+
+    @Test
+    public void histogramBuckets() {
+        Histogram histogram = new Histogram();
+        Assert.assertEquals(0, histogram.percentile(0.5));
+
+        for (int i = 1; i <= 100; i++)
+            histogram.update(i);
+        histogram.update(1000);
+
+        Assert.assertEquals(101, histogram.count());
+        Assert.assertEquals(6050, histogram.sum());
+        Assert.assertEquals(1000, histogram.max());
+        // 50 is in [32, 64)
+        Assert.assertEquals(63, histogram.percentile(0.5));
+        // 100 is in [64, 128)
+        Assert.assertEquals(127, histogram.percentile(0.99));
+        Assert.assertEquals(1000, histogram.percentile(1));
+
+        histogram.reset();
+        Assert.assertEquals(0, histogram.count());
+        Assert.assertEquals(0, histogram.max());
+    }
+
+    @Test
+    public void collectsOnlyWhenEnabled() throws IOException {
+        byte[] table = table(0, 100);
+
+        Metrics.reset();
+        TableIterator iterator = new TableIterator(SCHEMA, new DataInputStream(new ByteArrayInputStream(table)));
+        Assert.assertEquals(100, drain(iterator));
+        Assert.assertEquals(100, iterator.rowsRead());
+        Assert.assertTrue(iterator.bytesRead() > 0);
+        Assert.assertEquals(0, Metrics.ROWS_READ.sum());
+
+        Metrics.setEnabled(true);
+        iterator = new TableIterator(SCHEMA, new DataInputStream(new ByteArrayInputStream(table)));
+        Assert.assertEquals(100, drain(iterator));
+        Assert.assertEquals(100, Metrics.ROWS_READ.sum());
+        Assert.assertEquals(iterator.bytesRead(), Metrics.BYTES_READ.sum());
+        Assert.assertEquals(100, Metrics.DESERIALIZATION_NANOS.count());
+    }
+
+    @Test
+    public void collectsFromAsyncAndBlockIterators() throws IOException {
+        Metrics.setEnabled(true);
+        byte[] table = table(0, 100);
+
+        Metrics.reset();
+        TableIterator iterator = new TableIterator(SCHEMA, new DataInputStream(new ByteArrayInputStream(table)));
+        drain(iterator);
+
+        Metrics.reset();
+        try (AsyncTableIterator async = new AsyncTableIterator(SCHEMA, new DataInputStream(new ByteArrayInputStream(table)))) {
+            Assert.assertEquals(100, drain(async));
+        }
+        Assert.assertEquals(100, Metrics.ROWS_READ.sum());
+        Assert.assertEquals(iterator.bytesRead(), Metrics.BYTES_READ.sum());
+        Assert.assertEquals(100, Metrics.DESERIALIZATION_NANOS.count());
+
+        File file = folder.newFile();
+        try (BlockTableWriter.OnDiskWriter writer = new BlockTableWriter.Builder(SCHEMA).blockSize(256).onDiskWriter(file.toPath())) {
+            writer.write(rows(0, 100).iterator());
+        }
+
+        Metrics.reset();
+        try (BlockTableIterator blocks = BlockTableIterator.open(SCHEMA, file.getPath(), false, BlockTableIterator.Verification.SYNC, null)) {
+            Assert.assertEquals(100, drain(blocks));
+            Assert.assertTrue(blocks.index().size() > 1);
+            Assert.assertEquals(blocks.index().storedSize(), Metrics.BYTES_READ.sum());
+        }
+        Assert.assertEquals(100, Metrics.ROWS_READ.sum());
+        Assert.assertEquals(100, Metrics.DESERIALIZATION_NANOS.count());
+    }
+
+    @Test
+    public void countsMergesAndQueueDepth() throws IOException {
+        Metrics.setEnabled(true);
+        Metrics.reset();
+
+        // keys 50 to 99 are in both tables
+        Iterator<Row> merge = MergeIterator.create(Row::merge,
+                                                   new TableIterator(SCHEMA, new DataInputStream(new ByteArrayInputStream(table(0, 100)))),
+                                                   new TableIterator(SCHEMA, new DataInputStream(new ByteArrayInputStream(table(50, 150)))));
+        try (BatchingAsyncIterator<Row> async = new BatchingAsyncIterator<>(merge, 16, 4)) {
+            Assert.assertEquals(150, drain(async));
+        }
+
+        Assert.assertEquals(200, Metrics.ROWS_READ.sum());
+        Assert.assertEquals(50, Metrics.MERGES.sum());
+        Assert.assertTrue(Metrics.MERGE_COMPARISONS.sum() >= 150);
+        Assert.assertTrue(Metrics.ASYNC_QUEUE_DEPTH.count() > 0);
+        Assert.assertTrue(Metrics.ASYNC_QUEUE_DEPTH.max() <= 16);
+    }
+
+    @Test
+    public void exposedOverJmx() throws Exception {
+        ObjectName name = Metrics.register();
+        Assert.assertEquals(name, Metrics.register());
+
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        server.setAttribute(name, new Attribute("Enabled", true));
+        Assert.assertTrue(Metrics.enabled());
+
+        Metrics.reset();
+        drain(new TableIterator(SCHEMA, new DataInputStream(new ByteArrayInputStream(table(0, 10)))));
+        Assert.assertEquals(10L, server.getAttribute(name, "RowsRead"));
+
+        server.invoke(name, "reset", null, null);
+        Assert.assertEquals(0L, server.getAttribute(name, "RowsRead"));
+    }
+
+    private static byte[] table(int from, int to) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        new TableWriter(SCHEMA, new DataOutputStream(bytes)).write(rows(from, to).iterator());
+        return bytes.toByteArray();
+    }
+
+    private static List<Row> rows(int from, int to) {
+        List<Row> rows = new ArrayList<>();
+        for (int i = from; i < to; i++)
+            rows.add(Row.builder(SCHEMA, i).addKey("key", i).addColumn("v", (long) i).row());
+        return rows;
+    }
+
+    private static int drain(Iterator<Row> iterator) {
+        int count = 0;
+        while (iterator.hasNext()) {
+            iterator.next();
+            count++;
+        }
+        return count;
+    }
+}
@@ -0,0 +1,116 @@
+package com.datastax.reader;
+
+import com.datastax.index.BloomFilter;
+import com.datastax.index.SparseIndex;
+import com.datastax.metadata.Constants;
+import com.datastax.metadata.Schema;
+import com.datastax.rows.Row;
+import com.datastax.util.TestUtil;
+import com.datastax.writer.TableWriter;
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+
+public class TableReaderTest {
+    private static final int TABLES = 8;
+    private static final int KEYS = 4000;
+
+    private static final Schema schema = TestUtil.SCHEMA;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void pointLookupAcrossTables() throws Throwable {
+        List<TableReader> tables = new ArrayList<>();
+        try {
+            lookUp(tables);
+        }
+        finally {
+            for (TableReader table : tables)
+                table.close();
+        }
+    }
+
+    @Test
+    public void lookupsInAnyOrder() throws Throwable {
+        // even keys only, so odd keys fall between rows
+        List<Row> rows = new ArrayList<>();
+        for (int k = 0; k < KEYS; k += 2)
+            rows.add(TestUtil.row(k, 1));
+
+        boolean debug = Constants.DEBUG;
+        try {
+            // with and without ROW_MAGIC
+            for (boolean framed : new boolean[]{ true, false }) {
+                Constants.DEBUG = framed;
+                File file = folder.newFile();
+                try (TableWriter.OnDiskWriter writer = TableWriter.onDiskWriter(schema, file.toPath(), SparseIndex.Builder.everyRows(16))) {
+                    writer.write(rows.iterator());
+                }
+
+                try (TableReader reader = TableReader.open(schema, file.toPath())) {
+                    for (int k = KEYS - 1; k >= 0; k--)
+                        Assert.assertEquals(k % 2 == 0 ? TestUtil.row(k, 1) : null, reader.get(TestUtil.key(k)));
+
+                    // back and forth over the whole table
+                    for (int i = 0; i < 100; i++) {
+                        int k = i % 2 == 0 ? 2 * i : KEYS - 2 - 2 * i;
+                        Assert.assertEquals(TestUtil.row(k, 1), reader.get(TestUtil.key(k)));
+                    }
+                }
+            }
+        }
+        finally {
+            Constants.DEBUG = debug;
+        }
+    }
+
+    /**
+     * Table t holds every key k with k % TABLES == t and, as a newer
+     * version, every key with k % (2 * TABLES) == t - 1.
+     */
+    private void lookUp(List<TableReader> tables) throws Throwable {
+        for (int t = 0; t < TABLES; t++) {
+            List<Row> rows = new ArrayList<>();
+            for (int k = 0; k < KEYS; k++) {
+                if (k % TABLES == t)
+                    rows.add(TestUtil.row(k, 1));
+                else if (k % (2 * TABLES) == t - 1)
+                    rows.add(TestUtil.row(k, 2));
+            }
+
+            File file = folder.newFile();
+            try (TableWriter.OnDiskWriter writer = TableWriter.onDiskWriter(schema,
+                                                                             file.toPath(),
+                                                                             SparseIndex.Builder.everyRows(16),
+                                                                             new BloomFilter.Builder(0.01))) {
+                writer.write(rows.iterator());
+            }
+            tables.add(TableReader.open(schema, file.toPath()));
+        }
+
+        Assert.assertTrue(TableReader.filterMemoryUsage(tables) > 0);
+
+        for (int k = 0; k < KEYS; k++) {
+            Row expected = TestUtil.row(k, k % (2 * TABLES) < TABLES - 1 ? 2 : 1);
+            Assert.assertEquals(expected, TableReader.get(Row::merge, TestUtil.key(k), tables));
+        }
+
+        int read = 0;
+        for (int k = KEYS; k < 2 * KEYS; k++) {
+            for (TableReader table : tables) {
+                if (table.mightContain(TestUtil.key(k)))
+                    read++;
+            }
+            Assert.assertNull(TableReader.get(Row::merge, TestUtil.key(k), tables));
+        }
+        // almost all tables were skipped without reading them
+        Assert.assertTrue("Tables read: " + read, read < KEYS * TABLES * 0.03);
+    }
+}
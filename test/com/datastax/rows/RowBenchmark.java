@@ -0,0 +1,141 @@
+package com.datastax.rows;
+
+import com.datastax.metadata.Schema;
+import com.datastax.serde.IntType;
+import com.datastax.serde.LongType;
+import com.datastax.serde.TextType;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Row serialization and deserialization across schema widths: a two part
+ * key followed by {@code columns} row columns, alternately long and text.
+ * One operation is one row, through the stream based and the absolute
+ * {@link ByteBuffer} variants; {@code bufferDeserializeLazy} only decodes
+ * the row's header and key.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class RowBenchmark {
+    private static final int ROWS = 1024;
+
+    @Param({"1", "8", "32"})
+    public int columns;
+
+    private Schema schema;
+    private Row[] rows;
+
+    // every row serialized one after the other
+    private byte[] serialized;
+    private ByteBuffer buffer;
+    private int[] offsets;
+    private int[] sizes;
+
+    private ByteArrayOutputStream bytes;
+    private DataOutputStream out;
+    private ByteArrayInputStream input;
+    private DataInputStream in;
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException {
+        Schema.Builder builder = new Schema.Builder()
+                .addKey("key1", TextType.instance)
+                .addKey("key2", IntType.instance);
+        for (int c = 0; c < columns; c++)
+            builder.addColumn("c" + c, c % 2 == 0 ? LongType.instance : TextType.instance);
+        schema = builder.build();
+
+        rows = new Row[ROWS];
+        for (int i = 0; i < ROWS; i++) {
+            Row.RowBuilder row = Row.builder(schema, i)
+                    .addKey("key1", String.format("ck%08d", i))
+                    .addKey("key2", i);
+            for (int c = 0; c < columns; c++) {
+                if (c % 2 == 0)
+                    row.addColumn("c" + c, (long) i * c);
+                else
+                    row.addColumn("c" + c, "value" + i + "-" + c);
+            }
+            rows[i] = row.row();
+        }
+
+        bytes = new ByteArrayOutputStream(ROWS * 64);
+        out = new DataOutputStream(bytes);
+        for (Row row : rows)
+            row.serialize(out);
+        input = new ByteArrayInputStream(bytes.toByteArray());
+        in = new DataInputStream(input);
+
+        offsets = new int[ROWS];
+        sizes = new int[ROWS];
+        int length = 0;
+        for (int i = 0; i < ROWS; i++) {
+            offsets[i] = length;
+            sizes[i] = rows[i].serializedSize();
+            length += sizes[i];
+        }
+        buffer = ByteBuffer.allocate(length);
+        for (int i = 0; i < ROWS; i++)
+            rows[i].serialize(buffer, offsets[i]);
+        serialized = buffer.array().clone();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(ROWS)
+    public void streamSerialize(Blackhole bh) throws IOException {
+        bytes.reset();
+        for (Row row : rows)
+            row.serialize(out);
+        bh.consume(bytes);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(ROWS)
+    public void streamDeserialize(Blackhole bh) throws IOException {
+        input.reset();
+        for (int i = 0; i < ROWS; i++)
+            bh.consume(Row.deserialize(schema, in));
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(ROWS)
+    public void bufferSerialize(Blackhole bh) {
+        int length = 0;
+        for (int i = 0; i < ROWS; i++)
+            length += rows[i].serialize(buffer, offsets[i]);
+        bh.consume(length);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(ROWS)
+    public void bufferDeserialize(Blackhole bh) {
+        ByteBuffer source = ByteBuffer.wrap(serialized);
+        for (int offset : offsets)
+            bh.consume(Row.deserialize(schema, source, offset));
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(ROWS)
+    public void bufferDeserializeLazy(Blackhole bh) {
+        ByteBuffer source = ByteBuffer.wrap(serialized);
+        for (int i = 0; i < ROWS; i++)
+            bh.consume(Row.deserializeLazy(schema, source, offsets[i], sizes[i]));
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder()
+                           .include(RowBenchmark.class.getSimpleName())
+                           .build()).run();
+    }
+}
@@ -0,0 +1,142 @@
+package com.datastax.rows;
+
+import com.datastax.metadata.Schema;
+import com.datastax.serde.IntType;
+import com.datastax.serde.LongType;
+import com.datastax.serde.TextType;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Space against decoding cost of the regular and the compact row layout
+ * ({@link Row#serializeCompact}), for rows of {@code columns} row columns,
+ * alternately long and text, whose longs are small counters and whose
+ * write times are a few milliseconds apart, as in a block. One operation is
+ * one row; the {@code bytes} counter reports the rate of serialized bytes
+ * written or read, so its score divided by the operation rate is the size
+ * of a row.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class RowLayoutBenchmark {
+    private static final int ROWS = 1024;
+    private static final long BASE_WRITE_TIME = 1_500_000_000_000L;
+
+    @Param({"regular", "compact"})
+    public String layout;
+
+    @Param({"8", "32"})
+    public int columns;
+
+    private Schema schema;
+    private Row[] rows;
+    private boolean compact;
+
+    private ByteBuffer buffer;
+    private int[] offsets;
+    private int[] sizes;
+    private int length;
+
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.OPERATIONS)
+    public static class Counters {
+        public long bytes;
+    }
+
+    @Setup(Level.Trial)
+    public void setup() {
+        compact = layout.equals("compact");
+
+        Schema.Builder builder = new Schema.Builder()
+                .addKey("key1", TextType.instance)
+                .addKey("key2", IntType.instance);
+        for (int c = 0; c < columns; c++)
+            builder.addColumn("c" + c, c % 2 == 0 ? LongType.instance : TextType.instance);
+        schema = builder.build();
+
+        rows = new Row[ROWS];
+        for (int i = 0; i < ROWS; i++) {
+            Row.RowBuilder row = Row.builder(schema, BASE_WRITE_TIME + i * 3)
+                    .addKey("key1", String.format("ck%08d", i))
+                    .addKey("key2", i);
+            for (int c = 0; c < columns; c++) {
+                if (c % 2 == 0)
+                    row.addColumn("c" + c, (long) i * c);
+                else
+                    row.addColumn("c" + c, "value" + i + "-" + c);
+            }
+            rows[i] = row.row();
+        }
+
+        offsets = new int[ROWS];
+        sizes = new int[ROWS];
+        for (int i = 0; i < ROWS; i++) {
+            offsets[i] = length;
+            sizes[i] = compact ? rows[i].compactSerializedSize(BASE_WRITE_TIME, null, null) : rows[i].serializedSize();
+            length += sizes[i];
+        }
+        buffer = ByteBuffer.allocate(length);
+        for (int i = 0; i < ROWS; i++)
+            serialize(i);
+    }
+
+    private int serialize(int i) {
+        return compact
+               ? rows[i].serializeCompact(buffer, offsets[i], BASE_WRITE_TIME, null, null)
+               : rows[i].serialize(buffer, offsets[i]);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(ROWS)
+    public void serialize(Counters counters) {
+        for (int i = 0; i < ROWS; i++) {
+            int size = compact ? rows[i].compactSerializedSize(BASE_WRITE_TIME, null, null) : rows[i].serializedSize();
+            counters.bytes += size;
+            serialize(i);
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(ROWS)
+    public void deserialize(Blackhole bh, Counters counters) {
+        for (int offset : offsets) {
+            bh.consume(compact
+                       ? Row.deserializeCompact(schema, buffer, offset, BASE_WRITE_TIME, null, null)
+                       : Row.deserialize(schema, buffer, offset));
+        }
+        counters.bytes += length;
+    }
+
+    /**
+     * Lazy rows reading a single long column, which in the compact layout
+     * means skipping the vints and text values in front of it.
+     */
+    @Benchmark
+    @OperationsPerInvocation(ROWS)
+    public void deserializeLazyLastLong(Blackhole bh, Counters counters) {
+        Schema.Column<?> last = schema.getRowColumn((columns - 1) & ~1);
+        for (int i = 0; i < ROWS; i++) {
+            Row row = compact
+                      ? Row.deserializeCompactLazy(schema, buffer, offsets[i], sizes[i], BASE_WRITE_TIME, null, null)
+                      : Row.deserializeLazy(schema, buffer, offsets[i], sizes[i]);
+            bh.consume(row.getLong(last));
+        }
+        counters.bytes += length;
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder()
+                           .include(RowLayoutBenchmark.class.getSimpleName())
+                           .build()).run();
+    }
+}
@@ -3,11 +3,15 @@ package com.datastax.rows;
 import com.datastax.metadata.Schema;
 import com.datastax.rows.Row;
 import com.datastax.serde.IntType;
+import com.datastax.serde.LongType;
 import com.datastax.serde.TextType;
 import org.junit.Assert;
 import org.junit.Test;
 
 import java.io.*;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.NoSuchElementException;
 
 public class RowTest {
 
@@ -37,4 +41,308 @@ public class RowTest {
         Assert.assertEquals(is.available(), 0);
     }
 
+    @Test
+    public void rowByteBufferRoundTrip() throws Throwable {
+        Schema schema = new Schema.Builder()
+                .addKey("ck1", TextType.instance)
+                .addKey("ck2", IntType.instance)
+                .addColumn("v1", TextType.instance)
+                .addColumn("v2", IntType.instance)
+                .addColumn("v3", TextType.instance)
+                .build();
+
+        // v2 is absent
+        Row row = Row.builder(schema, 42)
+                .addKey("ck1", "ck001")
+                .addKey("ck2", 1)
+                .addColumn("v1", "v00")
+                .addColumn("v3", "v03")
+                .row();
+
+        ByteBuffer buffer = ByteBuffer.allocate(row.serializedSize() + 5);
+        Assert.assertEquals(row.serializedSize(), row.serialize(buffer, 5));
+        Assert.assertEquals(row, Row.deserialize(schema, buffer, 5));
+
+        // both variants share the same layout
+        ByteArrayOutputStream os = new ByteArrayOutputStream(row.serializedSize());
+        row.serialize(new DataOutputStream(os));
+        byte[] streamed = os.toByteArray();
+        Assert.assertEquals(row.serializedSize(), streamed.length);
+        Assert.assertEquals(ByteBuffer.wrap(streamed), ByteBuffer.wrap(buffer.array(), 5, row.serializedSize()));
+        Assert.assertEquals(row, Row.deserialize(schema, new DataInputStream(new ByteArrayInputStream(streamed))));
+    }
+
+    @Test
+    public void lazyRowDecodesColumnsOnDemand() throws Throwable {
+        Schema schema = new Schema.Builder()
+                .addKey("ck1", TextType.instance)
+                .addKey("ck2", IntType.instance)
+                .addColumn("v1", TextType.instance)
+                .addColumn("v2", IntType.instance)
+                .addColumn("v3", TextType.instance)
+                .build();
+
+        Row row = Row.builder(schema, 42)
+                .addKey("ck1", "ck001")
+                .addKey("ck2", 1)
+                .addColumn("v1", "v00")
+                .addColumn("v3", "v03")
+                .row();
+
+        int size = row.serializedSize();
+        ByteBuffer buffer = ByteBuffer.allocate(size + 7);
+        row.serialize(buffer, 7);
+
+        Row lazy = Row.deserializeLazy(schema, buffer, 7, size);
+        Assert.assertTrue(lazy.isLazy());
+        Assert.assertEquals(42, lazy.writeTime());
+        Assert.assertEquals(0, lazy.compareTo(row));
+        Assert.assertEquals(size, lazy.serializedSize());
+
+        // untouched columns are copied as they are
+        ByteBuffer copy = ByteBuffer.allocate(size);
+        Assert.assertEquals(size, lazy.serialize(copy, 0));
+        Assert.assertEquals(ByteBuffer.wrap(buffer.array(), 7, size), copy);
+
+        ByteArrayOutputStream os = new ByteArrayOutputStream(size);
+        lazy.serialize(new DataOutputStream(os));
+        Assert.assertEquals(copy, ByteBuffer.wrap(os.toByteArray()));
+
+        Assert.assertEquals("v03", lazy.getColumn(schema.getColumn("v3")));
+        Assert.assertFalse(lazy.hasColumn(schema.getColumn("v2")));
+        Assert.assertNull(lazy.getColumn(schema.getColumn("v2")));
+        Assert.assertEquals("v00", lazy.getColumn(schema.getColumn("v1")));
+        Assert.assertEquals(row, lazy);
+    }
+
+    @Test
+    public void compactRowRoundTrip() throws Throwable {
+        Schema schema = new Schema.Builder()
+                .addKey("ck1", TextType.instance)
+                .addKey("ck2", IntType.instance)
+                .addColumn("v1", TextType.instance)
+                .addColumn("v2", IntType.instance)
+                .addColumn("v3", LongType.instance)
+                .addColumn("v4", LongType.instance)
+                .build();
+
+        long[] longs = { 0, 1, -1, 127, 128, Integer.MIN_VALUE, Long.MAX_VALUE, Long.MIN_VALUE };
+        for (long value : longs) {
+            Row row = Row.builder(schema, 1000 + value)
+                    .addKey("ck1", "ck001")
+                    .addKey("ck2", 1)
+                    .addColumn("v1", "v\u00e900")
+                    .addColumn("v2", (int) value)
+                    .addColumn("v4", value)
+                    .row();
+
+            int size = row.compactSerializedSize(1000, null, null);
+            Assert.assertTrue(size < row.serializedSize());
+            ByteBuffer buffer = ByteBuffer.allocate(size + 3);
+            Assert.assertEquals(size, row.serializeCompact(buffer, 3, 1000, null, null));
+
+            Row read = Row.deserializeCompact(schema, buffer, 3, 1000, null, null);
+            Assert.assertEquals(row, read);
+            Assert.assertEquals(row.writeTime(), read.writeTime());
+
+            Row lazy = Row.deserializeCompactLazy(schema, buffer, 3, size, 1000, null, null);
+            Assert.assertEquals(value, lazy.getLong(schema.getColumn("v4")));
+            Assert.assertFalse(lazy.hasColumn(schema.getColumn("v3")));
+            Assert.assertEquals(row, lazy);
+
+            // lazy compact rows are written again in the regular layout
+            ByteBuffer copy = ByteBuffer.allocate(lazy.serializedSize());
+            lazy.serialize(copy, 0);
+            Assert.assertEquals(row, Row.deserialize(schema, copy, 0));
+        }
+
+        // small values take a byte
+        Row small = Row.builder(schema, 1001)
+                .addKey("ck1", "ck001")
+                .addKey("ck2", 1)
+                .addColumn("v2", -3)
+                .addColumn("v3", 60L)
+                .row();
+        int keyLength = small.comparableKey().length;
+        Assert.assertEquals(1 + 1 + keyLength + 1 + 2, small.compactSerializedSize(1000, null, null));
+    }
+
+    @Test
+    public void prefixKeysRoundTrip() throws Throwable {
+        Schema schema = new Schema.Builder()
+                .addKey("ck1", TextType.instance)
+                .addKey("ck2", IntType.instance)
+                .addColumn("v", TextType.instance)
+                .build();
+
+        Row[] rows = {
+                Row.builder(schema, 1).addKey("ck1", "ck001").addKey("ck2", 1).addColumn("v", "v1").row(),
+                Row.builder(schema, 2).addKey("ck1", "ck001").addKey("ck2", 2).row(),
+                Row.builder(schema, 3).addKey("ck1", "ck0011").addKey("ck2", 2).addColumn("v", "v3").row(),
+                Row.builder(schema, 4).addKey("ck1", "dk").addKey("ck2", 0).row(),
+        };
+
+        for (boolean compact : new boolean[]{ false, true }) {
+            ByteBuffer buffer = ByteBuffer.allocate(1024);
+            int[] offsets = new int[rows.length + 1];
+            byte[] previous = new byte[0];
+            for (int i = 0; i < rows.length; i++) {
+                int size = compact ? rows[i].compactSerializedSize(0, null, previous) : rows[i].serializedSize(null, previous);
+                int written = compact ? rows[i].serializeCompact(buffer, offsets[i], 0, null, previous) : rows[i].serialize(buffer, offsets[i], null, previous);
+                Assert.assertEquals(size, written);
+                offsets[i + 1] = offsets[i] + written;
+                previous = rows[i].comparableKey();
+            }
+            // the second key is stored as its last int
+            Assert.assertTrue(offsets[2] - offsets[1] < offsets[1] - offsets[0]);
+
+            previous = new byte[0];
+            for (int i = 0; i < rows.length; i++) {
+                int length = offsets[i + 1] - offsets[i];
+                Row read = compact ? Row.deserializeCompact(schema, buffer, offsets[i], 0, null, previous) : Row.deserialize(schema, buffer, offsets[i], null, previous);
+                Row lazy = compact ? Row.deserializeCompactLazy(schema, buffer, offsets[i], length, 0, null, previous) : Row.deserializeLazy(schema, buffer, offsets[i], length, null, previous);
+                Assert.assertEquals(rows[i], read);
+                Assert.assertEquals(rows[i], lazy);
+                previous = read.comparableKey();
+            }
+        }
+    }
+
+    @Test
+    public void primitiveColumnsAreStoredUnboxed() throws Throwable {
+        Schema schema = new Schema.Builder()
+                .addKey("ck1", TextType.instance)
+                .addColumn("v1", LongType.instance)
+                .addColumn("v2", TextType.instance)
+                .addColumn("v3", IntType.instance)
+                .addColumn("v4", LongType.instance)
+                .build();
+
+        Assert.assertEquals(3, schema.primitiveSlots());
+        Assert.assertEquals(1, schema.objectSlots());
+
+        Schema.Column v1 = schema.getColumn("v1");
+        Schema.Column v3 = schema.getColumn("v3");
+        Schema.Column v4 = schema.getColumn("v4");
+
+        Row row = Row.builder(schema, 7)
+                .addKey("ck1", "ck001")
+                .addColumn("v1", Long.MIN_VALUE)
+                .addColumn("v2", "v02")
+                .addColumn("v3", -3)
+                .row();
+
+        for (Row r : Arrays.asList(row, roundTrip(schema, row), lazyRoundTrip(schema, row))) {
+            Assert.assertEquals(Long.MIN_VALUE, r.getLong(v1));
+            Assert.assertEquals(-3, r.getInt(v3));
+            Assert.assertEquals(Long.MIN_VALUE, r.getColumn(v1));
+            Assert.assertEquals(-3, r.getColumn(v3));
+            Assert.assertEquals("v02", r.getColumn(schema.getColumn("v2")));
+            Assert.assertFalse(r.hasColumn(v4));
+            Assert.assertNull(r.getColumn(v4));
+            Assert.assertFalse(r.hasColumn(schema.getColumn("ck1")));
+            Assert.assertEquals(row, r);
+            Assert.assertEquals(row.hashCode(), r.hashCode());
+        }
+
+        // boxed values end up in the same slots
+        Assert.assertEquals(row, Row.builder(schema, 7)
+                .addKey("ck1", "ck001")
+                .addColumn("v1", (Object) Long.MIN_VALUE)
+                .addColumn("v2", "v02")
+                .addColumn("v3", (Object) (-3))
+                .row());
+
+        try {
+            row.getLong(v4);
+            Assert.fail("Absent column has no value");
+        }
+        catch (NoSuchElementException e) {
+            // expected
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rowColumnsAreLimitedByPresenceBitmap() {
+        Schema.Builder builder = new Schema.Builder();
+        for (int i = 0; i <= Schema.MAX_ROW_COLUMNS; i++)
+            builder.addColumn("v" + i, LongType.instance);
+    }
+
+    @Test
+    public void rowsCompareByComparableKey() throws Throwable {
+        Schema schema = new Schema.Builder()
+                .addKey("ck1", IntType.instance)
+                .addKey("ck2", TextType.instance)
+                .addKey("ck3", LongType.instance)
+                .addColumn("v", TextType.instance)
+                .build();
+
+        Object[][] keys = {
+                { -5, "b", 1L },
+                { -5, "b", 2L },
+                { -5, "ba", Long.MIN_VALUE },
+                { -1, "", 0L },
+                { 0, "a", -1L },
+                { 0, "a", 0L },
+                { 0, "a\u0000", -7L },
+                { 7, "\u00e9", 3L },
+        };
+
+        for (int i = 0; i < keys.length; i++) {
+            for (int j = 0; j < keys.length; j++) {
+                Row l = row(schema, keys[i]);
+                Row r = roundTrip(schema, row(schema, keys[j]));
+                Assert.assertEquals(Integer.signum(Integer.compare(i, j)), Integer.signum(l.compareTo(r)));
+                Assert.assertEquals(i == j, Arrays.equals(l.comparableKey(), Row.comparableKey(schema, keys[j])));
+            }
+        }
+
+        Assert.assertEquals("Row(ts=1 [ ck1 = 0 ck2 = a\u0000 ck3 = -7] v = v)", roundTrip(schema, row(schema, keys[6])).toString());
+    }
+
+    @Test
+    public void reusedBuilderLeavesBuiltRowsAlone() throws Throwable {
+        Schema schema = new Schema.Builder()
+                .addKey("ck1", TextType.instance)
+                .addColumn("v1", TextType.instance)
+                .addColumn("v2", IntType.instance)
+                .build();
+
+        Row.RowBuilder builder = Row.builder(schema, 42)
+                .addKey("ck1", "ck001")
+                .addColumn("v1", "v00")
+                .addColumn("v2", 1);
+        Row first = builder.row();
+        Row second = builder.addKey("ck1", "ck002")
+                .addColumn("v1", "v01")
+                .addColumn("v2", 2)
+                .row();
+
+        Assert.assertEquals(Row.builder(schema, 42).addKey("ck1", "ck001").addColumn("v1", "v00").addColumn("v2", 1).row(), first);
+        Assert.assertEquals("v00", first.getColumn(schema.getColumn("v1")));
+        Assert.assertEquals(1, first.getInt(schema.getColumn("v2")));
+        Assert.assertEquals(Row.builder(schema, 42).addKey("ck1", "ck002").addColumn("v1", "v01").addColumn("v2", 2).row(), second);
+    }
+
+    private static Row row(Schema schema, Object[] key) {
+        return Row.builder(schema, 1)
+                .addKey("ck1", key[0])
+                .addKey("ck2", key[1])
+                .addKey("ck3", key[2])
+                .addColumn("v", "v")
+                .row();
+    }
+
+    private static Row roundTrip(Schema schema, Row row) {
+        ByteBuffer buffer = ByteBuffer.allocate(row.serializedSize());
+        row.serialize(buffer, 0);
+        return Row.deserialize(schema, buffer, 0);
+    }
+
+    private static Row lazyRoundTrip(Schema schema, Row row) {
+        ByteBuffer buffer = ByteBuffer.allocate(row.serializedSize());
+        row.serialize(buffer, 0);
+        return Row.deserializeLazy(schema, buffer, 0, buffer.capacity());
+    }
 }
@@ -0,0 +1,179 @@
+package com.datastax.serde;
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@link TextType} compared to the implementation it replaced, which
+ * encoded every value once per {@code sizeof} and once more to serialize
+ * it, wrote it with {@link DataOutput#writeBytes(String)} (only correct for
+ * ASCII) and read it back byte by byte. {@code bufferSerialize} takes the
+ * size of every value before writing it, as rows do when they are written
+ * to a table. One operation is one value.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class TextTypeBenchmark {
+    private static final int VALUES = 1024;
+
+    @Param({"legacy", "utf8"})
+    public String codec;
+
+    @Param({"ascii", "mixed"})
+    public String text;
+
+    @Param({"16", "256"})
+    public int length;
+
+    private AbstractType<String> type;
+    private String[] values;
+
+    private ByteBuffer buffer;
+    private ByteArrayOutputStream bytes;
+    private DataOutputStream out;
+    private ByteArrayInputStream input;
+    private DataInputStream in;
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException {
+        type = codec.equals("legacy") ? new LegacyTextType() : TextType.instance;
+
+        Random random = new Random(42);
+        values = new String[VALUES];
+        for (int i = 0; i < VALUES; i++) {
+            char[] chars = new char[length];
+            for (int c = 0; c < length; c++) {
+                // one char in eight out of ASCII for mixed text
+                chars[c] = text.equals("mixed") && random.nextInt(8) == 0
+                           ? (char) (0xE0 + random.nextInt(0x100))
+                           : (char) ('a' + random.nextInt(26));
+            }
+            values[i] = new String(chars);
+        }
+
+        bytes = new ByteArrayOutputStream(VALUES * (length * 3 + Integer.BYTES));
+        out = new DataOutputStream(bytes);
+        int size = 0;
+        for (String value : values) {
+            TextType.instance.serialize(value, out);
+            size += TextType.instance.sizeof(value);
+        }
+        buffer = ByteBuffer.allocate(size);
+        input = new ByteArrayInputStream(bytes.toByteArray());
+        in = new DataInputStream(input);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(VALUES)
+    public void streamSerialize(Blackhole bh) throws IOException {
+        bytes.reset();
+        for (String value : values)
+            type.serialize(value, out);
+        bh.consume(bytes);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(VALUES)
+    public void streamDeserialize(Blackhole bh) throws IOException {
+        input.reset();
+        for (int i = 0; i < VALUES; i++)
+            bh.consume(type.deserialize(in));
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(VALUES)
+    public void bufferSerialize(Blackhole bh) {
+        int offset = 0;
+        for (String value : values) {
+            int size = type.sizeof(value);
+            int written = type.serialize(value, buffer, offset);
+            assert written == size;
+            offset += written;
+        }
+        bh.consume(offset);
+    }
+
+    /**
+     * Stream and buffer paths of {@link TextType} before the single pass UTF-8
+     * codec; comparisons and the byte-comparable encoding are not needed here.
+     */
+    private static class LegacyTextType implements AbstractType<String> {
+        public int compare(String l, String r) {
+            return l.compareTo(r);
+        }
+
+        public void serialize(String value, DataOutput out) throws IOException {
+            if (sizeof(value) > TextType.MAX_SERIALIZED_STRING_LENGTH)
+                throw new IOException("Too long");
+
+            out.writeInt(value.getBytes().length);
+            out.writeBytes(value);
+        }
+
+        public int sizeof(String value) {
+            return Integer.BYTES + value.getBytes(StandardCharsets.UTF_8).length;
+        }
+
+        public String deserialize(DataInput in) throws IOException {
+            int length = in.readInt();
+            byte[] bytes = new byte[length];
+            for (int i = 0; i < length; i++)
+                bytes[i] = in.readByte();
+            return new String(bytes, StandardCharsets.UTF_8);
+        }
+
+        public boolean isFixedSize() {
+            return false;
+        }
+
+        public int serialize(String value, ByteBuffer buffer, int offset) {
+            byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+            buffer.putInt(offset, bytes.length);
+            System.arraycopy(bytes, 0, buffer.array(), buffer.arrayOffset() + offset + Integer.BYTES, bytes.length);
+            return Integer.BYTES + bytes.length;
+        }
+
+        public String deserialize(ByteBuffer buffer, int offset) {
+            return TextType.instance.deserialize(buffer, offset);
+        }
+
+        public int skip(ByteBuffer buffer, int offset) {
+            return TextType.instance.skip(buffer, offset);
+        }
+
+        public int comparableSize(String value) {
+            throw new UnsupportedOperationException();
+        }
+
+        public int serializeComparable(String value, ByteBuffer buffer, int offset) {
+            throw new UnsupportedOperationException();
+        }
+
+        public String deserializeComparable(ByteBuffer buffer, int offset) {
+            throw new UnsupportedOperationException();
+        }
+
+        public int skipComparable(ByteBuffer buffer, int offset) {
+            throw new UnsupportedOperationException();
+        }
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder()
+                           .include(TextTypeBenchmark.class.getSimpleName())
+                           .build()).run();
+    }
+}
@@ -0,0 +1,122 @@
+package com.datastax.serde;
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Serialization and deserialization of single values of every type, through
+ * the stream based and the absolute {@link ByteBuffer} variants. One
+ * operation is one value; text values are {@value #TEXT_LENGTH} ASCII chars.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class TypesBenchmark {
+    private static final int VALUES = 1024;
+    private static final int TEXT_LENGTH = 32;
+
+    @Param({"int", "long", "text"})
+    public String type;
+
+    private AbstractType<Object> serializer;
+    private Object[] values;
+
+    // every value serialized one after the other
+    private byte[] serialized;
+    private ByteBuffer buffer;
+    private int[] offsets;
+
+    private ByteArrayOutputStream bytes;
+    private DataOutputStream out;
+    private ByteArrayInputStream input;
+    private DataInputStream in;
+
+    @Setup(Level.Trial)
+    @SuppressWarnings("unchecked")
+    public void setup() throws IOException {
+        serializer = (AbstractType<Object>) Types.byName(type);
+
+        Random random = new Random(42);
+        values = new Object[VALUES];
+        for (int i = 0; i < VALUES; i++)
+            values[i] = value(random);
+
+        bytes = new ByteArrayOutputStream(VALUES * 8);
+        out = new DataOutputStream(bytes);
+        offsets = new int[VALUES];
+        for (int i = 0; i < VALUES; i++) {
+            offsets[i] = out.size();
+            serializer.serialize(values[i], out);
+        }
+        serialized = bytes.toByteArray();
+        buffer = ByteBuffer.allocate(serialized.length);
+
+        input = new ByteArrayInputStream(serialized);
+        in = new DataInputStream(input);
+    }
+
+    private Object value(Random random) {
+        switch (type) {
+            case "int":
+                return random.nextInt();
+            case "long":
+                return random.nextLong();
+            default:
+                char[] chars = new char[TEXT_LENGTH];
+                for (int i = 0; i < chars.length; i++)
+                    chars[i] = (char) ('a' + random.nextInt(26));
+                return new String(chars);
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(VALUES)
+    public void streamSerialize(Blackhole bh) throws IOException {
+        bytes.reset();
+        for (Object value : values)
+            serializer.serialize(value, out);
+        bh.consume(bytes);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(VALUES)
+    public void streamDeserialize(Blackhole bh) throws IOException {
+        input.reset();
+        for (int i = 0; i < VALUES; i++)
+            bh.consume(serializer.deserialize(in));
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(VALUES)
+    public void bufferSerialize(Blackhole bh) {
+        int offset = 0;
+        for (Object value : values)
+            offset += serializer.serialize(value, buffer, offset);
+        bh.consume(offset);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(VALUES)
+    public void bufferDeserialize(Blackhole bh) {
+        ByteBuffer source = ByteBuffer.wrap(serialized);
+        for (int offset : offsets)
+            bh.consume(serializer.deserialize(source, offset));
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder()
+                           .include(TypesBenchmark.class.getSimpleName())
+                           .build()).run();
+    }
+}
@@ -1,10 +1,16 @@
 package com.datastax.serde;
 
+import com.datastax.util.ByteBufferUtil;
 import com.datastax.util.TestUtil;
+import com.datastax.util.VInt;
 import org.junit.Assert;
 import org.junit.Test;
 
-import java.io.IOException;
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Random;
 
 public class TypesTest {
 
@@ -39,4 +45,165 @@ public class TypesTest {
         }
     }
 
-}
\ No newline at end of file
+    @Test
+    public void byteBufferTest() {
+        ByteBuffer buffer = ByteBuffer.allocate(4096);
+        ByteBuffer direct = ByteBuffer.allocateDirect(4096);
+
+        for (ByteBuffer bb : new ByteBuffer[]{ buffer, direct }) {
+            int offset = 3;
+            offset += IntType.instance.serialize(-42, bb, offset);
+            offset += LongType.instance.serialize(Long.MIN_VALUE, bb, offset);
+            offset += TextType.instance.serialize("", bb, offset);
+            offset += TextType.instance.serialize("z\u00fcrich \u65e5\u672c", bb, offset);
+            int end = offset + IntType.instance.serialize(7, bb, offset);
+
+            Assert.assertEquals(0, bb.position());
+
+            offset = 3;
+            Assert.assertEquals(-42, (int) IntType.instance.deserialize(bb, offset));
+            offset = IntType.instance.skip(bb, offset);
+            Assert.assertEquals(Long.MIN_VALUE, (long) LongType.instance.deserialize(bb, offset));
+            offset = LongType.instance.skip(bb, offset);
+            Assert.assertEquals("", TextType.instance.deserialize(bb, offset));
+            offset = TextType.instance.skip(bb, offset);
+            Assert.assertEquals("z\u00fcrich \u65e5\u672c", TextType.instance.deserialize(bb, offset));
+            offset = TextType.instance.skip(bb, offset);
+            Assert.assertEquals(7, (int) IntType.instance.deserialize(bb, offset));
+            Assert.assertEquals(end, IntType.instance.skip(bb, offset));
+        }
+    }
+
+    @Test
+    public void textTypeByteBufferSize() {
+        for (int i = 0; i < 1000; i++) {
+            String val = TestUtil.randomString(i);
+            ByteBuffer bb = ByteBuffer.allocate(TextType.instance.sizeof(val));
+            Assert.assertEquals(bb.capacity(), TextType.instance.serialize(val, bb, 0));
+            Assert.assertEquals(val, TextType.instance.deserialize(bb, 0));
+        }
+    }
+
+    @Test
+    public void textTypeEncodesUtf8() throws IOException {
+        String[] values = { "", "ascii", "z\u00fcrich \u65e5\u672c", "\ud83d\ude00 emoji", "\u0000\u007f\u0080\u07ff\u0800\uffff",
+                            "unpaired \ud800 high", "unpaired \udc00 low", "trailing \ud83d" };
+
+        for (String val : values) {
+            byte[] expected = val.getBytes(StandardCharsets.UTF_8);
+            Assert.assertEquals(Integer.BYTES + expected.length, TextType.instance.sizeof(val));
+
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            TextType.instance.serialize(val, new DataOutputStream(bytes));
+            ByteBuffer stream = ByteBuffer.wrap(bytes.toByteArray());
+            Assert.assertEquals(expected.length, stream.getInt(0));
+            Assert.assertArrayEquals(expected, Arrays.copyOfRange(stream.array(), Integer.BYTES, stream.capacity()));
+
+            // heap buffers with and without spare room, and direct buffers, hold the same bytes
+            for (ByteBuffer bb : new ByteBuffer[]{ ByteBuffer.allocate(stream.capacity()),
+                                                   ByteBuffer.allocate(stream.capacity() + 3 * val.length()),
+                                                   ByteBuffer.allocateDirect(stream.capacity()) }) {
+                Assert.assertEquals(stream.capacity(), TextType.instance.serialize(val, bb, 0));
+                for (int i = 0; i < stream.capacity(); i++)
+                    Assert.assertEquals(stream.get(i), bb.get(i));
+                Assert.assertEquals(new String(expected, StandardCharsets.UTF_8), TextType.instance.deserialize(bb, 0));
+            }
+
+            String read = TextType.instance.deserialize(new DataInputStream(new ByteArrayInputStream(stream.array())));
+            Assert.assertEquals(new String(expected, StandardCharsets.UTF_8), read);
+        }
+    }
+
+    @Test
+    public void textTypeBufferOverflow() {
+        ByteBuffer buffer = ByteBuffer.allocate(Integer.BYTES + 5);
+        try {
+            TextType.instance.serialize("\u65e5\u672c", buffer, 0);
+            Assert.fail("Expected the value not to fit");
+        }
+        catch (IndexOutOfBoundsException e) {
+            // nothing was written, not even the length
+            Assert.assertEquals(0, buffer.getInt(0));
+        }
+    }
+
+    @Test
+    public void vintRoundTrip() {
+        ByteBuffer buffer = ByteBuffer.allocate(VInt.MAX_SIZE + 1);
+        Random random = new Random(42);
+        long[] values = new long[1000];
+        for (int i = 0; i < values.length; i++)
+            values[i] = random.nextLong() >> random.nextInt(Long.SIZE);
+        values[0] = 0;
+        values[1] = Long.MIN_VALUE;
+        values[2] = Long.MAX_VALUE;
+        values[3] = -1;
+
+        for (long value : values) {
+            for (long encoded : new long[]{ value, VInt.zigZag(value) }) {
+                int size = VInt.write(encoded, buffer, 1);
+                Assert.assertEquals(VInt.sizeOf(encoded), size);
+                Assert.assertEquals(encoded, VInt.read(buffer, 1));
+                Assert.assertEquals(1 + size, VInt.skip(buffer, 1));
+            }
+            Assert.assertEquals(value, VInt.unZigZag(VInt.zigZag(value)));
+        }
+
+        Assert.assertEquals(1, VInt.sizeOf(127));
+        Assert.assertEquals(2, VInt.sizeOf(128));
+        Assert.assertEquals(VInt.MAX_SIZE, VInt.sizeOf(-1));
+        Assert.assertEquals(1, VInt.sizeOf(VInt.zigZag(-64)));
+        Assert.assertEquals(2, VInt.sizeOf(VInt.zigZag(64)));
+    }
+
+    @Test
+    public void comparableEncodingPreservesOrder() {
+        Random random = TestUtil.random;
+        int[] ints = { Integer.MIN_VALUE, -1, 0, 1, Integer.MAX_VALUE };
+        long[] longs = { Long.MIN_VALUE, -1L, 0L, 1L, Long.MAX_VALUE };
+        String[] strings = { "", "\u0000", "\u0000\u0000", "a", "a\u0000", "a\u0001", "ab", "\u007f", "\u0080",
+                             "\u07ff", "\u0800", "\ud83d\ude00", "\uffff", "\u00e9t\u00e9" };
+
+        for (int i = 0; i < 10000; i++) {
+            int li = i < 25 ? ints[i / 5] : random.nextInt();
+            int ri = i < 25 ? ints[i % 5] : random.nextInt();
+            assertComparable(IntType.instance, li, ri);
+
+            long ll = i < 25 ? longs[i / 5] : random.nextLong();
+            long rl = i < 25 ? longs[i % 5] : random.nextLong();
+            assertComparable(LongType.instance, ll, rl);
+
+            String ls = strings[random.nextInt(strings.length)] + randomText(random);
+            String rs = random.nextBoolean() ? ls + strings[random.nextInt(strings.length)] : randomText(random);
+            assertComparable(TextType.instance, ls, rs);
+        }
+
+        for (String l : strings)
+            for (String r : strings)
+                assertComparable(TextType.instance, l, r);
+    }
+
+    private static String randomText(Random random) {
+        char[] chars = new char[random.nextInt(5)];
+        for (int i = 0; i < chars.length; i++)
+            chars[i] = random.nextBoolean() ? (char) ('a' + random.nextInt(3)) : (char) random.nextInt(0x10000);
+        return new String(chars);
+    }
+
+    private static <T> void assertComparable(AbstractType<T> type, T l, T r) {
+        byte[] lb = comparable(type, l);
+        byte[] rb = comparable(type, r);
+
+        Assert.assertEquals(l + " <> " + r,
+                            Integer.signum(type.compare(l, r)),
+                            Integer.signum(ByteBufferUtil.compareUnsigned(lb, rb)));
+        Assert.assertEquals(l, type.deserializeComparable(ByteBuffer.wrap(lb), 0));
+        Assert.assertEquals(lb.length, type.skipComparable(ByteBuffer.wrap(lb), 0));
+    }
+
+    private static <T> byte[] comparable(AbstractType<T> type, T value) {
+        byte[] bytes = new byte[type.comparableSize(value)];
+        Assert.assertEquals(bytes.length, type.serializeComparable(value, ByteBuffer.wrap(bytes), 0));
+        return bytes;
+    }
+}
@@ -0,0 +1,57 @@
+package com.datastax.util;
+
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+
+public class MappedFileInputTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void readLine() throws IOException {
+        String content = "first\nsecond\r\nthird\rfourth\n\nlast";
+        File file = folder.newFile();
+        Files.write(file.toPath(), content.getBytes(StandardCharsets.ISO_8859_1));
+
+        // segments smaller than most lines force re-mapping inside lines and between \r and \n
+        for (int segmentSize : new int[]{ MappedFileInput.DEFAULT_SEGMENT_SIZE, Long.BYTES }) {
+            DataInputStream expected = new DataInputStream(new ByteArrayInputStream(content.getBytes(StandardCharsets.ISO_8859_1)));
+            try (MappedFileInput input = new MappedFileInput(file.toPath(), segmentSize)) {
+                String line;
+                do {
+                    @SuppressWarnings("deprecation")
+                    String expectedLine = expected.readLine();
+                    line = input.readLine();
+                    Assert.assertEquals(expectedLine, line);
+                } while (line != null);
+                Assert.assertEquals(file.length(), input.position());
+                Assert.assertNull(input.readLine());
+            }
+        }
+    }
+
+    @Test
+    public void readLineBetweenValues() throws IOException {
+        File file = folder.newFile();
+        try (DataOutputStream out = new DataOutputStream(new FileOutputStream(file))) {
+            out.writeInt(42);
+            out.writeBytes("line\r");
+            out.writeInt(43);
+        }
+
+        try (MappedFileInput input = new MappedFileInput(file.toPath())) {
+            Assert.assertEquals(42, input.readInt());
+            Assert.assertEquals("line", input.readLine());
+            // a lone \r ends the line without consuming the next byte
+            Assert.assertEquals(43, input.readInt());
+            Assert.assertNull(input.readLine());
+        }
+    }
+}
@@ -1,5 +1,11 @@
 package com.datastax.util;
 
+import com.datastax.metadata.Schema;
+import com.datastax.rows.Row;
+import com.datastax.serde.IntType;
+import com.datastax.serde.LongType;
+import com.datastax.serde.TextType;
+
 import java.io.*;
 import java.util.Random;
 
@@ -33,6 +39,33 @@ public class TestUtil {
         return sb.toString();
     }
 
+    // schema of the rows written to tables by the storage tests, see row(int, long)
+    public static final Schema SCHEMA = new Schema.Builder()
+            .addKey("key1", TextType.instance)
+            .addKey("key2", IntType.instance)
+            .addColumn("v1", TextType.instance)
+            .addColumn("v2", LongType.instance)
+            .build();
+
+    /**
+     * Row of {@link #SCHEMA} with key {@code k}; rows sort in the order of their k.
+     */
+    public static Row row(int k, long writeTime) {
+        return Row.builder(SCHEMA, writeTime)
+                .addKey("key1", String.format("ck%06d", k))
+                .addKey("key2", k % 7)
+                .addColumn("v1", "v" + k + "@" + writeTime)
+                .addColumn("v2", (long) k)
+                .row();
+    }
+
+    /**
+     * Byte-comparable key of {@link #row(int, long)}.
+     */
+    public static byte[] key(int k) {
+        return Row.comparableKey(SCHEMA, String.format("ck%06d", k), k % 7);
+    }
+
     public interface IOConsumer<T> {
         void accept(T t) throws IOException;
     }
@@ -0,0 +1,92 @@
+package com.datastax.writer;
+
+import com.datastax.index.BloomFilter;
+import com.datastax.index.SparseIndex;
+import com.datastax.metadata.Schema;
+import com.datastax.rows.Row;
+import com.datastax.serde.IntType;
+import com.datastax.serde.LongType;
+import com.datastax.serde.TextType;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Write throughput of {@link TableWriter} into a stream that discards its
+ * bytes, so only row serialization and the writer's own work are measured:
+ * plain, with a {@link SparseIndex} every 128 rows, and with the index and
+ * a {@link BloomFilter}. One operation is a table of {@code rows} rows; the
+ * {@code bytesWritten} counter reports the rate at which bytes are written.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class TableWriterBenchmark {
+
+    @Param({"100000"})
+    public int rows;
+
+    @Param({"none", "index", "indexAndFilter"})
+    public String components;
+
+    private Schema schema;
+    private Row[] table;
+
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.OPERATIONS)
+    public static class Counters {
+        public long bytesWritten;
+    }
+
+    @Setup(Level.Trial)
+    public void setup() {
+        schema = new Schema.Builder()
+                .addKey("key1", TextType.instance)
+                .addKey("key2", IntType.instance)
+                .addColumn("v1", TextType.instance)
+                .addColumn("v2", LongType.instance)
+                .build();
+
+        table = new Row[rows];
+        for (int i = 0; i < rows; i++) {
+            table[i] = Row.builder(schema, i)
+                    .addKey("key1", String.format("ck%08d", i))
+                    .addKey("key2", i)
+                    .addColumn("v1", "value" + i)
+                    .addColumn("v2", (long) i)
+                    .row();
+        }
+    }
+
+    @Benchmark
+    public void write(Counters counters) throws IOException {
+        SparseIndex.Builder index = components.equals("none") ? null : SparseIndex.Builder.everyRows(128);
+        BloomFilter.Builder filter = components.equals("indexAndFilter") ? new BloomFilter.Builder() : null;
+
+        DataOutputStream out = new DataOutputStream(new OutputStream() {
+            public void write(int b) {
+            }
+
+            public void write(byte[] b, int off, int len) {
+            }
+        });
+        new TableWriter(schema, out, index, filter).write(Arrays.asList(table).iterator());
+        counters.bytesWritten += out.size();
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder()
+                           .include(TableWriterBenchmark.class.getSimpleName())
+                           .build()).run();
+    }
+}